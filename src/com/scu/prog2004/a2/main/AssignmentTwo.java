@@ -2,12 +2,18 @@ package com.scu.prog2004.a2.main;
 
 import com.scu.prog2004.a2.model.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.InputMismatchException;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * 主类：整合「基础功能演示」与「交互式预约系统」
@@ -18,11 +24,24 @@ public class AssignmentTwo {
     // 常量定义：避免魔法值，提升可维护性
     private static final String EXPORT_FILE_PATH = "rideHistory_Demo.csv";
     private static final String BOOKING_FILE_PATH = "bookings.dat";
+    private static final String BOOKING_ARCHIVE_PATH = "bookings-archive.csv"; // 已取消/已过期预约的冷归档
+    private static final long COMPACTION_INTERVAL_MINUTES = 10;
+    private static final long REMINDER_LEAD_MINUTES = 30;   // 预约前多久发布提醒
+    private static final long NO_SHOW_GRACE_MINUTES = 15;   // 预约时间后多久未到场视为过期
+    private static final String ELIGIBILITY_RULES_PATH = "eligibility.rules";
+    private static final String CHECKPOINT_FILE_PATH = "park.ckpt";
+    private static final String PARK_EXPORT_DIR = "park-export"; // 全园批量导出目录
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    private static final int PAGE_SIZE = 20; // 分页浏览每页条数
     private static final RideManager RIDE_MANAGER = RideManager.getInstance();
     private static final BookingManager BOOKING_MANAGER = BookingManager.getInstance();
+    private static final ParkCheckpoint CHECKPOINT = new ParkCheckpoint(RIDE_MANAGER, BOOKING_MANAGER);
+    private static final BookingCompactor BOOKING_COMPACTOR = new BookingCompactor(BOOKING_MANAGER, BOOKING_ARCHIVE_PATH);
+    private static final BookingDispatcher BOOKING_DISPATCHER = new BookingDispatcher(BOOKING_MANAGER);
+    private static final OperationLatencyTable PROFILE_TABLE = new OperationLatencyTable(); // --profile时的进程内延迟统计
     private static final Scanner SCANNER = new Scanner(System.in);
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-    // 设施信息常量：统一管理，添加设施ID
+    private static final DateTimeFormatter DATE_FORMATTER = DisplayRenderer.MINUTE_FORMATTER;
+    // Part3/Part5演示设施：演示代码独立创建，不进入设施目录（交互菜单中的设施来自RideManager的设施目录）
     private static final String ROLLER_COASTER_ID = "R001";
     private static final String PIRATE_SHIP_ID = "R002";
     private static final String CAROUSEL_ID = "R003";
@@ -31,13 +50,46 @@ public class AssignmentTwo {
     private static final String CAROUSEL_NAME = "旋转木马";
 
     public static void main(String[] args) {
+        long startNanos = System.nanoTime();
         LoggerUtil.info("==================================================");
         LoggerUtil.info("🎢 PROG2004 A2 主题公园管理系统");
         LoggerUtil.info("==================================================\n");
 
-        // 启动时加载历史预约数据（符合ULO4：IO机制应用）
-        BOOKING_MANAGER.loadBookingsFromFile(BOOKING_FILE_PATH);
-        LoggerUtil.info("📌 系统启动完成 | 当前有效预约：" + BOOKING_MANAGER.getValidBookingCount() + "条");
+        // 快速启动模式：java AssignmentTwo [--server [端口]] --fast-start，预约数据在后台加载，首个菜单立即出现
+        boolean fastStart = Arrays.asList(args).contains("--fast-start");
+        // 性能探针：--profile 时安装进程内计时钩子，退出时打印各热点操作的延迟表（JFR事件无需此开关，开启录制即可采集）
+        if (Arrays.asList(args).contains("--profile")) {
+            ParkProfiler.setHook(PROFILE_TABLE);
+            LoggerUtil.info("📌 性能探针已开启：退出时输出入队/周期/导入导出/预约读写的延迟统计");
+        }
+        // 设施目录在RideManager创建时登记（只解析配置，首次访问某设施时才创建）；此处加载设施资格规则（年龄/身高/保险/会员限制）
+        RIDE_MANAGER.applyEligibilityRules(ELIGIBILITY_RULES_PATH);
+        // 启动时优先从检查点还原整个园区（设施队列/历史/周期数+预约），没有检查点时只加载预约数据（符合ULO4：IO机制应用）
+        if (!new File(CHECKPOINT_FILE_PATH).exists() || CHECKPOINT.restore(CHECKPOINT_FILE_PATH) == null) {
+            if (fastStart) {
+                BOOKING_MANAGER.loadBookingsInBackground(BOOKING_FILE_PATH);
+            } else {
+                BOOKING_MANAGER.loadBookingsFromFile(BOOKING_FILE_PATH);
+            }
+        }
+        // 预约定时器：提醒/到时/未到场过期（快速启动时加载完成后自动为全部预约安排定时器）
+        BOOKING_MANAGER.startBookingTimers(Duration.ofMinutes(REMINDER_LEAD_MINUTES), Duration.ofMinutes(NO_SHOW_GRACE_MINUTES));
+        // 预约时段开始时把到时的预约游客批量放入设施等待队列（优先于现场排队游客）
+        BOOKING_DISPATCHER.start();
+        // 后台定期把超过保留期的已取消/已过期预约归档到冷文件（快速启动时在预约加载完成后才开始处理）
+        BOOKING_COMPACTOR.start(COMPACTION_INTERVAL_MINUTES);
+        long startupMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        if (BOOKING_MANAGER.isLoaded()) {
+            LoggerUtil.info("📌 系统启动完成（" + startupMillis + "ms）| 当前有效预约：" + BOOKING_MANAGER.getValidBookingCount() + "条");
+        } else {
+            LoggerUtil.info("📌 系统启动完成（" + startupMillis + "ms）| 预约数据后台加载中，加载完成前的预约操作会自动等待");
+        }
+
+        // 服务模式：java AssignmentTwo --server [端口]，以HTTP/JSON接口代替控制台菜单
+        if (args.length > 0 && "--server".equals(args[0])) {
+            startServerMode(args.length > 1 && !args[1].startsWith("--") ? args[1] : String.valueOf(DEFAULT_SERVER_PORT));
+            return;
+        }
 
         // 主菜单循环：直到用户选择退出
         while (true) {
@@ -59,6 +111,34 @@ public class AssignmentTwo {
         }
     }
 
+    /**
+     * 启动HTTP服务模式（Ctrl+C停止时自动保存预约数据）
+     */
+    private static void startServerMode(String portArg) {
+        int port;
+        try {
+            port = Integer.parseInt(portArg);
+        } catch (NumberFormatException e) {
+            LoggerUtil.error("❌ 端口格式错误：" + portArg + "，使用默认端口" + DEFAULT_SERVER_PORT);
+            port = DEFAULT_SERVER_PORT;
+        }
+        try {
+            ParkHttpServer server = new ParkHttpServer(port, RIDE_MANAGER, BOOKING_MANAGER);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                BOOKING_DISPATCHER.close();
+                BOOKING_COMPACTOR.close();
+                BOOKING_MANAGER.saveBookingsToFile(BOOKING_FILE_PATH);
+                CHECKPOINT.save(CHECKPOINT_FILE_PATH);
+                printProfile();
+            }));
+            server.start();
+            LoggerUtil.info("📌 服务模式运行中（按Ctrl+C停止并保存预约数据）");
+        } catch (IOException e) {
+            LoggerUtil.error("❌ HTTP服务启动失败：" + e.getMessage());
+        }
+    }
+
     /**
      * 打印主菜单（统一格式，提升用户体验）
      */
@@ -66,7 +146,7 @@ public class AssignmentTwo {
         LoggerUtil.info("\n===== 主菜单 =====");
         LoggerUtil.info("1. 运行作业基础功能演示（Part3-Part7）");
         LoggerUtil.info("2. 使用增强版交互式系统（预约+设施运营）");
-        LoggerUtil.info("3. 退出系统（自动保存预约数据）");
+        LoggerUtil.info("3. 退出系统（自动保存预约数据与园区检查点）");
         LoggerUtil.info("===================");
     }
 
@@ -95,9 +175,12 @@ public class AssignmentTwo {
             LoggerUtil.info("\n===== 交互式系统主菜单 =====");
             LoggerUtil.info("1. 预约管理（新增/查询/取消预约）");
             LoggerUtil.info("2. 设施运营管理（队列/历史/运行周期）");
-            LoggerUtil.info("3. 返回主菜单");
+            LoggerUtil.info("3. 园区等待时间看板");
+            LoggerUtil.info("4. 园区数据分析（会员/年龄/保险/重复游客）");
+            LoggerUtil.info("5. 全园游乐历史批量导出");
+            LoggerUtil.info("6. 返回主菜单");
 
-            int choice = getSafeIntInput("请选择功能模块（1-3）：", 1, 3);
+            int choice = getSafeIntInput("请选择功能模块（1-6）：", 1, 6);
             switch (choice) {
                 case 1:
                     runInteractiveBookingSystem(); // 预约系统
@@ -106,6 +189,15 @@ public class AssignmentTwo {
                     manageRideOperations(); // 设施运营管理
                     break;
                 case 3:
+                    printWaitBoard(); // 等待时间看板
+                    break;
+                case 4:
+                    printAnalyticsReport(); // 园区数据分析
+                    break;
+                case 5:
+                    exportWholePark(); // 全园批量导出
+                    break;
+                case 6:
                     LoggerUtil.info("📌 返回主菜单");
                     return;
                 default:
@@ -114,41 +206,52 @@ public class AssignmentTwo {
         }
     }
 
+    /**
+     * 打印园区等待时间看板（每个设施的队列长度、预计等待与吞吐量）
+     */
+    private static void printWaitBoard() {
+        LoggerUtil.info("\n===== 园区等待时间看板 =====");
+        for (WaitBoardEntry entry : RIDE_MANAGER.getWaitBoard()) {
+            LoggerUtil.info(entry.toString());
+        }
+        LoggerUtil.info("===========================");
+    }
+
+    /**
+     * 打印园区数据分析报告（基于所有设施的游乐历史并行统计）
+     */
+    private static void printAnalyticsReport() {
+        LoggerUtil.info("\n===== 园区数据分析 =====");
+        ParkAnalytics analytics = new ParkAnalytics(RIDE_MANAGER);
+        LoggerUtil.info("📊 " + analytics.ridersByMembership());
+        LoggerUtil.info("📊 " + analytics.ageHistogram(10));
+        LoggerUtil.info("📊 " + analytics.insuranceByRideType());
+        LoggerUtil.info("📊 " + analytics.repeatRiders());
+        LoggerUtil.info("========================");
+    }
+
+    /**
+     * 全园游乐历史批量导出（每个设施一个文件 + 带行数与校验和的清单）
+     */
+    private static void exportWholePark() {
+        HistoryFormat format = chooseHistoryFormat();
+        ParkExporter.Manifest manifest = new ParkExporter(RIDE_MANAGER).exportAll(PARK_EXPORT_DIR, format);
+        if (manifest != null) {
+            for (ParkExporter.Entry entry : manifest.getEntries()) {
+                LoggerUtil.info("📊 " + entry);
+            }
+        }
+    }
+
     /**
      * 设施运营管理子菜单（对应Part3-Part7的交互操作）
      */
     private static void manageRideOperations() {
         LoggerUtil.info("\n===== 设施运营管理 =====");
 
-        // 选择要操作的设施（含管理员信息）
-        LoggerUtil.info("\n===== 选择要操作的设施 =====");
-        Ride rollerCoaster = RIDE_MANAGER.getDefaultRide(ROLLER_COASTER_ID);
-        Employee op1 = rollerCoaster.getOperator();
-        LoggerUtil.info(String.format("1. %s（%s | 操作员：%s | 年龄：%d岁）",
-                ROLLER_COASTER_NAME, rollerCoaster.getRideType(), op1.getName(), op1.getAge()));
-
-        Ride pirateShip = RIDE_MANAGER.getDefaultRide(PIRATE_SHIP_ID);
-        Employee op2 = pirateShip.getOperator();
-        LoggerUtil.info(String.format("2. %s（%s | 操作员：%s | 年龄：%d岁）",
-                PIRATE_SHIP_NAME, pirateShip.getRideType(), op2.getName(), op2.getAge()));
-
-        Ride carousel = RIDE_MANAGER.getDefaultRide(CAROUSEL_ID);
-        Employee op3 = carousel.getOperator();
-        LoggerUtil.info(String.format("3. %s（%s | 操作员：%s | 年龄：%d岁）",
-                CAROUSEL_NAME, carousel.getRideType(), op3.getName(), op3.getAge()));
-
-        int rideChoice = getSafeIntInput("请选择设施（1-3）：", 1, 3);
-        Ride selectedRide = null;
-        if (rideChoice == 1) {
-            selectedRide = rollerCoaster;
-        } else if (rideChoice == 2) {
-            selectedRide = pirateShip;
-        } else if (rideChoice == 3) {
-            selectedRide = carousel;
-        }
-
+        // 选择要操作的设施（设施目录分页列出，按ID选择）
+        Ride selectedRide = selectRideFromCatalog();
         if (selectedRide == null) {
-            LoggerUtil.error("❌ 设施选择无效！");
             return;
         }
 
@@ -161,11 +264,13 @@ public class AssignmentTwo {
             LoggerUtil.info("4. 运行一次游乐周期（Part5）");
             LoggerUtil.info("5. 查看游乐历史（Part4）");
             LoggerUtil.info("6. 排序游乐历史（Part4B）");
-            LoggerUtil.info("7. 导出历史到CSV（Part6）");
-            LoggerUtil.info("8. 从CSV导入历史（Part7）");
-            LoggerUtil.info("9. 返回上一级");
+            LoggerUtil.info("7. 导出历史到文件（Part6）");
+            LoggerUtil.info("8. 从文件导入历史（Part7）");
+            LoggerUtil.info("9. 按时段查询游乐历史");
+            LoggerUtil.info("10. 增量导出历史（只追加上次导出后新增的记录）");
+            LoggerUtil.info("11. 返回上一级");
 
-            int opChoice = getSafeIntInput("请选择操作（1-9）：", 1, 9);
+            int opChoice = getSafeIntInput("请选择操作（1-11）：", 1, 11);
             switch (opChoice) {
                 case 1:
                     addVisitorToRideQueue(selectedRide);
@@ -174,26 +279,33 @@ public class AssignmentTwo {
                     selectedRide.removeVisitorFromQueue();
                     break;
                 case 3:
-                    selectedRide.printQueue();
+                    browseQueue(selectedRide);
                     break;
                 case 4:
                     selectedRide.runOneCycle();
                     break;
                 case 5:
-                    selectedRide.printRideHistory();
+                    browseHistory(selectedRide);
                     break;
                 case 6:
                     selectedRide.sortRideHistory();
                     break;
                 case 7:
-                    String exportPath = "rideHistory_" + selectedRide.getRideId() + ".csv";
+                    String exportPath = "rideHistory_" + selectedRide.getRideId() + "." + chooseHistoryFormat().getExtension();
                     selectedRide.exportRideHistory(exportPath);
                     break;
                 case 8:
-                    String importPath = "rideHistory_" + selectedRide.getRideId() + ".csv";
+                    String importPath = "rideHistory_" + selectedRide.getRideId() + "." + chooseHistoryFormat().getExtension();
                     selectedRide.importRideHistory(importPath);
                     break;
                 case 9:
+                    queryHistoryByTime(selectedRide);
+                    break;
+                case 10:
+                    String deltaPath = "rideHistory_" + selectedRide.getRideId() + "." + chooseHistoryFormat().getExtension();
+                    selectedRide.exportRideHistoryIncremental(deltaPath);
+                    break;
+                case 11:
                     return;
                 default:
                     LoggerUtil.error("❌ 无效操作！");
@@ -234,9 +346,12 @@ public class AssignmentTwo {
      */
     private static void runInteractiveBookingSystem() {
         LoggerUtil.info("\n===== 预约管理系统 =====");
+        if (!BOOKING_MANAGER.isLoaded()) {
+            LoggerUtil.info("📌 预约数据仍在后台加载，请稍候…");
+        }
         while (true) {
             printBookingSubMenu();
-            int choice = getSafeIntInput("请输入你的选择（1-5）：", 1, 5);
+            int choice = getSafeIntInput("请输入你的选择（1-6）：", 1, 6);
             switch (choice) {
                 case 1:
                     createBooking(); // 预约设施
@@ -248,17 +363,146 @@ public class AssignmentTwo {
                     cancelUserBooking(); // 取消预约
                     break;
                 case 4:
-                    BOOKING_MANAGER.printAllBookings(); // 查看所有预约（管理员视角）
+                    browseAllBookings(); // 查看所有预约（管理员视角，分页）
                     break;
                 case 5:
+                    importBookingFile(); // 批量导入合作方预约文件（管理员功能）
+                    break;
+                case 6:
                     LoggerUtil.info("📌 退出预约系统，返回上一级");
                     return;
                 default:
-                    LoggerUtil.error("❌ 无效选择，请输入1-5之间的整数！");
+                    LoggerUtil.error("❌ 无效选择，请输入1-6之间的整数！");
             }
         }
     }
 
+    /**
+     * 分页列出设施目录（只读取设施定义，不创建设施对象），再按设施ID选择设施
+     * @return 选中的设施（ID不存在时返回null）
+     */
+    private static Ride selectRideFromCatalog() {
+        browsePages("设施目录（共" + RIDE_MANAGER.getRideCount() + "个设施）",
+                cursor -> RIDE_MANAGER.pageRideCatalog(cursor, PAGE_SIZE),
+                (position, definition) -> String.format("%d. [%s] %s（%s | 单次%d人 | 操作员：%s | 队列上限：%s）",
+                        position, definition.getRideId(), definition.getName(), definition.getRideType(),
+                        definition.getMaxRider(),
+                        definition.getOperatorName() != null ? definition.getOperatorName() : "未指定",
+                        definition.getQueueCapacity() > 0 ? definition.getQueueCapacity() + "人" : "不限"));
+        String rideId = getSafeStringInput("请输入设施ID：");
+        Ride ride = RIDE_MANAGER.findRide(rideId);
+        if (ride == null) {
+            LoggerUtil.error("❌ 设施[" + rideId + "]不存在，请按目录中的设施ID输入！");
+        }
+        return ride;
+    }
+
+    /**
+     * 分页查看等待队列（附带每个位置的预计等待时间）
+     */
+    private static void browseQueue(Ride ride) {
+        browsePages("设施[" + ride.getName() + "]等待队列（长度：" + ride.getQueueLength() + "）",
+                cursor -> ride.pageQueue(cursor, PAGE_SIZE),
+                (position, visitor) -> String.format("%d. %s | 预计等待：%.1f分钟",
+                        position, visitor, ride.estimateWaitSeconds(position) / 60));
+    }
+
+    /**
+     * 分页查看游乐历史
+     */
+    private static void browseHistory(Ride ride) {
+        browsePages("设施[" + ride.getName() + "]游乐历史（共" + ride.numberOfVisitors() + "人）",
+                cursor -> ride.pageHistory(cursor, 0, PAGE_SIZE, null),
+                (position, visitor) -> position + ". " + visitor);
+    }
+
+    /**
+     * 按时段查询游乐历史：区间内乘坐人次与游客、当天每小时人次
+     */
+    private static void queryHistoryByTime(Ride ride) {
+        LoggerUtil.info("\n===== 按时段查询[" + ride.getName() + "]游乐历史 =====");
+        LocalDateTime from;
+        LocalDateTime to;
+        try {
+            from = LocalDateTime.parse(getSafeStringInput("请输入开始时间（yyyy-MM-dd HH:mm）："), DATE_FORMATTER);
+            to = LocalDateTime.parse(getSafeStringInput("请输入结束时间（yyyy-MM-dd HH:mm）："), DATE_FORMATTER);
+        } catch (DateTimeParseException e) {
+            LoggerUtil.error("❌ 时间格式错误，请严格按「yyyy-MM-dd HH:mm」输入！");
+            return;
+        }
+        int total = ride.countRidesBetween(from, to);
+        List<Visitor> riders = ride.getRidersBetween(from, to, PAGE_SIZE);
+        LoggerUtil.info("📊 " + from.format(DATE_FORMATTER) + " 至 " + to.format(DATE_FORMATTER)
+                + " 共乘坐" + total + "人次");
+        for (int i = 0; i < riders.size(); i++) {
+            LoggerUtil.info((i + 1) + ". " + riders.get(i));
+        }
+        if (total > riders.size()) {
+            LoggerUtil.info("……（仅显示前" + PAGE_SIZE + "人）");
+        }
+
+        int[] perHour = ride.countRidesPerHour(from.toLocalDate());
+        StringBuilder line = new StringBuilder("📊 " + from.toLocalDate() + " 每小时乘坐人次：");
+        for (int hour = 0; hour < perHour.length; hour++) {
+            if (perHour[hour] > 0) {
+                line.append(String.format("%02d时=%d ", hour, perHour[hour]));
+            }
+        }
+        LoggerUtil.info(line.toString().trim());
+    }
+
+    /**
+     * 分页查看所有有效预约（可选排序键，第1页只需O(log n + 页大小)）
+     */
+    private static void browseAllBookings() {
+        BookingSortKey[] sortKeys = BookingSortKey.values();
+        for (int i = 0; i < sortKeys.length; i++) {
+            LoggerUtil.info((i + 1) + ". 按" + sortKeys[i]);
+        }
+        BookingSortKey sortKey = sortKeys[getSafeIntInput("请选择排序方式（1-" + sortKeys.length + "）：", 1, sortKeys.length) - 1];
+        browsePages("全局有效预约列表（共" + BOOKING_MANAGER.getValidBookingCount() + "条，按" + sortKey + "）",
+                cursor -> BOOKING_MANAGER.pageBookings(sortKey, cursor, 0, PAGE_SIZE, null),
+                (position, booking) -> position + ". " + booking);
+    }
+
+    /**
+     * 选择历史导入/导出格式（文件扩展名由所选格式决定）
+     */
+    private static HistoryFormat chooseHistoryFormat() {
+        List<HistoryFormat> formats = HistoryFormats.getRegisteredFormats();
+        for (int i = 0; i < formats.size(); i++) {
+            LoggerUtil.info((i + 1) + ". " + formats.get(i).getName() + "（." + formats.get(i).getExtension() + "）");
+        }
+        return formats.get(getSafeIntInput("请选择文件格式（1-" + formats.size() + "）：", 1, formats.size()) - 1);
+    }
+
+    /**
+     * 通用分页浏览：每次只加载并打印一页，由用户决定是否继续，避免大数据量时一次性刷屏
+     * @param title 标题
+     * @param pageLoader 按游标加载一页（null游标表示第一页）
+     * @param formatter 按全局序号（从1开始）格式化每一条
+     */
+    private static <T> void browsePages(String title, Function<String, Page<T>> pageLoader,
+                                        BiFunction<Integer, T, String> formatter) {
+        LoggerUtil.info("\n===== " + title + " =====");
+        String cursor = null;
+        int position = 1;
+        while (true) {
+            Page<T> page = pageLoader.apply(cursor);
+            for (T item : page.getItems()) {
+                LoggerUtil.info(formatter.apply(position++, item));
+            }
+            if (position == 1 && !page.hasMore()) {
+                LoggerUtil.info("📭 暂无记录");
+            }
+            if (!page.hasMore() || getSafeIntInput("输入1查看下一页，0返回：", 0, 1) == 0) {
+                break;
+            }
+            cursor = page.getNextCursor();
+        }
+        LoggerUtil.info("==============================================");
+    }
+
     /**
      * 打印预约系统子菜单
      */
@@ -268,7 +512,8 @@ public class AssignmentTwo {
         LoggerUtil.info("2. 查询我的预约（需游客ID）");
         LoggerUtil.info("3. 取消预约（需预约ID）");
         LoggerUtil.info("4. 查看所有有效预约（管理员功能）");
-        LoggerUtil.info("5. 返回上一级");
+        LoggerUtil.info("5. 批量导入预约文件（CSV/二进制，管理员功能）");
+        LoggerUtil.info("6. 返回上一级");
         LoggerUtil.info("========================");
     }
 
@@ -303,41 +548,26 @@ public class AssignmentTwo {
         );
         LoggerUtil.info("📌 游客信息登记完成 | 你的游客ID：" + visitor.getVisitorId() + "（请保存用于查询）");
 
-        // 4. 选择游乐设施（带类型与年龄限制提示）
-        LoggerUtil.info("\n===== 可选游乐设施 =====");
-        LoggerUtil.info("1. " + ROLLER_COASTER_NAME + "（刺激类 | 要求16岁以上 | 单次4人）");
-        LoggerUtil.info("2. " + PIRATE_SHIP_NAME + "（家庭类 | 无年龄限制 | 单次5人）");
-        LoggerUtil.info("3. " + CAROUSEL_NAME + "（儿童类 | 要求3-12岁 | 单次3人）");
-
-        int rideChoice = getSafeIntInput("请选择设施（1-3）：", 1, 3);
-        if (rideChoice == -1) {
+        // 4. 从设施目录选择游乐设施，并校验年龄限制（符合ULO2：多态应用，不同设施有不同规则）
+        Ride selectedRide = selectRideFromCatalog();
+        if (selectedRide == null) {
             LoggerUtil.error("❌ 预约失败：设施选择无效");
             return;
         }
 
-        // 5. 获取选中设施并校验年龄限制（符合ULO2：多态应用，不同设施有不同规则）
-        Ride selectedRide = null;
-        if (rideChoice == 1) {
-            selectedRide = RIDE_MANAGER.getDefaultRide(ROLLER_COASTER_ID);
-        } else if (rideChoice == 2) {
-            selectedRide = RIDE_MANAGER.getDefaultRide(PIRATE_SHIP_ID);
-        } else if (rideChoice == 3) {
-            selectedRide = RIDE_MANAGER.getDefaultRide(CAROUSEL_ID);
-        }
-
         if (!selectedRide.checkVisitorEligibility(visitor)) {
-            LoggerUtil.error("❌ 预约失败：不符合该设施的年龄要求（" + selectedRide.getRideType() + "）");
+            LoggerUtil.error("❌ 预约失败：不符合该设施的乘坐要求（" + selectedRide.getEligibilityRule() + "）");
             return;
         }
 
-        // 6. 选择预约时间（校验格式与有效性）
+        // 5. 选择预约时间（校验格式与有效性）
         LocalDateTime bookingTime = getSafeBookingTimeInput();
         if (bookingTime == null) {
             LoggerUtil.error("❌ 预约失败：时间输入无效");
             return;
         }
 
-        // 7. 创建并提交预约
+        // 6. 创建并提交预约
         Booking newBooking = new Booking(visitor, selectedRide, bookingTime);
         BOOKING_MANAGER.addBooking(newBooking);
         LoggerUtil.info("📌 预约流程完成 | 请牢记预约ID：" + newBooking.getBookingId() + "（用于取消/查询）");
@@ -364,10 +594,7 @@ public class AssignmentTwo {
 
         // 打印查询结果
         LoggerUtil.info("✅ 找到你的" + userBookings.size() + "条有效预约（游客ID：" + visitorId + "）");
-        int index = 1;
-        for (Booking booking : userBookings) {
-            LoggerUtil.info(String.format("%d. %s", index++, booking));
-        }
+        DisplayRenderer.printBookings(userBookings, 1);
     }
 
     /**
@@ -385,6 +612,19 @@ public class AssignmentTwo {
         BOOKING_MANAGER.cancelBookingById(bookingId);
     }
 
+    /**
+     * 批量导入预约文件（按外部键去重，同一文件可安全地重复导入）
+     */
+    private static void importBookingFile() {
+        LoggerUtil.info("\n===== 批量导入预约 =====");
+        String filePath = getSafeStringInput("请输入预约文件路径（.csv或" + BookingImporter.BINARY_EXTENSION + "）：");
+        if (!new File(filePath).isFile()) {
+            LoggerUtil.error("❌ 导入失败：文件不存在（" + filePath + "）");
+            return;
+        }
+        new BookingImporter(RIDE_MANAGER, BOOKING_MANAGER).importFile(filePath); // 结果与拒绝原因由导入器输出
+    }
+
     /**
      * 安全获取字符串输入（过滤空值与纯空格）
      */
@@ -456,13 +696,26 @@ public class AssignmentTwo {
      */
     private static void exitSystem() {
         LoggerUtil.info("\n===== 退出系统 =====");
-        // 保存预约数据
+        // 停止到时调度与后台压缩，保存预约数据与园区检查点
+        BOOKING_DISPATCHER.close();
+        BOOKING_COMPACTOR.close();
         BOOKING_MANAGER.saveBookingsToFile(BOOKING_FILE_PATH);
+        CHECKPOINT.save(CHECKPOINT_FILE_PATH);
+        printProfile();
         // 关闭Scanner资源
         SCANNER.close();
         LoggerUtil.info("👋 系统已安全退出，感谢使用！");
     }
 
+    /**
+     * 输出性能探针的延迟统计（未开启--profile或没有记录时不输出）
+     */
+    private static void printProfile() {
+        if (ParkProfiler.getHook() == PROFILE_TABLE && !PROFILE_TABLE.isEmpty()) {
+            LoggerUtil.info("📊 热点操作延迟统计：\n" + PROFILE_TABLE);
+        }
+    }
+
     // ====================== 作业Part3-Part7基础演示方法（保持不变） ======================
 
     /**
@@ -0,0 +1,155 @@
+package com.scu.prog2004.a2.main;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地压测工具：模拟大量并发客户端访问ParkHttpServer，统计p50/p99延迟
+ * 用法：java com.scu.prog2004.a2.main.BookingLoadGenerator [地址] [客户端数] [每客户端轮数]
+ *       默认：http://localhost:8080 1000 10
+ * 每一轮依次执行：创建预约 → 查询预约 → 游客入队 →（每5轮）取消预约并运行一次周期
+ */
+public class BookingLoadGenerator {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final String[] RIDE_IDS = {"R001", "R002", "R003"};
+
+    public static void main(String[] args) throws InterruptedException {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        String bookingTime = LocalDateTime.now().plusDays(1).format(DATE_FORMATTER);
+
+        long[][] latencies = new long[clients][];
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch startSignal = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(clients);
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+
+        for (int c = 0; c < clients; c++) {
+            final int clientNo = c;
+            pool.execute(() -> {
+                long[] samples = new long[rounds * 5];
+                int n = 0;
+                try {
+                    startSignal.await();
+                    String visitorId = "VIS-LOAD-" + clientNo;
+                    String rideId = RIDE_IDS[1]; // 家庭类设施，无年龄限制
+                    for (int r = 0; r < rounds; r++) {
+                        String created = timed(httpClient, post(baseUrl + "/bookings",
+                                "name=LoadUser" + clientNo + "&age=30&rideId=" + rideId
+                                        + "&visitorId=" + visitorId + "&time=" + encode(bookingTime)),
+                                samples, n++, errors);
+                        timed(httpClient, get(baseUrl + "/bookings?visitorId=" + visitorId), samples, n++, errors);
+                        timed(httpClient, post(baseUrl + "/rides/" + rideId + "/queue",
+                                "name=LoadUser" + clientNo + "&age=30&visitorId=" + visitorId), samples, n++, errors);
+                        if (r % 5 == 4) {
+                            String bookingId = extract(created, "bookingId");
+                            if (bookingId != null) {
+                                timed(httpClient, post(baseUrl + "/bookings/cancel", "bookingId=" + encode(bookingId)),
+                                        samples, n++, errors);
+                            }
+                            timed(httpClient, post(baseUrl + "/rides/" + rideId + "/cycle", "count=1"),
+                                    samples, n++, errors);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    latencies[clientNo] = Arrays.copyOf(samples, n);
+                    finished.countDown();
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        startSignal.countDown();
+        finished.await();
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("客户端：%d | 请求总数：%d | 失败：%d | 耗时：%.2f s | 吞吐：%.0f 请求/秒%n",
+                clients, all.length, errors.get(), elapsedSeconds, all.length / elapsedSeconds);
+        System.out.printf("延迟 p50：%.2f ms | p99：%.2f ms | max：%.2f ms%n",
+                percentile(all, 0.50) / 1e6, percentile(all, 0.99) / 1e6,
+                all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+    }
+
+    /**
+     * 发送请求并记录延迟（纳秒）；非2xx响应或异常计入失败数
+     * @return 响应体（失败时为null）
+     */
+    private static String timed(HttpClient client, HttpRequest request, long[] samples, int index,
+                                AtomicInteger errors) {
+        long begin = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            samples[index] = System.nanoTime() - begin;
+            if (response.statusCode() >= 300) {
+                errors.incrementAndGet();
+                return null;
+            }
+            return response.body();
+        } catch (Exception e) {
+            samples[index] = System.nanoTime() - begin;
+            errors.incrementAndGet();
+            return null;
+        }
+    }
+
+    private static HttpRequest get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private static HttpRequest post(String url, String form) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    // 从简单JSON中提取字符串字段（仅用于读取服务端返回的bookingId）
+    private static String extract(String json, String field) {
+        if (json == null) {
+            return null;
+        }
+        String key = "\"" + field + "\":\"";
+        int start = json.indexOf(key);
+        if (start < 0) {
+            return null;
+        }
+        start += key.length();
+        int end = json.indexOf('"', start);
+        return end < 0 ? null : json.substring(start, end);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
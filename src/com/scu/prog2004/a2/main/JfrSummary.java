@@ -0,0 +1,60 @@
+package com.scu.prog2004.a2.main;
+
+import com.scu.prog2004.a2.model.OperationLatencyTable;
+import com.scu.prog2004.a2.model.ParkProfiler;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * JFR录制汇总工具：把录制文件中的主题公园事件汇总为各操作的延迟表（次数/失败/条数/字节数/平均/P50/P90/P99/最大）
+ * 用法：java com.scu.prog2004.a2.main.JfrSummary <录制文件.jfr> [--by-target]
+ *       --by-target 按"操作 [对象]"细分（如每个设施一行）
+ * 录制方式：java -XX:StartFlightRecording=filename=park.jfr,settings=profile -cp ... com.scu.prog2004.a2.main.AssignmentTwo
+ *          （运行中的进程可用 jcmd <pid> JFR.start filename=park.jfr / JFR.stop）
+ */
+public class JfrSummary {
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("用法：java com.scu.prog2004.a2.main.JfrSummary <录制文件.jfr> [--by-target]");
+            System.exit(1);
+        }
+        Path recording = Paths.get(args[0]);
+        boolean byTarget = Arrays.asList(args).contains("--by-target");
+
+        OperationLatencyTable table = new OperationLatencyTable();
+        long events = 0;
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                ParkProfiler.Operation operation = ParkProfiler.Operation.forEventName(event.getEventType().getName());
+                if (operation == null) {
+                    continue; // JVM自带事件（GC、线程等）
+                }
+                String label = operation.getDisplayName();
+                if (byTarget) {
+                    String target = event.getString("target");
+                    label += " [" + (target == null ? "-" : target) + "]";
+                }
+                table.record(label, event.getDuration().toNanos(), event.getLong("items"),
+                        event.getLong("bytes"), event.getBoolean("success"));
+                events++;
+            }
+        } catch (IOException e) {
+            System.err.println("❌ 读取录制文件失败：" + e.getMessage());
+            System.exit(1);
+        }
+
+        System.out.println("📊 录制文件：" + recording.toAbsolutePath() + " | 主题公园事件：" + events + "条");
+        if (table.isEmpty()) {
+            System.out.println("录制中没有主题公园事件（录制期间未执行被探测的操作，或录制配置关闭了这些事件）");
+            return;
+        }
+        System.out.print(table);
+    }
+}
@@ -0,0 +1,1430 @@
+package com.scu.prog2004.a2.main;
+
+import com.scu.prog2004.a2.model.*;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.nio.file.Files;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 性能基准工具：对比不同实现路径的耗时（独立于交互系统运行）
+ * 用法：java com.scu.prog2004.a2.main.ParkBenchmark [场景名...]（不传参数则运行全部场景）
+ * 说明：测量期间屏蔽控制台输出，避免终端打印速度干扰结果；每个场景先预热再计时
+ */
+public class ParkBenchmark {
+    private static final PrintStream ORIGINAL_OUT = System.out;
+    private static final PrintStream ORIGINAL_ERR = System.err;
+    private static final PrintStream NULL_STREAM = new PrintStream(OutputStream.nullOutputStream());
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 5;
+
+    public static void main(String[] args) {
+        List<String> scenarios = args.length == 0 ? List.of("batch", "rules", "checkpoint", "paging", "analytics", "gc", "timequery", "formats", "parkexport", "incremental", "startup", "catalog", "staffing", "cycle", "ingest", "compaction", "timers", "dispatch", "snapshot", "profiling", "rendering") : List.of(args);
+        for (String scenario : scenarios) {
+            switch (scenario) {
+                case "batch":
+                    benchBatchOperations();
+                    break;
+                case "rules":
+                    benchEligibilityRules();
+                    break;
+                case "checkpoint":
+                    benchCheckpoint();
+                    break;
+                case "paging":
+                    benchPaging();
+                    break;
+                case "analytics":
+                    benchAnalytics();
+                    break;
+                case "gc":
+                    benchGcPauses();
+                    break;
+                case "timequery":
+                    benchTimeQueries();
+                    break;
+                case "formats":
+                    benchHistoryFormats();
+                    break;
+                case "parkexport":
+                    benchParkExport();
+                    break;
+                case "incremental":
+                    benchIncrementalExport();
+                    break;
+                case "startup":
+                    benchStartup();
+                    break;
+                case "catalog":
+                    benchRideCatalog();
+                    break;
+                case "staffing":
+                    benchStaffing();
+                    break;
+                case "cycle":
+                    benchCycleAllocation();
+                    break;
+                case "ingest":
+                    benchBookingIngest();
+                    break;
+                case "compaction":
+                    benchBookingCompaction();
+                    break;
+                case "timers":
+                    benchBookingTimers();
+                    break;
+                case "dispatch":
+                    benchBookingDispatch();
+                    break;
+                case "snapshot":
+                    benchRideSnapshots();
+                    break;
+                case "profiling":
+                    benchProfiling();
+                    break;
+                case "rendering":
+                    benchRendering();
+                    break;
+                default:
+                    ORIGINAL_ERR.println("未知场景：" + scenario);
+            }
+        }
+    }
+
+    /**
+     * 场景batch：逐个调用 vs 批量接口（入队、追加历史、多周期运行）
+     */
+    private static void benchBatchOperations() {
+        final int groupSize = 200;   // 旅行团人数
+        final int groups = 50;       // 每轮处理的旅行团数量
+        List<Visitor> group = createVisitors(groupSize);
+        ORIGINAL_OUT.println("===== 场景batch：" + groups + "个旅行团 × " + groupSize + "人 =====");
+
+        double singleQueue = measure(() -> {
+            Ride ride = createRide();
+            for (int g = 0; g < groups; g++) {
+                for (Visitor visitor : group) {
+                    ride.addVisitorToQueue(visitor);
+                }
+            }
+        });
+        double batchQueue = measure(() -> {
+            Ride ride = createRide();
+            for (int g = 0; g < groups; g++) {
+                ride.addVisitorsToQueue(group);
+            }
+        });
+        report("入队", singleQueue, batchQueue);
+
+        double singleHistory = measure(() -> {
+            Ride ride = createRide();
+            for (int g = 0; g < groups; g++) {
+                for (Visitor visitor : group) {
+                    ride.addVisitorToHistory(visitor);
+                }
+            }
+        });
+        double batchHistory = measure(() -> {
+            Ride ride = createRide();
+            for (int g = 0; g < groups; g++) {
+                ride.addVisitorsToHistory(group);
+            }
+        });
+        report("追加历史", singleHistory, batchHistory);
+
+        final int cycles = groups * groupSize / 4;
+        double singleCycle = measure(() -> {
+            Ride ride = createRide();
+            for (int g = 0; g < groups; g++) {
+                ride.addVisitorsToQueue(group);
+            }
+            for (int c = 0; c < cycles; c++) {
+                ride.runOneCycle();
+            }
+        });
+        double batchCycle = measure(() -> {
+            Ride ride = createRide();
+            for (int g = 0; g < groups; g++) {
+                ride.addVisitorsToQueue(group);
+            }
+            ride.runCycles(cycles);
+        });
+        report("运行" + cycles + "次周期", singleCycle, batchCycle);
+    }
+
+    /**
+     * 场景rules：逐个调用checkVisitorEligibility vs 预编译规则批量校验（吞吐量）
+     */
+    private static void benchEligibilityRules() {
+        final int count = 1_000_000;
+        List<Visitor> visitors = createVisitors(count);
+        for (int i = 0; i < count; i++) {
+            visitors.get(i).setHeightCm(100 + i % 100);
+        }
+        Ride ride = createRide();
+        ride.setRideType(RideType.THRILL);
+        EligibilityRuleBook book = new EligibilityRuleBook();
+        book.define(ride.getRideId(), "minHeight=140;insurance=true");
+        book.applyTo(ride);
+        EligibilityRule rule = ride.getEligibilityRule();
+        boolean[] results = new boolean[count];
+        ORIGINAL_OUT.println("===== 场景rules：" + count + "名游客，规则：" + rule + " =====");
+
+        double perCall = measure(() -> {
+            for (Visitor visitor : visitors) {
+                ride.checkVisitorEligibility(visitor);
+            }
+        });
+        double batch = measure(() -> rule.testBatch(visitors, results));
+        report("资格校验", perCall, batch);
+        ORIGINAL_OUT.printf("%-16s 逐个调用：%10.0f 人/秒 | 批量校验：%10.0f 人/秒%n", "吞吐量",
+                count / perCall * 1000, count / batch * 1000);
+    }
+
+    /**
+     * 场景checkpoint：100万条历史（10万名游客重复乘坐）的检查点保存与还原耗时
+     */
+    private static void benchCheckpoint() {
+        final int visitorsCount = 100_000;
+        final int historyPerRide = 250_000;
+        RideManager rideManager = RideManager.getInstance();
+        BookingManager bookingManager = BookingManager.getInstance();
+        List<Visitor> visitors = createVisitors(visitorsCount);
+        System.setOut(NULL_STREAM);
+        for (String rideId : new String[]{"R001", "R002", "R003", "BENCH-R004"}) {
+            Ride ride = rideManager.getRide(rideId, "基准设施" + rideId, 4, RideType.FAMILY);
+            for (int i = 0; i < historyPerRide; i += visitorsCount) {
+                ride.addVisitorsToHistory(visitors.subList(0, Math.min(visitorsCount, historyPerRide - i)));
+            }
+        }
+        System.setOut(ORIGINAL_OUT);
+        ORIGINAL_OUT.println("===== 场景checkpoint：4个设施 × " + historyPerRide + "条历史，" + visitorsCount + "名游客 =====");
+
+        ParkCheckpoint checkpoint = new ParkCheckpoint(rideManager, bookingManager);
+        String path = System.getProperty("java.io.tmpdir") + "/park_bench.ckpt";
+        System.setOut(NULL_STREAM);
+        checkpoint.save(path); // 预热
+        checkpoint.restore(path);
+        ParkCheckpoint.Summary saved = checkpoint.save(path);
+        ParkCheckpoint.Summary restored = checkpoint.restore(path);
+        System.setOut(ORIGINAL_OUT);
+        ORIGINAL_OUT.println("保存：" + saved);
+        ORIGINAL_OUT.println("还原：" + restored);
+        new java.io.File(path).delete();
+    }
+
+    /**
+     * 场景paging：全量打印 vs 游标分页读取第1页（预约按有序索引，历史按位置定位）
+     */
+    private static void benchPaging() {
+        final int bookingsCount = 200_000;
+        final int historyCount = 1_000_000;
+        final int pageSize = 20;
+        BookingManager bookingManager = BookingManager.getInstance();
+        List<Visitor> visitors = createVisitors(10_000);
+        Ride ride = createRide();
+        LocalDateTime base = LocalDateTime.now().plusDays(1);
+        System.setOut(NULL_STREAM);
+        for (int i = 0; i < bookingsCount; i++) {
+            bookingManager.addBooking(new Booking(visitors.get(i % visitors.size()), ride,
+                    base.plusMinutes((i * 7919L) % 100_000)));
+        }
+        for (int i = 0; i < historyCount; i += visitors.size()) {
+            ride.addVisitorsToHistory(visitors);
+        }
+        System.setOut(ORIGINAL_OUT);
+        ORIGINAL_OUT.println("===== 场景paging：" + bookingsCount + "条预约，" + historyCount + "条历史，每页" + pageSize + "条 =====");
+
+        report("预约(时间序)", measure(bookingManager::printAllBookings),
+                measure(() -> bookingManager.pageBookings(BookingSortKey.BOOKING_TIME, null, 0, pageSize, null)));
+        report("预约(会员序)", measure(bookingManager::sortBookingsByMembership),
+                measure(() -> bookingManager.pageBookings(BookingSortKey.MEMBERSHIP, null, 0, pageSize, null)));
+        report("游乐历史", measure(ride::printRideHistory),
+                measure(() -> ride.pageHistory(String.valueOf(historyCount / 2), 0, pageSize, null)));
+    }
+
+    /**
+     * 场景analytics：逐条遍历+装箱收集器 vs Fork/Join分段+原始类型累加器（另报告单线程与全部核心的扩展比）
+     * 数据规模可通过系统属性bench.analytics.entries调整（如-Dbench.analytics.entries=50000000，需相应增大堆）
+     */
+    private static void benchAnalytics() {
+        final int entries = Integer.getInteger("bench.analytics.entries", 4_000_000);
+        final String[] rideIds = {"R001", "R002", "R003", "BENCH-R004"};
+        RideManager rideManager = RideManager.getInstance();
+        List<Visitor> visitors = createVisitors(100_000);
+        System.setOut(NULL_STREAM);
+        for (String rideId : rideIds) {
+            Ride ride = rideManager.getRide(rideId, "基准设施" + rideId, 4, RideType.FAMILY);
+            for (int i = 0; i < entries / rideIds.length; i += visitors.size()) {
+                ride.addVisitorsToHistory(visitors);
+            }
+        }
+        System.setOut(ORIGINAL_OUT);
+        int cores = Runtime.getRuntime().availableProcessors();
+        ORIGINAL_OUT.println("===== 场景analytics：" + entries + "条历史，" + cores + "个核心 =====");
+
+        ParkAnalytics parallel = new ParkAnalytics(rideManager);
+        ParkAnalytics singleThread = new ParkAnalytics(rideManager, new ForkJoinPool(1));
+        report("会员等级分布", measure(() -> {
+            Map<Visitor.MembershipType, Long> counts = rideManager.getAllRides().stream()
+                    .flatMap(ride -> ride.getRideHistory(0, Integer.MAX_VALUE).stream())
+                    .collect(Collectors.groupingBy(Visitor::getMembershipType, Collectors.counting()));
+            counts.size();
+        }), measure(parallel::ridersByMembership));
+        report("年龄直方图", measure(() -> {
+            Map<Integer, Long> counts = rideManager.getAllRides().stream()
+                    .flatMap(ride -> ride.getRideHistory(0, Integer.MAX_VALUE).stream())
+                    .collect(Collectors.groupingBy(visitor -> visitor.getAge() / 10, Collectors.counting()));
+            counts.size();
+        }), measure(() -> parallel.ageHistogram(10)));
+        report("单线程→全部核心", measure(singleThread::insuranceByRideType), measure(parallel::insuranceByRideType));
+        report("重复游客", measure(singleThread::repeatRiders), measure(parallel::repeatRiders));
+        ORIGINAL_OUT.println(parallel.ridersByMembership());
+        ORIGINAL_OUT.println(parallel.repeatRiders());
+    }
+
+    /**
+     * 场景gc：历史逐步增长时，堆内存储与堆外存储的GC停顿对比
+     * 每增长一档后：分配一批短命对象触发年轻代GC（统计次数与平均停顿），再执行一次System.gc()测量完整GC停顿
+     * 如需GC日志对比，可加JVM参数：-Xlog:gc:file=gc_%p.log（每档规模由-Dbench.gc.step调整）
+     */
+    private static void benchGcPauses() {
+        final int step = Integer.getInteger("bench.gc.step", 5_000_000);
+        final int steps = 4;
+        List<Visitor> visitors = createVisitors(100_000);
+        ORIGINAL_OUT.println("===== 场景gc：历史每档增长" + step + "条，共" + steps + "档 =====");
+        for (Ride.HistoryStorage storage : Ride.HistoryStorage.values()) {
+            Ride ride = new Ride("BENCH-GC", "基准设施", null, 4, storage);
+            for (int s = 1; s <= steps; s++) {
+                System.setOut(NULL_STREAM);
+                for (int i = 0; i < step; i += visitors.size()) {
+                    ride.addVisitorsToHistory(visitors);
+                }
+                System.setOut(ORIGINAL_OUT);
+                System.gc(); // 先把历史晋升到老年代，只测量下面的停顿
+
+                long[] before = gcTotals();
+                churn(512);
+                long[] after = gcTotals();
+                long fullStart = System.nanoTime();
+                System.gc();
+                double fullMs = (System.nanoTime() - fullStart) / 1_000_000.0;
+                long collections = after[0] - before[0];
+                long heapUsedMb = (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) >> 20;
+                ORIGINAL_OUT.printf("%s %,12d条 | 年轻代GC：%3d次，平均停顿%6.2f ms | 完整GC：%8.2f ms | 堆占用：%5d MB%n",
+                        storage, (long) s * step, collections,
+                        collections == 0 ? 0.0 : (double) (after[1] - before[1]) / collections, fullMs, heapUsedMb);
+            }
+        }
+    }
+
+    /**
+     * 场景timequery：按乘坐时间的区间计数与每小时统计，全量扫描 vs 时间顺序索引二分查找（排序后索引按需重建一次）
+     */
+    private static void benchTimeQueries() {
+        final int entries = 10_000_000;
+        final long start = System.currentTimeMillis() - 24L * 3600 * 1000;
+        List<Visitor> visitors = createVisitors(100_000);
+        HeapHistoryStore store = new HeapHistoryStore();
+        for (int i = 0; i < entries; i++) {
+            store.add(visitors.get(i % visitors.size()), start + i * 8L, i / 4); // 约一天内均匀分布
+        }
+        ORIGINAL_OUT.println("===== 场景timequery：" + entries + "条带时间戳的历史 =====");
+        final long from = start + 14L * 3600 * 1000;
+        final long to = from + 3600 * 1000;
+
+        report("区间计数", measure(() -> {
+            int count = 0;
+            for (int i = 0; i < store.size(); i++) {
+                long time = store.getTimestamp(i);
+                if (time >= from && time < to) {
+                    count++;
+                }
+            }
+        }), measure(() -> store.countBetween(from, to)));
+        report("每小时统计", measure(() -> {
+            int[] perHour = new int[24];
+            for (int i = 0; i < store.size(); i++) {
+                perHour[(int) ((store.getTimestamp(i) - start) / 3_600_000) % 24]++;
+            }
+        }), measure(() -> {
+            for (int hour = 0; hour < 24; hour++) {
+                store.countBetween(start + hour * 3_600_000L, start + (hour + 1) * 3_600_000L);
+            }
+        }));
+        store.sort(new VisitorComparator()); // 打乱位置顺序，首次查询时重建时间索引
+        long rebuildStart = System.nanoTime();
+        int count = store.countBetween(from, to);
+        ORIGINAL_OUT.printf("排序后首次查询（重建时间索引）：%.2f ms，14时-15时共%d人次%n",
+                (System.nanoTime() - rebuildStart) / 1_000_000.0, count);
+        report("排序后区间计数", measure(() -> {
+            int matched = 0;
+            for (int i = 0; i < store.size(); i++) {
+                long time = store.getTimestamp(i);
+                if (time >= from && time < to) {
+                    matched++;
+                }
+            }
+        }), measure(() -> store.countBetween(from, to)));
+        report("最近乘坐时间", measure(() -> {
+            long last = -1;
+            for (int i = 0; i < store.size(); i++) {
+                if (store.get(i).getVisitorId().equals("VIS-B-42")) {
+                    last = Math.max(last, store.getTimestamp(i));
+                }
+            }
+        }), measure(() -> store.getLastRideMillis("VIS-B-42")));
+    }
+
+    /**
+     * 场景formats：各历史格式导出/导入同一份历史的文件大小与耗时（行数可用-Dbench.formats.rows调整）
+     * 每种格式先预热一轮再计时一轮（千万行的单轮耗时已足够稳定，多轮会让场景运行过久）
+     */
+    private static void benchHistoryFormats() {
+        final int rows = Integer.getInteger("bench.formats.rows", 10_000_000);
+        final long start = System.currentTimeMillis() - 24L * 3600 * 1000;
+        List<Visitor> visitors = createVisitors(100_000);
+        Random random = new Random(42);
+        HeapHistoryStore store = new HeapHistoryStore();
+        long time = start;
+        for (int i = 0; i < rows; i++) {
+            time += random.nextInt(3) * 1000L; // 每秒0-2人次随机到达
+            store.add(visitors.get(random.nextInt(visitors.size())), time, i / 4 + 1);
+        }
+        ORIGINAL_OUT.println("===== 场景formats：" + rows + "行游乐历史（10万名游客随机乘坐） =====");
+        for (HistoryFormat format : HistoryFormats.getRegisteredFormats()) {
+            File file;
+            try {
+                file = File.createTempFile("bench-history-", "." + format.getExtension());
+            } catch (IOException e) {
+                ORIGINAL_ERR.println("创建临时文件失败：" + e.getMessage());
+                return;
+            }
+            try {
+                long[] readCount = new long[1];
+                double writeMs = 0;
+                double readMs = 0;
+                for (int round = 0; round < 2; round++) { // 第一轮为预热
+                    long writeStart = System.nanoTime();
+                    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+                        format.write(store, out);
+                    }
+                    writeMs = (System.nanoTime() - writeStart) / 1_000_000.0;
+                    readCount[0] = 0;
+                    long readStart = System.nanoTime();
+                    try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+                        format.read(in, (visitor, timestampMillis, cycle) -> readCount[0]++);
+                    }
+                    readMs = (System.nanoTime() - readStart) / 1_000_000.0;
+                }
+                ORIGINAL_OUT.printf("%-10s 文件：%9.1f MB（%5.2f 字节/行）| 导出：%9.1f ms | 导入：%9.1f ms | 读回%d行%n",
+                        format.getName(), file.length() / 1048576.0, (double) file.length() / rows,
+                        writeMs, readMs, readCount[0]);
+            } catch (IOException e) {
+                ORIGINAL_ERR.println(format.getName() + "读写失败：" + e.getMessage());
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 场景parkexport：逐个设施调用exportRideHistory vs ParkExporter并行导出（设施规模不均，单位：行）
+     * 并行导出的总耗时应接近最大设施的单独耗时；单核环境下两者接近，加速比取决于可用核心数
+     */
+    private static void benchParkExport() {
+        final int[] rideRows = {2_000_000, 1_000_000, 500_000, 500_000};
+        List<Visitor> visitors = createVisitors(100_000);
+        RideManager rideManager = RideManager.getInstance();
+        List<Ride> rides = new ArrayList<>();
+        for (int r = 0; r < rideRows.length; r++) {
+            Ride ride = rideManager.getRide("BENCH-EXP-" + r, "基准导出设施" + r, 4, RideType.FAMILY);
+            List<Visitor> batch = new ArrayList<>(visitors.size());
+            for (int i = 0; i < rideRows[r]; i += batch.size()) {
+                batch.clear();
+                batch.addAll(visitors.subList(0, Math.min(visitors.size(), rideRows[r] - i)));
+                silenced(() -> ride.addVisitorsToHistory(batch));
+            }
+            rides.add(ride);
+        }
+        File dir;
+        try {
+            dir = Files.createTempDirectory("bench-park-export").toFile();
+        } catch (IOException e) {
+            ORIGINAL_ERR.println("创建临时目录失败：" + e.getMessage());
+            return;
+        }
+        ORIGINAL_OUT.println("===== 场景parkexport：" + rides.size() + "个设施（" + Arrays.toString(rideRows)
+                + "行），CSV格式，" + Runtime.getRuntime().availableProcessors() + "核 =====");
+        ParkExporter exporter = new ParkExporter(rideManager);
+        double[] largest = new double[1];
+        double sequential = measureOnce(() -> {
+            largest[0] = 0;
+            for (Ride ride : rides) {
+                long start = System.nanoTime();
+                ride.exportRideHistory(new File(dir, "seq_" + ride.getRideId() + ".csv").getPath());
+                largest[0] = Math.max(largest[0], (System.nanoTime() - start) / 1_000_000.0);
+            }
+        });
+        double parallel = measureOnce(() -> exporter.exportAll(dir.getPath(), HistoryFormats.getDefault()));
+        ORIGINAL_OUT.printf("最大设施单独导出：%.2f ms%n", largest[0]);
+        report("全园导出", sequential, parallel);
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * 场景incremental：已有大量历史、每天新增少量记录时，全量exportRideHistory vs 增量导出（CSV格式）
+     * 历史先排序一次，验证按插入序号定位新增记录的路径（行数可用-Dbench.incremental.rows调整）
+     */
+    private static void benchIncrementalExport() {
+        final int rows = Integer.getInteger("bench.incremental.rows", 10_000_000);
+        final int dailyRows = 10_000;
+        List<Visitor> visitors = createVisitors(100_000);
+        Ride ride = createRide();
+        for (int i = 0; i < rows; i += visitors.size()) {
+            List<Visitor> batch = visitors.subList(0, Math.min(visitors.size(), rows - i));
+            silenced(() -> ride.addVisitorsToHistory(batch));
+        }
+        silenced(ride::sortRideHistory);
+        File fullFile;
+        File deltaFile;
+        try {
+            fullFile = File.createTempFile("bench-full-", ".csv");
+            deltaFile = File.createTempFile("bench-delta-", ".csv");
+            deltaFile.delete();
+        } catch (IOException e) {
+            ORIGINAL_ERR.println("创建临时文件失败：" + e.getMessage());
+            return;
+        }
+        silenced(() -> ride.exportRideHistoryIncremental(deltaFile.getPath())); // 首次为全量导出
+        List<Visitor> daily = visitors.subList(0, dailyRows);
+        ORIGINAL_OUT.println("===== 场景incremental：已有" + rows + "条历史（已排序），每次新增" + dailyRows + "条 =====");
+
+        double full = measureOnce(() -> {
+            ride.addVisitorsToHistory(daily);
+            ride.exportRideHistory(fullFile.getPath());
+        });
+        double incremental = measureOnce(() -> {
+            ride.addVisitorsToHistory(daily);
+            ride.exportRideHistoryIncremental(deltaFile.getPath());
+        });
+        report("新增后导出", full, incremental);
+        ORIGINAL_OUT.printf("文件大小：全量 %.1f MB | 增量累计 %.1f MB%n",
+                fullFile.length() / 1048576.0, deltaFile.length() / 1048576.0);
+        fullFile.delete();
+        deltaFile.delete();
+        new File(deltaFile.getPath() + ".hwm").delete();
+    }
+
+    /**
+     * 场景startup：不同园区规模下的启动耗时
+     * 同步启动 = 解析设施配置并立即创建全部设施与操作员 + 同步反序列化预约文件；
+     * 快速启动 = 只登记设施定义（RideManager.loadRideDefinitions）+ 后台加载预约（首个菜单出现时刻），另列预约就绪耗时
+     */
+    private static void benchStartup() {
+        final int[][] sizes = {{3, 10_000}, {1_000, 100_000}, {10_000, 300_000}}; // {设施数, 预约数}
+        RideManager rideManager = RideManager.getInstance();
+        BookingManager bookingManager = BookingManager.getInstance();
+        ORIGINAL_OUT.println("===== 场景startup：启动耗时（首个菜单出现前） =====");
+        for (int[] size : sizes) {
+            File config;
+            File bookings;
+            try {
+                config = writeRideConfig(size[0]);
+                bookings = writeBookingFile(size[0], size[1]);
+            } catch (IOException e) {
+                ORIGINAL_ERR.println("生成启动数据失败：" + e.getMessage());
+                return;
+            }
+            double eager = measure(() -> {
+                List<Ride> rides = new ArrayList<>();
+                for (RideDefinition definition : RideDefinition.loadFromFile(config.getPath())) {
+                    Ride ride = new Ride(definition.getRideId(), definition.getName(),
+                            new Employee("EMP-" + definition.getRideId(), "操作员", 30, "EMP-" + definition.getRideId(), "操作员"),
+                            definition.getMaxRider());
+                    ride.setRideType(definition.getRideType());
+                    rides.add(ride);
+                }
+                bookingManager.loadBookingsFromFile(bookings.getPath());
+            });
+            double promptMs = 0;
+            double readyMs = 0;
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+                long[] nanos = new long[2]; // [首个菜单出现, 预约就绪]
+                silenced(() -> {
+                    long start = System.nanoTime();
+                    rideManager.loadRideDefinitions(config.getPath());
+                    CompletableFuture<Void> loaded = bookingManager.loadBookingsInBackground(bookings.getPath());
+                    nanos[0] = System.nanoTime() - start;
+                    loaded.join();
+                    nanos[1] = System.nanoTime() - start;
+                });
+                if (round >= WARMUP_ROUNDS) {
+                    promptMs += nanos[0] / 1_000_000.0 / MEASURE_ROUNDS;
+                    readyMs += nanos[1] / 1_000_000.0 / MEASURE_ROUNDS;
+                }
+            }
+            ORIGINAL_OUT.printf("设施%6d个 / 预约%7d条（%.1fMB）：同步启动 %9.2f ms | 快速启动首个菜单 %7.2f ms | 预约就绪 %9.2f ms%n",
+                    size[0], size[1], bookings.length() / 1048576.0, eager, promptMs, readyMs);
+            config.delete();
+            bookings.delete();
+        }
+    }
+
+    /**
+     * 场景catalog：设施目录规模对加载、按ID查找与目录首页的影响
+     * 加载 = 流式解析目录文件并登记定义；查找 = RideManager.getRideDefinition（哈希O(1)）；
+     * 首页 = 登记后第一次分页浏览（含构建排序快照）与之后的翻页
+     */
+    private static void benchRideCatalog() {
+        final int[] sizes = {3, 1_000, 100_000};
+        final int lookups = 1_000_000;
+        RideManager rideManager = RideManager.getInstance();
+        ORIGINAL_OUT.println("===== 场景catalog：设施目录规模 vs 加载/查找/分页耗时 =====");
+        for (int size : sizes) {
+            File config;
+            try {
+                config = writeRideConfig(size);
+            } catch (IOException e) {
+                ORIGINAL_ERR.println("生成设施目录失败：" + e.getMessage());
+                return;
+            }
+            double loadMs = measure(() -> rideManager.loadRideDefinitions(config.getPath()));
+            String[] ids = new String[1024];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = "BS" + (int) ((long) i * 7919 % size);
+            }
+            double lookupMs = measure(() -> {
+                int found = 0;
+                for (int i = 0; i < lookups; i++) {
+                    if (rideManager.getRideDefinition(ids[i & 1023]) != null) {
+                        found++;
+                    }
+                }
+                if (found != lookups) {
+                    throw new IllegalStateException("查找失败：" + found);
+                }
+            });
+            double firstPageMs = measure(() -> {
+                rideManager.loadRideDefinitions(config.getPath()); // 重新登记使排序快照失效
+                rideManager.pageRideCatalog(null, 20);
+            }) - loadMs;
+            double nextPageMs = measure(() -> rideManager.pageRideCatalog("BS1", 20));
+            ORIGINAL_OUT.printf("设施%7d个：加载 %8.2f ms（%.2f µs/个）| 查找 %6.1f ns/次 | 首次分页 %7.2f ms | 翻页 %7.4f ms%n",
+                    size, loadMs, loadMs * 1000 / size, lookupMs * 1_000_000 / lookups, Math.max(0, firstPageMs), nextPageMs);
+            config.delete();
+        }
+    }
+
+    /**
+     * 场景staffing：200个设施 × 每个设施9名操作员（3个班组×3人）× 30天三班倒（同组成员错开20分钟上下班）
+     * "时刻T谁能操作设施X"：逐个扫描该设施全部班次 vs StaffScheduler分段时间线（floorEntry）
+     */
+    private static void benchStaffing() {
+        final int rides = 200;
+        final int operatorsPerRide = 3;
+        final int days = 30;
+        final int queries = 200_000;
+        StaffScheduler scheduler = StaffScheduler.getInstance();
+        scheduler.clear();
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 0, 0);
+        Map<String, List<StaffScheduler.Shift>> shiftsByRide = new HashMap<>();
+        for (int r = 0; r < rides; r++) {
+            String rideId = "ST" + r;
+            List<StaffScheduler.Shift> shifts = new ArrayList<>();
+            for (int o = 0; o < operatorsPerRide * 3; o++) { // 每个设施9人：3个班组 × 每组3人
+                Employee employee = new Employee("P-ST" + r + "-" + o, "操作员" + o, 30, "EMP-ST" + r + "-" + o, "操作员");
+                int team = o / operatorsPerRide;
+                int stagger = (o % operatorsPerRide) * 20; // 同组成员错开20分钟上班
+                for (int d = 0; d < days; d++) {
+                    LocalDateTime start = base.plusDays(d).plusHours(team * 8L).plusMinutes(stagger);
+                    StaffScheduler.Shift shift = scheduler.addShift(employee, rideId, start, start.plusHours(8));
+                    if (shift != null) {
+                        shifts.add(shift);
+                    }
+                }
+            }
+            shiftsByRide.put(rideId, shifts);
+        }
+        int totalShifts = shiftsByRide.values().stream().mapToInt(List::size).sum();
+        ORIGINAL_OUT.println("===== 场景staffing：" + rides + "个设施 / " + rides * operatorsPerRide * 3
+                + "名操作员 / " + totalShifts + "个班次，查询" + queries + "次 =====");
+
+        String[] rideIds = new String[rides];
+        LocalDateTime[] times = new LocalDateTime[1024];
+        for (int i = 0; i < rides; i++) {
+            rideIds[i] = "ST" + i;
+        }
+        for (int i = 0; i < times.length; i++) {
+            times[i] = base.plusMinutes((long) i * 7919 % (days * 24 * 60));
+        }
+        long[] checksums = new long[2];
+        double scan = measure(() -> {
+            long found = 0;
+            for (int q = 0; q < queries; q++) {
+                LocalDateTime time = times[q & 1023];
+                for (StaffScheduler.Shift shift : shiftsByRide.get(rideIds[q % rides])) {
+                    if (!shift.getStart().isAfter(time) && shift.getEnd().isAfter(time)) {
+                        found++;
+                    }
+                }
+            }
+            checksums[0] = found;
+        });
+        double timeline = measure(() -> {
+            long found = 0;
+            for (int q = 0; q < queries; q++) {
+                found += scheduler.getAvailableOperators(rideIds[q % rides], times[q & 1023]).size();
+            }
+            checksums[1] = found;
+        });
+        report("在班操作员查询", scan, timeline);
+        if (checksums[0] != checksums[1]) {
+            ORIGINAL_ERR.println("结果不一致：扫描" + checksums[0] + " vs 时间线" + checksums[1]);
+        }
+        scheduler.clear();
+    }
+
+    /**
+     * 场景cycle：每个周期的堆分配字节数与耗时（当前线程的精确分配计数，与JMH的GC分析器同一数据来源）
+     * 打印路径 = runOneCycle（横幅+逐人日志，输出已屏蔽）；热路径 = runCycle复用同一个CycleResult
+     * 游客预先驻留到历史字典、历史容量预先预留，队列在计量区间外填充
+     */
+    private static void benchCycleAllocation() {
+        final int verboseCycles = 20_000;
+        final int hotCycles = 200_000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            ORIGINAL_ERR.println("当前JVM不支持线程分配计数，跳过场景cycle");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        List<Visitor> visitors = createVisitors(1_000);
+        ORIGINAL_OUT.println("===== 场景cycle：单次周期的堆分配与耗时（每周期4人） =====");
+
+        long[] verbose = new long[2]; // [分配字节, 纳秒]
+        long[] hot = new long[2];
+        for (int round = 0; round < 3; round++) { // 前两轮为预热（让热路径完成JIT编译）
+            Ride verboseRide = prepareCycleRide(visitors, verboseCycles);
+            silenced(() -> {
+                long bytes = threads.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                for (int c = 0; c < verboseCycles; c++) {
+                    verboseRide.runOneCycle();
+                }
+                verbose[1] = System.nanoTime() - start;
+                verbose[0] = threads.getThreadAllocatedBytes(threadId) - bytes;
+            });
+
+            Ride hotRide = prepareCycleRide(visitors, hotCycles);
+            CycleResult result = new CycleResult();
+            long bytes = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            int boarded = 0;
+            for (int c = 0; c < hotCycles; c++) {
+                boarded += hotRide.runCycle(result).getBoarded();
+            }
+            hot[1] = System.nanoTime() - start;
+            hot[0] = threads.getThreadAllocatedBytes(threadId) - bytes;
+            if (boarded != hotCycles * 4) {
+                ORIGINAL_ERR.println("热路径载客数异常：" + boarded);
+            }
+        }
+        ORIGINAL_OUT.printf("打印路径 runOneCycle：%8.1f 字节/周期 | %8.0f ns/周期%n",
+                (double) verbose[0] / verboseCycles, (double) verbose[1] / verboseCycles);
+        ORIGINAL_OUT.printf("热路径   runCycle   ：%8.3f 字节/周期 | %8.0f ns/周期（%d个周期共分配%d字节）%n",
+                (double) hot[0] / hotCycles, (double) hot[1] / hotCycles, hotCycles, hot[0]);
+    }
+
+    /**
+     * 准备周期场景的设施：游客先驻留到历史字典，预留历史容量，队列中放入cycles个周期的游客
+     */
+    private static Ride prepareCycleRide(List<Visitor> visitors, int cycles) {
+        Ride[] holder = new Ride[1];
+        silenced(() -> {
+            Ride ride = createRide();
+            ride.addVisitorsToHistory(visitors);
+            ride.reserveHistoryCapacity(cycles * 4);
+            for (int filled = 0; filled < cycles * 4; filled += visitors.size()) {
+                ride.addVisitorsToQueue(visitors.subList(0, Math.min(visitors.size(), cycles * 4 - filled)));
+            }
+            holder[0] = ride;
+        });
+        return holder[0];
+    }
+
+    /**
+     * 场景ingest：合作方预约文件批量导入（100万条，CSV与二进制）
+     * 逐条 = 每条记录查找设施、校验并调用addBooking（每条加锁一次并打印日志，输出已屏蔽）；
+     * 批量 = BookingImporter按批校验后调用addBookings；重复导入 = 同一文件再导入一次（全部按外部键跳过）
+     * 每次导入使用全新的BookingManager（单分片存储的分片），互不影响
+     */
+    private static void benchBookingIngest() {
+        final int records = 1_000_000;
+        RideManager rideManager = RideManager.getInstance();
+        List<RideDefinition> catalog = rideManager.pageRideCatalog(null, 100).getItems();
+        List<Visitor> visitors = createVisitors(10_000);
+        LocalDateTime base = LocalDateTime.now().plusDays(1).withSecond(0).withNano(0);
+        List<BookingImporter.FeedRecord> feed = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            feed.add(new BookingImporter.FeedRecord("P-" + i, visitors.get(i % visitors.size()),
+                    catalog.get(i % catalog.size()).getRideId(), base.plusMinutes(i % 10_000)));
+        }
+        ORIGINAL_OUT.println("===== 场景ingest：" + records + "条预约批量导入（设施目录" + catalog.size() + "个设施） =====");
+
+        double perRecordMs = measureOnce(() -> {
+            try (ShardedBookingStore store = new ShardedBookingStore(1, ShardedBookingStore.Strategy.BY_RIDE)) {
+                BookingManager manager = store.getShard(0);
+                LocalDateTime earliest = LocalDateTime.now().plusMinutes(10);
+                for (BookingImporter.FeedRecord record : feed) {
+                    Ride ride = rideManager.findRide(record.getRideId());
+                    if (ride != null && !record.getBookingTime().isBefore(earliest)
+                            && ride.getEligibilityRule().test(record.getVisitor())) {
+                        manager.addBooking(new Booking(BookingImporter.EXTERNAL_ID_PREFIX + record.getExternalKey(),
+                                record.getVisitor(), ride, record.getBookingTime()));
+                    }
+                }
+            }
+        });
+        ORIGINAL_OUT.printf("逐条addBooking（内存记录，无文件解析）：%10.2f ms%n", perRecordMs);
+
+        for (String extension : new String[]{".csv", BookingImporter.BINARY_EXTENSION}) {
+            File file;
+            try {
+                file = File.createTempFile("bench-feed-", extension);
+                BookingImporter.writeFeed(file.getPath(), feed);
+            } catch (IOException e) {
+                ORIGINAL_ERR.println("生成预约文件失败：" + e.getMessage());
+                return;
+            }
+            BookingImporter.ImportReport[] reports = new BookingImporter.ImportReport[2];
+            double[] rerunMs = new double[1];
+            double importMs = measureOnce(() -> {
+                try (ShardedBookingStore store = new ShardedBookingStore(1, ShardedBookingStore.Strategy.BY_RIDE)) {
+                    BookingImporter importer = new BookingImporter(rideManager, store.getShard(0));
+                    reports[0] = importer.importFile(file.getPath());
+                    long start = System.nanoTime();
+                    reports[1] = importer.importFile(file.getPath());
+                    rerunMs[0] = (System.nanoTime() - start) / 1_000_000.0;
+                }
+            }) - rerunMs[0];
+            ORIGINAL_OUT.printf("批量导入%-5s（%5.1fMB）：%10.2f ms | 重复导入：%10.2f ms | 新增%d条、拒绝%d条；重复导入新增%d条、跳过%d条%n",
+                    extension, file.length() / 1048576.0, importMs, rerunMs[0], reports[0].getAccepted(),
+                    reports[0].getRejected(), reports[1].getAccepted(), reports[1].getDuplicates());
+            file.delete();
+        }
+    }
+
+    /**
+     * 场景compaction：一个运营季的预约（80%已取消或已过期）压缩前后的保存耗时/文件大小，
+     * 以及压缩期间另一线程新增预约的最大等待时间（衡量分批压缩对正常预约的停顿）
+     */
+    private static void benchBookingCompaction() {
+        final int bookings = 1_000_000;
+        final int liveEvery = 5; // 每5条中1条为未来的有效预约
+        Ride ride = createRide();
+        List<Visitor> visitors = createVisitors(10_000);
+        LocalDateTime now = LocalDateTime.now();
+        ORIGINAL_OUT.println("===== 场景compaction：" + bookings + "条预约（已取消/已过期占80%）的归档压缩 =====");
+        try (ShardedBookingStore store = new ShardedBookingStore(1, ShardedBookingStore.Strategy.BY_RIDE)) {
+            BookingManager manager = store.getShard(0);
+            List<Booking> season = new ArrayList<>(bookings);
+            for (int i = 0; i < bookings; i++) {
+                LocalDateTime time = i % liveEvery == 0 || i % 2 == 0 ? now.plusDays(1 + i % 30) : now.minusDays(1 + i % 90);
+                season.add(new Booking("SEASON-" + i, visitors.get(i % visitors.size()), ride, time));
+            }
+            manager.addBookings(season);
+            silenced(() -> {
+                for (int i = 0; i < bookings; i += 2) {
+                    if (i % liveEvery != 0) {
+                        manager.cancelBookingById("SEASON-" + i);
+                    }
+                }
+            });
+            File hot;
+            File archive;
+            try {
+                hot = File.createTempFile("bench-hot-", ".dat");
+                archive = File.createTempFile("bench-archive-", ".csv");
+                archive.delete();
+            } catch (IOException e) {
+                ORIGINAL_ERR.println("创建临时文件失败：" + e.getMessage());
+                return;
+            }
+            double saveBeforeMs = measureOnce(() -> manager.saveBookingsToFile(hot.getPath()));
+            long sizeBefore = hot.length();
+
+            long[] maxWaitNanos = new long[1];
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread booker = new Thread(() -> {
+                int i = 0;
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    manager.addBookings(List.of(new Booking("LIVE-" + i++, visitors.get(i % visitors.size()), ride, now.plusDays(2))));
+                    maxWaitNanos[0] = Math.max(maxWaitNanos[0], System.nanoTime() - start);
+                    Thread.yield();
+                }
+            }, "bench-booker");
+            booker.start();
+            BookingCompactor.Result[] result = new BookingCompactor.Result[1];
+            long compactStart = System.nanoTime(); // 压缩只能执行一次（第二次已无可归档的预约），不预热
+            silenced(() -> result[0] = new BookingCompactor(manager, archive.getPath(), Duration.ZERO, 5_000).compact());
+            double compactMs = (System.nanoTime() - compactStart) / 1_000_000.0;
+            running.set(false);
+            try {
+                booker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            double saveAfterMs = measureOnce(() -> manager.saveBookingsToFile(hot.getPath()));
+            ORIGINAL_OUT.printf("压缩：%10.2f ms（%s，归档文件%.1fMB）| 压缩期间新增预约最大等待：%8.2f ms%n",
+                    compactMs, result[0], archive.length() / 1048576.0, maxWaitNanos[0] / 1e6);
+            ORIGINAL_OUT.printf("保存热数据：压缩前 %10.2f ms（%.1fMB）| 压缩后 %10.2f ms（%.1fMB）| 剩余有效预约%d条%n",
+                    saveBeforeMs, sizeBefore / 1048576.0, saveAfterMs, hot.length() / 1048576.0, manager.getValidBookingCount());
+            hot.delete();
+            archive.delete();
+        }
+    }
+
+    /**
+     * 场景timers：预约时间轮的安排成本，以及大量预约同时过期时的处理耗时与对正常预约的停顿
+     * 对照 = 定期全表扫描（每秒遍历一次全部预约判断是否到时）的单次扫描耗时；时间轮空闲时每秒只推进一个刻度
+     */
+    private static void benchBookingTimers() {
+        final int pending = Integer.getInteger("bench.timers.pending", 2_000_000); // 未来30天内的有效预约
+        final int overdue = 500_000;                                                 // 已超过宽限期的预约（启用后下一秒全部过期）
+        Ride ride = createRide();
+        List<Visitor> visitors = createVisitors(10_000);
+        LocalDateTime now = LocalDateTime.now();
+        ORIGINAL_OUT.println("===== 场景timers：" + pending + "条待触发预约 + " + overdue + "条同时过期 =====");
+        try (ShardedBookingStore store = new ShardedBookingStore(1, ShardedBookingStore.Strategy.BY_RIDE)) {
+            BookingManager manager = store.getShard(0);
+            List<Booking> bookings = new ArrayList<>(pending + overdue);
+            for (int i = 0; i < pending; i++) {
+                bookings.add(new Booking("PENDING-" + i, visitors.get(i % visitors.size()), ride,
+                        now.plusMinutes(60 + i % (30 * 24 * 60))));
+            }
+            for (int i = 0; i < overdue; i++) {
+                bookings.add(new Booking("OVERDUE-" + i, visitors.get(i % visitors.size()), ride, now.minusHours(2)));
+            }
+            manager.addBookings(bookings);
+
+            LocalDateTime scanNow = LocalDateTime.now();
+            double scanMs = measure(() -> {
+                int due = 0;
+                for (Booking booking : bookings) {
+                    if (!booking.isCancelled() && booking.getBookingTime().isBefore(scanNow)) {
+                        due++;
+                    }
+                }
+                if (due < 0) {
+                    ORIGINAL_ERR.println(due);
+                }
+            });
+
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+            long[] maxWaitNanos = new long[1];
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread booker = new Thread(() -> {
+                int i = 0;
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    manager.getValidBookingCount(); // 与预约操作争用同一把锁
+                    maxWaitNanos[0] = Math.max(maxWaitNanos[0], System.nanoTime() - start);
+                    if (++i % 64 == 0) {
+                        Thread.yield();
+                    }
+                }
+            }, "bench-booker");
+            long start = System.nanoTime();
+            silenced(() -> manager.startBookingTimers(Duration.ofMinutes(30), Duration.ofMinutes(15)));
+            double scheduleMs = (System.nanoTime() - start) / 1_000_000.0;
+            long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+            booker.start();
+            long expireStart = System.nanoTime();
+            while (manager.getPendingTimerCount() > pending) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            double expireMs = (System.nanoTime() - expireStart) / 1_000_000.0;
+            running.set(false);
+            try {
+                booker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            manager.stopBookingTimers();
+            ORIGINAL_OUT.printf("安排%d个定时器：%10.2f ms（%.0f ns/个，约%.0f字节/个）%n", pending + overdue, scheduleMs,
+                    scheduleMs * 1e6 / (pending + overdue), (double) (heapAfter - heapBefore) / (pending + overdue));
+            ORIGINAL_OUT.printf("全表扫描对照：每次 %8.2f ms（每秒一次即持续占用%.1f%%的CPU）| 时间轮空闲刻度：只处理第0层一个槽%n",
+                    scanMs, scanMs / 10.0);
+            ORIGINAL_OUT.printf("%d条预约同时过期：%10.2f ms（含最长1秒的等待下一刻度）| 期间预约锁最大等待：%8.2f ms | 剩余有效预约%d条%n",
+                    overdue, expireMs, maxWaitNanos[0] / 1e6, manager.getValidBookingCount());
+        }
+    }
+
+    /**
+     * 场景dispatch：预约时段开始时把到时预约放入设施等待队列
+     * 对照 = 扫描全部预约找出本时段到时的预约，再逐个addVisitorToQueue（排在现场游客之后）；
+     * 优化 = 时间轮给出本时段的预约，BookingDispatcher按设施分组批量插入队首优先区
+     * 最后用真实的定时线程验证端到端：到时后多久全部入队
+     */
+    private static void benchBookingDispatch() {
+        final int rideCount = 20;
+        final int total = Integer.getInteger("bench.dispatch.bookings", 1_000_000);
+        final int slots = 24 * 60; // 未来一天，每分钟一个时段
+        final int live = 2_000;    // 端到端验证：2秒后到时的预约
+        List<Ride> rides = new ArrayList<>(rideCount);
+        List<Visitor> visitors = createVisitors(10_000);
+        RideManager rideManager = RideManager.getInstance();
+        for (int i = 0; i < rideCount; i++) { // 调度按设施ID在设施池中查找设施，因此设施需登记在设施池中
+            rides.add(rideManager.getRide("DISPATCH-" + i, "调度设施" + i, 4, RideType.FAMILY));
+        }
+        silenced(() -> {
+            for (Ride ride : rides) {
+                ride.addVisitorsToQueue(createVisitors(500)); // 现场排队游客
+            }
+        });
+        ORIGINAL_OUT.println("===== 场景dispatch：" + total + "条预约，" + rideCount + "个设施，每时段约" + total / slots + "条 =====");
+        try (ShardedBookingStore store = new ShardedBookingStore(1, ShardedBookingStore.Strategy.BY_RIDE);
+             BookingDispatcher dispatcher = new BookingDispatcher(store.getShard(0))) {
+            BookingManager manager = store.getShard(0);
+            LocalDateTime base = LocalDateTime.now().withSecond(0).withNano(0).plusDays(1);
+            List<Booking> bookings = new ArrayList<>(total);
+            List<List<Booking>> bySlot = new ArrayList<>(slots);
+            for (int s = 0; s < slots; s++) {
+                bySlot.add(new ArrayList<>());
+            }
+            for (int i = 0; i < total; i++) {
+                Booking booking = new Booking("DISPATCH-" + i, visitors.get(i % visitors.size()), rides.get(i % rideCount),
+                        base.plusMinutes(i % slots));
+                bookings.add(booking);
+                bySlot.get(i % slots).add(booking); // 时间轮在到时刻度给出的正是这一组
+            }
+            manager.addBookings(bookings);
+
+            int[] nextSlot = {0};
+            double scanMs = measure(() -> {
+                LocalDateTime slotTime = base.plusMinutes(nextSlot[0]++);
+                for (Booking booking : bookings) {
+                    if (!booking.isCancelled() && booking.getBookingTime().equals(slotTime)) {
+                        booking.getRide().addVisitorToQueue(booking.getVisitor());
+                    }
+                }
+            });
+            int[] dispatchSlot = {slots / 2};
+            double dispatchMs = measure(() -> dispatcher.dispatch(bySlot.get(dispatchSlot[0]++)));
+            report("时段调度", scanMs, dispatchMs);
+
+            List<Booking> dueSoon = new ArrayList<>(live);
+            LocalDateTime due = LocalDateTime.now().withNano(0).plusSeconds(2);
+            for (int i = 0; i < live; i++) {
+                dueSoon.add(new Booking("LIVE-" + i, visitors.get(i % visitors.size()), rides.get(i % rideCount), due));
+            }
+            manager.addBookings(dueSoon);
+            silenced(() -> {
+                manager.startBookingTimers(Duration.ofMinutes(30), Duration.ofMinutes(15));
+                dispatcher.start();
+            });
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            silenced(() -> { // 定时线程的入队日志同样屏蔽
+                while (!dueSoon.get(live - 1).isQueued() && System.nanoTime() < deadline) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            });
+            double lagMs = Duration.between(due, LocalDateTime.now()).toNanos() / 1e6;
+            int queued = 0;
+            for (Booking booking : dueSoon) {
+                if (booking.isQueued()) {
+                    queued++;
+                }
+            }
+            manager.stopBookingTimers();
+            Ride sample = rides.get(0);
+            ORIGINAL_OUT.printf("端到端：%d条预约到时后%8.2f ms内全部入队（实际入队%d条，含最长1秒的刻度间隔）| 设施%s队首优先区%d人，队列共%d人%n",
+                    live, lagMs, queued, sample.getRideId(), sample.getBookedAheadCount(), sample.getQueueLength());
+        }
+    }
+
+    /**
+     * 场景snapshot：长时间导出与周期运行并发时，闸口（周期运行线程）的最长停顿
+     * 对照 = 导出全程持有设施锁（旧实现）；优化 = 先取只读快照，在快照上导出，不持有设施锁
+     * 另测两种历史存储取快照的耗时（与历史规模无关）
+     */
+    private static void benchRideSnapshots() {
+        final int historySize = Integer.getInteger("bench.snapshot.history", 2_000_000);
+        ORIGINAL_OUT.println("===== 场景snapshot：历史" + historySize + "条，导出期间闸口持续运行周期 =====");
+        for (Ride.HistoryStorage storage : Ride.HistoryStorage.values()) {
+            Ride ride = new Ride("SNAP-" + storage.name(), "快照设施", new Employee("BENCH-EMP", "基准操作员", 30,
+                    "EMP-BENCH", "基准测试操作员"), 4, storage);
+            ride.setRideType(RideType.FAMILY);
+            List<Visitor> visitors = createVisitors(10_000);
+            silenced(() -> {
+                List<Visitor> batch = new ArrayList<>(historySize);
+                for (int i = 0; i < historySize; i++) {
+                    batch.add(visitors.get(i % visitors.size()));
+                }
+                ride.addVisitorsToHistory(batch);
+            });
+            long start = System.nanoTime();
+            int rounds = 1_000;
+            for (int i = 0; i < rounds; i++) {
+                ride.snapshot();
+            }
+            double snapshotMicros = (System.nanoTime() - start) / 1_000.0 / rounds;
+
+            File file;
+            try {
+                file = File.createTempFile("bench-snapshot-", ".csv");
+            } catch (IOException e) {
+                ORIGINAL_ERR.println("❌ 创建临时文件失败：" + e.getMessage());
+                return;
+            }
+            String path = file.getAbsolutePath();
+            long[] lockedResult = runGateDuringExport(ride, visitors, () -> {
+                synchronized (ride) { // 旧实现：导出全程持有设施锁
+                    ride.exportRideHistory(path);
+                }
+            });
+            long[] snapshotResult = runGateDuringExport(ride, visitors, () -> ride.exportRideHistory(path));
+            file.delete();
+            ORIGINAL_OUT.printf("%-6s 取快照：%8.1f µs | 持锁导出：%8.1f ms，闸口最长停顿 %8.1f ms，期间完成周期%6d次"
+                            + " | 快照导出：%8.1f ms，闸口最长停顿 %8.1f ms，期间完成周期%6d次%n",
+                    storage, snapshotMicros, lockedResult[0] / 1e6, lockedResult[1] / 1e6, lockedResult[2],
+                    snapshotResult[0] / 1e6, snapshotResult[1] / 1e6, snapshotResult[2]);
+        }
+    }
+
+    /**
+     * 导出期间由闸口线程不断入队并运行周期，记录每次runCycle的最长耗时（含等锁）
+     * @return [导出耗时ns, 闸口最长停顿ns, 导出期间完成的周期数]
+     */
+    private static long[] runGateDuringExport(Ride ride, List<Visitor> visitors, Runnable export) {
+        AtomicBoolean running = new AtomicBoolean(true);
+        long[] maxStallNanos = new long[1];
+        long[] cycles = new long[1];
+        Thread gate = new Thread(() -> {
+            CycleResult result = new CycleResult();
+            List<Visitor> group = visitors.subList(0, 4);
+            while (running.get()) {
+                long start = System.nanoTime();
+                ride.addVisitorsToQueue(group);
+                ride.runCycle(result);
+                maxStallNanos[0] = Math.max(maxStallNanos[0], System.nanoTime() - start);
+                cycles[0]++;
+                Thread.yield();
+            }
+        }, "bench-gate");
+        long[] result = new long[3];
+        silenced(() -> {
+            gate.start();
+            long start = System.nanoTime();
+            export.run();
+            result[0] = System.nanoTime() - start;
+            running.set(false);
+            try {
+                gate.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        result[1] = maxStallNanos[0];
+        result[2] = cycles[0];
+        return result;
+    }
+
+    /**
+     * 场景profiling：性能探针的开销（同一入队+周期负载，分别在探针关闭、开启计时钩子、开启JFR录制时计时）
+     */
+    private static void benchProfiling() {
+        final int visitorsPerRound = 20_000;
+        ORIGINAL_OUT.println("===== 场景profiling：每轮" + visitorsPerRound + "次入队 + " + visitorsPerRound / 4 + "次周期 =====");
+        List<Visitor> visitors = createVisitors(visitorsPerRound);
+        Runnable workload = () -> {
+            Ride ride = createRide();
+            for (Visitor visitor : visitors) {
+                ride.addVisitorToQueue(visitor);
+            }
+            for (int i = 0; i < visitorsPerRound / 4; i++) {
+                ride.runOneCycle();
+            }
+        };
+        int operations = visitorsPerRound + visitorsPerRound / 4;
+
+        double offMs = measure(workload);
+        OperationLatencyTable table = new OperationLatencyTable();
+        ParkProfiler.setHook(table);
+        double hookMs;
+        try {
+            hookMs = measure(workload);
+        } finally {
+            ParkProfiler.setHook(null);
+        }
+        double jfrMs;
+        long jfrEvents;
+        try (Recording recording = new Recording()) {
+            for (ParkProfiler.Operation operation : ParkProfiler.Operation.values()) {
+                recording.enable(operation.getEventName());
+            }
+            recording.start();
+            jfrMs = measure(workload);
+            recording.stop();
+            Path file = Files.createTempFile("bench-profiling-", ".jfr");
+            recording.dump(file);
+            jfrEvents = RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> ParkProfiler.Operation.forEventName(event.getEventType().getName()) != null)
+                    .count();
+            Files.delete(file);
+        } catch (IOException e) {
+            ORIGINAL_ERR.println("❌ JFR录制失败：" + e.getMessage());
+            return;
+        }
+        offMs = Math.min(offMs, measure(workload)); // 关闭状态首尾各测一次取较小值，排除JIT预热的影响
+        ORIGINAL_OUT.printf("探针关闭：%8.2f ms（每次操作 %6.0f ns）%n", offMs, offMs * 1e6 / operations);
+        ORIGINAL_OUT.printf("计时钩子：%8.2f ms（每次操作 %6.0f ns，相对关闭 %+6.1f%%）%n",
+                hookMs, hookMs * 1e6 / operations, (hookMs / offMs - 1) * 100);
+        ORIGINAL_OUT.printf("JFR录制 ：%8.2f ms（每次操作 %6.0f ns，相对关闭 %+6.1f%%，录得事件%d条）%n",
+                jfrMs, jfrMs * 1e6 / operations, (jfrMs / offMs - 1) * 100, jfrEvents);
+        ORIGINAL_OUT.print(table);
+    }
+
+    /**
+     * 场景rendering：百万行列表的渲染耗时与堆分配
+     * 对照 = 旧实现（每行DateTimeFormatter.ofPattern + String.format + 一次日志printf）；优化 = 缓存展示文本 + 单缓冲区批量输出
+     */
+    private static void benchRendering() {
+        final int rows = Integer.getInteger("bench.rendering.rows", 1_000_000);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        ORIGINAL_OUT.println("===== 场景rendering：" + rows + "条预约 / " + rows + "条游乐历史的完整列表输出 =====");
+
+        List<Visitor> visitors = createVisitors(10_000);
+        Ride ride = createRide();
+        BookingManager bookingManager = new ShardedBookingStore(1, ShardedBookingStore.Strategy.BY_RIDE).getShard(0);
+        LocalDateTime base = LocalDateTime.now().plusDays(1);
+        List<Booking> bookings = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            bookings.add(new Booking(visitors.get(i % visitors.size()), ride, base.plusMinutes((i * 7919L) % 100_000)));
+        }
+        silenced(() -> {
+            bookingManager.addBookings(bookings);
+            for (int i = 0; i < rows; i += visitors.size()) {
+                ride.addVisitorsToHistory(visitors);
+            }
+        });
+        List<Booking> sorted = new ArrayList<>(bookings);
+        sorted.sort(Comparator.comparing(Booking::getBookingTime));
+
+        long[] legacyBookings = measureAllocation(threads, threadId, () -> {
+            int position = 1;
+            for (Booking booking : sorted) {
+                LoggerUtil.info(String.format("%d. %s", position++, legacyBookingText(booking)));
+            }
+        });
+        long[] bulkBookings = measureAllocation(threads, threadId, bookingManager::printAllBookings);
+        long[] legacyHistory = measureAllocation(threads, threadId, () -> {
+            Iterator<Visitor> iterator = ride.snapshot().getHistory().iterator();
+            int index = 1;
+            while (iterator.hasNext()) {
+                Visitor visitor = iterator.next();
+                System.out.printf("%d. %s%n", index++, String.format("Visitor{visitorId='%s', membershipType=%s, hasInsurance=%b, %s}",
+                        visitor.getVisitorId(), visitor.getMembershipType(), visitor.isHasRideInsurance(),
+                        String.format("Person{id='%s', name='%s', age=%d}", visitor.getId(), visitor.getName(), visitor.getAge())));
+            }
+        });
+        long[] bulkHistory = measureAllocation(threads, threadId, ride::printRideHistory);
+
+        report("预约列表", legacyBookings[1] / 1e6, bulkBookings[1] / 1e6);
+        ORIGINAL_OUT.printf("%-16s 逐个调用：%10.1f 字节/行 | 优化路径：%10.1f 字节/行%n", "",
+                (double) legacyBookings[0] / rows, (double) bulkBookings[0] / rows);
+        report("游乐历史", legacyHistory[1] / 1e6, bulkHistory[1] / 1e6);
+        ORIGINAL_OUT.printf("%-16s 逐个调用：%10.1f 字节/行 | 优化路径：%10.1f 字节/行%n", "",
+                (double) legacyHistory[0] / rows, (double) bulkHistory[0] / rows);
+    }
+
+    // 旧版Booking.toString（每次调用新建格式化器并用String.format拼接）
+    private static String legacyBookingText(Booking booking) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        return String.format("预约ID：%s | 游客：%s | 设施：%s | 时间：%s | 状态：%s",
+                booking.getBookingId(), booking.getVisitor().getName(), booking.getRide().getName(),
+                booking.getBookingTime().format(formatter), booking.isCancelled() ? "已取消" : "有效");
+    }
+
+    /**
+     * 屏蔽输出执行任务：预热一轮，再计一轮的[分配字节, 纳秒]
+     */
+    private static long[] measureAllocation(com.sun.management.ThreadMXBean threads, long threadId, Runnable task) {
+        long[] result = new long[2];
+        silenced(task);
+        silenced(() -> {
+            long bytes = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            task.run();
+            result[1] = System.nanoTime() - start;
+            result[0] = threads.getThreadAllocatedBytes(threadId) - bytes;
+        });
+        return result;
+    }
+
+    private static File writeRideConfig(int rides) throws IOException {
+        File file = File.createTempFile("bench-rides-", ".conf");
+        RideType[] types = RideType.values();
+        try (PrintStream out = new PrintStream(new FileOutputStream(file), false, "UTF-8")) {
+            for (int i = 0; i < rides; i++) {
+                out.println("BS" + i + ": name=基准设施" + i + ";type=" + types[i % types.length].name()
+                        + ";maxRider=" + (2 + i % 6) + ";operator=EMP-BS" + i + "|操作员" + i + "|30|EMP-BS" + i + "|操作员");
+            }
+        }
+        return file;
+    }
+
+    private static File writeBookingFile(int rides, int bookings) throws IOException {
+        File file = File.createTempFile("bench-bookings-", ".dat");
+        List<Ride> rideObjects = new ArrayList<>(rides);
+        for (int i = 0; i < rides; i++) {
+            rideObjects.add(new Ride("BS" + i, "基准设施" + i, new Employee(), 4));
+        }
+        List<Visitor> visitors = createVisitors(Math.min(bookings, 100_000));
+        List<Booking> list = new ArrayList<>(bookings);
+        LocalDateTime base = LocalDateTime.now().plusDays(1);
+        for (int i = 0; i < bookings; i++) {
+            list.add(new Booking(visitors.get(i % visitors.size()), rideObjects.get(i % rides), base.plusMinutes(i % 10_000)));
+        }
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeObject(list);
+        }
+        return file;
+    }
+
+    /**
+     * 所有垃圾收集器的累计[次数, 耗时毫秒]
+     */
+    private static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, gc.getCollectionCount());
+            totals[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return totals;
+    }
+
+    /**
+     * 分配约megabytes MB的短命对象（模拟运营期间的正常请求分配）
+     */
+    private static void churn(int megabytes) {
+        byte[][] window = new byte[64][];
+        for (int i = 0; i < megabytes * 1024; i++) {
+            window[i & 63] = new byte[1024];
+        }
+    }
+
+    // ========================= 公共工具方法 =========================
+
+    private static Ride createRide() {
+        Employee operator = new Employee("BENCH-EMP", "基准操作员", 30, "EMP-BENCH", "基准测试操作员");
+        Ride ride = new Ride("BENCH", "基准设施", operator, 4);
+        ride.setRideType(RideType.FAMILY);
+        return ride;
+    }
+
+    private static List<Visitor> createVisitors(int count) {
+        Visitor.MembershipType[] types = Visitor.MembershipType.values();
+        List<Visitor> visitors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            visitors.add(new Visitor("PERSON-B-" + i, "基准游客" + i, 10 + i % 60,
+                    "VIS-B-" + i, types[i % types.length], i % 2 == 0));
+        }
+        return visitors;
+    }
+
+    /**
+     * 屏蔽输出后执行任务：先预热，再取多轮平均耗时（毫秒）
+     */
+    private static double measure(Runnable task) {
+        System.setOut(NULL_STREAM);
+        System.setErr(NULL_STREAM);
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                task.run();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURE_ROUNDS; i++) {
+                task.run();
+            }
+            return (System.nanoTime() - start) / 1_000_000.0 / MEASURE_ROUNDS;
+        } finally {
+            System.setOut(ORIGINAL_OUT);
+            System.setErr(ORIGINAL_ERR);
+        }
+    }
+
+    /**
+     * 屏蔽输出后执行耗时较长的任务：预热一轮，计时一轮（毫秒）
+     */
+    private static double measureOnce(Runnable task) {
+        silenced(task);
+        long start = System.nanoTime();
+        silenced(task);
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    private static void silenced(Runnable task) {
+        System.setOut(NULL_STREAM);
+        System.setErr(NULL_STREAM);
+        try {
+            task.run();
+        } finally {
+            System.setOut(ORIGINAL_OUT);
+            System.setErr(ORIGINAL_ERR);
+        }
+    }
+
+    private static void report(String label, double baselineMs, double optimizedMs) {
+        ORIGINAL_OUT.printf("%-16s 逐个调用：%10.2f ms | 优化路径：%10.2f ms | 加速比：%6.1fx%n",
+                label, baselineMs, optimizedMs, baselineMs / Math.max(optimizedMs, 0.001));
+    }
+}
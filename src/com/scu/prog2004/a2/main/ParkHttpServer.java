@@ -0,0 +1,517 @@
+package com.scu.prog2004.a2.main;
+
+import com.scu.prog2004.a2.model.*;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP/JSON服务模式：基于JDK内置HttpServer，让多个操作员/客户端同时使用预约与设施运营功能
+ * 设计思路：每个请求一个虚拟线程（JDK 21+），低版本JDK自动退化为固定大小的平台线程池；
+ * 业务逻辑全部复用BookingManager与RideManager（二者的方法已线程安全）
+ * 接口没有身份认证，默认只监听本机回环地址（127.0.0.1），供本机客户端使用；请求体上限64KB，超出返回413
+ *
+ * 接口列表（参数可放在查询串或application/x-www-form-urlencoded请求体中）：
+ *   POST /bookings          创建预约（name, age, rideId, time=yyyy-MM-dd HH:mm, 可选visitorId）
+ *   GET  /bookings          查询预约（visitorId）
+ *   GET  /bookings/page     分页查看有效预约（可选sort=BOOKING_TIME|MEMBERSHIP, cursor, offset, limit, rideId）
+ *   POST /bookings/cancel   取消预约（bookingId）
+ *   GET  /rides             列出所有设施
+ *   POST /rides/{id}/queue  游客入队（name, age, 可选visitorId）
+ *   POST /rides/{id}/cycle  运行周期（可选count，默认1）
+ *   GET  /rides/{id}/history 查看游乐历史（可选cursor, offset，limit默认100）
+ *   GET  /rides/{id}/riders 按时段查询乘坐游客（from, to=yyyy-MM-dd HH:mm，可选limit默认100）
+ */
+public class ParkHttpServer {
+    private static final DateTimeFormatter DATE_FORMATTER = DisplayRenderer.MINUTE_FORMATTER;
+    private static final int BACKLOG = 4096;             // 连接等待队列长度（支持大量并发客户端）
+    private static final int DEFAULT_HISTORY_LIMIT = 100;
+    private static final int MAX_BODY_BYTES = 64 * 1024;  // 请求体上限（表单参数远小于此值）
+    private static final AtomicLong VISITOR_SEQUENCE = new AtomicLong(); // 未指定游客ID时的自增序号
+
+    private final RideManager rideManager;
+    private final BookingManager bookingManager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * 在本机回环地址的指定端口上创建服务（只接受本机客户端）
+     */
+    public ParkHttpServer(int port, RideManager rideManager, BookingManager bookingManager) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), rideManager, bookingManager);
+    }
+
+    /**
+     * 在指定地址上创建服务（绑定非回环地址会把无认证的预约/设施接口暴露到网络，调用方自行确认）
+     */
+    public ParkHttpServer(InetSocketAddress address, RideManager rideManager, BookingManager bookingManager)
+            throws IOException {
+        this.rideManager = rideManager;
+        this.bookingManager = bookingManager;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = createRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/bookings", this::handleBookings);
+        server.createContext("/rides", this::handleRides);
+    }
+
+    /**
+     * 优先使用虚拟线程执行器（每请求一个线程）；当前JDK不支持时使用平台线程池
+     */
+    private static ExecutorService createRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService virtualExecutor = (ExecutorService) factory.invoke(null);
+            LoggerUtil.info("📌 HTTP服务使用虚拟线程（每请求一个线程）");
+            return virtualExecutor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            int threads = Math.max(64, Runtime.getRuntime().availableProcessors() * 32);
+            LoggerUtil.info("📌 当前JDK不支持虚拟线程，HTTP服务改用" + threads + "个平台线程");
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    public void start() {
+        server.start();
+        LoggerUtil.info("✅ HTTP服务已启动，监听地址：" + server.getAddress().getAddress().getHostAddress()
+                + "，端口：" + server.getAddress().getPort());
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LoggerUtil.info("👋 HTTP服务已停止");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // ========================= 预约接口 =========================
+
+    private void handleBookings(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            Map<String, String> params = readParams(exchange);
+            if ("/bookings".equals(path) && "POST".equals(method)) {
+                createBooking(exchange, params);
+            } else if ("/bookings".equals(path) && "GET".equals(method)) {
+                queryBookings(exchange, params);
+            } else if ("/bookings/page".equals(path) && "GET".equals(method)) {
+                pageBookings(exchange, params);
+            } else if ("/bookings/cancel".equals(path) && "POST".equals(method)) {
+                cancelBooking(exchange, params);
+            } else {
+                sendError(exchange, 404, "接口不存在：" + method + " " + path);
+            }
+        } catch (PayloadTooLargeException e) {
+            sendError(exchange, 413, e.getMessage());
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, "服务器内部错误：" + e.getMessage());
+        }
+    }
+
+    private void createBooking(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String name = params.getOrDefault("name", "").trim();
+        if (name.isEmpty()) {
+            sendError(exchange, 400, "姓名不能为空");
+            return;
+        }
+        Integer age = parseInt(params.get("age"));
+        if (age == null || age < 1 || age > 120) {
+            sendError(exchange, 400, "年龄必须为1-120之间的整数");
+            return;
+        }
+        Ride ride = rideManager.findRide(params.get("rideId"));
+        if (ride == null) {
+            sendError(exchange, 404, "设施不存在：" + params.get("rideId"));
+            return;
+        }
+        LocalDateTime bookingTime;
+        try {
+            bookingTime = LocalDateTime.parse(params.getOrDefault("time", ""), DATE_FORMATTER);
+        } catch (DateTimeParseException e) {
+            sendError(exchange, 400, "时间格式错误，请使用yyyy-MM-dd HH:mm");
+            return;
+        }
+        if (bookingTime.isBefore(LocalDateTime.now().plusMinutes(10))) {
+            sendError(exchange, 400, "预约需至少提前10分钟");
+            return;
+        }
+
+        Visitor visitor = createVisitor(name, age, params.get("visitorId"));
+        if (!ride.checkVisitorEligibility(visitor)) {
+            sendError(exchange, 400, "不符合该设施的乘坐要求（" + ride.getEligibilityRule() + "）");
+            return;
+        }
+        Booking booking = new Booking(visitor, ride, bookingTime);
+        if (!bookingManager.addBooking(booking)) {
+            sendError(exchange, 409, "预约已存在：" + booking.getBookingId());
+            return;
+        }
+        sendJson(exchange, 201, "{\"ok\":true,\"booking\":" + bookingJson(booking) + "}");
+    }
+
+    private void queryBookings(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String visitorId = params.getOrDefault("visitorId", "").trim();
+        if (visitorId.isEmpty()) {
+            sendError(exchange, 400, "游客ID不能为空");
+            return;
+        }
+        List<Booking> bookings = bookingManager.getBookingsByVisitorId(visitorId);
+        StringBuilder json = new StringBuilder("{\"ok\":true,\"count\":").append(bookings.size()).append(",\"bookings\":[");
+        for (int i = 0; i < bookings.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(bookingJson(bookings.get(i)));
+        }
+        sendJson(exchange, 200, json.append("]}").toString());
+    }
+
+    private void pageBookings(HttpExchange exchange, Map<String, String> params) throws IOException {
+        BookingSortKey sortKey;
+        try {
+            sortKey = BookingSortKey.valueOf(params.getOrDefault("sort", BookingSortKey.BOOKING_TIME.name()).trim());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, "排序键无效，可选：BOOKING_TIME、MEMBERSHIP");
+            return;
+        }
+        Integer offset = params.containsKey("offset") ? parseInt(params.get("offset")) : Integer.valueOf(0);
+        Integer limit = params.containsKey("limit") ? parseInt(params.get("limit")) : Integer.valueOf(DEFAULT_HISTORY_LIMIT);
+        if (offset == null || limit == null || offset < 0 || limit < 1) {
+            sendError(exchange, 400, "offset必须≥0，limit必须≥1");
+            return;
+        }
+        String rideId = params.get("rideId");
+        Page<Booking> page = bookingManager.pageBookings(sortKey, params.get("cursor"), offset, limit,
+                rideId == null ? null : booking -> booking.getRide().getRideId().equals(rideId));
+        StringBuilder json = new StringBuilder("{\"ok\":true,\"count\":").append(page.getItems().size())
+                .append(",\"nextCursor\":").append(jsonString(page.getNextCursor())).append(",\"bookings\":[");
+        for (int i = 0; i < page.getItems().size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(bookingJson(page.getItems().get(i)));
+        }
+        sendJson(exchange, 200, json.append("]}").toString());
+    }
+
+    private void cancelBooking(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String bookingId = params.getOrDefault("bookingId", "").trim();
+        if (bookingId.isEmpty()) {
+            sendError(exchange, 400, "预约ID不能为空");
+            return;
+        }
+        Optional<Booking> cancelled = bookingManager.cancelBookingById(bookingId);
+        if (cancelled.isEmpty()) {
+            sendError(exchange, 404, "未找到可取消的预约：" + bookingId);
+            return;
+        }
+        sendJson(exchange, 200, "{\"ok\":true,\"booking\":" + bookingJson(cancelled.get()) + "}");
+    }
+
+    // ========================= 设施运营接口 =========================
+
+    private void handleRides(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            Map<String, String> params = readParams(exchange);
+            String[] segments = path.split("/"); // ["", "rides", "{id}", "{action}"]
+            if (segments.length == 2 && "GET".equals(method)) {
+                listRides(exchange);
+                return;
+            }
+            if (segments.length != 4) {
+                sendError(exchange, 404, "接口不存在：" + method + " " + path);
+                return;
+            }
+            Ride ride = rideManager.findRide(segments[2]);
+            if (ride == null) {
+                sendError(exchange, 404, "设施不存在：" + segments[2]);
+                return;
+            }
+            String action = segments[3];
+            if ("queue".equals(action) && "POST".equals(method)) {
+                enqueue(exchange, ride, params);
+            } else if ("cycle".equals(action) && "POST".equals(method)) {
+                runCycles(exchange, ride, params);
+            } else if ("history".equals(action) && "GET".equals(method)) {
+                history(exchange, ride, params);
+            } else if ("riders".equals(action) && "GET".equals(method)) {
+                ridersBetween(exchange, ride, params);
+            } else {
+                sendError(exchange, 404, "接口不存在：" + method + " " + path);
+            }
+        } catch (PayloadTooLargeException e) {
+            sendError(exchange, 413, e.getMessage());
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, "服务器内部错误：" + e.getMessage());
+        }
+    }
+
+    private void listRides(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder("{\"ok\":true,\"rides\":[");
+        boolean first = true;
+        for (Ride ride : rideManager.getAllRides()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append(rideJson(ride));
+        }
+        sendJson(exchange, 200, json.append("]}").toString());
+    }
+
+    private void enqueue(HttpExchange exchange, Ride ride, Map<String, String> params) throws IOException {
+        String name = params.getOrDefault("name", "").trim();
+        Integer age = parseInt(params.get("age"));
+        if (name.isEmpty() || age == null || age < 0 || age > 120) {
+            sendError(exchange, 400, "姓名不能为空，年龄必须为0-120之间的整数");
+            return;
+        }
+        Visitor visitor = createVisitor(name, age, params.get("visitorId"));
+        if (!ride.tryAddVisitorToQueue(visitor)) {
+            // 拒绝原因只有两种：不符合资格规则，或队列已满（容量由设施目录配置）
+            if (!ride.getEligibilityRule().test(visitor)) {
+                sendError(exchange, 400, "不符合该设施的乘坐要求（" + ride.getEligibilityRule() + "）");
+            } else {
+                sendError(exchange, 429, "队列已满（上限" + ride.getQueueCapacity() + "人），请稍后再试");
+            }
+            return;
+        }
+        sendJson(exchange, 200, "{\"ok\":true,\"visitorId\":" + jsonString(visitor.getVisitorId())
+                + ",\"queueLength\":" + ride.getQueueLength() + "}");
+    }
+
+    private void runCycles(HttpExchange exchange, Ride ride, Map<String, String> params) throws IOException {
+        Integer count = params.containsKey("count") ? parseInt(params.get("count")) : Integer.valueOf(1);
+        if (count == null || count < 1) {
+            sendError(exchange, 400, "周期数必须为正整数");
+            return;
+        }
+        BatchResult result = ride.runCycles(count);
+        sendJson(exchange, 200, "{\"ok\":" + (result.getCyclesRun() > 0)
+                + ",\"cyclesRun\":" + result.getCyclesRun()
+                + ",\"ridersBoarded\":" + result.getRidersMoved()
+                + ",\"queueLength\":" + result.getQueueSize()
+                + ",\"totalCycles\":" + ride.getNumOfCycles() + "}");
+    }
+
+    private void history(HttpExchange exchange, Ride ride, Map<String, String> params) throws IOException {
+        Integer offset = params.containsKey("offset") ? parseInt(params.get("offset")) : Integer.valueOf(0);
+        Integer limit = params.containsKey("limit") ? parseInt(params.get("limit")) : Integer.valueOf(DEFAULT_HISTORY_LIMIT);
+        if (offset == null || limit == null || offset < 0 || limit < 1) {
+            sendError(exchange, 400, "offset必须≥0，limit必须≥1");
+            return;
+        }
+        Page<Visitor> page = ride.pageHistory(params.get("cursor"), offset, limit, null);
+        List<Visitor> visitors = page.getItems();
+        StringBuilder json = new StringBuilder("{\"ok\":true,\"offset\":").append(offset)
+                .append(",\"count\":").append(visitors.size())
+                .append(",\"nextCursor\":").append(jsonString(page.getNextCursor())).append(",\"visitors\":[");
+        for (int i = 0; i < visitors.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(visitorJson(visitors.get(i)));
+        }
+        sendJson(exchange, 200, json.append("]}").toString());
+    }
+
+    private void ridersBetween(HttpExchange exchange, Ride ride, Map<String, String> params) throws IOException {
+        LocalDateTime from;
+        LocalDateTime to;
+        try {
+            from = LocalDateTime.parse(params.getOrDefault("from", ""), DATE_FORMATTER);
+            to = LocalDateTime.parse(params.getOrDefault("to", ""), DATE_FORMATTER);
+        } catch (DateTimeParseException e) {
+            sendError(exchange, 400, "时间格式错误，请使用yyyy-MM-dd HH:mm");
+            return;
+        }
+        Integer limit = params.containsKey("limit") ? parseInt(params.get("limit")) : Integer.valueOf(DEFAULT_HISTORY_LIMIT);
+        if (limit == null || limit < 1) {
+            sendError(exchange, 400, "limit必须≥1");
+            return;
+        }
+        int total = ride.countRidesBetween(from, to);
+        List<Visitor> riders = ride.getRidersBetween(from, to, limit);
+        StringBuilder json = new StringBuilder("{\"ok\":true,\"total\":").append(total)
+                .append(",\"count\":").append(riders.size()).append(",\"visitors\":[");
+        for (int i = 0; i < riders.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(visitorJson(riders.get(i)));
+        }
+        sendJson(exchange, 200, json.append("]}").toString());
+    }
+
+    // ========================= 工具方法 =========================
+
+    private static Visitor createVisitor(String name, int age, String visitorId) {
+        String id = (visitorId == null || visitorId.isBlank())
+                ? "VIS-HTTP-" + VISITOR_SEQUENCE.incrementAndGet()
+                : visitorId.trim();
+        return new Visitor("PERSON-" + id, name, age, id, Visitor.MembershipType.STANDARD, false);
+    }
+
+    private static Integer parseInt(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 合并查询串与表单请求体中的参数（同名参数以请求体为准）
+     * @throws PayloadTooLargeException 请求体超过MAX_BODY_BYTES（最多只读取上限+1字节）
+     */
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        Long declaredLength = parseLong(exchange.getRequestHeaders().getFirst("Content-Length"));
+        if (declaredLength != null && declaredLength > MAX_BODY_BYTES) {
+            throw new PayloadTooLargeException();
+        }
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new PayloadTooLargeException();
+            }
+            if (bytes.length > 0) {
+                parseForm(new String(bytes, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 请求体超过上限（处理器返回413）
+     */
+    private static final class PayloadTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        PayloadTooLargeException() {
+            super("请求体过大（上限" + MAX_BODY_BYTES / 1024 + "KB）");
+        }
+    }
+
+    private static void parseForm(String form, Map<String, String> params) {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static String bookingJson(Booking booking) {
+        return "{\"bookingId\":" + jsonString(booking.getBookingId())
+                + ",\"visitorId\":" + jsonString(booking.getVisitor().getVisitorId())
+                + ",\"visitorName\":" + jsonString(booking.getVisitor().getName())
+                + ",\"rideId\":" + jsonString(booking.getRide().getRideId())
+                + ",\"rideName\":" + jsonString(booking.getRide().getName())
+                + ",\"time\":" + jsonString(booking.getBookingTime().format(DATE_FORMATTER))
+                + ",\"cancelled\":" + booking.isCancelled()
+                + ",\"noShow\":" + booking.isNoShow()
+                + ",\"queued\":" + booking.isQueued() + "}";
+    }
+
+    private static String rideJson(Ride ride) {
+        return "{\"rideId\":" + jsonString(ride.getRideId())
+                + ",\"name\":" + jsonString(ride.getName())
+                + ",\"type\":" + jsonString(ride.getRideType().name())
+                + ",\"maxRider\":" + ride.getMaxRider()
+                + ",\"queueLength\":" + ride.getQueueLength()
+                + ",\"estimatedWaitSeconds\":" + Math.round(ride.estimateWaitSeconds(ride.getQueueLength() + 1))
+                + ",\"cycles\":" + ride.getNumOfCycles() + "}";
+    }
+
+    private static String visitorJson(Visitor visitor) {
+        return "{\"visitorId\":" + jsonString(visitor.getVisitorId())
+                + ",\"name\":" + jsonString(visitor.getName())
+                + ",\"age\":" + visitor.getAge()
+                + ",\"membership\":" + jsonString(visitor.getMembershipType().name())
+                + ",\"insurance\":" + visitor.isHasRideInsurance() + "}";
+    }
+
+    /**
+     * JSON字符串转义（引号、反斜杠与控制字符）
+     */
+    static String jsonString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, "{\"ok\":false,\"error\":" + jsonString(message) + "}");
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
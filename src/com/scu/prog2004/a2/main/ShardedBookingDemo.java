@@ -0,0 +1,182 @@
+package com.scu.prog2004.a2.main;
+
+import com.scu.prog2004.a2.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 分片预约存储的本机多进程验证：每个子进程（独立JVM）只负责一个分片并写出自己的分片文件，
+ * 主进程随后加载全部分片文件，校验路由、总数、扇出查询与取消
+ * 用法：java com.scu.prog2004.a2.main.ShardedBookingDemo [分片数/进程数，默认4] [预约总数，默认20000]
+ * 所有进程按相同规则生成同一批预约，子进程只保留分片号等于自己序号的预约（模拟按设施路由到各园区服务）
+ */
+public class ShardedBookingDemo {
+    private static final String WORKER_FLAG = "--worker";
+    private static final int PARKS = 3;            // 园区数
+    private static final int RIDES_PER_PARK = 20;  // 每个园区的设施数
+    private static final int VISITORS = 500;       // 游客数（每个游客在多个园区都有预约）
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && WORKER_FLAG.equals(args[0])) {
+            runWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]), args[3], Integer.parseInt(args[4]));
+            return;
+        }
+        int shardCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int bookingCount = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        System.exit(runCoordinator(shardCount, bookingCount) ? 0 : 1);
+    }
+
+    /**
+     * 主进程：启动子进程 → 等待全部完成 → 加载全部分片文件并校验
+     */
+    private static boolean runCoordinator(int shardCount, int bookingCount) throws IOException, InterruptedException {
+        File directory = Files.createTempDirectory("booking-shards-").toFile();
+        LoggerUtil.info("📌 分片目录：" + directory + " | 分片数：" + shardCount + " | 预约总数：" + bookingCount);
+
+        long start = System.nanoTime();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> workers = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    ShardedBookingDemo.class.getName(), WORKER_FLAG, String.valueOf(i), String.valueOf(shardCount),
+                    directory.getPath(), String.valueOf(bookingCount));
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(new File(directory, "worker-" + i + ".log")); // 子进程日志单独保存，避免交错输出
+            workers.add(builder.start());
+        }
+        boolean ok = true;
+        for (int i = 0; i < workers.size(); i++) {
+            int exitCode = workers.get(i).waitFor();
+            if (exitCode != 0) {
+                LoggerUtil.error("❌ 子进程" + i + "异常退出（退出码" + exitCode + "），详见worker-" + i + ".log");
+                ok = false;
+            }
+        }
+        LoggerUtil.info("📊 " + shardCount + "个子进程写出分片文件耗时：" + (System.nanoTime() - start) / 1_000_000 + "ms");
+        if (!ok) {
+            return false;
+        }
+
+        List<Booking> expected = generateBookings(bookingCount);
+        try (ShardedBookingStore store = new ShardedBookingStore(shardCount, ShardedBookingStore.Strategy.BY_RIDE)) {
+            store.loadAll(directory.getPath());
+
+            // 1. 总数与各分片数量（子进程只保存属于自己的预约，分片数量之和应等于预约总数）
+            long[] counts = store.getShardBookingCounts();
+            long[] expectedCounts = new long[shardCount];
+            for (Booking booking : expected) {
+                expectedCounts[store.shardIndexFor(booking)]++;
+            }
+            for (int i = 0; i < shardCount; i++) {
+                LoggerUtil.info("📊 分片" + i + "：" + counts[i] + "条（期望" + expectedCounts[i] + "条）");
+                ok &= check(counts[i] == expectedCounts[i], "分片" + i + "预约数量");
+            }
+            ok &= check(store.getValidBookingCount() == bookingCount, "预约总数");
+
+            // 2. 每个分片中的预约都路由到该分片
+            for (int i = 0; i < shardCount; i++) {
+                BookingManager shard = store.getShard(i);
+                String cursor = null;
+                do {
+                    Page<Booking> page = shard.pageBookings(BookingSortKey.BOOKING_TIME, cursor, 0, 1000, null);
+                    for (Booking booking : page.getItems()) {
+                        ok &= check(store.shardIndexFor(booking) == i, "预约" + booking.getBookingId() + "的分片路由");
+                    }
+                    cursor = page.getNextCursor();
+                } while (cursor != null);
+            }
+
+            // 3. 按游客扇出查询（游客的预约分布在多个园区/分片）
+            long queryStart = System.nanoTime();
+            for (int v = 0; v < VISITORS; v++) {
+                String visitorId = "VIS-S-" + v;
+                int expectedForVisitor = 0;
+                for (int i = v; i < bookingCount; i += VISITORS) {
+                    expectedForVisitor++;
+                }
+                ok &= check(store.getBookingsByVisitorId(visitorId).size() == expectedForVisitor, "游客" + visitorId + "的预约数");
+            }
+            LoggerUtil.info("📊 " + VISITORS + "次按游客扇出查询耗时：" + (System.nanoTime() - queryStart) / 1_000_000 + "ms");
+
+            // 4. 按预约ID扇出取消，并保存/重新加载该分片
+            Booking target = store.getBookingsByVisitorId("VIS-S-0").get(0);
+            Optional<Booking> cancelled = store.cancelBookingById(target.getBookingId());
+            ok &= check(cancelled.isPresent(), "按预约ID取消");
+            ok &= check(store.getValidBookingCount() == bookingCount - 1, "取消后的预约总数");
+            ok &= check(!store.cancelBookingById("BOOK-NOT-EXIST").isPresent(), "取消不存在的预约");
+            store.saveAll(directory.getPath());
+        }
+        try (ShardedBookingStore reloaded = new ShardedBookingStore(shardCount, ShardedBookingStore.Strategy.BY_RIDE)) {
+            reloaded.loadAll(directory.getPath());
+            ok &= check(reloaded.getValidBookingCount() == bookingCount - 1, "重新加载后的预约总数");
+        }
+
+        if (ok) {
+            LoggerUtil.info("✅ 分片预约多进程验证通过（" + shardCount + "个进程/分片，" + bookingCount + "条预约）");
+            File[] files = directory.listFiles();
+            for (File file : files != null ? files : new File[0]) {
+                file.delete();
+            }
+            directory.delete();
+        } else {
+            LoggerUtil.error("❌ 分片预约多进程验证失败，分片文件保留在：" + directory);
+        }
+        return ok;
+    }
+
+    /**
+     * 子进程：生成全部预约，只保留属于本分片的预约并写出本分片文件
+     */
+    private static void runWorker(int shardIndex, int shardCount, String directory, int bookingCount) {
+        try (ShardedBookingStore store = new ShardedBookingStore(shardCount, ShardedBookingStore.Strategy.BY_RIDE)) {
+            int owned = 0;
+            for (Booking booking : generateBookings(bookingCount)) {
+                if (store.shardIndexFor(booking) == shardIndex) {
+                    store.addBooking(booking);
+                    owned++;
+                }
+            }
+            store.saveShard(shardIndex, directory);
+            LoggerUtil.info("✅ 子进程" + shardIndex + "写出分片文件：" + owned + "条预约");
+        }
+    }
+
+    /**
+     * 按固定规则生成预约：第i条预约属于游客i%VISITORS，设施在所有园区的设施中轮转
+     * 预约ID由序号决定（所有进程生成相同的ID；自动生成的ID只保证进程内不重复，合并多个进程的分片后可能冲突）
+     */
+    private static List<Booking> generateBookings(int bookingCount) {
+        List<Ride> rides = new ArrayList<>(PARKS * RIDES_PER_PARK);
+        for (int park = 1; park <= PARKS; park++) {
+            for (int r = 1; r <= RIDES_PER_PARK; r++) {
+                String rideId = String.format("P%d-R%03d", park, r);
+                rides.add(new Ride(rideId, "园区" + park + "设施" + r, new Employee(), 4));
+            }
+        }
+        List<Visitor> visitors = new ArrayList<>(VISITORS);
+        Visitor.MembershipType[] types = Visitor.MembershipType.values();
+        for (int v = 0; v < VISITORS; v++) {
+            visitors.add(new Visitor("PERSON-S-" + v, "分片游客" + v, 18 + v % 50, "VIS-S-" + v, types[v % types.length], v % 2 == 0));
+        }
+        LocalDateTime base = LocalDateTime.now().plusDays(1).withSecond(0).withNano(0);
+        List<Booking> bookings = new ArrayList<>(bookingCount);
+        for (int i = 0; i < bookingCount; i++) {
+            bookings.add(new Booking("BOOK-S-" + i, visitors.get(i % VISITORS), rides.get(i % rides.size()),
+                    base.plusMinutes(i % 10_000)));
+        }
+        return bookings;
+    }
+
+    private static boolean check(boolean condition, String what) {
+        if (!condition) {
+            LoggerUtil.error("❌ 校验失败：" + what);
+        }
+        return condition;
+    }
+}
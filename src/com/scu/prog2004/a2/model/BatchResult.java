@@ -0,0 +1,45 @@
+package com.scu.prog2004.a2.model;
+
+/**
+ * 批量操作结果类：汇总一次批量调用（批量入队/批量追加历史/多周期运行）的执行情况
+ * 设计思路：不可变值对象，批量方法只返回一个结果对象，替代逐条日志输出
+ */
+public final class BatchResult {
+    private final String operation;     // 操作名称（如"批量入队"）
+    private final int requested;        // 请求处理的数量（游客数或周期数）
+    private final int accepted;         // 成功处理的数量
+    private final int rejected;         // 被拒绝的数量（空游客/不符合资格等）
+    private final int cyclesRun;        // 实际运行的周期数（非周期操作为0）
+    private final int ridersMoved;      // 从队列移入历史的游客数（非周期操作为0）
+    private final int queueSize;        // 操作完成后的队列长度
+    private final int historySize;      // 操作完成后的历史总人数
+
+    public BatchResult(String operation, int requested, int accepted, int rejected,
+                       int cyclesRun, int ridersMoved, int queueSize, int historySize) {
+        this.operation = operation;
+        this.requested = requested;
+        this.accepted = accepted;
+        this.rejected = rejected;
+        this.cyclesRun = cyclesRun;
+        this.ridersMoved = ridersMoved;
+        this.queueSize = queueSize;
+        this.historySize = historySize;
+    }
+
+    // 访问器（只读）
+    public String getOperation() { return operation; }
+    public int getRequested() { return requested; }
+    public int getAccepted() { return accepted; }
+    public int getRejected() { return rejected; }
+    public int getCyclesRun() { return cyclesRun; }
+    public int getRidersMoved() { return ridersMoved; }
+    public int getQueueSize() { return queueSize; }
+    public int getHistorySize() { return historySize; }
+
+    @Override
+    public String toString() {
+        return String.format("BatchResult{operation='%s', requested=%d, accepted=%d, rejected=%d, "
+                        + "cyclesRun=%d, ridersMoved=%d, queueSize=%d, historySize=%d}",
+                operation, requested, accepted, rejected, cyclesRun, ridersMoved, queueSize, historySize);
+    }
+}
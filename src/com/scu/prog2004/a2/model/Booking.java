@@ -2,7 +2,7 @@ package com.scu.prog2004.a2.model;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 预约类（封装游乐设施预约信息）
@@ -10,32 +10,68 @@ import java.time.format.DateTimeFormatter;
  */
 public class Booking implements Serializable {
     private static final long serialVersionUID = 1L; // 序列化版本号
+    // 预约序号：随机起点+递增，保证同一分钟内并发创建的预约ID不重复
+    private static final AtomicInteger SEQUENCE = new AtomicInteger((int) (Math.random() * 1000));
     private final String bookingId;       // 预约ID（自动生成）
     private final Visitor visitor;        // 预约游客
-    private final Ride ride;              // 预约设施
+    private Ride ride;                    // 预约设施（加载预约文件后重新绑定到设施池中的实例）
     private LocalDateTime bookingTime;    // 预约时间
     private boolean isCancelled;          // 是否取消
+    private LocalDateTime cancelledAt;    // 取消时间（压缩按保留期归档已取消预约的依据；旧版本数据为null）
+    private boolean noShow;               // 是否因未到场而过期（过期视同取消，不再是有效预约）
+    private LocalDateTime queuedAt;       // 到时后被调度进设施等待队列的时间（null表示尚未入队；入队后不再按未到场过期）
+    private transient String bookingTimeText; // 预约时间的展示文本缓存（修改预约时间时作废，不参与序列化）
 
     // 构造器：自动生成预约ID
     public Booking(Visitor visitor, Ride ride, LocalDateTime bookingTime) {
         this.bookingId = String.format("BOOK-%tY%<tm%<td-%<tH%<tM-%d",
-                System.currentTimeMillis(), (int) (Math.random() * 1000));
+                System.currentTimeMillis(), SEQUENCE.getAndIncrement());
         this.visitor = visitor;
         this.ride = ride;
         this.bookingTime = bookingTime;
         this.isCancelled = false;
     }
 
+    // 指定ID构造器：由外部系统或多进程分片部署统一分配全局唯一预约ID时使用（自动生成的ID只保证进程内不重复）
+    public Booking(String bookingId, Visitor visitor, Ride ride, LocalDateTime bookingTime) {
+        this(bookingId, visitor, ride, bookingTime, false);
+        if (bookingId == null || bookingId.isBlank()) {
+            throw new IllegalArgumentException("预约ID不能为空");
+        }
+    }
+
+    // 恢复构造器：从检查点还原已有预约（保留原预约ID与取消状态，包内可见）
+    Booking(String bookingId, Visitor visitor, Ride ride, LocalDateTime bookingTime, boolean isCancelled) {
+        this(bookingId, visitor, ride, bookingTime, isCancelled, null, false, null);
+    }
+
+    Booking(String bookingId, Visitor visitor, Ride ride, LocalDateTime bookingTime, boolean isCancelled,
+            LocalDateTime cancelledAt, boolean noShow, LocalDateTime queuedAt) {
+        this.bookingId = bookingId;
+        this.visitor = visitor;
+        this.ride = ride;
+        this.bookingTime = bookingTime;
+        this.isCancelled = isCancelled;
+        this.cancelledAt = isCancelled ? cancelledAt : null;
+        this.noShow = isCancelled && noShow;
+        this.queuedAt = noShow ? null : queuedAt;
+    }
+
     // Getter/Setter（含参数校验）
     public String getBookingId() { return bookingId; }
     public Visitor getVisitor() { return visitor; }
     public Ride getRide() { return ride; }
     public LocalDateTime getBookingTime() { return bookingTime; }
     public boolean isCancelled() { return isCancelled; }
+    public LocalDateTime getCancelledAt() { return cancelledAt; }
+    public boolean isNoShow() { return noShow; }
+    public LocalDateTime getQueuedAt() { return queuedAt; }
+    public boolean isQueued() { return queuedAt != null; }
 
     public void setBookingTime(LocalDateTime bookingTime) {
         if (bookingTime.isAfter(LocalDateTime.now())) {
             this.bookingTime = bookingTime;
+            this.bookingTimeText = null;
         } else {
             LoggerUtil.error("警告：预约时间必须晚于当前时间！");
         }
@@ -43,15 +79,40 @@ public class Booking implements Serializable {
 
     public void cancelBooking() {
         this.isCancelled = true;
+        this.cancelledAt = LocalDateTime.now();
         LoggerUtil.info("✅ 预约[" + bookingId + "]已取消");
     }
 
-    // 格式化输出预约信息
+    // 标记为未到场过期（由BookingManager的时间轮触发，批量发生，不逐条打印日志；包内可见）
+    void markNoShow() {
+        this.isCancelled = true;
+        this.noShow = true;
+        this.cancelledAt = LocalDateTime.now();
+    }
+
+    // 重新绑定预约设施（反序列化得到的是设施副本，加载后绑定到设施池中的同ID实例；包内可见）
+    void bindRide(Ride ride) {
+        this.ride = ride;
+    }
+
+    // 标记为已调度进设施等待队列（由BookingDispatcher批量触发，不逐条打印日志；包内可见）
+    void markQueued() {
+        this.queuedAt = LocalDateTime.now();
+    }
+
+    // 预约时间的展示文本（yyyy-MM-dd HH:mm，首次使用时生成并缓存；包内可见）
+    String getBookingTimeText() {
+        String text = bookingTimeText;
+        if (text == null) {
+            text = DisplayRenderer.appendMinute(new StringBuilder(16), bookingTime).toString();
+            bookingTimeText = text;
+        }
+        return text;
+    }
+
+    // 格式化输出预约信息（状态与游客姓名可能变化，每次重新拼接；时间文本使用缓存）
     @Override
     public String toString() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-        return String.format("预约ID：%s | 游客：%s | 设施：%s | 时间：%s | 状态：%s",
-                bookingId, visitor.getName(), ride.getName(),
-                bookingTime.format(formatter), isCancelled ? "已取消" : "有效");
+        return DisplayRenderer.appendBooking(new StringBuilder(96), this).toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,213 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 预约压缩：把超过保留期的已取消预约（墓碑）与已过期预约追加到冷归档文件，并从BookingManager的热数据中移除，
+ * 让查询、分页与saveBookingsToFile只处理仍有意义的预约
+ * 增量执行：每批最多batchSize条，分三步——
+ *   1. 持锁取出一批（只读取有序结构的头部）；
+ *   2. 释放锁后追加写入归档文件并刷盘（预约操作不等待IO）；
+ *   3. 再次短暂持锁移除这一批；
+ * 批与批之间释放锁，新增/取消预约可以穿插进行
+ * 保留期：取消时间（或预约时间）早于"当前时间 − 保留期"的预约才归档，保留期内的已取消预约仍参与预约ID去重
+ * （批量导入按外部键幂等依赖于此）；可通过系统属性park.bookings.retentionHours配置，默认72小时
+ * 归档文件（UTF-8 CSV，只追加）：bookingId,status,cancelledAt,visitorId,personId,name,age,membershipType,hasInsurance,rideId,bookingTime
+ * 说明：先写归档再移除，若写入后、移除前进程退出，下次压缩会再次归档同一预约（归档文件按预约ID去重读取即可）
+ */
+public class BookingCompactor implements AutoCloseable {
+    public static final String RETENTION_PROPERTY = "park.bookings.retentionHours";
+    private static final long DEFAULT_RETENTION_HOURS = 72;
+    private static final int DEFAULT_BATCH_SIZE = 5_000;
+    private static final String ARCHIVE_HEADER = "bookingId,status,cancelledAt,visitorId,personId,name,age,membershipType,hasInsurance,rideId,bookingTime";
+    private static final DateTimeFormatter TIME_FORMATTER = DisplayRenderer.SECOND_FORMATTER;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final BookingManager bookingManager;
+    private final String archivePath;
+    private final Duration retention;
+    private final int batchSize;
+    private ScheduledExecutorService scheduler; // 后台定期压缩（start时创建）
+
+    /**
+     * 使用系统属性配置的保留期（默认72小时）与默认批大小
+     */
+    public BookingCompactor(BookingManager bookingManager, String archivePath) {
+        this(bookingManager, archivePath, Duration.ofHours(Long.getLong(RETENTION_PROPERTY, DEFAULT_RETENTION_HOURS)),
+                DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param bookingManager 被压缩的预约管理器
+     * @param archivePath 冷归档文件路径（不存在时自动创建并写表头）
+     * @param retention 保留期（负值按0处理）
+     * @param batchSize 每批归档的最大条数（决定每次持锁的工作量）
+     */
+    public BookingCompactor(BookingManager bookingManager, String archivePath, Duration retention, int batchSize) {
+        this.bookingManager = bookingManager;
+        this.archivePath = archivePath;
+        this.retention = retention.isNegative() ? Duration.ZERO : retention;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public Duration getRetention() {
+        return retention;
+    }
+
+    /**
+     * 执行一轮压缩：分批归档直到没有超过保留期的预约（同一时刻只有一轮在执行）
+     * @return 本轮统计（归档文件写入失败时该批不会被移除，统计中记录错误信息）
+     */
+    public synchronized Result compact() {
+        long start = System.nanoTime();
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        int cancelled = 0;
+        int expired = 0;
+        int batches = 0;
+        String error = null;
+        while (true) {
+            List<Booking> batch = bookingManager.collectCompactable(cutoff, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            try {
+                appendToArchive(batch);
+            } catch (IOException e) {
+                error = e.getMessage();
+                break;
+            }
+            int removed = bookingManager.removeCompacted(batch);
+            batches++;
+            for (Booking booking : batch) {
+                if (booking.isCancelled()) {
+                    cancelled++;
+                } else {
+                    expired++;
+                }
+            }
+            if (removed == 0 || batch.size() < batchSize) {
+                break; // 本批已是最后一批（或预约已被整体替换，避免重复归档同一批）
+            }
+        }
+        Result result = new Result(cancelled, expired, batches, (System.nanoTime() - start) / 1_000_000, error);
+        if (error != null) {
+            LoggerUtil.error("❌ 预约压缩中断：归档文件写入失败（" + error + "）| " + result);
+        } else if (result.getArchived() > 0) {
+            LoggerUtil.info("✅ 预约压缩完成（归档到" + new File(archivePath).getAbsolutePath() + "）：" + result);
+        }
+        return result;
+    }
+
+    /**
+     * 启动后台定期压缩（守护线程，启动后立即执行一轮；重复调用无效）
+     * @param intervalMinutes 两轮压缩之间的间隔（分钟，≥1）
+     */
+    public synchronized void start(long intervalMinutes) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "booking-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (RuntimeException e) {
+                LoggerUtil.error("❌ 预约压缩异常：" + e.getMessage()); // 记录后继续下一轮，避免定时任务被取消
+            }
+        }, 0, Math.max(1, intervalMinutes), TimeUnit.MINUTES);
+        LoggerUtil.info("📌 预约后台压缩已启动（保留期" + retention.toHours() + "小时，每" + Math.max(1, intervalMinutes) + "分钟一轮）");
+    }
+
+    /**
+     * 停止后台压缩（正在执行的一批会完成写入，已归档的数据不受影响）
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 追加一批预约到归档文件并刷盘（新文件先写表头；不持有BookingManager的锁）
+     */
+    private void appendToArchive(List<Booking> batch) throws IOException {
+        File file = new File(archivePath);
+        boolean newFile = !file.exists() || file.length() == 0;
+        try (FileOutputStream stream = new FileOutputStream(file, true);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            if (newFile) {
+                writer.write(ARCHIVE_HEADER);
+                writer.newLine();
+            }
+            StringBuilder line = new StringBuilder(160);
+            for (Booking booking : batch) {
+                Visitor visitor = booking.getVisitor();
+                line.setLength(0);
+                line.append(booking.getBookingId()).append(',')
+                        .append(booking.isNoShow() ? "NO_SHOW" : booking.isCancelled() ? "CANCELLED" : booking.isQueued() ? "QUEUED" : "EXPIRED").append(',')
+                        .append(booking.getCancelledAt() != null ? booking.getCancelledAt().format(TIME_FORMATTER) : "").append(',')
+                        .append(visitor.getVisitorId()).append(',')
+                        .append(visitor.getId()).append(',')
+                        .append(visitor.getName() != null ? visitor.getName().replace(",", " ") : "").append(',')
+                        .append(visitor.getAge()).append(',')
+                        .append(visitor.getMembershipType().name()).append(',')
+                        .append(visitor.isHasRideInsurance()).append(',')
+                        .append(booking.getRide().getRideId()).append(',')
+                        .append(booking.getBookingTime().format(TIME_FORMATTER));
+                writer.append(line);
+                writer.newLine();
+            }
+            writer.flush();
+            stream.getFD().sync(); // 归档落盘后才从热数据中移除
+        }
+    }
+
+    /**
+     * 一轮压缩的统计（不可变）
+     */
+    public static final class Result {
+        private final int cancelled;  // 归档的已取消预约
+        private final int expired;    // 归档的已过期有效预约
+        private final int batches;
+        private final long millis;
+        private final String error;   // null表示本轮正常完成
+
+        Result(int cancelled, int expired, int batches, long millis, String error) {
+            this.cancelled = cancelled;
+            this.expired = expired;
+            this.batches = batches;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        public int getCancelled() { return cancelled; }
+        public int getExpired() { return expired; }
+        public int getArchived() { return cancelled + expired; }
+        public int getBatches() { return batches; }
+        public long getMillis() { return millis; }
+        public String getError() { return error; }
+
+        @Override
+        public String toString() {
+            return String.format("归档%d条（已取消%d条/已过期%d条），%d批，耗时%dms",
+                    getArchived(), cancelled, expired, batches, millis);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.scu.prog2004.a2.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预约到时调度：预约时段开始时，把到时的预约游客按设施分组，一次性批量放入对应设施的等待队列（优先排在现场游客之前）
+ * 由BookingManager的预约时间轮驱动：每个刻度只处理本刻度到时的预约，代价为O(本时段的预约数)，不扫描全部预约
+ *   1. 时间轮触发"到时"阶段，BookingManager汇总本刻度到时的预约，释放自身锁后交给本类；
+ *   2. 按设施分组，每个设施调用一次addBookedVisitorsToQueue（一次持有设施锁、一条日志、一个事件），
+ *      资格校验与入队在同一次持锁中完成，设施返回实际入队的游客；
+ *   3. 再次短暂持有BookingManager的锁，只把实际入队的预约标记为已入队（取消其未到场过期定时器）
+ * 不符合设施当前资格规则的预约游客不入队，预约保持有效，超过到场宽限期后按未到场过期
+ * 设施按预约的设施ID在设施池中查找（游客进入菜单/HTTP/看板实际运行的设施实例）；设施不在目录中的预约跳过并记录错误
+ * 前提：BookingManager已调用startBookingTimers启用预约定时器
+ */
+public class BookingDispatcher implements AutoCloseable {
+    private final BookingManager bookingManager;
+    private final RideManager rideManager;
+
+    public BookingDispatcher(BookingManager bookingManager) {
+        this(bookingManager, RideManager.getInstance());
+    }
+
+    public BookingDispatcher(BookingManager bookingManager, RideManager rideManager) {
+        this.bookingManager = bookingManager;
+        this.rideManager = rideManager;
+    }
+
+    /**
+     * 开始接收到时预约（替换BookingManager原有的到时处理者；重复调用无副作用）
+     */
+    public void start() {
+        bookingManager.setDueBookingHandler(this::dispatch);
+        LoggerUtil.info("📌 预约到时调度已启动（预约时段开始时自动放入设施等待队列，优先于现场排队游客）");
+    }
+
+    /**
+     * 停止接收到时预约（已入队的游客不受影响）
+     */
+    @Override
+    public void close() {
+        bookingManager.setDueBookingHandler(null);
+    }
+
+    /**
+     * 把一批到时的预约按设施分组放入等待队列（同一设施内保持传入顺序）
+     * @param dueBookings 到时的预约（已取消或已入队的预约跳过）
+     * @return 本批统计
+     */
+    public Result dispatch(Collection<Booking> dueBookings) {
+        long start = System.nanoTime();
+        Map<Ride, List<Booking>> byRide = new LinkedHashMap<>(); // 按首次出现的先后处理设施（日志顺序稳定）
+        int skipped = 0;
+        int unknownRide = 0;
+        for (Booking booking : dueBookings) {
+            if (booking.isCancelled() || booking.isQueued()) {
+                skipped++;
+                continue;
+            }
+            Ride ride = rideManager.findRide(booking.getRide().getRideId());
+            if (ride == null) {
+                unknownRide++;
+                continue;
+            }
+            byRide.computeIfAbsent(ride, key -> new ArrayList<>()).add(booking);
+        }
+        if (unknownRide > 0) {
+            LoggerUtil.error("❌ 预约到时调度：" + unknownRide + "条预约的设施不在设施目录中，未入队");
+        }
+
+        List<Booking> queued = new ArrayList<>();
+        int ineligible = 0;
+        for (Map.Entry<Ride, List<Booking>> entry : byRide.entrySet()) {
+            Ride ride = entry.getKey();
+            List<Booking> bookings = entry.getValue();
+            List<Visitor> visitors = new ArrayList<>(bookings.size());
+            for (Booking booking : bookings) {
+                visitors.add(booking.getVisitor());
+            }
+            BitSet admitted = new BitSet(bookings.size());
+            ride.addBookedVisitorsToQueue(visitors, admitted);
+            for (int i = admitted.nextSetBit(0); i >= 0; i = admitted.nextSetBit(i + 1)) {
+                queued.add(bookings.get(i));
+            }
+            ineligible += bookings.size() - admitted.cardinality();
+        }
+        int marked = queued.isEmpty() ? 0 : bookingManager.markQueued(queued);
+        Result result = new Result(marked, byRide.size(), ineligible, unknownRide, skipped,
+                (System.nanoTime() - start) / 1_000);
+        if (marked > 0 || ineligible > 0) {
+            LoggerUtil.info("📌 预约到时调度：" + result);
+        }
+        return result;
+    }
+
+    /**
+     * 一批调度的统计（不可变）
+     */
+    public static final class Result {
+        private final int queued;      // 放入等待队列并标记为已入队的预约数
+        private final int rides;       // 涉及的设施数（每个设施一次批量入队）
+        private final int ineligible;  // 不符合设施资格规则、未入队的预约数
+        private final int unknownRide; // 设施不在设施目录中、未入队的预约数
+        private final int skipped;     // 已取消或已入队而跳过的预约数
+        private final long micros;
+
+        Result(int queued, int rides, int ineligible, int unknownRide, int skipped, long micros) {
+            this.queued = queued;
+            this.rides = rides;
+            this.ineligible = ineligible;
+            this.unknownRide = unknownRide;
+            this.skipped = skipped;
+            this.micros = micros;
+        }
+
+        public int getQueued() { return queued; }
+        public int getRides() { return rides; }
+        public int getIneligible() { return ineligible; }
+        public int getUnknownRide() { return unknownRide; }
+        public int getSkipped() { return skipped; }
+        public long getMicros() { return micros; }
+
+        @Override
+        public String toString() {
+            return String.format("%d条预约进入%d个设施的等待队列（不符合资格%d条，设施未知%d条，跳过%d条），耗时%.1fms",
+                    queued, rides, ineligible, unknownRide, skipped, micros / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 合作方预约批量导入：从CSV或二进制文件流式读取预约记录，按批校验后批量写入BookingManager
+ * 幂等：每条记录带合作方的外部键，预约ID固定为"EXT-外部键"，BookingManager按预约ID去重，
+ * 同一文件重复导入（或中途失败后重新导入）不会产生重复预约，已取消的预约也不会被重新创建
+ * 文件格式（按扩展名选择）：
+ *   - CSV（默认，UTF-8，首行为表头）：externalKey,visitorId,personId,name,age,membershipType,hasInsurance,rideId,bookingTime
+ *     预约时间格式 yyyy-MM-dd HH:mm；
+ *   - 二进制（.bkb）：魔数"BKB1"后为连续记录，每条依次为 外部键/游客ID/证件号/姓名/设施ID（writeUTF）、
+ *     年龄（int）、会员等级序号（byte）、是否购买保险（boolean）、预约时间（long，本地时间按UTC换算的秒数）
+ * 校验：设施ID必须在设施目录中（每个不同的设施ID只查找一次）、预约时间需晚于当前时间至少10分钟（与交互式预约规则一致）、
+ * 游客需符合设施的乘坐资格；同一游客ID在一次导入中只创建一个游客对象（以首次出现的信息为准）
+ */
+public class BookingImporter {
+    public static final String BINARY_EXTENSION = ".bkb";
+    public static final String EXTERNAL_ID_PREFIX = "EXT-";
+    private static final String CSV_HEADER = "externalKey,visitorId,personId,name,age,membershipType,hasInsurance,rideId,bookingTime";
+    private static final int CSV_COLUMNS = 9;
+    private static final byte[] BINARY_MAGIC = {'B', 'K', 'B', '1'};
+    private static final DateTimeFormatter TIME_FORMATTER = DisplayRenderer.MINUTE_FORMATTER;
+    private static final int MIN_LEAD_MINUTES = 10;   // 预约至少提前的分钟数
+    private static final int DEFAULT_BATCH_SIZE = 10_000;
+    private static final int MAX_LOGGED_REJECTIONS = 10; // 只打印前若干条拒绝原因，其余只计数
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+
+    private final RideManager rideManager;
+    private final BookingManager bookingManager;
+    private final int batchSize;
+
+    public BookingImporter(RideManager rideManager, BookingManager bookingManager) {
+        this(rideManager, bookingManager, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize 每批校验并写入的记录数（每批只对BookingManager加锁一次）
+     */
+    public BookingImporter(RideManager rideManager, BookingManager bookingManager, int batchSize) {
+        this.rideManager = rideManager;
+        this.bookingManager = bookingManager;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * 导入预约文件（扩展名为.bkb时按二进制格式读取，否则按CSV读取）
+     * @param filePath 文件路径
+     * @return 导入报告（文件无法读取时报告中记录错误信息，已写入的批次保持有效，重新导入时会被去重跳过）
+     */
+    public ImportReport importFile(String filePath) {
+        long start = System.nanoTime();
+        Batch batch = new Batch();
+        String error = null;
+        try {
+            if (filePath.toLowerCase().endsWith(BINARY_EXTENSION)) {
+                readBinary(filePath, batch);
+            } else {
+                readCsv(filePath, batch);
+            }
+        } catch (IOException e) {
+            error = e.getMessage();
+        }
+        batch.flush();
+        ImportReport report = new ImportReport(filePath, batch.read, batch.accepted, batch.duplicates,
+                batch.malformed, batch.unknownRide, batch.invalidTime, batch.ineligible,
+                (System.nanoTime() - start) / 1_000_000, error);
+        if (error == null) {
+            LoggerUtil.info("✅ 预约批量导入完成：" + report);
+        } else {
+            LoggerUtil.error("❌ 预约批量导入中断（" + error + "）：" + report);
+        }
+        return report;
+    }
+
+    // ========================= 读取 =========================
+
+    private void readCsv(String filePath, Batch batch) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8), IO_BUFFER_BYTES)) {
+            String line = reader.readLine(); // 跳过表头
+            if (line != null && !line.startsWith("externalKey")) {
+                batch.addLine(line); // 没有表头时第一行也是数据
+            }
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    batch.addLine(line);
+                }
+            }
+        }
+    }
+
+    private void readBinary(String filePath, Batch batch) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath), IO_BUFFER_BYTES))) {
+            byte[] magic = new byte[BINARY_MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, BINARY_MAGIC)) {
+                throw new IOException("不是有效的二进制预约文件（魔数不匹配）");
+            }
+            Visitor.MembershipType[] membershipTypes = Visitor.MembershipType.values();
+            while (true) {
+                String externalKey;
+                try {
+                    externalKey = in.readUTF();
+                } catch (EOFException e) {
+                    break; // 文件正常结束
+                }
+                String visitorId = in.readUTF();
+                String personId = in.readUTF();
+                String name = in.readUTF();
+                String rideId = in.readUTF();
+                int age = in.readInt();
+                int membership = in.readByte();
+                boolean hasInsurance = in.readBoolean();
+                long seconds = in.readLong();
+                if (membership < 0 || membership >= membershipTypes.length) {
+                    batch.malformed++;
+                    batch.reject("会员等级序号无效：", membership, externalKey);
+                    continue;
+                }
+                batch.add(externalKey, visitorId, personId, name, age, membershipTypes[membership], hasInsurance,
+                        rideId, LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC));
+            }
+        }
+    }
+
+    /**
+     * 解析"yyyy-MM-dd HH:mm"：固定宽度时直接按位取数字（比DateTimeFormatter快一个数量级），
+     * 其他情况交给DateTimeFormatter，保证校验规则与错误信息一致
+     */
+    static LocalDateTime parseTime(String text) {
+        if (text.length() == 16 && text.charAt(4) == '-' && text.charAt(7) == '-'
+                && text.charAt(10) == ' ' && text.charAt(13) == ':') {
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 7);
+            int day = digits(text, 8, 10);
+            int hour = digits(text, 11, 13);
+            int minute = digits(text, 14, 16);
+            if (year >= 0 && month >= 0 && day >= 0 && hour >= 0 && minute >= 0) {
+                try {
+                    return LocalDateTime.of(year, month, day, hour, minute);
+                } catch (DateTimeException e) {
+                    // 数值越界（如2月30日），交给DateTimeFormatter给出标准错误信息
+                }
+            }
+        }
+        return LocalDateTime.parse(text, TIME_FORMATTER);
+    }
+
+    // 解析[from, to)范围内的十进制数字（含非数字字符时返回-1）
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // ========================= 写出（供合作方与测试生成数据） =========================
+
+    /**
+     * 写出预约文件（扩展名为.bkb时写二进制格式，否则写CSV），格式与importFile读取的一致
+     */
+    public static void writeFeed(String filePath, List<FeedRecord> records) throws IOException {
+        if (filePath.toLowerCase().endsWith(BINARY_EXTENSION)) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath), IO_BUFFER_BYTES))) {
+                out.write(BINARY_MAGIC);
+                for (FeedRecord record : records) {
+                    Visitor visitor = record.getVisitor();
+                    out.writeUTF(record.getExternalKey());
+                    out.writeUTF(visitor.getVisitorId());
+                    out.writeUTF(visitor.getId());
+                    out.writeUTF(visitor.getName());
+                    out.writeUTF(record.getRideId());
+                    out.writeInt(visitor.getAge());
+                    out.writeByte(visitor.getMembershipType().ordinal());
+                    out.writeBoolean(visitor.isHasRideInsurance());
+                    out.writeLong(record.getBookingTime().toEpochSecond(ZoneOffset.UTC));
+                }
+            }
+            return;
+        }
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8), IO_BUFFER_BYTES)) {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            StringBuilder line = new StringBuilder(128);
+            for (FeedRecord record : records) {
+                Visitor visitor = record.getVisitor();
+                line.setLength(0);
+                line.append(record.getExternalKey()).append(',')
+                        .append(visitor.getVisitorId()).append(',')
+                        .append(visitor.getId()).append(',')
+                        .append(visitor.getName().replace(",", " ")).append(',')
+                        .append(visitor.getAge()).append(',')
+                        .append(visitor.getMembershipType().name()).append(',')
+                        .append(visitor.isHasRideInsurance()).append(',')
+                        .append(record.getRideId()).append(',')
+                        .append(record.getBookingTime().format(TIME_FORMATTER));
+                writer.append(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    // ========================= 批次校验与写入 =========================
+
+    /**
+     * 一次导入的批次状态：积累一批通过格式解析的记录，满批时统一校验并一次性写入BookingManager
+     */
+    private final class Batch {
+        private final Map<String, Ride> ridesById = new HashMap<>();         // 设施ID → 设施（未登记的设施映射为null）
+        private final Map<String, Visitor> visitorsById = new HashMap<>();   // 游客ID → 游客（本次导入内复用）
+        private final List<PendingRecord> pending = new ArrayList<>(batchSize);
+        private String cachedTimeText;     // 连续记录的时间文本相同时复用解析结果
+        private LocalDateTime cachedTime;
+        private int lineNumber = 1;        // CSV行号（表头为第1行）
+        int read;
+        int accepted;
+        int duplicates;
+        int malformed;
+        int unknownRide;
+        int invalidTime;
+        int ineligible;
+        private int logged;
+
+        void addLine(String line) {
+            lineNumber++;
+            String[] parts = line.split(",");
+            if (parts.length != CSV_COLUMNS) {
+                malformed++;
+                reject("列数应为" + CSV_COLUMNS + "，行号：", lineNumber, line);
+                return;
+            }
+            try {
+                String timeText = parts[8].trim();
+                if (!timeText.equals(cachedTimeText)) {
+                    cachedTime = parseTime(timeText);
+                    cachedTimeText = timeText;
+                }
+                add(parts[0].trim(), parts[1].trim(), parts[2].trim(), parts[3].trim(), Integer.parseInt(parts[4].trim()),
+                        Visitor.MembershipType.valueOf(parts[5].trim()), Boolean.parseBoolean(parts[6].trim()),
+                        parts[7].trim(), cachedTime);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                malformed++;
+                reject("数据转换失败（" + e.getMessage() + "），行号：", lineNumber, line);
+            }
+        }
+
+        void add(String externalKey, String visitorId, String personId, String name, int age,
+                 Visitor.MembershipType membershipType, boolean hasInsurance, String rideId, LocalDateTime bookingTime) {
+            if (externalKey.isEmpty() || visitorId.isEmpty() || rideId.isEmpty()) {
+                malformed++;
+                reject("外部键、游客ID与设施ID不能为空", "", externalKey);
+                return;
+            }
+            read++;
+            Visitor visitor = visitorsById.computeIfAbsent(visitorId,
+                    id -> new Visitor(personId, name, age, id, membershipType, hasInsurance));
+            // 设施暂不解析，整批校验时统一查找
+            pending.add(new PendingRecord(EXTERNAL_ID_PREFIX + externalKey, visitor, rideId, bookingTime));
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        /**
+         * 整批校验（设施ID、预约时间、乘坐资格）后一次性写入；重复的外部键由BookingManager按预约ID跳过
+         */
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            LocalDateTime earliest = LocalDateTime.now().plusMinutes(MIN_LEAD_MINUTES); // 每批只取一次当前时间
+            List<Booking> valid = new ArrayList<>(pending.size());
+            for (PendingRecord record : pending) {
+                Ride ride = ridesById.computeIfAbsent(record.rideId, rideManager::findRide);
+                if (ride == null) {
+                    unknownRide++;
+                    reject("设施不存在：", record.rideId, record.bookingId);
+                } else if (record.bookingTime.isBefore(earliest)) {
+                    invalidTime++;
+                    reject("预约时间需晚于当前时间至少" + MIN_LEAD_MINUTES + "分钟：", record.bookingTime, record.bookingId);
+                } else if (!ride.getEligibilityRule().test(record.visitor)) {
+                    ineligible++;
+                    reject("不符合乘坐要求，设施：", record.rideId, record.bookingId);
+                } else {
+                    valid.add(new Booking(record.bookingId, record.visitor, ride, record.bookingTime));
+                }
+            }
+            int added = bookingManager.addBookings(valid);
+            accepted += added;
+            duplicates += valid.size() - added;
+            pending.clear();
+        }
+
+        /**
+         * 打印拒绝原因（只打印前MAX_LOGGED_REJECTIONS条；原因文本在需要打印时才拼接，计数由调用方负责）
+         */
+        void reject(String reason, Object detail, String record) {
+            if (logged < MAX_LOGGED_REJECTIONS) {
+                logged++;
+                LoggerUtil.error("警告：跳过预约记录（" + reason + detail + "）：" + record);
+            }
+        }
+    }
+
+    /**
+     * 已通过格式解析、等待整批校验的记录
+     */
+    private static final class PendingRecord {
+        private final String bookingId;
+        private final Visitor visitor;
+        private final String rideId;
+        private final LocalDateTime bookingTime;
+
+        PendingRecord(String bookingId, Visitor visitor, String rideId, LocalDateTime bookingTime) {
+            this.bookingId = bookingId;
+            this.visitor = visitor;
+            this.rideId = rideId;
+            this.bookingTime = bookingTime;
+        }
+    }
+
+    /**
+     * 预约文件中的一条记录（写出预约文件时使用）
+     */
+    public static final class FeedRecord {
+        private final String externalKey;
+        private final Visitor visitor;
+        private final String rideId;
+        private final LocalDateTime bookingTime;
+
+        public FeedRecord(String externalKey, Visitor visitor, String rideId, LocalDateTime bookingTime) {
+            this.externalKey = externalKey;
+            this.visitor = visitor;
+            this.rideId = rideId;
+            this.bookingTime = bookingTime;
+        }
+
+        public String getExternalKey() { return externalKey; }
+        public Visitor getVisitor() { return visitor; }
+        public String getRideId() { return rideId; }
+        public LocalDateTime getBookingTime() { return bookingTime; }
+    }
+
+    /**
+     * 导入报告（不可变）
+     */
+    public static final class ImportReport {
+        private final String filePath;
+        private final int read;          // 通过格式解析的记录数
+        private final int accepted;      // 新增的预约数
+        private final int duplicates;    // 外部键已导入过（幂等跳过）
+        private final int malformed;     // 格式错误
+        private final int unknownRide;   // 设施ID不存在
+        private final int invalidTime;   // 预约时间无效（过去或不足提前量）
+        private final int ineligible;    // 游客不符合乘坐要求
+        private final long elapsedMillis;
+        private final String error;      // 文件级错误（null表示完整读完）
+
+        ImportReport(String filePath, int read, int accepted, int duplicates, int malformed, int unknownRide,
+                     int invalidTime, int ineligible, long elapsedMillis, String error) {
+            this.filePath = filePath;
+            this.read = read;
+            this.accepted = accepted;
+            this.duplicates = duplicates;
+            this.malformed = malformed;
+            this.unknownRide = unknownRide;
+            this.invalidTime = invalidTime;
+            this.ineligible = ineligible;
+            this.elapsedMillis = elapsedMillis;
+            this.error = error;
+        }
+
+        public String getFilePath() { return filePath; }
+        public int getRead() { return read; }
+        public int getAccepted() { return accepted; }
+        public int getDuplicates() { return duplicates; }
+        public int getMalformed() { return malformed; }
+        public int getUnknownRide() { return unknownRide; }
+        public int getInvalidTime() { return invalidTime; }
+        public int getIneligible() { return ineligible; }
+        public int getRejected() { return malformed + unknownRide + invalidTime + ineligible; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public String getError() { return error; }
+        public boolean isComplete() { return error == null; }
+
+        @Override
+        public String toString() {
+            return String.format("文件=%s | 读取%d条 | 新增%d条 | 重复跳过%d条 | 拒绝%d条（格式错误%d/设施不存在%d/时间无效%d/不符合乘坐要求%d）| 耗时%dms",
+                    filePath, read, accepted, duplicates, getRejected(), malformed, unknownRide, invalidTime,
+                    ineligible, elapsedMillis);
+        }
+    }
+}
@@ -1,31 +1,80 @@
 package com.scu.prog2004.a2.model;
 
 import java.io.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
-import java.util.stream.Collectors; // 新增：兼容低版本Java的Stream收集器
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * 单例模式的预约管理器（全局唯一）
  * 职责：统一管理预约的增删改查、序列化持久化、排序，符合单一职责原则
- * 线程安全：懒汉式单例+volatile关键字，避免多线程下实例创建问题
+ * 线程安全：懒汉式单例+volatile关键字，避免多线程下实例创建问题；
+ * 公开方法均为synchronized，支持HTTP服务模式下多个请求并发访问
+ * 索引：按预约ID的哈希索引（去重/取消O(1)）+ 每个排序键一棵有序树（只含有效预约，增删时增量维护），
+ * 分页读取第1页只需O(log n + 页大小)，无需每次过滤并全量排序
+ * 快速启动：loadBookingsInBackground在后台反序列化预约文件，加载完成前所有预约操作在就绪屏障处等待
+ * 分片：ShardedBookingStore把预约按哈希分到多个本类实例中，每个实例各有独立的锁与持久化文件
+ * 压缩：BookingCompactor分批把超过保留期的已取消预约与过期预约归档到冷文件，并从本管理器中移除
+ * 定时器：startBookingTimers启用后，每条有效预约在分层时间轮中有一个定时器，依次发布提醒/到时/过期事件，
+ * 超过到场宽限期的预约标记为未到场过期；所有管理器共用一个定时线程，每秒只处理到期的定时器，不扫描预约列表；
+ * 设置到时处理者（BookingDispatcher）后，每个刻度到时的预约一次性交给它调度进设施等待队列
  */
 public class BookingManager implements Serializable { // 实现Serializable，支持整体序列化
     private static final long serialVersionUID = 1L; // 序列化版本号（确保反序列化兼容性）
     // 单例实例：volatile保证可见性，避免指令重排序导致的实例空指针
     private static volatile BookingManager instance;
+    private static final int MAX_TIMERS_PER_LOCK = 2_000; // 定时线程每次持锁最多处理的到期定时器数
+    private static final int MAX_PAGE_PREALLOCATION = 1024; // 分页结果列表的最大预分配容量（超大页按需扩容）
     // 预约列表：final确保引用不可变，内部通过方法控制修改，符合封装原则
     private final List<Booking> bookingList;
+    // 索引均可由bookingList重建，不参与序列化
+    private final transient Map<String, Booking> bookingsById;          // 预约ID → 预约（含已取消）
+    private final transient Map<String, IndexKey[]> indexKeys;          // 有效预约在各有序索引中的键（下标为排序键序号）
+    private final transient Map<BookingSortKey, NavigableMap<IndexKey, Booking>> sortedIndexes;
+    private final transient Map<String, Booking> tombstones;            // 已取消预约（按取消时间先后，供压缩按保留期归档）
+    private transient boolean loading; // 后台加载进行中（为true时预约操作在就绪屏障处等待）
+    private transient BookingTimingWheel timingWheel; // 预约定时器（null表示未启用）
+    private transient long reminderLeadSeconds;       // 提前提醒的秒数
+    private transient long noShowGraceSeconds;        // 到时后的到场宽限秒数（超过即过期）
+    private transient ScheduledFuture<?> timerTask;
+    private transient Consumer<List<Booking>> dueBookingHandler; // 到时预约的处理者（BookingDispatcher；null表示只发布事件）
 
     /**
-     * 私有构造器：防止外部实例化，确保单例唯一性
+     * 包内构造器：外部只能通过getInstance获取全局实例；ShardedBookingStore用它为每个分片创建独立实例
      * 初始化预约列表为ArrayList，兼顾查询与修改效率
      */
-    private BookingManager() {
+    BookingManager() {
         this.bookingList = new ArrayList<>();
+        this.bookingsById = new HashMap<>();
+        this.indexKeys = new HashMap<>();
+        this.tombstones = new LinkedHashMap<>();
+        this.sortedIndexes = new EnumMap<>(BookingSortKey.class);
+        for (BookingSortKey sortKey : BookingSortKey.values()) {
+            sortedIndexes.put(sortKey, new TreeMap<>());
+        }
     }
 
     /**
@@ -46,27 +95,67 @@ public class BookingManager implements Serializable { // 实现Serializable，
     /**
      * 新增预约（带边界校验，避免无效数据）
      * @param booking 待添加的预约对象（非空、未取消）
+     * @return true=添加成功，false=校验失败或重复
      */
-    public void addBooking(Booking booking) {
+    public synchronized boolean addBooking(Booking booking) {
+        ParkFlightEvents.BookingAdd event = new ParkFlightEvents.BookingAdd();
+        event.begin();
+        long startNanos = ParkProfiler.start();
+        boolean added = addBookingLogged(booking);
+        ParkProfiler.end(event, ParkProfiler.Operation.BOOKING_ADD, booking == null ? null : booking.getBookingId(),
+                startNanos, added ? 1 : 0, 0, added);
+        return added;
+    }
+
+    /**
+     * 校验并新增一条预约（调用方持有本对象锁）
+     */
+    private boolean addBookingLogged(Booking booking) {
+        awaitLoaded();
         // 防御性校验：过滤空对象和已取消的预约
         if (booking == null) {
             LoggerUtil.error("❌ 新增预约失败：预约对象不能为空");
-            return;
+            return false;
         }
         if (booking.isCancelled()) {
             LoggerUtil.error("❌ 新增预约失败：已取消的预约无法添加（预约ID：" + booking.getBookingId() + "）");
-            return;
+            return false;
         }
-        // 避免重复添加：按预约ID去重
-        boolean isDuplicate = bookingList.stream()
-                .anyMatch(b -> b.getBookingId().equals(booking.getBookingId()));
-        if (isDuplicate) {
+        // 避免重复添加：按预约ID去重（哈希索引O(1)）
+        if (bookingsById.containsKey(booking.getBookingId())) {
             LoggerUtil.error("❌ 新增预约失败：该预约已存在（预约ID：" + booking.getBookingId() + "）");
-            return;
+            return false;
         }
 
         bookingList.add(booking);
+        indexBooking(booking);
         LoggerUtil.info("✅ 预约成功！预约ID：" + booking.getBookingId() + " | 游客：" + booking.getVisitor().getName());
+        publishEvent(ParkEvent.Type.BOOKING_CREATED, booking);
+        return true;
+    }
+
+    /**
+     * 批量新增预约（批量导入使用）：整批只加锁一次、不逐条打印日志
+     * 空对象、已取消的预约与已存在的预约ID（含已取消）直接跳过，因此同一批预约重复提交是幂等的
+     * @param bookings 待添加的预约（调用方已完成业务校验）
+     * @return 实际新增的预约数
+     */
+    public synchronized int addBookings(Collection<Booking> bookings) {
+        awaitLoaded();
+        boolean publish = ParkEventBus.getInstance().hasSubscribers();
+        int added = 0;
+        for (Booking booking : bookings) {
+            if (booking == null || booking.isCancelled() || bookingsById.containsKey(booking.getBookingId())) {
+                continue;
+            }
+            bookingList.add(booking);
+            indexBooking(booking);
+            if (publish) {
+                publishEvent(ParkEvent.Type.BOOKING_CREATED, booking);
+            }
+            added++;
+        }
+        return added;
     }
 
     /**
@@ -74,7 +163,8 @@ public class BookingManager implements Serializable { // 实现Serializable，
      * @param visitorId 游客唯一ID（非空）
      * @return 该游客的所有有效预约（返回不可修改列表，避免外部篡改）
      */
-    public List<Booking> getBookingsByVisitorId(String visitorId) {
+    public synchronized List<Booking> getBookingsByVisitorId(String visitorId) {
+        awaitLoaded();
         // 校验游客ID非空
         if (visitorId == null || visitorId.isBlank()) {
             LoggerUtil.error("❌ 查询预约失败：游客ID不能为空");
@@ -91,65 +181,131 @@ public class BookingManager implements Serializable { // 实现Serializable，
         return Collections.unmodifiableList(result); // 返回不可修改列表，保护内部数据
     }
 
+    /**
+     * 是否存在该预约ID（含已取消，不产生日志；供分片存储扇出查找，包内可见）
+     */
+    synchronized boolean containsBooking(String bookingId) {
+        awaitLoaded();
+        return bookingsById.containsKey(bookingId);
+    }
+
     /**
      * 按预约ID取消预约（支持链式调用，返回Optional便于后续处理）
      * @param bookingId 预约唯一ID（非空）
      * @return 被取消的预约（Optional.empty()表示未找到或已取消）
      */
-    public Optional<Booking> cancelBookingById(String bookingId) {
+    public synchronized Optional<Booking> cancelBookingById(String bookingId) {
+        awaitLoaded();
         if (bookingId == null || bookingId.isBlank()) {
             LoggerUtil.error("❌ 取消预约失败：预约ID不能为空");
             return Optional.empty();
         }
 
-        for (Booking booking : bookingList) {
-            if (booking.getBookingId().equals(bookingId)) {
-                if (booking.isCancelled()) {
-                    LoggerUtil.error("❌ 取消预约失败：该预约已取消（预约ID：" + bookingId + "）");
-                    return Optional.empty();
-                }
-                booking.cancelBooking();
-                LoggerUtil.info("✅ 预约取消成功（预约ID：" + bookingId + "）");
-                return Optional.of(booking);
-            }
+        Booking booking = bookingsById.get(bookingId);
+        if (booking == null) {
+            LoggerUtil.error("❌ 取消预约失败：未找到该预约（预约ID：" + bookingId + "）");
+            return Optional.empty();
         }
-
-        LoggerUtil.error("❌ 取消预约失败：未找到该预约（预约ID：" + bookingId + "）");
-        return Optional.empty();
+        if (booking.isCancelled()) {
+            LoggerUtil.error("❌ 取消预约失败：该预约已取消（预约ID：" + bookingId + "）");
+            return Optional.empty();
+        }
+        booking.cancelBooking();
+        unindexBooking(booking);
+        tombstones.put(bookingId, booking);
+        LoggerUtil.info("✅ 预约取消成功（预约ID：" + bookingId + "）");
+        publishEvent(ParkEvent.Type.BOOKING_CANCELLED, booking);
+        return Optional.of(booking);
     }
 
     /**
-     * 打印所有有效预约（按预约时间升序排列，提升用户体验）
+     * 打印所有有效预约（按预约时间升序排列，直接遍历有序索引，无需过滤与排序）
+     * 预约量大时建议使用pageBookings分页查看
      */
-    public void printAllBookings() {
+    public synchronized void printAllBookings() {
+        awaitLoaded();
         LoggerUtil.info("\n===== 全局有效预约列表 =====");
-        // 修复：用collect(Collectors.toList())替换Stream.toList()，兼容Java 8+
-        List<Booking> validBookings = bookingList.stream()
-                .filter(booking -> !booking.isCancelled())
-                .sorted(Comparator.comparing(Booking::getBookingTime))
-                .collect(Collectors.toList());
-
-        if (validBookings.isEmpty()) {
+        NavigableMap<IndexKey, Booking> index = sortedIndexes.get(BookingSortKey.BOOKING_TIME);
+        if (index.isEmpty()) {
             LoggerUtil.info("📭 暂无有效预约");
             LoggerUtil.info("=========================\n");
             return;
         }
 
-        int index = 1;
-        for (Booking booking : validBookings) {
-            LoggerUtil.info(String.format("%d. %s", index++, booking));
-        }
+        DisplayRenderer.printBookings(index.values(), 1);
         LoggerUtil.info("=========================\n");
     }
 
+    /**
+     * 游标分页读取有效预约（惰性遍历有序索引，只拷贝本页元素）
+     * 游标编码了上一页最后一条预约的索引键，即使该预约随后被取消也能继续定位（O(log n)）
+     * @param sortKey 排序键
+     * @param cursor 上一页返回的游标（null表示从第一条开始）
+     * @param offset 在游标之后再跳过的匹配条数（≥0）
+     * @param pageSize 每页条数（≥1）
+     * @param filter 过滤条件（null表示不过滤）
+     * @return 本页预约与下一页游标（下一页可能为空页）
+     */
+    public synchronized Page<Booking> pageBookings(BookingSortKey sortKey, String cursor, int offset,
+                                                   int pageSize, Predicate<Booking> filter) {
+        awaitLoaded();
+        if (sortKey == null || offset < 0 || pageSize < 1) {
+            LoggerUtil.error("❌ 预约分页参数无效（sortKey=" + sortKey + "，offset=" + offset + "，pageSize=" + pageSize + "）");
+            return new Page<>(Collections.emptyList(), null);
+        }
+        NavigableMap<IndexKey, Booking> view = sortedIndexes.get(sortKey);
+        if (cursor != null && !cursor.isEmpty()) {
+            IndexKey after = IndexKey.fromCursor(cursor);
+            if (after == null) {
+                LoggerUtil.error("❌ 预约分页失败：游标格式错误（" + cursor + "）");
+                return new Page<>(Collections.emptyList(), null);
+            }
+            view = view.tailMap(after, false);
+        }
+
+        // 容量只按页大小预估：TreeMap子视图的size()会遍历区间内全部条目，不能用来定容量
+        List<Booking> items = new ArrayList<>(Math.min(pageSize, MAX_PAGE_PREALLOCATION));
+        IndexKey lastKey = null;
+        int skipped = 0;
+        Iterator<Map.Entry<IndexKey, Booking>> iterator = view.entrySet().iterator();
+        while (iterator.hasNext() && items.size() < pageSize) {
+            Map.Entry<IndexKey, Booking> entry = iterator.next();
+            lastKey = entry.getKey();
+            if (filter != null && !filter.test(entry.getValue())) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            items.add(entry.getValue());
+        }
+        return new Page<>(items, iterator.hasNext() ? lastKey.toCursor() : null);
+    }
+
     /**
      * 序列化：保存所有预约到文件（支持断点续存，覆盖原有文件）
      * @param filePath 保存路径（建议以.dat为后缀）
      */
-    public void saveBookingsToFile(String filePath) {
+    public synchronized void saveBookingsToFile(String filePath) {
+        ParkFlightEvents.BookingSave event = new ParkFlightEvents.BookingSave();
+        event.begin();
+        long startNanos = ParkProfiler.start();
+        boolean saved = writeBookingsFile(filePath);
+        long bytes = saved && ParkProfiler.isRecording(event, startNanos) ? new File(filePath).length() : 0;
+        ParkProfiler.end(event, ParkProfiler.Operation.BOOKING_SAVE, filePath, startNanos,
+                saved ? bookingList.size() : 0, bytes, saved);
+    }
+
+    /**
+     * 序列化预约列表到文件（调用方持有本对象锁）
+     * @return 是否保存成功
+     */
+    private boolean writeBookingsFile(String filePath) {
+        awaitLoaded();
         if (filePath == null || filePath.isBlank()) {
             LoggerUtil.error("❌ 保存预约失败：文件路径不能为空");
-            return;
+            return false;
         }
 
         // try-with-resources自动关闭流，避免资源泄漏
@@ -157,44 +313,152 @@ public class BookingManager implements Serializable { // 实现Serializable，
             oos.writeObject(bookingList);
             LoggerUtil.info("✅ 预约数据已保存到：" + new File(filePath).getAbsolutePath());
             LoggerUtil.info("📊 保存数量：" + bookingList.size() + "条（含已取消预约）");
+            return true;
         } catch (FileNotFoundException e) {
             LoggerUtil.error("❌ 保存预约失败：文件路径不存在（" + filePath + "）");
         } catch (IOException e) {
             LoggerUtil.error("❌ 保存预约失败：IO错误（" + e.getMessage() + "）");
         }
+        return false;
     }
 
     /**
      * 反序列化：从文件加载预约（清空现有列表，避免数据冲突）
      * @param filePath 加载路径（需与保存路径一致）
      */
+    public synchronized void loadBookingsFromFile(String filePath) {
+        ParkFlightEvents.BookingLoad event = new ParkFlightEvents.BookingLoad();
+        event.begin();
+        long startNanos = ParkProfiler.start();
+        awaitLoaded();
+        List<Booking> loadedBookings = readBookingsFile(filePath);
+        if (loadedBookings != null) {
+            installBookings(filePath, loadedBookings);
+        }
+        boolean loaded = loadedBookings != null;
+        long bytes = loaded && ParkProfiler.isRecording(event, startNanos) ? new File(filePath).length() : 0;
+        ParkProfiler.end(event, ParkProfiler.Operation.BOOKING_LOAD, filePath, startNanos,
+                loaded ? loadedBookings.size() : 0, bytes, loaded);
+    }
+
+    /**
+     * 后台加载预约（快速启动模式）：反序列化在后台线程中进行且不持有锁，完成后短暂加锁替换预约列表并重建索引
+     * 就绪屏障：加载完成前调用任何预约操作都会在此等待（wait释放锁，不阻塞后台线程安装结果），
+     * 因此加载期间不会读到空列表，也不会出现"先保存空列表覆盖文件"或"新增预约被加载结果覆盖"
+     * @param filePath 加载路径（需与保存路径一致）
+     * @return 加载完成（无论成功与否）时完成的Future
+     */
+    public CompletableFuture<Void> loadBookingsInBackground(String filePath) {
+        synchronized (this) {
+            awaitLoaded(); // 同一时刻只允许一个后台加载
+            loading = true;
+        }
+        return CompletableFuture.runAsync(() -> {
+            List<Booking> loadedBookings = null;
+            try {
+                loadedBookings = readBookingsFile(filePath);
+            } finally {
+                synchronized (this) {
+                    if (loadedBookings != null) {
+                        installBookings(filePath, loadedBookings);
+                    }
+                    loading = false;
+                    notifyAll();
+                }
+            }
+        }, runnable -> {
+            Thread thread = new Thread(runnable, "booking-loader");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * 预约数据是否已就绪（不阻塞，供界面显示加载状态）
+     */
+    public synchronized boolean isLoaded() {
+        return !loading;
+    }
+
+    /**
+     * 就绪屏障：后台加载进行中时等待其完成（调用方必须持有本对象锁）
+     */
+    private void awaitLoaded() {
+        while (loading) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // 保留中断状态，放弃等待
+                return;
+            }
+        }
+    }
+
+    /**
+     * 读取并反序列化预约文件（不访问预约列表，无需持锁）
+     * @return 预约列表（失败返回null）
+     */
     @SuppressWarnings("unchecked") // 显式抑制未检查转换警告（已知文件存储List<Booking>）
-    public void loadBookingsFromFile(String filePath) {
+    private static List<Booking> readBookingsFile(String filePath) {
         if (filePath == null || filePath.isBlank()) {
             LoggerUtil.error("❌ 加载预约失败：文件路径不能为空");
-            return;
+            return null;
         }
 
         File file = new File(filePath);
         if (!file.exists()) {
             LoggerUtil.error("❌ 加载预约失败：文件不存在（" + filePath + "）");
-            return;
+            return null;
         }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            // 清空现有列表，避免加载后数据重复
-            bookingList.clear();
-            List<Booking> loadedBookings = (List<Booking>) ois.readObject();
-            bookingList.addAll(loadedBookings);
-            // 统计有效预约数量
-            long validCount = bookingList.stream().filter(b -> !b.isCancelled()).count();
-            LoggerUtil.info("✅ 从文件加载预约成功（" + filePath + "）");
-            LoggerUtil.info("📊 加载总数：" + loadedBookings.size() + "条 | 有效预约：" + validCount + "条");
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (List<Booking>) ois.readObject();
         } catch (ClassNotFoundException e) {
             LoggerUtil.error("❌ 加载预约失败：Booking类未找到（可能是类结构修改）");
         } catch (IOException e) {
             LoggerUtil.error("❌ 加载预约失败：IO错误（" + e.getMessage() + "）");
+        } catch (RuntimeException e) {
+            // 文件内容与当前类结构不兼容（如字段类型变化导致的ClassCastException），不让启动流程崩溃
+            LoggerUtil.error("❌ 加载预约失败：文件数据与当前版本不兼容（" + e + "）");
+        }
+        return null;
+    }
+
+    /**
+     * 用加载结果替换预约列表并重建索引（调用方必须持有本对象锁）
+     */
+    private void installBookings(String filePath, List<Booking> loadedBookings) {
+        // 清空现有列表，避免加载后数据重复
+        bookingList.clear();
+        bookingList.addAll(loadedBookings);
+        int unbound = bindToRidePool(loadedBookings);
+        rebuildIndexes();
+        if (unbound > 0) {
+            LoggerUtil.error("❌ " + unbound + "条预约的设施不在设施目录中，保留文件中的设施副本（到时不会进入任何设施队列）");
         }
+        // 统计有效预约数量
+        int validCount = indexKeys.size();
+        LoggerUtil.info("✅ 从文件加载预约成功（" + filePath + "）");
+        LoggerUtil.info("📊 加载总数：" + loadedBookings.size() + "条 | 有效预约：" + validCount + "条");
+    }
+
+    /**
+     * 把预约的设施重新绑定到设施池中的同ID实例（预约文件中每条预约反序列化出各自的设施副本，
+     * 不绑定的话到时调度会把游客放进副本的队列，菜单/HTTP/看板都看不到；调用方必须持有本对象锁）
+     * @return 设施不在目录中、无法绑定的预约数
+     */
+    private static int bindToRidePool(List<Booking> bookings) {
+        RideManager rideManager = RideManager.getInstance();
+        int unbound = 0;
+        for (Booking booking : bookings) {
+            Ride pooled = rideManager.findRide(booking.getRide().getRideId());
+            if (pooled == null) {
+                unbound++;
+            } else if (pooled != booking.getRide()) {
+                booking.bindRide(pooled);
+            }
+        }
+        return unbound;
     }
 
     /**
@@ -202,7 +466,8 @@ public class BookingManager implements Serializable { // 实现Serializable，
      * 排序后不影响原列表顺序，返回新列表（保护性拷贝）
      * @return 排序后的预约列表（不可修改）
      */
-    public List<Booking> sortBookingsByMembership() {
+    public synchronized List<Booking> sortBookingsByMembership() {
+        awaitLoaded();
         if (bookingList.isEmpty()) {
             LoggerUtil.error("❌ 排序预约失败：预约列表为空");
             return Collections.emptyList();
@@ -224,7 +489,358 @@ public class BookingManager implements Serializable { // 实现Serializable，
      * 获取有效预约总数（对外提供统计接口，隐藏内部列表）
      * @return 未取消的预约数量
      */
-    public long getValidBookingCount() {
-        return bookingList.stream().filter(b -> !b.isCancelled()).count();
+    public synchronized long getValidBookingCount() {
+        awaitLoaded();
+        return indexKeys.size();
+    }
+
+    /**
+     * 拷贝当前全部预约（含已取消，供检查点使用，包内可见）
+     */
+    synchronized Booking[] copyBookings() {
+        awaitLoaded();
+        return bookingList.toArray(new Booking[0]);
+    }
+
+    /**
+     * 用检查点中的预约替换当前预约列表（包内可见）
+     */
+    synchronized void restoreBookings(List<Booking> bookings) {
+        awaitLoaded();
+        bookingList.clear();
+        bookingList.addAll(bookings);
+        rebuildIndexes();
+    }
+
+    // ========================= 压缩（供BookingCompactor使用，包内可见） =========================
+
+    /**
+     * 取出一批可归档的预约（不修改任何状态）：先取取消时间早于cutoff的已取消预约（取消时间未知的视为已超过保留期），
+     * 再取预约时间早于cutoff的有效预约；两者都从各自有序结构的头部读取，只访问本批元素
+     * @param cutoff 保留期截止时间（早于该时间的才归档）
+     * @param limit 本批最多条数
+     */
+    synchronized List<Booking> collectCompactable(LocalDateTime cutoff, int limit) {
+        awaitLoaded();
+        List<Booking> batch = new ArrayList<>(Math.min(limit, tombstones.size() + indexKeys.size()));
+        for (Booking booking : tombstones.values()) {
+            if (batch.size() >= limit
+                    || (booking.getCancelledAt() != null && !booking.getCancelledAt().isBefore(cutoff))) {
+                break;
+            }
+            batch.add(booking);
+        }
+        NavigableMap<IndexKey, Booking> expired = sortedIndexes.get(BookingSortKey.BOOKING_TIME)
+                .headMap(new IndexKey(0, cutoff, ""), false);
+        for (Booking booking : expired.values()) {
+            if (batch.size() >= limit) {
+                break;
+            }
+            batch.add(booking);
+        }
+        return batch;
+    }
+
+    /**
+     * 移除已归档的预约（只移除仍是同一对象的预约，期间被重新加载/替换的预约不受影响）
+     * 列表只做一次线性压紧，持锁时间与本批大小和列表长度成正比
+     * @return 实际移除的条数
+     */
+    synchronized int removeCompacted(List<Booking> archived) {
+        awaitLoaded();
+        Set<Booking> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Booking booking : archived) {
+            if (bookingsById.get(booking.getBookingId()) == booking) {
+                bookingsById.remove(booking.getBookingId());
+                unindexBooking(booking);
+                tombstones.remove(booking.getBookingId());
+                removed.add(booking);
+            }
+        }
+        if (!removed.isEmpty()) {
+            bookingList.removeIf(removed::contains);
+        }
+        return removed.size();
+    }
+
+    // ========================= 预约定时器 =========================
+
+    /**
+     * 启用预约定时器（已启用时无操作）：为全部有效预约安排定时器，之后由共享定时线程每秒推进一次时间轮
+     * 阶段：预约时间前reminderLead发布提醒 → 预约时间发布到时 → 预约时间后noShowGrace仍未使用则标记为未到场过期
+     * 启用时已错过的阶段不补发提醒；已超过宽限期的预约在下一秒直接过期
+     * 不等待后台加载：加载完成后替换预约列表时会重新安排全部定时器
+     * @param reminderLead 提前提醒时长
+     * @param noShowGrace 到场宽限时长
+     */
+    public synchronized void startBookingTimers(Duration reminderLead, Duration noShowGrace) {
+        if (timingWheel != null) {
+            return;
+        }
+        this.reminderLeadSeconds = Math.max(0, reminderLead.getSeconds());
+        this.noShowGraceSeconds = Math.max(0, noShowGrace.getSeconds());
+        this.timingWheel = new BookingTimingWheel(toTick(LocalDateTime.now()));
+        for (Booking booking : sortedIndexes.get(BookingSortKey.BOOKING_TIME).values()) {
+            scheduleTimer(booking);
+        }
+        this.timerTask = TimerThreadHolder.TIMER.scheduleAtFixedRate(this::onTimerTick, 1, 1, TimeUnit.SECONDS);
+        LoggerUtil.info("📌 预约定时器已启动（提前" + reminderLeadSeconds / 60 + "分钟提醒，超时" + noShowGraceSeconds / 60
+                + "分钟未到场视为过期，待触发" + timingWheel.size() + "条）");
+    }
+
+    /**
+     * 停用预约定时器（已过期的预约保持过期状态）
+     */
+    public synchronized void stopBookingTimers() {
+        if (timerTask != null) {
+            timerTask.cancel(false);
+            timerTask = null;
+        }
+        timingWheel = null;
+    }
+
+    /**
+     * 待触发的预约定时器数（未启用时为0）
+     */
+    public synchronized int getPendingTimerCount() {
+        return timingWheel != null ? timingWheel.size() : 0;
+    }
+
+    /**
+     * 设置到时预约的处理者：定时线程每个刻度把本刻度到时的全部预约一次性交给它（在释放本对象锁之后调用）
+     * @param handler 处理者（null表示取消）
+     */
+    synchronized void setDueBookingHandler(Consumer<List<Booking>> handler) {
+        this.dueBookingHandler = handler;
+    }
+
+    /**
+     * 将已调度进设施等待队列的预约标记为已入队，并取消其过期定时器（入队后不再按未到场过期）
+     * 跳过已取消、已入队或已不属于本管理器的预约
+     * @return 实际标记的条数
+     */
+    synchronized int markQueued(Collection<Booking> bookings) {
+        int marked = 0;
+        for (Booking booking : bookings) {
+            if (booking.isCancelled() || booking.isQueued() || bookingsById.get(booking.getBookingId()) != booking) {
+                continue;
+            }
+            booking.markQueued();
+            if (timingWheel != null) {
+                timingWheel.cancel(booking.getBookingId());
+            }
+            marked++;
+        }
+        return marked;
+    }
+
+    /**
+     * 按预约时间安排下一阶段的定时器（调用方必须持有本对象锁；以时间轮已推进到的刻度为当前时间）
+     * 已入队的预约不再需要定时器
+     */
+    private void scheduleTimer(Booking booking) {
+        if (booking.isQueued()) {
+            return;
+        }
+        long now = timingWheel.getCurrentTick();
+        long due = toTick(booking.getBookingTime());
+        if (now < due - reminderLeadSeconds) {
+            timingWheel.schedule(booking, BookingTimingWheel.Phase.REMINDER, due - reminderLeadSeconds);
+        } else if (now < due + noShowGraceSeconds) {
+            timingWheel.schedule(booking, BookingTimingWheel.Phase.DUE, due);
+        } else {
+            timingWheel.schedule(booking, BookingTimingWheel.Phase.EXPIRED, due + noShowGraceSeconds);
+        }
+    }
+
+    /**
+     * 定时线程每秒调用：推进时间轮并处理到期的定时器；每次持锁最多处理MAX_TIMERS_PER_LOCK个，
+     * 大量预约同时到期时分多次持锁，期间预约操作可以穿插进行；
+     * 本刻度到时的预约汇总后在释放锁之后一次性交给到时处理者（处理者会锁设施，避免持有本对象锁时等待设施）
+     */
+    private void onTimerTick() {
+        try {
+            long now = toTick(LocalDateTime.now());
+            List<BookingTimingWheel.Fired> fired = new ArrayList<>();
+            List<Booking> due = new ArrayList<>();
+            Consumer<List<Booking>> handler = null;
+            int expired = 0;
+            boolean more = true;
+            while (more) {
+                synchronized (this) {
+                    if (timingWheel == null || loading) {
+                        return; // 已停用，或加载中（加载完成后会重新安排定时器）
+                    }
+                    handler = dueBookingHandler;
+                    fired.clear();
+                    timingWheel.advance(now, MAX_TIMERS_PER_LOCK, fired);
+                    for (BookingTimingWheel.Fired timer : fired) {
+                        Booking booking = timer.getBooking();
+                        long dueTick = toTick(booking.getBookingTime());
+                        switch (timer.getPhase()) {
+                            case REMINDER:
+                                timingWheel.schedule(booking, BookingTimingWheel.Phase.DUE, dueTick);
+                                break;
+                            case DUE:
+                                timingWheel.schedule(booking, BookingTimingWheel.Phase.EXPIRED, dueTick + noShowGraceSeconds);
+                                if (handler != null) {
+                                    due.add(booking);
+                                }
+                                break;
+                            default:
+                                booking.markNoShow();
+                                unindexBooking(booking);
+                                tombstones.put(booking.getBookingId(), booking);
+                                expired++;
+                        }
+                        publishEvent(timer.getPhase().getEventType(), booking);
+                    }
+                    more = timingWheel.hasReady();
+                }
+            }
+            if (handler != null && !due.isEmpty()) {
+                handler.accept(due);
+            }
+            if (expired > 0) {
+                LoggerUtil.info("📌 " + expired + "条预约超过到场宽限期未使用，已标记为过期（未到场）");
+            }
+        } catch (RuntimeException e) {
+            LoggerUtil.error("❌ 预约定时器处理异常：" + e.getMessage()); // 记录后继续，避免定时任务被取消
+        }
+    }
+
+    // 时间轮刻度：本地时间按UTC换算的秒数（与预约时间的比较方式一致）
+    private static long toTick(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    // 所有启用了预约定时器的管理器共用一个定时线程（守护线程，首次启用时创建）
+    private static final class TimerThreadHolder {
+        private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "booking-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // ========================= 索引维护 =========================
+
+    /**
+     * 将预约加入ID索引；有效预约同时加入各排序键的有序索引（O(log n)）
+     * 索引键在加入时固定，之后修改预约时间/会员等级不会破坏树结构
+     */
+    private void indexBooking(Booking booking) {
+        bookingsById.put(booking.getBookingId(), booking);
+        if (booking.isCancelled()) {
+            tombstones.put(booking.getBookingId(), booking);
+            return;
+        }
+        BookingSortKey[] sortKeys = BookingSortKey.values();
+        IndexKey[] keys = new IndexKey[sortKeys.length];
+        for (BookingSortKey sortKey : sortKeys) {
+            IndexKey key = new IndexKey(sortKey.rankOf(booking), booking.getBookingTime(), booking.getBookingId());
+            keys[sortKey.ordinal()] = key;
+            sortedIndexes.get(sortKey).put(key, booking);
+        }
+        indexKeys.put(booking.getBookingId(), keys);
+        if (timingWheel != null) {
+            scheduleTimer(booking);
+        }
+    }
+
+    /**
+     * 将已取消的预约移出各有序索引（ID索引保留，用于重复校验与取消提示）
+     */
+    private void unindexBooking(Booking booking) {
+        if (timingWheel != null) {
+            timingWheel.cancel(booking.getBookingId());
+        }
+        IndexKey[] keys = indexKeys.remove(booking.getBookingId());
+        if (keys == null) {
+            return;
+        }
+        for (BookingSortKey sortKey : BookingSortKey.values()) {
+            sortedIndexes.get(sortKey).remove(keys[sortKey.ordinal()]);
+        }
+    }
+
+    /**
+     * 整体替换预约列表后重建全部索引（O(n log n)）
+     */
+    private void rebuildIndexes() {
+        bookingsById.clear();
+        indexKeys.clear();
+        for (NavigableMap<IndexKey, Booking> index : sortedIndexes.values()) {
+            index.clear();
+        }
+        tombstones.clear();
+        if (timingWheel != null) {
+            timingWheel.clear();
+        }
+        for (Booking booking : bookingList) {
+            indexBooking(booking);
+        }
+        // 已取消预约按取消时间重新排列（取消时间未知的排在最前）
+        List<Booking> cancelled = new ArrayList<>(tombstones.values());
+        cancelled.sort(Comparator.comparing(Booking::getCancelledAt, Comparator.nullsFirst(Comparator.naturalOrder())));
+        tombstones.clear();
+        for (Booking booking : cancelled) {
+            tombstones.put(booking.getBookingId(), booking);
+        }
+    }
+
+    /**
+     * 发布预约状态变更事件（无订阅者时不创建事件对象）
+     */
+    private void publishEvent(ParkEvent.Type type, Booking booking) {
+        ParkEventBus eventBus = ParkEventBus.getInstance();
+        if (eventBus.hasSubscribers()) {
+            eventBus.publish(ParkEvent.bookingEvent(type, booking));
+        }
+    }
+
+    /**
+     * 有序索引键（不可变）：主排序值 → 预约时间 → 预约ID（保证唯一）
+     * 可编码为分页游标字符串："主排序值~预约时间~预约ID"
+     */
+    private static final class IndexKey implements Comparable<IndexKey> {
+        private static final String SEPARATOR = "~";
+        private final int rank;
+        private final LocalDateTime time;
+        private final String bookingId;
+
+        IndexKey(int rank, LocalDateTime time, String bookingId) {
+            this.rank = rank;
+            this.time = time;
+            this.bookingId = bookingId;
+        }
+
+        @Override
+        public int compareTo(IndexKey other) {
+            int result = Integer.compare(rank, other.rank);
+            if (result == 0) {
+                result = time.compareTo(other.time);
+            }
+            return result != 0 ? result : bookingId.compareTo(other.bookingId);
+        }
+
+        String toCursor() {
+            return rank + SEPARATOR + time + SEPARATOR + bookingId;
+        }
+
+        /**
+         * 解析游标（格式错误返回null）
+         */
+        static IndexKey fromCursor(String cursor) {
+            String[] parts = cursor.split(SEPARATOR, 3);
+            if (parts.length != 3) {
+                return null;
+            }
+            try {
+                return new IndexKey(Integer.parseInt(parts[0]), LocalDateTime.parse(parts[1]), parts[2]);
+            } catch (NumberFormatException | DateTimeParseException e) {
+                return null;
+            }
+        }
     }
-}
\ No newline at end of file
+}
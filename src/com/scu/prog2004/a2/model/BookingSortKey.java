@@ -0,0 +1,30 @@
+package com.scu.prog2004.a2.model;
+
+/**
+ * 预约分页排序键枚举（BookingManager为每个排序键维护一个增量有序索引）
+ */
+public enum BookingSortKey {
+    BOOKING_TIME("预约时间升序"),
+    MEMBERSHIP("会员等级降序→预约时间升序");
+
+    private final String displayName;
+
+    BookingSortKey(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * 计算预约在该排序键下的主排序值（越小越靠前）
+     */
+    int rankOf(Booking booking) {
+        if (this == MEMBERSHIP) {
+            return -booking.getVisitor().getMembershipType().ordinal(); // 铂金→黄金→标准
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
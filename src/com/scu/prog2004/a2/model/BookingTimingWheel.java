@@ -0,0 +1,255 @@
+package com.scu.prog2004.a2.model;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预约分层时间轮（Hashed Hierarchical Timing Wheel）：每条有效预约一个定时器，按"提醒 → 到时 → 过期"三个阶段依次触发
+ * 结构：4层 × 64槽，刻度1秒（第0层覆盖64秒，第1层约68分钟，第2层约3天，第3层约194天，更远的放入溢出链表）；
+ *   - 定时器放在与当前刻度"同属一个上层周期"的最低一层，槽号取到期刻度在该层的6位；
+ *   - 每前进一个刻度只处理第0层的一个槽，低层转满一圈时把上一层的当前槽重新分配到下层（级联）；
+ *   - 每个槽是带哨兵的双向循环链表，新增/取消定时器O(1)，推进时只触碰到期的定时器，从不扫描全部预约
+ * 线程安全：本类不加锁，由BookingManager在持有自身锁时调用
+ */
+final class BookingTimingWheel {
+    /**
+     * 定时器阶段（按时间先后）
+     */
+    enum Phase {
+        REMINDER(ParkEvent.Type.BOOKING_REMINDER),
+        DUE(ParkEvent.Type.BOOKING_DUE),
+        EXPIRED(ParkEvent.Type.BOOKING_EXPIRED);
+
+        private final ParkEvent.Type eventType;
+
+        Phase(ParkEvent.Type eventType) {
+            this.eventType = eventType;
+        }
+
+        ParkEvent.Type getEventType() {
+            return eventType;
+        }
+    }
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private final Timer[] slots = new Timer[LEVELS * SLOTS]; // 各槽的哨兵（下标 = 层 × 64 + 槽号）
+    private final Timer overflow = Timer.sentinel();        // 超出第3层范围的定时器
+    private final Timer ready = Timer.sentinel();           // 已到期、等待交给调用方处理的定时器
+    private final Map<String, Timer> timersByBookingId = new HashMap<>();
+    private long currentTick; // 已推进到的刻度（该刻度及之前到期的定时器都已移入ready）
+
+    BookingTimingWheel(long startTick) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = Timer.sentinel();
+        }
+        this.currentTick = startTick;
+    }
+
+    /**
+     * 安排（或重新安排）预约的定时器；到期刻度不晚于当前刻度时直接进入待处理链表
+     */
+    void schedule(Booking booking, Phase phase, long deadlineTick) {
+        Timer timer = timersByBookingId.get(booking.getBookingId());
+        if (timer == null) {
+            timer = new Timer(booking);
+            timersByBookingId.put(booking.getBookingId(), timer);
+        } else {
+            timer.unlink();
+        }
+        timer.booking = booking;
+        timer.phase = phase;
+        timer.deadline = deadlineTick;
+        place(timer);
+    }
+
+    /**
+     * 取消预约的定时器（O(1)）
+     * @return 是否存在该定时器
+     */
+    boolean cancel(String bookingId) {
+        Timer timer = timersByBookingId.remove(bookingId);
+        if (timer == null) {
+            return false;
+        }
+        timer.unlink();
+        return true;
+    }
+
+    /**
+     * 推进到nowTick，并取出最多limit个已到期的定时器（按到期先后；同一刻度内不保证顺序）
+     * 取出的定时器已从时间轮移除，调用方可通过schedule安排下一阶段
+     * @param out 接收到期定时器的列表（每项为 预约, 阶段）
+     * @return 取出的个数
+     */
+    int advance(long nowTick, int limit, List<Fired> out) {
+        while (currentTick < nowTick) {
+            currentTick++;
+            cascade();
+            moveAll(slots[(int) (currentTick & SLOT_MASK)], ready);
+        }
+        int count = 0;
+        while (count < limit && ready.next != ready) {
+            Timer timer = ready.next;
+            timer.unlink();
+            timersByBookingId.remove(timer.booking.getBookingId());
+            out.add(new Fired(timer.booking, timer.phase));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 是否还有已到期但未取出的定时器
+     */
+    boolean hasReady() {
+        return ready.next != ready;
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    int size() {
+        return timersByBookingId.size();
+    }
+
+    void clear() {
+        for (Timer sentinel : slots) {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+        }
+        overflow.prev = overflow;
+        overflow.next = overflow;
+        ready.prev = ready;
+        ready.next = ready;
+        timersByBookingId.clear();
+    }
+
+    /**
+     * 按到期刻度与当前刻度把定时器放入对应层的槽（层 = 两者第一次同属一个上层周期的层）
+     */
+    private void place(Timer timer) {
+        long deadline = timer.deadline;
+        if (deadline <= currentTick) {
+            ready.append(timer);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * (level + 1);
+            if ((deadline >>> shift) == (currentTick >>> shift)) {
+                int slot = (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+                slots[level * SLOTS + slot].append(timer);
+                return;
+            }
+        }
+        overflow.append(timer);
+    }
+
+    /**
+     * 低层转满一圈时从高到低重新分配上层的当前槽（溢出链表在第3层转满一圈时重新分配）
+     */
+    private void cascade() {
+        if ((currentTick & SLOT_MASK) != 0) {
+            return;
+        }
+        int level = 1;
+        while (level < LEVELS && ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK) == 0) {
+            level++;
+        }
+        // level-1 是本刻度转满一圈的最高层：先处理溢出/更高层，再逐层向下分配
+        if (level == LEVELS) {
+            redistribute(overflow);
+        }
+        for (int l = Math.min(level, LEVELS - 1); l >= 1; l--) {
+            redistribute(slots[l * SLOTS + (int) ((currentTick >>> (SLOT_BITS * l)) & SLOT_MASK)]);
+        }
+    }
+
+    private void redistribute(Timer sentinel) {
+        Timer timer = sentinel.next;
+        sentinel.prev = sentinel;
+        sentinel.next = sentinel;
+        while (timer != sentinel) {
+            Timer next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            place(timer);
+            timer = next;
+        }
+    }
+
+    private static void moveAll(Timer from, Timer to) {
+        if (from.next == from) {
+            return;
+        }
+        Timer first = from.next;
+        Timer last = from.prev;
+        first.prev = to.prev;
+        to.prev.next = first;
+        last.next = to;
+        to.prev = last;
+        from.prev = from;
+        from.next = from;
+    }
+
+    /**
+     * 到期的定时器（不可变）
+     */
+    static final class Fired {
+        private final Booking booking;
+        private final Phase phase;
+
+        Fired(Booking booking, Phase phase) {
+            this.booking = booking;
+            this.phase = phase;
+        }
+
+        Booking getBooking() { return booking; }
+        Phase getPhase() { return phase; }
+    }
+
+    /**
+     * 定时器节点（同时用作槽的哨兵）
+     */
+    private static final class Timer {
+        private Booking booking;
+        private Phase phase;
+        private long deadline;
+        private Timer prev;
+        private Timer next;
+
+        Timer(Booking booking) {
+            this.booking = booking;
+        }
+
+        static Timer sentinel() {
+            Timer sentinel = new Timer(null);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            return sentinel;
+        }
+
+        // 追加到以本节点为哨兵的链表末尾
+        void append(Timer timer) {
+            timer.prev = prev;
+            timer.next = this;
+            prev.next = timer;
+            prev = timer;
+        }
+
+        // 从所在链表中摘除（不在任何链表中时无操作）
+        void unlink() {
+            if (prev != null) {
+                prev.next = next;
+                next.prev = prev;
+                prev = null;
+                next = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 列式二进制历史格式（.rhc）：按块（每块最多65536行）逐列编码，适合夜间归档（体积小、读写快）
+ * 文件结构：
+ *   魔数"RHC1" + 版本号 + 会员等级字典（等级名称列表，记录中只存字典下标，与枚举序号解耦）
+ *   块*：行数(varint，0表示文件结束) + 本块新增的游客字典项 + 6列数据（每列先写字节长度）
+ *   结束标记：行数0
+ * 列编码：
+ *   游客      —— 游客字典下标varint（游客ID/证件号/姓名全文件只写一次）
+ *   年龄      —— varint（通常1字节）
+ *   会员等级  —— 游程编码(字典下标, 连续行数)
+ *   保险      —— 游程编码(0/1, 连续行数)
+ *   乘坐时间  —— 相对上一行的秒差，zigzag varint（按时间追加的历史通常1字节）
+ *   周期序号  —— 相对上一行的差值，zigzag varint
+ * 每块的时间与周期差值从0重新开始，块之间相互独立，读写时内存占用只与块大小有关
+ * 多段拼接：增量导出把新记录作为一个完整的新段（含自己的文件头与游客字典）追加到文件末尾，读取时依次读出所有段
+ */
+public class ColumnarHistoryFormat implements HistoryFormat {
+    private static final int MAGIC = 0x52484331; // "RHC1"
+    private static final int VERSION = 1;
+    private static final int BLOCK_ROWS = 1 << 16;
+
+    @Override
+    public String getName() {
+        return "列式二进制";
+    }
+
+    @Override
+    public String getExtension() {
+        return "rhc";
+    }
+
+    @Override
+    public void write(HistoryStore history, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        Visitor.MembershipType[] membershipTypes = Visitor.MembershipType.values();
+        ColumnBuffer header = new ColumnBuffer();
+        header.writeVarint(membershipTypes.length);
+        for (Visitor.MembershipType type : membershipTypes) {
+            header.writeString(type.name());
+        }
+        header.writeTo(data);
+
+        Map<String, Integer> dictionary = new HashMap<>();
+        ColumnBuffer dictionaryEntries = new ColumnBuffer();
+        ColumnBuffer visitorColumn = new ColumnBuffer();
+        ColumnBuffer ageColumn = new ColumnBuffer();
+        RunLengthColumn membershipColumn = new RunLengthColumn();
+        RunLengthColumn insuranceColumn = new RunLengthColumn();
+        ColumnBuffer timeColumn = new ColumnBuffer();
+        ColumnBuffer cycleColumn = new ColumnBuffer();
+        ColumnBuffer blockHeader = new ColumnBuffer();
+
+        int size = history.size();
+        for (int start = 0; start < size; start += BLOCK_ROWS) {
+            int end = Math.min(size, start + BLOCK_ROWS);
+            dictionaryEntries.reset();
+            visitorColumn.reset();
+            ageColumn.reset();
+            membershipColumn.reset();
+            insuranceColumn.reset();
+            timeColumn.reset();
+            cycleColumn.reset();
+            int newEntries = 0;
+            long previousSeconds = 0;
+            long previousCycle = 0;
+            for (int i = start; i < end; i++) {
+                Visitor visitor = history.get(i);
+                Integer ref = dictionary.get(visitor.getVisitorId());
+                if (ref == null) {
+                    ref = dictionary.size();
+                    dictionary.put(visitor.getVisitorId(), ref);
+                    dictionaryEntries.writeString(visitor.getVisitorId());
+                    dictionaryEntries.writeString(visitor.getId());
+                    dictionaryEntries.writeString(visitor.getName());
+                    newEntries++;
+                }
+                visitorColumn.writeVarint(ref);
+                ageColumn.writeVarint(visitor.getAge());
+                membershipColumn.add(visitor.getMembershipType().ordinal());
+                insuranceColumn.add(visitor.isHasRideInsurance() ? 1 : 0);
+                long seconds = HistoryStore.toSeconds(history.getTimestamp(i));
+                timeColumn.writeZigZag(seconds - previousSeconds);
+                previousSeconds = seconds;
+                int cycle = history.getCycle(i);
+                cycleColumn.writeZigZag(cycle - previousCycle);
+                previousCycle = cycle;
+            }
+            membershipColumn.finish();
+            insuranceColumn.finish();
+
+            blockHeader.reset();
+            blockHeader.writeVarint(end - start);
+            blockHeader.writeVarint(newEntries);
+            blockHeader.writeTo(data);
+            dictionaryEntries.writeTo(data);
+            for (ColumnBuffer column : new ColumnBuffer[]{visitorColumn, ageColumn, membershipColumn.buffer,
+                    insuranceColumn.buffer, timeColumn, cycleColumn}) {
+                blockHeader.reset();
+                blockHeader.writeVarint(column.length);
+                blockHeader.writeTo(data);
+                column.writeTo(data);
+            }
+        }
+        blockHeader.reset();
+        blockHeader.writeVarint(0);
+        blockHeader.writeTo(data);
+        data.flush();
+    }
+
+    @Override
+    public void read(InputStream in, RecordSink sink) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 1);
+        DataInputStream data = new DataInputStream(pushback);
+        do {
+            readSegment(data, sink);
+            int next = pushback.read();
+            if (next < 0) {
+                return;
+            }
+            pushback.unread(next); // 还有后续追加的段
+        } while (true);
+    }
+
+    private static void readSegment(DataInputStream data, RecordSink sink) throws IOException {
+        if (data.readInt() != MAGIC) {
+            throw new IOException("不是列式历史文件（魔数不匹配）");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("不支持的列式历史文件版本：" + version);
+        }
+        int typeCount = readVarint(data);
+        Visitor.MembershipType[] membershipTypes = new Visitor.MembershipType[typeCount];
+        for (int i = 0; i < typeCount; i++) {
+            String typeName = readString(data);
+            try {
+                membershipTypes[i] = Visitor.MembershipType.valueOf(typeName);
+            } catch (IllegalArgumentException e) {
+                LoggerUtil.error("警告：未知会员等级[" + typeName + "]，按STANDARD导入");
+                membershipTypes[i] = Visitor.MembershipType.STANDARD;
+            }
+        }
+
+        // 游客字典：ID/证件号/姓名 + 该字典项最近一次构造的游客（属性相同的连续记录共享同一实例）
+        List<String[]> dictionary = new ArrayList<>();
+        List<Visitor> lastVisitors = new ArrayList<>();
+        ColumnReader[] columns = new ColumnReader[6];
+        for (int rows; (rows = readVarint(data)) > 0; ) {
+            int newEntries = readVarint(data);
+            for (int i = 0; i < newEntries; i++) {
+                dictionary.add(new String[]{readString(data), readString(data), readString(data)});
+                lastVisitors.add(null);
+            }
+            for (int c = 0; c < columns.length; c++) {
+                byte[] bytes = new byte[readVarint(data)];
+                data.readFully(bytes);
+                columns[c] = new ColumnReader(bytes);
+            }
+            ColumnReader visitorColumn = columns[0];
+            ColumnReader ageColumn = columns[1];
+            RunLengthReader membershipColumn = new RunLengthReader(columns[2]);
+            RunLengthReader insuranceColumn = new RunLengthReader(columns[3]);
+            ColumnReader timeColumn = columns[4];
+            ColumnReader cycleColumn = columns[5];
+            long seconds = 0;
+            long cycle = 0;
+            for (int r = 0; r < rows; r++) {
+                int ref = visitorColumn.readVarint();
+                int age = ageColumn.readVarint();
+                int membershipCode = membershipColumn.next();
+                boolean hasInsurance = insuranceColumn.next() != 0;
+                seconds += timeColumn.readZigZag();
+                cycle += cycleColumn.readZigZag();
+                if (ref < 0 || ref >= dictionary.size() || membershipCode < 0 || membershipCode >= typeCount) {
+                    throw new IOException("列式历史文件已损坏（字典下标越界）");
+                }
+                Visitor.MembershipType membershipType = membershipTypes[membershipCode];
+                Visitor visitor = lastVisitors.get(ref);
+                if (visitor == null || visitor.getAge() != age || visitor.getMembershipType() != membershipType
+                        || visitor.isHasRideInsurance() != hasInsurance) {
+                    String[] entry = dictionary.get(ref);
+                    visitor = new Visitor(entry[1], entry[2], age, entry[0], membershipType, hasInsurance);
+                    lastVisitors.set(ref, visitor);
+                }
+                sink.accept(visitor, HistoryStore.toMillis((int) seconds), (int) cycle);
+            }
+        }
+    }
+
+    // ========================= 编码工具 =========================
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("列式历史文件已损坏（varint过长）");
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarint(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 可复用的列字节缓冲区（写出）
+     */
+    private static final class ColumnBuffer {
+        private byte[] bytes = new byte[1024];
+        private int length;
+
+        void reset() {
+            length = 0;
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(encoded.length);
+            ensureCapacity(encoded.length);
+            System.arraycopy(encoded, 0, bytes, length, encoded.length);
+            length += encoded.length;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + extra, bytes.length * 2));
+            }
+        }
+    }
+
+    /**
+     * 游程编码列：连续相同的值写成(值, 连续行数)一对varint
+     */
+    private static final class RunLengthColumn {
+        private final ColumnBuffer buffer = new ColumnBuffer();
+        private int value = -1;
+        private int run;
+
+        void reset() {
+            buffer.reset();
+            value = -1;
+            run = 0;
+        }
+
+        void add(int next) {
+            if (next == value) {
+                run++;
+                return;
+            }
+            finish();
+            value = next;
+            run = 1;
+        }
+
+        void finish() {
+            if (run > 0) {
+                buffer.writeVarint(value);
+                buffer.writeVarint(run);
+                run = 0;
+            }
+        }
+    }
+
+    /**
+     * 列字节读取器（按块读入内存后解码）
+     */
+    private static final class ColumnReader {
+        private final byte[] bytes;
+        private int position;
+
+        ColumnReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readVarint() throws IOException {
+            return (int) readVarLong();
+        }
+
+        long readZigZag() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                if (position >= bytes.length) {
+                    throw new EOFException("列式历史文件已损坏（列数据不完整）");
+                }
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("列式历史文件已损坏（varint过长）");
+        }
+    }
+
+    private static final class RunLengthReader {
+        private final ColumnReader column;
+        private int value;
+        private int remaining;
+
+        RunLengthReader(ColumnReader column) {
+            this.column = column;
+        }
+
+        int next() throws IOException {
+            if (remaining == 0) {
+                value = column.readVarint();
+                remaining = column.readVarint();
+                if (remaining <= 0) {
+                    throw new IOException("列式历史文件已损坏（游程长度无效）");
+                }
+            }
+            remaining--;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * CSV历史格式（默认格式，UTF-8编码，首行为表头）
+ * 列：visitorId,personId,name,age,membershipType,hasInsurance,rideTime,cycle
+ * 兼容旧版只有前6列的文件（导入时乘坐时间记为未知，由调用方决定如何补全）
+ */
+public class CsvHistoryFormat implements HistoryFormat {
+    private static final String HEADER = "visitorId,personId,name,age,membershipType,hasInsurance,rideTime,cycle";
+    private static final int LEGACY_COLUMNS = 6;
+    private static final int COLUMNS = 8;
+    private static final DateTimeFormatter TIME_FORMATTER = DisplayRenderer.SECOND_FORMATTER;
+
+    @Override
+    public String getName() {
+        return "CSV";
+    }
+
+    @Override
+    public String getExtension() {
+        return "csv";
+    }
+
+    @Override
+    public void write(HistoryStore history, OutputStream out) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(HEADER);
+        writer.newLine();
+        writeRows(history, writer);
+    }
+
+    /**
+     * 追加时只写数据行（表头已在文件开头）
+     */
+    @Override
+    public void append(HistoryStore history, OutputStream out) throws IOException {
+        writeRows(history, new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    private static void writeRows(HistoryStore history, BufferedWriter writer) throws IOException {
+        ZoneId zone = ZoneId.systemDefault();
+        StringBuilder line = new StringBuilder(128);
+        long cachedMillis = Long.MIN_VALUE; // 同一秒内的记录复用已格式化的时间文本
+        String cachedTime = null;
+        for (int i = 0; i < history.size(); i++) {
+            Visitor visitor = history.get(i);
+            long millis = history.getTimestamp(i);
+            if (millis != cachedMillis) {
+                cachedMillis = millis;
+                cachedTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone).format(TIME_FORMATTER);
+            }
+            line.setLength(0);
+            line.append(visitor.getVisitorId()).append(',')
+                    .append(visitor.getId()).append(',')
+                    .append(visitor.getName().replace(",", " ")).append(',') // 处理姓名中的逗号（避免CSV格式错误）
+                    .append(visitor.getAge()).append(',')
+                    .append(visitor.getMembershipType().name()).append(',')
+                    .append(visitor.isHasRideInsurance()).append(',')
+                    .append(cachedTime).append(',')
+                    .append(history.getCycle(i));
+            writer.append(line);
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+    @Override
+    public void read(InputStream in, RecordSink sink) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        ZoneId zone = ZoneId.systemDefault();
+        String cachedTime = null; // 连续行的时间文本相同时复用解析结果
+        long cachedMillis = UNKNOWN_TIMESTAMP;
+        String line = reader.readLine(); // 跳过表头
+        while ((line = reader.readLine()) != null) {
+            String[] parts = line.split(",");
+            if (parts.length != LEGACY_COLUMNS && parts.length != COLUMNS) {
+                LoggerUtil.error("警告：跳过无效行（格式错误）：" + line);
+                continue;
+            }
+
+            // 解析每个字段（带异常处理，避免单个字段错误导致整体失败）
+            try {
+                String visitorId = parts[0].trim();
+                String personId = parts[1].trim();
+                String name = parts[2].trim();
+                int age = Integer.parseInt(parts[3].trim());
+                Visitor.MembershipType membershipType = Visitor.MembershipType.valueOf(parts[4].trim());
+                boolean hasInsurance = Boolean.parseBoolean(parts[5].trim());
+                long timestampMillis = UNKNOWN_TIMESTAMP;
+                int cycle = 0;
+                if (parts.length == COLUMNS) {
+                    String time = parts[6].trim();
+                    if (!time.equals(cachedTime)) {
+                        cachedMillis = LocalDateTime.parse(time, TIME_FORMATTER).atZone(zone).toInstant().toEpochMilli();
+                        cachedTime = time;
+                    }
+                    timestampMillis = cachedMillis;
+                    cycle = Integer.parseInt(parts[7].trim());
+                }
+                sink.accept(new Visitor(personId, name, age, visitorId, membershipType, hasInsurance), timestampMillis, cycle);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                LoggerUtil.error("警告：跳过无效行（数据转换失败）：" + line + "，错误：" + e.getMessage());
+            }
+        }
+    }
+}
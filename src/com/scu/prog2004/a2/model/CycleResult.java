@@ -0,0 +1,43 @@
+package com.scu.prog2004.a2.model;
+
+/**
+ * 单次游乐周期结果（可复用）：Ride.runCycle把结果写入调用方传入的实例并原样返回，
+ * 调用方在循环中反复使用同一个实例，周期运行本身不创建任何对象
+ * 注意：与不可变的BatchResult不同，本类的字段会被下一次runCycle覆盖，需要保留时请先读出
+ */
+public final class CycleResult {
+    /**
+     * 周期运行状态
+     */
+    public enum Status {
+        COMPLETED,    // 运行成功
+        NO_OPERATOR,  // 无操作员（未指定，或已排班但当前时段无人在班）
+        EMPTY_QUEUE   // 等待队列为空
+    }
+
+    private Status status = Status.EMPTY_QUEUE;
+    private int boarded;       // 本次载客数
+    private int remaining;     // 运行后剩余等待人数
+    private int cycleNumber;   // 运行后设施的累计周期数（成功时即本次周期序号）
+
+    CycleResult set(Status status, int boarded, int remaining, int cycleNumber) {
+        this.status = status;
+        this.boarded = boarded;
+        this.remaining = remaining;
+        this.cycleNumber = cycleNumber;
+        return this;
+    }
+
+    // 访问器（只读）
+    public Status getStatus() { return status; }
+    public boolean isCompleted() { return status == Status.COMPLETED; }
+    public int getBoarded() { return boarded; }
+    public int getRemaining() { return remaining; }
+    public int getCycleNumber() { return cycleNumber; }
+
+    @Override
+    public String toString() {
+        return "CycleResult{status=" + status + ", boarded=" + boarded + ", remaining=" + remaining
+                + ", cycleNumber=" + cycleNumber + "}";
+    }
+}
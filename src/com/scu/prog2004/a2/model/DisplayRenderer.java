@@ -0,0 +1,148 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+
+/**
+ * 展示层渲染工具：共享的不可变时间格式化器、预约/游客的单行展示文本，以及把大量行直接写入同一缓冲区的批量输出
+ * 逐行打印（String.format + 每行一次printf + 每行重新格式化日志时间）在百万级列表上是主要开销，批量输出：
+ *   - 行文本直接追加到一个StringBuilder（游客文本使用Person的缓存，预约时间使用Booking的缓存）；
+ *   - 日志前缀（级别+时间）整批只格式化一次；
+ *   - 缓冲区每满64K字符写出一次，而不是每行一次
+ */
+public final class DisplayRenderer {
+    /** 分钟精度（预约时间、界面输入输出） */
+    public static final DateTimeFormatter MINUTE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    /** 秒精度（日志、导出文件） */
+    public static final DateTimeFormatter SECOND_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final int FLUSH_CHARS = 64 * 1024;
+
+    private DisplayRenderer() {
+    }
+
+    /**
+     * 按"yyyy-MM-dd HH:mm"追加时间（四位年份直接拼接数字，结果与MINUTE_FORMATTER一致）
+     */
+    public static StringBuilder appendMinute(StringBuilder sb, LocalDateTime time) {
+        int year = time.getYear();
+        if (year < 1000 || year > 9999) {
+            return sb.append(time.format(MINUTE_FORMATTER));
+        }
+        sb.append(year).append('-');
+        appendTwoDigits(sb, time.getMonthValue()).append('-');
+        appendTwoDigits(sb, time.getDayOfMonth()).append(' ');
+        appendTwoDigits(sb, time.getHour()).append(':');
+        return appendTwoDigits(sb, time.getMinute());
+    }
+
+    /**
+     * 预约的状态文本
+     */
+    public static String bookingStatus(Booking booking) {
+        if (booking.isCancelled()) {
+            return booking.isNoShow() ? "已过期（未到场）" : "已取消";
+        }
+        return booking.isQueued() ? "已入队" : "有效";
+    }
+
+    /**
+     * 追加预约的单行展示文本（与Booking.toString相同）
+     */
+    public static StringBuilder appendBooking(StringBuilder sb, Booking booking) {
+        return sb.append("预约ID：").append(booking.getBookingId())
+                .append(" | 游客：").append(booking.getVisitor().getName())
+                .append(" | 设施：").append(booking.getRide().getName())
+                .append(" | 时间：").append(booking.getBookingTimeText())
+                .append(" | 状态：").append(bookingStatus(booking));
+    }
+
+    /**
+     * 以信息日志格式批量打印编号的预约列表（每行"[INFO] 时间 - 序号. 预约"，日志时间取本批开始时刻）
+     * @param bookings 预约（按迭代顺序编号）
+     * @param firstNumber 第一行的序号
+     * @return 打印的行数
+     */
+    public static int printBookings(Iterable<Booking> bookings, int firstNumber) {
+        int number = firstNumber;
+        try (BulkWriter writer = new BulkWriter(System.out, LoggerUtil.infoPrefix())) {
+            for (Booking booking : bookings) {
+                appendBooking(writer.beginLine().append(number++).append(". "), booking);
+                writer.endLine();
+            }
+        }
+        return number - firstNumber;
+    }
+
+    /**
+     * 批量打印编号的游客列表（每行"序号. 游客"，与设施历史打印格式一致）
+     * @param visitors 游客迭代器（历史打印要求使用Iterator遍历）
+     * @param firstNumber 第一行的序号
+     * @return 打印的行数
+     */
+    public static int printVisitors(Iterator<Visitor> visitors, int firstNumber) {
+        int number = firstNumber;
+        try (BulkWriter writer = new BulkWriter(System.out, "")) {
+            while (visitors.hasNext()) {
+                writer.beginLine().append(number++).append(". ").append(visitors.next());
+                writer.endLine();
+            }
+        }
+        return number - firstNumber;
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+        return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * 行缓冲输出：每行追加到同一缓冲区，满64K字符写出一次（单线程使用；创建时绑定输出流）
+     */
+    public static final class BulkWriter implements AutoCloseable {
+        private final PrintStream out;
+        private final String linePrefix;
+        private final String lineSeparator = System.lineSeparator();
+        private final StringBuilder buffer = new StringBuilder(FLUSH_CHARS + 1024);
+
+        /**
+         * @param out 输出流（通常为System.out）
+         * @param linePrefix 每行的前缀（如日志级别与时间，没有则为空串）
+         */
+        public BulkWriter(PrintStream out, String linePrefix) {
+            this.out = out;
+            this.linePrefix = linePrefix;
+        }
+
+        /**
+         * 开始新的一行（已写入前缀），返回缓冲区供调用方追加本行内容
+         */
+        public StringBuilder beginLine() {
+            return buffer.append(linePrefix);
+        }
+
+        /**
+         * 结束当前行（缓冲区写满时写出）
+         */
+        public void endLine() {
+            buffer.append(lineSeparator);
+            if (buffer.length() >= FLUSH_CHARS) {
+                flush();
+            }
+        }
+
+        public void flush() {
+            if (buffer.length() > 0) {
+                out.append(buffer);
+                buffer.setLength(0);
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 编译后的游客资格规则（年龄/身高/保险/会员等级）
+ * 设计思路：规则定义在加载时被"编译"为一组扁平的基本类型字段（会员等级用位掩码查表），
+ * 校验时只做几次整数比较，不创建任何对象，适合闸机高频调用
+ * 不可变对象：在已有规则上叠加定义时通过compile方法生成新实例
+ */
+public final class EligibilityRule implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // 所有会员等级均允许时的掩码（每个MembershipType占一位，按ordinal）
+    private static final int ALL_MEMBERSHIPS = (1 << Visitor.MembershipType.values().length) - 1;
+
+    private final int minAge;            // 最小年龄（含）
+    private final int maxAge;            // 最大年龄（含）
+    private final int minHeightCm;       // 最小身高（厘米，0表示不限制）
+    private final boolean requireInsurance; // 是否要求购买游乐保险
+    private final int membershipMask;    // 允许的会员等级掩码
+
+    private EligibilityRule(int minAge, int maxAge, int minHeightCm,
+                            boolean requireInsurance, int membershipMask) {
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        this.minHeightCm = minHeightCm;
+        this.requireInsurance = requireInsurance;
+        this.membershipMask = membershipMask;
+    }
+
+    /**
+     * 由设施类型生成默认规则（与RideType的年龄限制一致，其余条件不限制）
+     */
+    public static EligibilityRule forRideType(RideType rideType) {
+        return new EligibilityRule(rideType.getMinAge(), rideType.getMaxAge(), 0, false, ALL_MEMBERSHIPS);
+    }
+
+    /**
+     * 在当前规则基础上应用规则定义（未出现的条件沿用当前值）
+     * 定义格式：以分号分隔的"条件=值"，例如：minAge=16;minHeight=140;insurance=true;membership=GOLD|PLATINUM
+     * @param definition 规则定义
+     * @return 编译后的新规则
+     * @throws IllegalArgumentException 定义格式错误时抛出
+     */
+    public EligibilityRule compile(String definition) {
+        int newMinAge = minAge;
+        int newMaxAge = maxAge;
+        int newMinHeight = minHeightCm;
+        boolean newInsurance = requireInsurance;
+        int newMask = membershipMask;
+
+        for (String condition : definition.split(";")) {
+            if (condition.isBlank()) {
+                continue;
+            }
+            String[] pair = condition.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("条件缺少'='：" + condition.trim());
+            }
+            String key = pair[0].trim();
+            String value = pair[1].trim();
+            switch (key) {
+                case "minAge":
+                    newMinAge = Integer.parseInt(value);
+                    break;
+                case "maxAge":
+                    newMaxAge = Integer.parseInt(value);
+                    break;
+                case "minHeight":
+                    newMinHeight = Integer.parseInt(value);
+                    break;
+                case "insurance":
+                    newInsurance = Boolean.parseBoolean(value);
+                    break;
+                case "membership":
+                    newMask = 0;
+                    for (String type : value.split("\\|")) {
+                        newMask |= 1 << Visitor.MembershipType.valueOf(type.trim()).ordinal();
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知条件：" + key);
+            }
+        }
+        if (newMinAge > newMaxAge) {
+            throw new IllegalArgumentException("最小年龄不能大于最大年龄：" + definition);
+        }
+        return new EligibilityRule(newMinAge, newMaxAge, newMinHeight, newInsurance, newMask);
+    }
+
+    /**
+     * 校验单个游客是否符合规则（不输出日志，不创建对象）
+     */
+    public boolean test(Visitor visitor) {
+        int age = visitor.getAge();
+        return age >= minAge && age <= maxAge
+                && visitor.getHeightCm() >= minHeightCm
+                && (!requireInsurance || visitor.isHasRideInsurance())
+                && (membershipMask & (1 << visitor.getMembershipType().ordinal())) != 0;
+    }
+
+    /**
+     * 批量校验：结果写入调用方提供（可复用）的数组，校验过程无逐游客对象分配
+     * @param visitors 待校验游客（null视为不符合）
+     * @param results 结果数组（长度需≥游客数，results[i]对应第i个游客）
+     * @return 符合规则的游客数
+     */
+    public int testBatch(List<Visitor> visitors, boolean[] results) {
+        int size = visitors.size();
+        if (results.length < size) {
+            throw new IllegalArgumentException("结果数组长度不足：" + results.length + " < " + size);
+        }
+        int eligible = 0;
+        if (visitors instanceof RandomAccess) {
+            for (int i = 0; i < size; i++) {
+                Visitor visitor = visitors.get(i);
+                boolean ok = visitor != null && test(visitor);
+                results[i] = ok;
+                if (ok) {
+                    eligible++;
+                }
+            }
+        } else {
+            // 链表等非随机访问集合：整批只创建一个迭代器
+            int i = 0;
+            for (Visitor visitor : visitors) {
+                boolean ok = visitor != null && test(visitor);
+                results[i++] = ok;
+                if (ok) {
+                    eligible++;
+                }
+            }
+        }
+        return eligible;
+    }
+
+    // 访问器
+    public int getMinAge() { return minAge; }
+    public int getMaxAge() { return maxAge; }
+    public int getMinHeightCm() { return minHeightCm; }
+    public boolean isRequireInsurance() { return requireInsurance; }
+
+    /**
+     * 规则的可读描述（用于拒绝日志）
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("年龄");
+        if (maxAge == Integer.MAX_VALUE) {
+            sb.append('≥').append(minAge).append('岁');
+        } else {
+            sb.append(minAge).append('-').append(maxAge).append('岁');
+        }
+        if (minHeightCm > 0) {
+            sb.append("，身高≥").append(minHeightCm).append("cm");
+        }
+        if (requireInsurance) {
+            sb.append("，需购买游乐保险");
+        }
+        if (membershipMask != ALL_MEMBERSHIPS) {
+            sb.append("，仅限");
+            for (Visitor.MembershipType type : Visitor.MembershipType.values()) {
+                if ((membershipMask & (1 << type.ordinal())) != 0) {
+                    sb.append(type).append('/');
+                }
+            }
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,134 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 资格规则手册：从规则文件加载并预编译每种设施类型/每个设施的资格规则
+ * 文件格式（每行一条，#开头为注释）：
+ *   THRILL: minAge=16            —— 按设施类型配置（在RideType默认规则上叠加）
+ *   R001: minHeight=140;insurance=true  —— 按设施ID配置（在该设施类型规则上叠加）
+ * 编译结果直接挂到Ride上，闸机校验时不再解析或查找规则
+ */
+public class EligibilityRuleBook {
+    private final Map<RideType, EligibilityRule> typeRules = new EnumMap<>(RideType.class);
+    private final Map<String, String> rideDefinitions = new HashMap<>(); // 设施ID -> 规则定义
+
+    /**
+     * 创建空规则手册（所有设施使用RideType默认规则）
+     */
+    public EligibilityRuleBook() {
+        for (RideType type : RideType.values()) {
+            typeRules.put(type, EligibilityRule.forRideType(type));
+        }
+    }
+
+    /**
+     * 从文件加载规则手册（格式错误的行会被跳过并记录日志）
+     * @param filePath 规则文件路径
+     * @return 规则手册（文件不存在或读取失败时返回空规则手册）
+     */
+    public static EligibilityRuleBook loadFromFile(String filePath) {
+        return loadFromFile(filePath, rideId -> null);
+    }
+
+    /**
+     * 从文件加载规则手册，设施规则按设施的实际类型校验（与该类型规则冲突的行会被跳过并记录日志）
+     * @param filePath 规则文件路径
+     * @param rideTypes 设施ID → 设施类型（未知设施返回null，此时按默认类型校验格式）
+     * @return 规则手册（文件不存在或读取失败时返回空规则手册）
+     */
+    public static EligibilityRuleBook loadFromFile(String filePath, Function<String, RideType> rideTypes) {
+        EligibilityRuleBook book = new EligibilityRuleBook();
+        File file = new File(filePath);
+        if (!file.exists()) {
+            LoggerUtil.error("❌ 加载资格规则失败：文件不存在（" + filePath + "），使用默认规则");
+            return book;
+        }
+
+        int loaded = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int colon = line.indexOf(':');
+                if (colon <= 0) {
+                    LoggerUtil.error("警告：跳过无效规则行（缺少':'）：" + line);
+                    continue;
+                }
+                try {
+                    String key = line.substring(0, colon).trim();
+                    book.define(key, line.substring(colon + 1).trim(), rideTypes.apply(key));
+                    loaded++;
+                } catch (IllegalArgumentException e) {
+                    LoggerUtil.error("警告：跳过无效规则行：" + line + "，错误：" + e.getMessage());
+                }
+            }
+            LoggerUtil.info("✅ 从文件[" + filePath + "]加载资格规则" + loaded + "条");
+        } catch (IOException e) {
+            LoggerUtil.error("❌ 加载资格规则失败！错误信息：" + e.getMessage());
+        }
+        return book;
+    }
+
+    /**
+     * 定义一条规则（键为RideType名称时按类型生效，否则视为设施ID）
+     * @throws IllegalArgumentException 规则定义无效时抛出
+     */
+    public void define(String key, String definition) {
+        define(key, definition, null);
+    }
+
+    /**
+     * 定义一条规则；设施类型已知时按该类型当前规则试编译（如KIDDIE设施的maxAge小于类型最小年龄会在此被拒绝）
+     * @param rideType 设施ID规则对应的设施类型（未知时为null，按默认类型只校验格式）
+     * @throws IllegalArgumentException 规则定义无效时抛出
+     */
+    public void define(String key, String definition, RideType rideType) {
+        for (RideType type : RideType.values()) {
+            if (type.name().equals(key)) {
+                typeRules.put(type, typeRules.get(type).compile(definition));
+                return;
+            }
+        }
+        // 设施规则依赖设施类型，先试编译一次以尽早发现错误
+        EligibilityRule base = rideType != null ? typeRules.get(rideType) : EligibilityRule.forRideType(RideType.FAMILY);
+        base.compile(definition);
+        rideDefinitions.put(key, definition);
+    }
+
+    /**
+     * 获取某个设施的编译后规则（设施ID规则 > 类型规则 > RideType默认规则）
+     * 设施规则与该设施类型的规则冲突时（加载时类型未知，或之后类型规则/设施类型发生变化）记录错误并使用类型规则，不抛出异常
+     */
+    public EligibilityRule ruleFor(String rideId, RideType rideType) {
+        EligibilityRule typeRule = typeRules.get(rideType);
+        String rideDefinition = rideDefinitions.get(rideId);
+        if (rideDefinition == null) {
+            return typeRule;
+        }
+        try {
+            return typeRule.compile(rideDefinition);
+        } catch (IllegalArgumentException e) {
+            LoggerUtil.error("警告：设施[" + rideId + "]的资格规则（" + rideDefinition + "）与" + rideType
+                    + "类型规则冲突，改用类型规则，错误：" + e.getMessage());
+            return typeRule;
+        }
+    }
+
+    /**
+     * 将规则编译后挂到设施上
+     */
+    public void applyTo(Ride ride) {
+        ride.setEligibilityRule(ruleFor(ride.getRideId(), ride.getRideType()));
+    }
+}
@@ -50,17 +50,17 @@ public class Employee extends Person implements Serializable { // 新增实现Se
     public void setPosition(String position) {
         if (position != null && !position.isBlank()) {
             this.position = position;
+            invalidateDisplay();
         } else {
             LoggerUtil.error("警告：岗位名称不能为空！属性未更新");
         }
     }
 
     /**
-     * 重写toString：包含父类属性+子类属性，格式统一
+     * 展示文本：包含父类属性+子类属性，格式统一（toString缓存此结果，岗位修改时作废）
      */
     @Override
-    public String toString() {
-        return String.format("Employee{employeeId='%s', position='%s', %s}",
-                employeeId, position, super.toString());
+    protected String describe() {
+        return "Employee{employeeId='" + employeeId + "', position='" + position + "', " + describePerson() + "}";
     }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * 增量导出的高水位标记（与导出文件同目录的"<文件名>.hwm"）
+ * sequence：已导出到的插入序号（下次从该序号开始追加；历史清空后序号继续递增，不会与清空前重复）；fileLength：上次导出完成时导出文件的长度
+ * 追加写完数据后才原子更新标记：若进程在两者之间崩溃，下次导出时把文件截断回fileLength再重新追加，不会重复也不会丢失
+ */
+final class ExportWatermark {
+    private static final String SUFFIX = ".hwm";
+
+    final long sequence;
+    final long fileLength;
+
+    ExportWatermark(long sequence, long fileLength) {
+        this.sequence = sequence;
+        this.fileLength = fileLength;
+    }
+
+    static Path pathFor(Path exportFile) {
+        return exportFile.resolveSibling(exportFile.getFileName() + SUFFIX);
+    }
+
+    /**
+     * 读取导出文件对应的标记（不存在或内容无效时返回null，表示需要全量导出）
+     */
+    static ExportWatermark read(Path exportFile) {
+        Path path = pathFor(exportFile);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+            long sequence = Long.parseLong(properties.getProperty("sequence"));
+            long fileLength = Long.parseLong(properties.getProperty("fileLength"));
+            return sequence < 0 || fileLength < 0 ? null : new ExportWatermark(sequence, fileLength);
+        } catch (IOException | NumberFormatException e) {
+            LoggerUtil.error("❌ 增量导出标记[" + path + "]无效，将全量导出：" + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写出标记（先写临时文件再原子重命名）
+     */
+    void write(Path exportFile) throws IOException {
+        Path path = pathFor(exportFile);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Properties properties = new Properties();
+        properties.setProperty("sequence", String.valueOf(sequence));
+        properties.setProperty("fileLength", String.valueOf(fileLength));
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "ride history export watermark");
+        }
+        ParkCheckpoint.moveAtomically(temp, path);
+    }
+}
@@ -0,0 +1,132 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+/**
+ * 堆内游乐历史存储：游客引用数组 + 乘坐时间（int秒）数组 + 周期序号数组，三个并行数组按下标对应
+ * 每条记录额外只占8字节，按位置O(1)访问，支持游标分页与时间区间查询
+ * 快照直接共享三个数组（O(1)）：追加写在快照范围之外，扩容/排序/清空总是分配新数组，只有覆盖记录需要先复制游客数组
+ */
+public class HeapHistoryStore extends HistoryStore {
+    private static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Visitor[] visitors = new Visitor[INITIAL_CAPACITY];
+    private int[] seconds = new int[INITIAL_CAPACITY];
+    private int[] cycles = new int[INITIAL_CAPACITY];
+    private int size;
+    private transient boolean visitorsShared; // 游客数组被快照共享（覆盖记录前先复制）
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Visitor get(int index) {
+        checkIndex(index);
+        return visitors[index];
+    }
+
+    /**
+     * 覆盖第index条记录的游客（保留原乘坐时间与周期）
+     */
+    @Override
+    public Visitor set(int index, Visitor visitor) {
+        checkWritable();
+        checkIndex(index);
+        if (visitor == null) {
+            throw new NullPointerException("游客不能为空");
+        }
+        if (visitorsShared) {
+            visitors = visitors.clone();
+            visitorsShared = false;
+        }
+        Visitor previous = visitors[index];
+        visitors[index] = visitor;
+        intern(visitor);
+        return previous;
+    }
+
+    @Override
+    void appendRecord(Visitor visitor, int slot, int seconds, int cycle) {
+        if (size == visitors.length) {
+            int capacity = size + (size >> 1);
+            visitors = Arrays.copyOf(visitors, capacity);
+            this.seconds = Arrays.copyOf(this.seconds, capacity);
+            cycles = Arrays.copyOf(cycles, capacity);
+        }
+        visitors[size] = visitor;
+        this.seconds[size] = seconds;
+        cycles[size] = cycle;
+        size++;
+    }
+
+    @Override
+    int secondsAt(int index) {
+        return seconds[index];
+    }
+
+    @Override
+    int cycleAt(int index) {
+        return cycles[index];
+    }
+
+    @Override
+    void permute(int[] order) {
+        Visitor[] sortedVisitors = new Visitor[visitors.length];
+        int[] sortedSeconds = new int[seconds.length];
+        int[] sortedCycles = new int[cycles.length];
+        for (int i = 0; i < size; i++) {
+            sortedVisitors[i] = visitors[order[i]];
+            sortedSeconds[i] = seconds[order[i]];
+            sortedCycles[i] = cycles[order[i]];
+        }
+        visitors = sortedVisitors;
+        seconds = sortedSeconds;
+        cycles = sortedCycles;
+        visitorsShared = false;
+    }
+
+    @Override
+    void reserveRecords(int capacity) {
+        if (capacity > visitors.length) {
+            visitors = Arrays.copyOf(visitors, capacity);
+            seconds = Arrays.copyOf(seconds, capacity);
+            cycles = Arrays.copyOf(cycles, capacity);
+        }
+    }
+
+    @Override
+    void clearRecords() {
+        visitors = new Visitor[INITIAL_CAPACITY];
+        seconds = new int[INITIAL_CAPACITY];
+        cycles = new int[INITIAL_CAPACITY];
+        size = 0;
+        visitorsShared = false;
+    }
+
+    @Override
+    HistoryStore shareRecords() {
+        HeapHistoryStore snapshot = new HeapHistoryStore();
+        snapshot.visitors = visitors;
+        snapshot.seconds = seconds;
+        snapshot.cycles = cycles;
+        snapshot.size = size;
+        visitorsShared = true;
+        return snapshot;
+    }
+
+    /**
+     * 序列化前裁掉数组末尾的空闲容量
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        int capacity = Math.max(INITIAL_CAPACITY, size);
+        visitors = Arrays.copyOf(visitors, capacity);
+        seconds = Arrays.copyOf(seconds, capacity);
+        cycles = Arrays.copyOf(cycles, capacity);
+        out.defaultWriteObject();
+    }
+}
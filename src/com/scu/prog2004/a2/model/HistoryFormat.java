@@ -0,0 +1,59 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 游乐历史导入/导出格式（SPI）：Ride.exportRideHistory/importRideHistory按文件扩展名选择具体格式
+ * 内置实现：CsvHistoryFormat（.csv，默认）、ColumnarHistoryFormat（.rhc，列式二进制）
+ * 扩展方式：实现本接口后调用HistoryFormats.register，或在META-INF/services中声明由ServiceLoader自动发现
+ */
+public interface HistoryFormat {
+    /**
+     * 记录中没有乘坐时间时传给RecordSink的时间戳（如旧版6列CSV）
+     */
+    long UNKNOWN_TIMESTAMP = -1L;
+
+    /**
+     * 格式名称（用于日志）
+     */
+    String getName();
+
+    /**
+     * 对应的文件扩展名（不含点，小写）
+     */
+    String getExtension();
+
+    /**
+     * 按顺序写出全部历史记录（游客、乘坐时间、周期序号）；不负责关闭输出流
+     */
+    void write(HistoryStore history, OutputStream out) throws IOException;
+
+    /**
+     * 追加写出（增量导出使用）：out位于一个已有同格式文件的末尾，追加后整个文件仍应能被read完整读出
+     * 默认实现直接调用write，适用于可多段拼接读取的格式；需要省略文件头等内容的格式应覆盖本方法
+     */
+    default void append(HistoryStore history, OutputStream out) throws IOException {
+        write(history, out);
+    }
+
+    /**
+     * 按顺序读出全部历史记录并逐条交给sink；不负责关闭输入流
+     * 单行/单条数据错误应跳过并记录日志，文件结构损坏时抛出IOException
+     */
+    void read(InputStream in, RecordSink sink) throws IOException;
+
+    /**
+     * 导入记录接收器
+     */
+    @FunctionalInterface
+    interface RecordSink {
+        /**
+         * @param visitor 游客
+         * @param timestampMillis 乘坐时间（毫秒时间戳，未知时为UNKNOWN_TIMESTAMP）
+         * @param cycle 周期序号（0表示非周期运行写入）
+         */
+        void accept(Visitor visitor, long timestampMillis, int cycle);
+    }
+}
@@ -0,0 +1,64 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * 游乐历史格式注册表：按文件扩展名查找HistoryFormat，未注册的扩展名（或无扩展名）回退到默认的CSV格式
+ * 类加载时注册内置格式，并通过ServiceLoader发现classpath中声明的第三方格式（同扩展名时后注册者覆盖）
+ */
+public final class HistoryFormats {
+    private static final HistoryFormat DEFAULT_FORMAT = new CsvHistoryFormat();
+    private static final Map<String, HistoryFormat> FORMATS_BY_EXTENSION = new LinkedHashMap<>();
+
+    static {
+        register(DEFAULT_FORMAT);
+        register(new ColumnarHistoryFormat());
+        for (HistoryFormat format : ServiceLoader.load(HistoryFormat.class)) {
+            register(format);
+        }
+    }
+
+    private HistoryFormats() {
+    }
+
+    /**
+     * 注册（或替换）一种格式
+     */
+    public static synchronized void register(HistoryFormat format) {
+        if (format == null || format.getExtension() == null || format.getExtension().isBlank()) {
+            LoggerUtil.error("❌ 注册历史格式失败：格式或扩展名为空！");
+            return;
+        }
+        FORMATS_BY_EXTENSION.put(format.getExtension().toLowerCase(Locale.ROOT), format);
+    }
+
+    /**
+     * 按文件路径的扩展名选择格式
+     */
+    public static synchronized HistoryFormat forPath(String filePath) {
+        String fileName = new File(filePath).getName();
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0) {
+            return DEFAULT_FORMAT;
+        }
+        HistoryFormat format = FORMATS_BY_EXTENSION.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+        return format != null ? format : DEFAULT_FORMAT;
+    }
+
+    public static HistoryFormat getDefault() {
+        return DEFAULT_FORMAT;
+    }
+
+    /**
+     * 已注册的全部格式（按注册顺序）
+     */
+    public static synchronized List<HistoryFormat> getRegisteredFormats() {
+        return new ArrayList<>(FORMATS_BY_EXTENSION.values());
+    }
+}
@@ -0,0 +1,559 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * 游乐历史存储基类：每条记录除游客外还保存乘坐时间（紧凑的int秒，相对2020-01-01 UTC）与所在周期序号
+ * 对外以List&lt;Visitor&gt;形式提供，RideInterface的历史操作无需区分具体实现（HeapHistoryStore/OffHeapHistoryStore）
+ * 时间索引：
+ *   - 记录按时间顺序追加时，位置本身就是时间顺序，无需额外索引；
+ *   - 排序或乱序追加后，按需重建"按时间排序的位置数组"（之后的顺序追加仍O(1)维护）；
+ *   时间区间计数/查询用二分查找，O(log n)定位；游客最近乘坐时间按游客驻留序号O(1)查询
+ * 插入序号：第k条追加的记录序号为k，排序后仍随记录移动（增量导出据此找出上次导出后新增的记录）；
+ *   从未排序时序号即位置，不额外占用内存，首次排序时才建立"位置↔序号"两个int数组；
+ *   清空不重置序号：序号基数累加被清空的记录数，清空后新追加的记录序号继续递增（对外序号 = 基数 + 存储内序号）
+ * 只读快照（snapshot）：记录存储与原历史共享（写时复制），供导出/打印/统计在设施锁外长时间读取
+ */
+public abstract class HistoryStore extends AbstractList<Visitor> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+    static final long EPOCH_BASE_SECONDS = 1_577_836_800L; // 2020-01-01T00:00:00Z（int秒可表示到2088年）
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    // 游客驻留：游客ID → 序号（每名游客一份，与乘坐次数无关）
+    private final Map<String, Integer> slotsByVisitorId = new HashMap<>();
+    private final List<Visitor> slotVisitors = new ArrayList<>();
+    private int[] lastRideSeconds = new int[16]; // 序号 → 最近一次乘坐时间
+
+    // 时间顺序索引
+    private boolean positionsTimeOrdered = true; // true：位置即时间顺序
+    private int[] timeOrder;                     // 按时间排序的位置（仅positionsTimeOrdered=false时使用）
+    private int timeOrderSize;
+    private boolean timeOrderStale;              // 需要在下次查询时重建
+    private int maxSeconds = UNKNOWN;
+
+    // 插入序号（均为null表示从未排序，序号即位置）
+    private int[] sequenceAtPosition; // 位置 → 插入序号
+    private int[] positionOfSequence; // 插入序号 → 位置
+
+    private transient long sequenceBase; // 序号基数：此前各次清空时的记录数之和（检查点保存；预约文件中的旧数据为0）
+    private transient boolean frozen; // 只读快照（所有修改操作抛出UnsupportedOperationException）
+
+    // ========================= 子类实现的定长记录操作（包内可见） =========================
+
+    abstract void appendRecord(Visitor visitor, int slot, int seconds, int cycle);
+
+    abstract int secondsAt(int index);
+
+    abstract int cycleAt(int index);
+
+    /**
+     * 按排列重排所有记录：新第i条 = 原第order[i]条
+     */
+    abstract void permute(int[] order);
+
+    abstract void clearRecords();
+
+    /**
+     * 预留至少capacity条记录的存储空间（已足够时不做任何事）
+     */
+    abstract void reserveRecords(int capacity);
+
+    /**
+     * 创建与本存储共享记录的新实例（快照使用）：此后本存储对已有记录的原地修改必须先复制受影响的存储（写时复制）
+     * 追加只写入快照范围之外的位置，无需复制
+     */
+    abstract HistoryStore shareRecords();
+
+    // ========================= List接口 =========================
+
+    @Override
+    public boolean add(Visitor visitor) {
+        return add(visitor, System.currentTimeMillis(), 0);
+    }
+
+    /**
+     * 追加一条乘坐记录
+     * @param visitor 游客（非空）
+     * @param timestampMillis 乘坐时间（毫秒时间戳，按秒存储）
+     * @param cycle 所在周期序号（0表示非周期运行写入，如手动添加/导入）
+     */
+    public boolean add(Visitor visitor, long timestampMillis, int cycle) {
+        appendSeconds(visitor, toSeconds(timestampMillis), cycle);
+        return true;
+    }
+
+    /**
+     * 预留容量：预计还会追加additional条记录时提前一次性扩容，之后的追加不再触发数组扩容
+     * （周期运行热路径在游客已驻留且容量充足时不分配任何对象）
+     */
+    public void ensureCapacity(int additional) {
+        checkWritable();
+        if (additional > 0) {
+            reserveRecords(size() + additional);
+        }
+    }
+
+    /**
+     * 按存储格式的秒值追加（检查点还原使用，包内可见）
+     */
+    void appendSeconds(Visitor visitor, int seconds, int cycle) {
+        checkWritable();
+        Objects.requireNonNull(visitor, "游客不能为空");
+        int slot = intern(visitor);
+        int position = size();
+        appendRecord(visitor, slot, seconds, cycle);
+        if (lastRideSeconds[slot] == UNKNOWN || seconds > lastRideSeconds[slot]) {
+            lastRideSeconds[slot] = seconds;
+        }
+        trackTimeOrder(position, seconds);
+        if (sequenceAtPosition != null) {
+            if (position == sequenceAtPosition.length) {
+                int capacity = Math.max(16, position + (position >> 1));
+                sequenceAtPosition = Arrays.copyOf(sequenceAtPosition, capacity);
+                positionOfSequence = Arrays.copyOf(positionOfSequence, capacity);
+            }
+            sequenceAtPosition[position] = position; // 只追加不删除，新记录的序号等于当前记录数
+            positionOfSequence[position] = position;
+        }
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        sequenceBase += size(); // 被清空的记录序号不再复用
+        clearRecords();
+        slotsByVisitorId.clear();
+        slotVisitors.clear();
+        lastRideSeconds = new int[16];
+        positionsTimeOrdered = true;
+        timeOrder = null;
+        timeOrderSize = 0;
+        timeOrderStale = false;
+        maxSeconds = UNKNOWN;
+        sequenceAtPosition = null;
+        positionOfSequence = null;
+        modCount++;
+    }
+
+    /**
+     * 排序：对int下标做稳定归并排序（不装箱），再整体重排记录；乘坐时间与周期随游客一起移动
+     */
+    @Override
+    public void sort(Comparator<? super Visitor> comparator) {
+        Objects.requireNonNull(comparator, "比较器不能为空");
+        checkWritable();
+        int size = size();
+        if (size < 2) {
+            return;
+        }
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[size], 0, size, comparator);
+        permute(order);
+        int[] sequences = new int[size];
+        positionOfSequence = new int[size];
+        for (int i = 0; i < size; i++) {
+            sequences[i] = sequenceAtPosition == null ? order[i] : sequenceAtPosition[order[i]];
+            positionOfSequence[sequences[i]] = i;
+        }
+        sequenceAtPosition = sequences;
+        positionsTimeOrdered = false; // 位置不再是时间顺序，下次时间查询时重建索引
+        timeOrder = null;
+        timeOrderStale = true;
+        modCount++;
+    }
+
+    // ========================= 时间查询 =========================
+
+    /**
+     * 第index条记录的乘坐时间（毫秒时间戳，精度为秒）
+     */
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return toMillis(secondsAt(index));
+    }
+
+    /**
+     * 第index条记录所在的周期序号（0表示非周期运行写入）
+     */
+    public int getCycle(int index) {
+        checkIndex(index);
+        return cycleAt(index);
+    }
+
+    /**
+     * 统计乘坐时间在[fromMillis, toMillis)内的记录数（O(log n)）
+     */
+    public int countBetween(long fromMillis, long toMillis) {
+        if (toMillis <= fromMillis) {
+            return 0;
+        }
+        ensureTimeOrder();
+        return lowerBound(ceilSeconds(toMillis)) - lowerBound(ceilSeconds(fromMillis));
+    }
+
+    /**
+     * 按时间顺序返回乘坐时间在[fromMillis, toMillis)内的游客（O(log n + 结果数)）
+     * @param limit 最多返回条数
+     */
+    public List<Visitor> visitorsBetween(long fromMillis, long toMillis, int limit) {
+        if (toMillis <= fromMillis || limit <= 0) {
+            return new ArrayList<>();
+        }
+        ensureTimeOrder();
+        int from = lowerBound(ceilSeconds(fromMillis));
+        int to = (int) Math.min(lowerBound(ceilSeconds(toMillis)), (long) from + limit);
+        List<Visitor> result = new ArrayList<>(Math.max(0, to - from));
+        for (int k = from; k < to; k++) {
+            result.add(get(timeOrderAt(k)));
+        }
+        return result;
+    }
+
+    /**
+     * 游客最近一次乘坐时间（毫秒时间戳，无记录返回-1；O(1)）
+     */
+    public long getLastRideMillis(String visitorId) {
+        Integer slot = visitorId == null ? null : slotIndex().get(visitorId);
+        return slot == null || lastRideSeconds[slot] == UNKNOWN ? -1 : toMillis(lastRideSeconds[slot]);
+    }
+
+    /**
+     * 历史中是否有该游客的乘坐记录（O(1)）
+     */
+    public boolean containsVisitorId(String visitorId) {
+        return visitorId != null && slotIndex().containsKey(visitorId);
+    }
+
+    /**
+     * 导入去重用：全部记录的(游客驻留序号, 乘坐秒)打包键，升序排列（O(n log n)，不装箱）
+     */
+    long[] sortedRideKeys() {
+        Map<String, Integer> slots = slotIndex();
+        long[] keys = new long[size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rideKey(slots.get(get(i).getVisitorId()), secondsAt(i));
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * 在sortedRideKeys的结果中查找该游客在该秒是否已有乘坐记录（O(log n)）
+     */
+    boolean containsRide(long[] sortedKeys, String visitorId, long timestampMillis) {
+        Integer slot = slotIndex().get(visitorId);
+        return slot != null && Arrays.binarySearch(sortedKeys, rideKey(slot, toSeconds(timestampMillis))) >= 0;
+    }
+
+    /**
+     * 该游客在该秒的乘坐打包键（与sortedRideKeys的键相同；游客尚无记录时返回-1）
+     */
+    long rideKeyOf(String visitorId, long timestampMillis) {
+        Integer slot = slotIndex().get(visitorId);
+        return slot == null ? -1 : rideKey(slot, toSeconds(timestampMillis));
+    }
+
+    private static long rideKey(int slot, int seconds) {
+        return ((long) slot << 32) | (seconds & 0xFFFFFFFFL);
+    }
+
+    // ========================= 插入序号 =========================
+
+    /**
+     * 第index条记录的插入序号（第几条追加的记录，从0开始，清空后继续递增；排序不改变序号）
+     */
+    public long getSequence(int index) {
+        checkIndex(index);
+        return sequenceBase + (sequenceAtPosition == null ? index : sequenceAtPosition[index]);
+    }
+
+    /**
+     * 当前最早一条记录可能的插入序号（此前的序号属于已被清空的记录）
+     */
+    long getSequenceBase() {
+        return sequenceBase;
+    }
+
+    /**
+     * 下一条追加记录的插入序号
+     */
+    long nextSequence() {
+        return sequenceBase + size();
+    }
+
+    /**
+     * 还原序号基数（检查点使用，在还原记录之后调用）
+     */
+    void restoreSequenceBase(long base) {
+        sequenceBase = Math.max(0, base);
+    }
+
+    /**
+     * 按插入顺序复制序号≥sequence的记录（增量导出使用，O(新增记录数)，与历史总量无关；早于序号基数的部分已被清空）
+     */
+    HeapHistoryStore copySince(long sequence) {
+        HeapHistoryStore delta = new HeapHistoryStore();
+        for (int s = (int) Math.max(0, sequence - sequenceBase); s < size(); s++) {
+            int position = positionOfSequence == null ? s : positionOfSequence[s];
+            delta.appendSeconds(get(position), secondsAt(position), cycleAt(position));
+        }
+        return delta;
+    }
+
+    /**
+     * 拷贝全部记录的插入序号（从未排序时返回null，检查点使用）
+     */
+    int[] copySequences() {
+        return sequenceAtPosition == null ? null : Arrays.copyOf(sequenceAtPosition, size());
+    }
+
+    /**
+     * 还原插入序号（检查点使用）：必须是0..size-1的一个排列，否则忽略并保持序号即位置
+     */
+    void restoreSequences(int[] sequences) {
+        int size = size();
+        if (sequences == null || sequences.length != size) {
+            return;
+        }
+        int[] positions = new int[size];
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < size; i++) {
+            int sequence = sequences[i];
+            if (sequence < 0 || sequence >= size || positions[sequence] != -1) {
+                return;
+            }
+            positions[sequence] = i;
+        }
+        sequenceAtPosition = Arrays.copyOf(sequences, size);
+        positionOfSequence = positions;
+    }
+
+    /**
+     * 拷贝全部记录的乘坐时间（存储格式秒值，检查点使用）
+     */
+    int[] copySeconds() {
+        int[] result = new int[size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = secondsAt(i);
+        }
+        return result;
+    }
+
+    /**
+     * 拷贝全部记录的周期序号（检查点使用）
+     */
+    int[] copyCycles() {
+        int[] result = new int[size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = cycleAt(i);
+        }
+        return result;
+    }
+
+    // ========================= 只读快照 =========================
+
+    /**
+     * 创建只读快照（调用方必须持有设施锁）：记录存储由子类共享给快照，基类只拷贝游客驻留字典的数组部分
+     * （O(不同游客数)，与记录数无关）；时间索引与插入序号数组直接共享——之后的追加只写入快照范围之外的位置，
+     * 重建索引与排序总是分配新数组；游客ID的哈希索引在快照上首次按游客查询时才重建
+     */
+    final HistoryStore snapshot() {
+        HistoryStore snapshot = shareRecords();
+        snapshot.frozen = true;
+        snapshot.slotVisitors.addAll(slotVisitors);
+        snapshot.lastRideSeconds = Arrays.copyOf(lastRideSeconds, Math.max(1, slotVisitors.size()));
+        snapshot.positionsTimeOrdered = positionsTimeOrdered;
+        snapshot.timeOrder = timeOrder;
+        snapshot.timeOrderSize = timeOrderSize;
+        snapshot.timeOrderStale = timeOrderStale;
+        snapshot.maxSeconds = maxSeconds;
+        snapshot.sequenceAtPosition = sequenceAtPosition;
+        snapshot.positionOfSequence = positionOfSequence;
+        snapshot.sequenceBase = sequenceBase;
+        return snapshot;
+    }
+
+    /**
+     * 是否为只读快照
+     */
+    public boolean isSnapshot() {
+        return frozen;
+    }
+
+    final void checkWritable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("游乐历史快照只读，不能修改");
+        }
+    }
+
+    /**
+     * 游客ID → 驻留序号（快照在首次查询时按驻留字典重建；快照可能被多个线程同时查询，重建时加锁）
+     */
+    private Map<String, Integer> slotIndex() {
+        if (frozen) {
+            synchronized (this) {
+                if (slotsByVisitorId.size() < slotVisitors.size()) {
+                    for (int slot = 0; slot < slotVisitors.size(); slot++) {
+                        slotsByVisitorId.put(slotVisitors.get(slot).getVisitorId(), slot);
+                    }
+                }
+            }
+        }
+        return slotsByVisitorId;
+    }
+
+    // ========================= 游客驻留 =========================
+
+    final int intern(Visitor visitor) {
+        Integer slot = slotsByVisitorId.get(visitor.getVisitorId());
+        if (slot == null) {
+            slot = slotVisitors.size();
+            slotVisitors.add(visitor);
+            slotsByVisitorId.put(visitor.getVisitorId(), slot);
+            if (slot == lastRideSeconds.length) {
+                lastRideSeconds = Arrays.copyOf(lastRideSeconds, slot + (slot >> 1));
+            }
+            lastRideSeconds[slot] = UNKNOWN;
+        }
+        return slot;
+    }
+
+    final Visitor slotVisitor(int slot) {
+        return slotVisitors.get(slot);
+    }
+
+    /**
+     * 驻留字典中的不同游客数
+     */
+    public int getDistinctVisitorCount() {
+        return slotVisitors.size();
+    }
+
+    // ========================= 内部实现 =========================
+
+    /**
+     * 追加时增量维护时间顺序：时间不早于已有最大值时O(1)追加，否则标记为需要重建
+     */
+    private void trackTimeOrder(int position, int seconds) {
+        boolean inOrder = maxSeconds == UNKNOWN || seconds >= maxSeconds;
+        if (positionsTimeOrdered) {
+            if (!inOrder) {
+                positionsTimeOrdered = false;
+                timeOrderStale = true;
+            }
+        } else if (!timeOrderStale) {
+            if (inOrder) {
+                if (timeOrderSize == timeOrder.length) {
+                    timeOrder = Arrays.copyOf(timeOrder, Math.max(16, timeOrderSize + (timeOrderSize >> 1)));
+                }
+                timeOrder[timeOrderSize++] = position;
+            } else {
+                timeOrderStale = true;
+            }
+        }
+        maxSeconds = Math.max(maxSeconds, seconds);
+    }
+
+    /**
+     * 重建按时间排序的位置数组：把(秒, 位置)打包成long排序，O(n log n)且不装箱
+     * （加锁：快照可能被多个线程同时做时间查询；设施自身的历史总在设施锁内访问，锁无竞争）
+     */
+    private synchronized void ensureTimeOrder() {
+        if (positionsTimeOrdered || !timeOrderStale) {
+            return;
+        }
+        int size = size();
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) secondsAt(i) << 32) | i;
+        }
+        Arrays.sort(keys);
+        timeOrder = new int[Math.max(16, size)];
+        for (int i = 0; i < size; i++) {
+            timeOrder[i] = (int) keys[i];
+        }
+        timeOrderSize = size;
+        timeOrderStale = false;
+    }
+
+    private int timeOrderAt(int k) {
+        return positionsTimeOrdered ? k : timeOrder[k];
+    }
+
+    /**
+     * 时间顺序中第一个乘坐时间≥seconds的下标
+     */
+    private int lowerBound(int seconds) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (secondsAt(timeOrderAt(mid)) < seconds) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void mergeSort(int[] order, int[] buffer, int from, int to, Comparator<? super Visitor> comparator) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(order, buffer, from, mid, comparator);
+        mergeSort(order, buffer, mid, to, comparator);
+        if (comparator.compare(get(order[mid - 1]), get(order[mid])) <= 0) {
+            return; // 两段已整体有序
+        }
+        System.arraycopy(order, from, buffer, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && comparator.compare(get(buffer[left]), get(buffer[right])) <= 0)) {
+                order[i] = buffer[left++];
+            } else {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+
+    final void checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    static int toSeconds(long millis) {
+        return clampToInt(Math.floorDiv(millis, 1000) - EPOCH_BASE_SECONDS);
+    }
+
+    static long toMillis(int seconds) {
+        return (seconds + EPOCH_BASE_SECONDS) * 1000;
+    }
+
+    /**
+     * 区间端点换算：秒级时间t满足 from ≤ t*1000 等价于 t ≥ ceil(from/1000)
+     */
+    private static int ceilSeconds(long millis) {
+        return clampToInt(Math.floorDiv(millis + 999, 1000) - EPOCH_BASE_SECONDS);
+    }
+
+    private static int clampToInt(long value) {
+        return (int) Math.max(Integer.MIN_VALUE + 1L, Math.min(Integer.MAX_VALUE, value));
+    }
+}
@@ -0,0 +1,291 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 堆外游乐历史存储：每条乘坐记录是直接内存（ByteBuffer.allocateDirect）中的一条16字节定长记录，
+ * 堆上只保留游客驻留字典（每名游客一份，与乘坐次数无关），
+ * 历史增长到数亿条时GC需要扫描的堆对象数量保持不变，停顿时间不随历史规模增长
+ * 记录布局（ByteBuffer默认大端序）：
+ *   [0-3]   游客驻留序号 int
+ *   [4-5]   乘坐时年龄 short
+ *   [6]     乘坐时会员等级序号 byte
+ *   [7]     标志位 byte（bit0=已购保险）
+ *   [8-11]  乘坐时间 int（相对2020-01-01 UTC的秒数）
+ *   [12-15] 周期序号 int
+ * 直接内存分块分配（每块2^16条记录=1MB），扩容时不搬移整块之前的旧数据，单块也不会触及2GB上限；
+ * 第一块从1024条（16KB）起按2倍增长到整块大小，数百个设施各只有少量记录时不会为每个设施预留整块直接内存
+ * 作为List&lt;Visitor&gt;使用时get返回驻留字典中的游客对象（同一游客ID共享一个实例）
+ * 快照按块共享（O(块数)）：追加写在快照范围之外，排序总是分配新块；覆盖记录时只复制该记录所在的一块，
+ * 清空时不再复用仍被快照共享的第一块
+ */
+public class OffHeapHistoryStore extends HistoryStore {
+    private static final long serialVersionUID = 2L;
+    static final int RECORD_BYTES = 16;
+    private static final int CHUNK_SHIFT = 16;                      // 每块2^16条记录
+    private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+    private static final int FIRST_CHUNK_RECORDS = 1 << 10;         // 第一块的初始记录数（之后按2倍增长到整块）
+    private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+    private static final int OFFSET_AGE = 4;
+    private static final int OFFSET_MEMBERSHIP = 6;
+    private static final int OFFSET_FLAGS = 7;
+    private static final int OFFSET_SECONDS = 8;
+    private static final int OFFSET_CYCLE = 12;
+    private static final byte FLAG_INSURANCE = 1;
+    private static final int IO_BATCH_RECORDS = 4096;               // 序列化时每批读写的记录数
+
+    private transient List<ByteBuffer> chunks = new ArrayList<>(); // 直接内存块
+    private transient int size;
+    private transient BitSet sharedChunks; // 被快照共享的块（原地覆盖前先复制该块；null表示没有）
+
+    // ========================= List接口 =========================
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Visitor get(int index) {
+        checkIndex(index);
+        return slotVisitor(chunk(index).getInt(offset(index)));
+    }
+
+    /**
+     * 覆盖第index条记录的游客（保留原乘坐时间与周期）
+     */
+    @Override
+    public Visitor set(int index, Visitor visitor) {
+        checkWritable();
+        if (visitor == null) {
+            throw new NullPointerException("游客不能为空");
+        }
+        Visitor previous = get(index);
+        copyChunkIfShared(index >>> CHUNK_SHIFT);
+        writeVisitor(chunk(index), offset(index), visitor, intern(visitor));
+        return previous;
+    }
+
+    // ========================= 定长字段直接读取（不经过游客对象） =========================
+
+    public int getAgeAt(int index) {
+        checkIndex(index);
+        return chunk(index).getShort(offset(index) + OFFSET_AGE);
+    }
+
+    public Visitor.MembershipType getMembershipAt(int index) {
+        checkIndex(index);
+        return Visitor.MembershipType.values()[chunk(index).get(offset(index) + OFFSET_MEMBERSHIP)];
+    }
+
+    public boolean hasInsuranceAt(int index) {
+        checkIndex(index);
+        return (chunk(index).get(offset(index) + OFFSET_FLAGS) & FLAG_INSURANCE) != 0;
+    }
+
+    /**
+     * 已分配的直接内存字节数
+     */
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (ByteBuffer chunk : chunks) {
+            bytes += chunk.capacity();
+        }
+        return bytes;
+    }
+
+    // ========================= 定长记录操作 =========================
+
+    @Override
+    void appendRecord(Visitor visitor, int slot, int seconds, int cycle) {
+        ensureChunkFor(size);
+        ByteBuffer chunk = chunk(size);
+        int offset = offset(size);
+        writeVisitor(chunk, offset, visitor, slot);
+        chunk.putInt(offset + OFFSET_SECONDS, seconds);
+        chunk.putInt(offset + OFFSET_CYCLE, cycle);
+        size++;
+    }
+
+    @Override
+    int secondsAt(int index) {
+        return chunk(index).getInt(offset(index) + OFFSET_SECONDS);
+    }
+
+    @Override
+    int cycleAt(int index) {
+        return chunk(index).getInt(offset(index) + OFFSET_CYCLE);
+    }
+
+    /**
+     * 按排列把记录整体拷贝到新分配的直接内存块（每条记录两次8字节读写）
+     */
+    @Override
+    void permute(int[] order) {
+        List<ByteBuffer> sorted = new ArrayList<>(chunks.size());
+        for (ByteBuffer chunk : chunks) {
+            sorted.add(ByteBuffer.allocateDirect(chunk.capacity()));
+        }
+        for (int i = 0; i < size; i++) {
+            ByteBuffer source = chunk(order[i]);
+            ByteBuffer target = sorted.get(i >>> CHUNK_SHIFT);
+            int sourceOffset = offset(order[i]);
+            int targetOffset = offset(i);
+            target.putLong(targetOffset, source.getLong(sourceOffset));
+            target.putLong(targetOffset + OFFSET_SECONDS, source.getLong(sourceOffset + OFFSET_SECONDS));
+        }
+        chunks = sorted;
+        sharedChunks = null;
+    }
+
+    @Override
+    void reserveRecords(int capacity) {
+        if (capacity <= 0) {
+            return;
+        }
+        ensureFirstChunk(Math.min(capacity, CHUNK_RECORDS));
+        while (((capacity - 1) >>> CHUNK_SHIFT) >= chunks.size()) {
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_RECORDS * RECORD_BYTES));
+        }
+    }
+
+    @Override
+    void clearRecords() {
+        // 只保留第一块复用（仍被快照共享时不复用），其余直接内存块交由GC的Cleaner回收
+        if (chunks.size() > 1) {
+            chunks.subList(1, chunks.size()).clear();
+        }
+        if (sharedChunks != null && sharedChunks.get(0)) {
+            chunks.clear();
+        }
+        sharedChunks = null;
+        size = 0;
+    }
+
+    @Override
+    HistoryStore shareRecords() {
+        OffHeapHistoryStore snapshot = new OffHeapHistoryStore();
+        snapshot.chunks = new ArrayList<>(chunks);
+        snapshot.size = size;
+        if (sharedChunks == null) {
+            sharedChunks = new BitSet();
+        }
+        sharedChunks.set(0, chunks.size());
+        return snapshot;
+    }
+
+    // ========================= 内部实现 =========================
+
+    private static void writeVisitor(ByteBuffer chunk, int offset, Visitor visitor, int slot) {
+        chunk.putInt(offset, slot);
+        chunk.putShort(offset + OFFSET_AGE, (short) visitor.getAge());
+        chunk.put(offset + OFFSET_MEMBERSHIP, (byte) visitor.getMembershipType().ordinal());
+        chunk.put(offset + OFFSET_FLAGS, visitor.isHasRideInsurance() ? FLAG_INSURANCE : 0);
+    }
+
+    // 写时复制：第c块仍被快照共享时先复制一份（至多1MB）再修改
+    private void copyChunkIfShared(int c) {
+        if (sharedChunks == null || !sharedChunks.get(c)) {
+            return;
+        }
+        chunks.set(c, copyOf(chunks.get(c), chunks.get(c).capacity()));
+        sharedChunks.clear(c);
+    }
+
+    private void ensureChunkFor(int index) {
+        if (index < CHUNK_RECORDS) {
+            ensureFirstChunk(index + 1);
+        } else if ((index >>> CHUNK_SHIFT) == chunks.size()) {
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_RECORDS * RECORD_BYTES));
+        }
+    }
+
+    /**
+     * 第一块至少容纳records条记录（records≤整块记录数）：容量不足时按2倍增长并复制已有内容，
+     * 新块不与快照共享（快照仍持有旧块）
+     */
+    private void ensureFirstChunk(int records) {
+        ByteBuffer first = chunks.isEmpty() ? null : chunks.get(0);
+        int current = first == null ? 0 : first.capacity() / RECORD_BYTES;
+        if (records <= current) {
+            return;
+        }
+        int capacity = Math.max(FIRST_CHUNK_RECORDS, current * 2);
+        while (capacity < records) {
+            capacity <<= 1;
+        }
+        capacity = Math.min(capacity, CHUNK_RECORDS);
+        if (first == null) {
+            chunks.add(ByteBuffer.allocateDirect(capacity * RECORD_BYTES));
+            return;
+        }
+        chunks.set(0, copyOf(first, capacity * RECORD_BYTES));
+        if (sharedChunks != null) {
+            sharedChunks.clear(0);
+        }
+    }
+
+    private static ByteBuffer copyOf(ByteBuffer chunk, int capacityBytes) {
+        ByteBuffer source = chunk.duplicate();
+        source.clear();
+        ByteBuffer copy = ByteBuffer.allocateDirect(capacityBytes);
+        copy.put(source);
+        copy.clear();
+        return copy;
+    }
+
+    private ByteBuffer chunk(int index) {
+        return chunks.get(index >>> CHUNK_SHIFT);
+    }
+
+    private static int offset(int index) {
+        return (index & CHUNK_MASK) * RECORD_BYTES;
+    }
+
+    /**
+     * 本批最多可连续读写的记录数（不跨越直接内存块边界）
+     */
+    private static int batchSize(int index, int remaining) {
+        return Math.min(Math.min(remaining, IO_BATCH_RECORDS), CHUNK_RECORDS - (index & CHUNK_MASK));
+    }
+
+    /**
+     * 序列化：驻留字典与时间索引由基类写出，这里按批写出原始记录字节，反序列化时重新分配直接内存
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        byte[] buffer = new byte[IO_BATCH_RECORDS * RECORD_BYTES];
+        for (int index = 0; index < size; ) {
+            int count = batchSize(index, size - index);
+            ByteBuffer view = chunk(index).duplicate();
+            view.position(offset(index));
+            view.get(buffer, 0, count * RECORD_BYTES);
+            out.write(buffer, 0, count * RECORD_BYTES);
+            index += count;
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        chunks = new ArrayList<>();
+        size = 0;
+        int count = in.readInt();
+        reserveRecords(count);
+        byte[] buffer = new byte[IO_BATCH_RECORDS * RECORD_BYTES];
+        while (size < count) {
+            int batch = batchSize(size, count - size);
+            in.readFully(buffer, 0, batch * RECORD_BYTES);
+            ByteBuffer view = chunk(size).duplicate();
+            view.position(offset(size));
+            view.put(buffer, 0, batch * RECORD_BYTES);
+            size += batch;
+        }
+    }
+}
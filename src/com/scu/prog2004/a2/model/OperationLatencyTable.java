@@ -0,0 +1,88 @@
+package com.scu.prog2004.a2.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 各操作的延迟汇总表：次数、失败数、条数、字节数与耗时分布（平均/P50/P90/P99/最大）
+ * 既可作为ParkProfiler的进程内计时钩子（按操作汇总），也供JfrSummary汇总JFR录制文件（可按操作+对象细分）
+ * 分位数按全部样本精确计算（每个样本8字节，百万次操作约8MB）
+ * 线程安全：记录与输出均加锁
+ */
+public final class OperationLatencyTable implements ParkProfiler.Hook {
+    private final Map<String, Row> rows = new TreeMap<>();
+
+    @Override
+    public void onOperation(ParkProfiler.Operation operation, String target, long durationNanos,
+                            long items, long bytes, boolean success) {
+        record(operation.getDisplayName(), durationNanos, items, bytes, success);
+    }
+
+    /**
+     * 记录一次操作
+     * @param label 表格行名（如操作名，或"操作名 [对象]"）
+     */
+    public synchronized void record(String label, long durationNanos, long items, long bytes, boolean success) {
+        rows.computeIfAbsent(label, key -> new Row()).add(durationNanos, items, bytes, success);
+    }
+
+    public synchronized boolean isEmpty() {
+        return rows.isEmpty();
+    }
+
+    public synchronized void clear() {
+        rows.clear();
+    }
+
+    /**
+     * 输出延迟表（耗时单位毫秒）
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-44s %9s %6s %12s %12s %10s %10s %10s %10s %10s%n",
+                "操作", "次数", "失败", "条数", "字节数", "平均ms", "P50ms", "P90ms", "P99ms", "最大ms"));
+        for (Map.Entry<String, Row> entry : rows.entrySet()) {
+            Row row = entry.getValue();
+            long[] sorted = Arrays.copyOf(row.durations, row.count);
+            Arrays.sort(sorted);
+            sb.append(String.format("%-44s %9d %6d %12d %12d %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+                    entry.getKey(), row.count, row.failures, row.items, row.bytes,
+                    row.totalNanos / 1e6 / row.count, percentile(sorted, 0.50) / 1e6,
+                    percentile(sorted, 0.90) / 1e6, percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6));
+        }
+        return sb.toString();
+    }
+
+    // 最近秩法：不小于样本中p比例的最小值
+    private static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * 单个操作（行）的累计值与耗时样本
+     */
+    private static final class Row {
+        private long[] durations = new long[64];
+        private int count;
+        private int failures;
+        private long items;
+        private long bytes;
+        private long totalNanos;
+
+        void add(long durationNanos, long items, long bytes, boolean success) {
+            if (count == durations.length) {
+                durations = Arrays.copyOf(durations, count + (count >> 1));
+            }
+            durations[count++] = durationNanos;
+            totalNanos += durationNanos;
+            this.items += items;
+            this.bytes += bytes;
+            if (!success) {
+                failures++;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.scu.prog2004.a2.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分页结果：一页数据 + 下一页游标
+ * 设计思路：游标为不透明字符串（历史/队列为扫描位置，预约为上一页最后一条预约ID），
+ * 调用方原样传回即可继续读取，无需知道总数，也不需要一次性拷贝全部数据
+ * @param <T> 元素类型
+ */
+public final class Page<T> {
+    private final List<T> items;
+    private final String nextCursor; // 下一页游标（null表示没有更多数据）
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Page{size=%d, nextCursor='%s'}", items.size(), nextCursor);
+    }
+}
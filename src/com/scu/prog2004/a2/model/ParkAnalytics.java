@@ -0,0 +1,381 @@
+package com.scu.prog2004.a2.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+
+/**
+ * 园区分析：对所有设施的游乐历史做聚合统计（会员等级分布、年龄直方图、各设施类型保险购买率、跨设施重复游客）
+ * 设计思路：先逐个设施取只读快照（历史写时复制共享，持锁时间与历史规模无关），再用Fork/Join把历史切分为固定大小的分段并行统计；
+ * 每个分段使用long[]原始类型累加器，合并时按下标相加，避免装箱收集器与中间对象，计算量随核心数线性扩展
+ */
+public class ParkAnalytics {
+    private static final int SEGMENT_SIZE = 1 << 16; // 分段大小：约6.5万条/分段，足够摊薄任务调度开销
+    private static final int MAX_AGE = 120;          // 年龄上限（与交互输入校验一致）
+
+    private final RideManager rideManager;
+    private final ForkJoinPool pool;
+
+    public ParkAnalytics(RideManager rideManager) {
+        this(rideManager, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param rideManager 设施管理器
+     * @param pool 执行统计的Fork/Join线程池（并行度即使用的核心数）
+     */
+    public ParkAnalytics(RideManager rideManager, ForkJoinPool pool) {
+        this.rideManager = rideManager;
+        this.pool = pool;
+    }
+
+    // ========================= 对外统计接口 =========================
+
+    /**
+     * 各会员等级的乘坐人次
+     */
+    public MembershipBreakdown ridersByMembership() {
+        long[] counts = aggregate(Visitor.MembershipType.values().length,
+                (acc, visitor, rideType) -> acc[visitor.getMembershipType().ordinal()]++);
+        return new MembershipBreakdown(counts);
+    }
+
+    /**
+     * 乘坐人次的年龄直方图
+     * @param bucketWidth 每个区间的年龄跨度（≥1，如10表示0-9、10-19…）
+     */
+    public AgeHistogram ageHistogram(int bucketWidth) {
+        int width = Math.max(1, bucketWidth);
+        int lastBucket = MAX_AGE / width;
+        long[] counts = aggregate(lastBucket + 1,
+                (acc, visitor, rideType) -> acc[Math.min(Math.max(0, visitor.getAge()) / width, lastBucket)]++);
+        return new AgeHistogram(width, counts);
+    }
+
+    /**
+     * 各设施类型的保险购买率（按乘坐人次统计）
+     */
+    public InsuranceUptake insuranceByRideType() {
+        // 累加器布局：[类型序号*2]=总人次，[类型序号*2+1]=已购保险人次
+        long[] counts = aggregate(RideType.values().length * 2, (acc, visitor, rideType) -> {
+            int slot = rideType.ordinal() * 2;
+            acc[slot]++;
+            if (visitor.isHasRideInsurance()) {
+                acc[slot + 1]++;
+            }
+        });
+        return new InsuranceUptake(counts);
+    }
+
+    /**
+     * 跨设施重复游客：统计每名游客乘坐过的不同设施数量
+     * 设施按顺序处理、每个设施内部分段并行；每名游客只保存[最近一次所在设施序号, 不同设施数]两个int
+     */
+    public RepeatRiders repeatRiders() {
+        List<RideSnapshot> snapshots = snapshotRides();
+        ConcurrentHashMap<String, int[]> ridesPerVisitor = new ConcurrentHashMap<>();
+        for (int rideIndex = 0; rideIndex < snapshots.size(); rideIndex++) {
+            final int current = rideIndex;
+            // 同一设施内重复乘坐只计一次：最近设施序号不同才说明是第一次在本设施出现
+            BiFunction<String, int[], int[]> merge = (visitorId, state) -> {
+                if (state == null) {
+                    return new int[]{current, 1};
+                }
+                if (state[0] != current) {
+                    state[0] = current;
+                    state[1]++;
+                }
+                return state;
+            };
+            HistoryStore history = snapshots.get(rideIndex).getHistory();
+            pool.invoke(new DistinctVisitorTask(history, 0, history.size(), ridesPerVisitor, merge));
+        }
+
+        long[] visitorsByRideCount = new long[snapshots.size() + 1];
+        for (int[] state : ridesPerVisitor.values()) {
+            visitorsByRideCount[state[1]]++;
+        }
+        return new RepeatRiders(ridesPerVisitor.size(), visitorsByRideCount);
+    }
+
+    // ========================= Fork/Join统计引擎 =========================
+
+    /**
+     * 分段累加函数：把一条历史记录计入long[]累加器
+     */
+    private interface SegmentAccumulator {
+        void accumulate(long[] acc, Visitor visitor, RideType rideType);
+    }
+
+    /**
+     * 对所有设施的历史执行一次并行聚合
+     * @param slots 累加器长度
+     */
+    private long[] aggregate(int slots, SegmentAccumulator accumulator) {
+        Collection<Ride> rides = rideManager.getAllRides();
+        List<AggregateTask> tasks = new ArrayList<>(rides.size());
+        for (Ride ride : rides) {
+            HistoryStore history = ride.snapshot().getHistory();
+            tasks.add(new AggregateTask(history, 0, history.size(), ride.getRideType(), slots, accumulator));
+        }
+        return pool.invoke(new RecursiveTask<long[]>() {
+            @Override
+            protected long[] compute() {
+                long[] total = new long[slots];
+                for (AggregateTask task : invokeAll(tasks)) {
+                    addInto(total, task.join());
+                }
+                return total;
+            }
+        });
+    }
+
+    /**
+     * 逐个设施取只读快照（每个设施只在取快照期间持锁）
+     */
+    private List<RideSnapshot> snapshotRides() {
+        List<RideSnapshot> snapshots = new ArrayList<>();
+        for (Ride ride : rideManager.getAllRides()) {
+            snapshots.add(ride.snapshot());
+        }
+        return snapshots;
+    }
+
+    private static void addInto(long[] target, long[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += source[i];
+        }
+    }
+
+    /**
+     * 聚合任务：区间超过分段大小时二分，叶子分段用本地long[]累加
+     */
+    private static final class AggregateTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+        private final HistoryStore history;
+        private final int from;
+        private final int to;
+        private final RideType rideType;
+        private final int slots;
+        private final SegmentAccumulator accumulator;
+
+        AggregateTask(HistoryStore history, int from, int to, RideType rideType, int slots,
+                      SegmentAccumulator accumulator) {
+            this.history = history;
+            this.from = from;
+            this.to = to;
+            this.rideType = rideType;
+            this.slots = slots;
+            this.accumulator = accumulator;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= SEGMENT_SIZE) {
+                long[] acc = new long[slots];
+                for (int i = from; i < to; i++) {
+                    accumulator.accumulate(acc, history.get(i), rideType);
+                }
+                return acc;
+            }
+            int mid = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(history, from, mid, rideType, slots, accumulator);
+            left.fork();
+            long[] result = new AggregateTask(history, mid, to, rideType, slots, accumulator).compute();
+            addInto(result, left.join());
+            return result;
+        }
+    }
+
+    /**
+     * 重复游客任务：分段并行把游客ID合并进共享的并发映射（compute按键原子执行）
+     */
+    private static final class DistinctVisitorTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final HistoryStore history;
+        private final int from;
+        private final int to;
+        private final ConcurrentHashMap<String, int[]> ridesPerVisitor;
+        private final BiFunction<String, int[], int[]> merge;
+
+        DistinctVisitorTask(HistoryStore history, int from, int to,
+                            ConcurrentHashMap<String, int[]> ridesPerVisitor, BiFunction<String, int[], int[]> merge) {
+            this.history = history;
+            this.from = from;
+            this.to = to;
+            this.ridesPerVisitor = ridesPerVisitor;
+            this.merge = merge;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEGMENT_SIZE) {
+                for (int i = from; i < to; i++) {
+                    ridesPerVisitor.compute(history.get(i).getVisitorId(), merge);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new DistinctVisitorTask(history, from, mid, ridesPerVisitor, merge),
+                    new DistinctVisitorTask(history, mid, to, ridesPerVisitor, merge));
+        }
+    }
+
+    // ========================= 统计结果（不可变） =========================
+
+    /**
+     * 会员等级分布
+     */
+    public static final class MembershipBreakdown {
+        private final long[] counts; // 下标为会员等级序号
+
+        MembershipBreakdown(long[] counts) {
+            this.counts = counts;
+        }
+
+        public long getRiders(Visitor.MembershipType type) {
+            return counts[type.ordinal()];
+        }
+
+        public long getTotalRiders() {
+            return Arrays.stream(counts).sum();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("会员等级分布：");
+            for (Visitor.MembershipType type : Visitor.MembershipType.values()) {
+                sb.append(type).append('=').append(counts[type.ordinal()]).append("人次 ");
+            }
+            return sb.toString().trim();
+        }
+    }
+
+    /**
+     * 年龄直方图（最后一个区间包含所有更大年龄）
+     */
+    public static final class AgeHistogram {
+        private final int bucketWidth;
+        private final long[] counts;
+
+        AgeHistogram(int bucketWidth, long[] counts) {
+            this.bucketWidth = bucketWidth;
+            this.counts = counts;
+        }
+
+        public int getBucketWidth() {
+            return bucketWidth;
+        }
+
+        public int getBucketCount() {
+            return counts.length;
+        }
+
+        /**
+         * 第bucket个区间（年龄bucket*宽度起）的乘坐人次
+         */
+        public long getCount(int bucket) {
+            return counts[bucket];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("年龄直方图：");
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    continue;
+                }
+                int low = i * bucketWidth;
+                sb.append(i == counts.length - 1 ? low + "岁以上" : low + "-" + (low + bucketWidth - 1) + "岁")
+                        .append('=').append(counts[i]).append("人次 ");
+            }
+            return sb.toString().trim();
+        }
+    }
+
+    /**
+     * 各设施类型的保险购买率
+     */
+    public static final class InsuranceUptake {
+        private final long[] counts; // [类型序号*2]=总人次，[类型序号*2+1]=已购保险人次
+
+        InsuranceUptake(long[] counts) {
+            this.counts = counts;
+        }
+
+        public long getRiders(RideType rideType) {
+            return counts[rideType.ordinal() * 2];
+        }
+
+        public long getInsuredRiders(RideType rideType) {
+            return counts[rideType.ordinal() * 2 + 1];
+        }
+
+        /**
+         * 保险购买率（0-1，无乘坐记录时为0）
+         */
+        public double getUptakeRate(RideType rideType) {
+            long riders = getRiders(rideType);
+            return riders == 0 ? 0 : (double) getInsuredRiders(rideType) / riders;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("保险购买率：");
+            for (RideType rideType : RideType.values()) {
+                sb.append(String.format("%s=%.1f%%（%d/%d） ", rideType, getUptakeRate(rideType) * 100,
+                        getInsuredRiders(rideType), getRiders(rideType)));
+            }
+            return sb.toString().trim();
+        }
+    }
+
+    /**
+     * 跨设施重复游客统计
+     */
+    public static final class RepeatRiders {
+        private final long distinctVisitors;
+        private final long[] visitorsByRideCount; // 下标为乘坐过的不同设施数
+
+        RepeatRiders(long distinctVisitors, long[] visitorsByRideCount) {
+            this.distinctVisitors = distinctVisitors;
+            this.visitorsByRideCount = visitorsByRideCount;
+        }
+
+        public long getDistinctVisitors() {
+            return distinctVisitors;
+        }
+
+        /**
+         * 乘坐过至少2个不同设施的游客数
+         */
+        public long getRepeatVisitors() {
+            return distinctVisitors - getVisitorsWithRideCount(1);
+        }
+
+        /**
+         * 恰好乘坐过rideCount个不同设施的游客数
+         */
+        public long getVisitorsWithRideCount(int rideCount) {
+            return rideCount >= 0 && rideCount < visitorsByRideCount.length ? visitorsByRideCount[rideCount] : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("重复游客：%d/%d人乘坐过多个设施（",
+                    getRepeatVisitors(), distinctVisitors));
+            for (int i = 1; i < visitorsByRideCount.length; i++) {
+                if (visitorsByRideCount[i] > 0) {
+                    sb.append(i).append("个设施=").append(visitorsByRideCount[i]).append("人 ");
+                }
+            }
+            return sb.toString().trim() + "）";
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 园区检查点：把所有设施（队列、历史、周期数、等待时间估算、操作员）与全部预约写入一个紧凑的二进制文件，并在启动时快速还原
+ * 一致性：持有预约管理器的锁期间，按设施ID顺序逐个设施短暂加锁取只读快照（每个设施内部一致，同一时刻只持有一个设施锁，
+ *        设施数量多也不会嵌套加锁），随即释放锁，由后台线程把快照编码写盘，期间设施与预约可继续正常运营
+ * 文件格式：游客字典（同一游客对象只写一次）+ 设施记录（队列/历史以字典序号引用游客，历史附带乘坐时间与周期）+ 预约记录；
+ *         先写临时文件再原子重命名，写到一半崩溃不会损坏上一次的检查点
+ * 说明：游客对象本身的可变属性（会员等级等）按写盘时的值保存
+ */
+public class ParkCheckpoint {
+    private static final int MAGIC = 0x504B4350; // "PKCP"
+    private static final short VERSION = 9; // 版本2：增加等待时间估算状态；版本3：增加历史存储方式；版本4：增加历史乘坐时间与周期；版本5：增加历史插入序号；版本6：增加预约取消时间；版本7：增加未到场过期标记；版本8：增加预约入队时间与队首预约优先区人数；版本9：增加历史插入序号基数
+    private static final short MIN_READABLE_VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final RideManager rideManager;
+    private final BookingManager bookingManager;
+    private final ExecutorService writerExecutor;
+
+    public ParkCheckpoint(RideManager rideManager, BookingManager bookingManager) {
+        this.rideManager = rideManager;
+        this.bookingManager = bookingManager;
+        this.writerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "park-checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 检查点统计信息（保存与还原共用）
+     */
+    public static final class Summary {
+        private final int rides;
+        private final int visitors;
+        private final long historyEntries;
+        private final int bookings;
+        private final long bytes;
+        private final long millis;
+
+        Summary(int rides, int visitors, long historyEntries, int bookings, long bytes, long millis) {
+            this.rides = rides;
+            this.visitors = visitors;
+            this.historyEntries = historyEntries;
+            this.bookings = bookings;
+            this.bytes = bytes;
+            this.millis = millis;
+        }
+
+        public int getRides() { return rides; }
+        public int getVisitors() { return visitors; }
+        public long getHistoryEntries() { return historyEntries; }
+        public int getBookings() { return bookings; }
+        public long getBytes() { return bytes; }
+        public long getMillis() { return millis; }
+
+        @Override
+        public String toString() {
+            return String.format("设施%d个，游客%d名，历史%d条，预约%d条，文件%.1fKB，耗时%dms",
+                    rides, visitors, historyEntries, bookings, bytes / 1024.0, millis);
+        }
+    }
+
+    // 单个设施在快照时刻的状态
+    private static final class RideCapture {
+        private Ride ride;
+        private boolean inPool;       // 是否属于设施池（否则仅被预约引用）
+        private RideType rideType;
+        private Ride.HistoryStorage historyStorage;
+        private int maxRider;
+        private int numOfCycles;
+        private double avgCycleSeconds;
+        private double avgRidersPerCycle;
+        private long estimatorSamples;
+        private Employee operator;
+        private RideSnapshot snapshot;  // 持锁期间只取快照，以下数组在写盘线程中由快照展开
+        private Visitor[] queue;
+        private int bookedAhead;
+        private Visitor[] history;
+        private int[] historySeconds;
+        private int[] historyCycles;
+        private int[] historySequences; // null表示序号即位置
+        private long historySequenceBase;
+    }
+
+    // 整个园区在快照时刻的状态
+    private static final class Capture {
+        private final List<RideCapture> rides = new ArrayList<>();
+        private Booking[] bookings;
+        private LocalDateTime[] bookingTimes;
+        private boolean[] cancelled;
+        private LocalDateTime[] cancelledAt;
+        private boolean[] noShow;
+        private LocalDateTime[] queuedAt;
+    }
+
+    // ========================= 保存 =========================
+
+    /**
+     * 同步保存检查点（等待后台写盘完成）
+     * @param filePath 检查点文件路径
+     * @return 统计信息（失败返回null）
+     */
+    public Summary save(String filePath) {
+        try {
+            return saveAsync(filePath).join();
+        } catch (CompletionException e) {
+            LoggerUtil.error("❌ 保存检查点失败！错误信息：" + e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 异步保存检查点：在调用线程中完成快照拷贝（短暂持锁），编码与写盘在后台线程进行
+     * @param filePath 检查点文件路径
+     * @return 写盘完成后得到统计信息
+     */
+    public CompletableFuture<Summary> saveAsync(String filePath) {
+        long start = System.nanoTime();
+        Capture capture = capture();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Summary summary = write(capture, filePath, start);
+                LoggerUtil.info("✅ 检查点已保存到：" + new File(filePath).getAbsolutePath() + "（" + summary + "）");
+                return summary;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, writerExecutor);
+    }
+
+    /**
+     * 持有预约管理器的锁拷贝预约，并按设施ID顺序逐个取设施快照（锁顺序：预约管理器 → 单个设施）
+     */
+    private Capture capture() {
+        Capture capture = new Capture();
+        synchronized (bookingManager) {
+            Booking[] bookings = bookingManager.copyBookings();
+            // 设施集合 = 设施池 + 预约引用的设施（演示中单独创建的设施也能被还原）
+            Map<Ride, Boolean> rides = new IdentityHashMap<>();
+            for (Ride ride : rideManager.getAllRides()) {
+                rides.put(ride, Boolean.TRUE);
+            }
+            for (Booking booking : bookings) {
+                rides.putIfAbsent(booking.getRide(), Boolean.FALSE);
+            }
+            List<Ride> ordered = new ArrayList<>(rides.keySet());
+            ordered.sort(Comparator.comparing(Ride::getRideId).thenComparingInt(System::identityHashCode));
+            for (Ride ride : ordered) {
+                capture.rides.add(captureRide(ride, rides.get(ride)));
+            }
+
+            capture.bookings = bookings;
+            capture.bookingTimes = new LocalDateTime[bookings.length];
+            capture.cancelled = new boolean[bookings.length];
+            capture.cancelledAt = new LocalDateTime[bookings.length];
+            capture.noShow = new boolean[bookings.length];
+            capture.queuedAt = new LocalDateTime[bookings.length];
+            for (int i = 0; i < bookings.length; i++) {
+                capture.bookingTimes[i] = bookings[i].getBookingTime();
+                capture.cancelled[i] = bookings[i].isCancelled();
+                capture.cancelledAt[i] = bookings[i].getCancelledAt();
+                capture.noShow[i] = bookings[i].isNoShow();
+                capture.queuedAt[i] = bookings[i].getQueuedAt();
+            }
+        }
+        return capture;
+    }
+
+    // 在设施锁内取该设施的快照与元数据（历史与设施共享存储，持锁时间与历史规模无关）
+    private static RideCapture captureRide(Ride ride, boolean inPool) {
+        synchronized (ride) {
+            RideCapture rc = new RideCapture();
+            rc.ride = ride;
+            rc.inPool = inPool;
+            rc.rideType = ride.getRideType();
+            rc.historyStorage = ride.getHistoryStorage();
+            rc.maxRider = ride.getMaxRider();
+            rc.avgCycleSeconds = ride.getWaitTimeEstimator().getAvgCycleSeconds();
+            rc.avgRidersPerCycle = ride.getWaitTimeEstimator().getAvgRidersPerCycle();
+            rc.estimatorSamples = ride.getWaitTimeEstimator().getSamples();
+            rc.operator = ride.getOperator();
+            rc.snapshot = ride.snapshot();
+            return rc;
+        }
+    }
+
+    private Summary write(Capture capture, String filePath, long start) throws IOException {
+        // 由快照展开各设施的队列与历史（在写盘线程中进行，不持有任何锁）
+        for (RideCapture rc : capture.rides) {
+            RideSnapshot snapshot = rc.snapshot;
+            HistoryStore history = snapshot.getHistory();
+            rc.numOfCycles = snapshot.getNumOfCycles();
+            rc.queue = snapshot.getQueue().toArray(new Visitor[0]);
+            rc.bookedAhead = snapshot.getBookedAhead();
+            rc.history = history.toArray(new Visitor[0]);
+            rc.historySeconds = history.copySeconds();
+            rc.historyCycles = history.copyCycles();
+            rc.historySequences = history.copySequences();
+            rc.historySequenceBase = history.getSequenceBase();
+        }
+        // 第一遍：为所有被引用的游客分配字典序号
+        Map<Visitor, Integer> dictionary = new IdentityHashMap<>();
+        List<Visitor> visitors = new ArrayList<>();
+        long historyEntries = 0;
+        for (RideCapture rc : capture.rides) {
+            intern(rc.queue, dictionary, visitors);
+            intern(rc.history, dictionary, visitors);
+            historyEntries += rc.history.length;
+        }
+        for (Booking booking : capture.bookings) {
+            intern(booking.getVisitor(), dictionary, visitors);
+        }
+        Map<Ride, Integer> rideIndex = new IdentityHashMap<>();
+        for (int i = 0; i < capture.rides.size(); i++) {
+            rideIndex.put(capture.rides.get(i).ride, i);
+        }
+
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            out.writeInt(visitors.size());
+            for (Visitor visitor : visitors) {
+                writeString(out, visitor.getId());
+                writeString(out, visitor.getName());
+                out.writeInt(visitor.getAge());
+                writeString(out, visitor.getVisitorId());
+                out.writeByte(visitor.getMembershipType().ordinal());
+                out.writeBoolean(visitor.isHasRideInsurance());
+                out.writeInt(visitor.getHeightCm());
+            }
+
+            out.writeInt(capture.rides.size());
+            for (RideCapture rc : capture.rides) {
+                writeString(out, rc.ride.getRideId());
+                writeString(out, rc.ride.getName());
+                out.writeBoolean(rc.inPool);
+                out.writeByte(rc.rideType.ordinal());
+                out.writeByte(rc.historyStorage.ordinal());
+                out.writeInt(rc.maxRider);
+                out.writeInt(rc.numOfCycles);
+                out.writeDouble(rc.avgCycleSeconds);
+                out.writeDouble(rc.avgRidersPerCycle);
+                out.writeLong(rc.estimatorSamples);
+                out.writeBoolean(rc.operator != null);
+                if (rc.operator != null) {
+                    writeString(out, rc.operator.getId());
+                    writeString(out, rc.operator.getName());
+                    out.writeInt(rc.operator.getAge());
+                    writeString(out, rc.operator.getEmployeeId());
+                    writeString(out, rc.operator.getPosition());
+                }
+                writeRefs(out, rc.queue, dictionary);
+                out.writeInt(rc.bookedAhead);
+                writeRefs(out, rc.history, dictionary);
+                for (int i = 0; i < rc.history.length; i++) {
+                    out.writeInt(rc.historySeconds[i]);
+                    out.writeInt(rc.historyCycles[i]);
+                }
+                out.writeBoolean(rc.historySequences != null);
+                if (rc.historySequences != null) {
+                    for (int sequence : rc.historySequences) {
+                        out.writeInt(sequence);
+                    }
+                }
+                out.writeLong(rc.historySequenceBase);
+            }
+
+            out.writeInt(capture.bookings.length);
+            for (int i = 0; i < capture.bookings.length; i++) {
+                Booking booking = capture.bookings[i];
+                writeString(out, booking.getBookingId());
+                out.writeInt(dictionary.get(booking.getVisitor()));
+                out.writeInt(rideIndex.get(booking.getRide()));
+                out.writeLong(capture.bookingTimes[i].toEpochSecond(ZoneOffset.UTC));
+                out.writeBoolean(capture.cancelled[i]);
+                if (capture.cancelled[i]) { // 取消时间未知（旧数据）时写Long.MIN_VALUE
+                    out.writeLong(capture.cancelledAt[i] != null
+                            ? capture.cancelledAt[i].toEpochSecond(ZoneOffset.UTC) : Long.MIN_VALUE);
+                    out.writeBoolean(capture.noShow[i]);
+                } else { // 未入队时写Long.MIN_VALUE
+                    out.writeLong(capture.queuedAt[i] != null
+                            ? capture.queuedAt[i].toEpochSecond(ZoneOffset.UTC) : Long.MIN_VALUE);
+                }
+            }
+        }
+        moveAtomically(temp, target);
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        return new Summary(capture.rides.size(), visitors.size(), historyEntries,
+                capture.bookings.length, Files.size(target), millis);
+    }
+
+    // ========================= 还原 =========================
+
+    /**
+     * 从检查点还原整个园区：设施池中的同ID设施被替换，预约列表被整体替换
+     * @param filePath 检查点文件路径
+     * @return 统计信息（文件不存在或格式错误时返回null，园区状态保持不变）
+     */
+    public Summary restore(String filePath) {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            LoggerUtil.error("❌ 还原检查点失败：文件不存在（" + filePath + "）");
+            return null;
+        }
+        long start = System.nanoTime();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            short version = in.readInt() == MAGIC ? in.readShort() : -1;
+            if (version < MIN_READABLE_VERSION || version > VERSION) {
+                LoggerUtil.error("❌ 还原检查点失败：文件格式或版本不匹配（" + filePath + "）");
+                return null;
+            }
+            in.readLong(); // 写入时间（保留字段）
+
+            Visitor.MembershipType[] membershipTypes = Visitor.MembershipType.values();
+            Visitor[] visitors = new Visitor[in.readInt()];
+            for (int i = 0; i < visitors.length; i++) {
+                String personId = readString(in);
+                String name = readString(in);
+                int age = in.readInt();
+                String visitorId = readString(in);
+                Visitor visitor = new Visitor(personId, name, age, visitorId,
+                        membershipTypes[in.readByte()], in.readBoolean());
+                int height = in.readInt();
+                if (height > 0) {
+                    visitor.setHeightCm(height);
+                }
+                visitors[i] = visitor;
+            }
+
+            RideType[] rideTypes = RideType.values();
+            Ride.HistoryStorage[] storages = Ride.HistoryStorage.values();
+            Ride[] rides = new Ride[in.readInt()];
+            boolean[] inPool = new boolean[rides.length];
+            long historyEntries = 0;
+            for (int i = 0; i < rides.length; i++) {
+                String rideId = readString(in);
+                String name = readString(in);
+                inPool[i] = in.readBoolean();
+                RideType rideType = rideTypes[in.readByte()];
+                Ride.HistoryStorage historyStorage = version >= 3 ? storages[in.readByte()] : null; // 旧版本使用默认存储
+                int maxRider = in.readInt();
+                int numOfCycles = in.readInt();
+                double avgCycleSeconds = in.readDouble();
+                double avgRidersPerCycle = in.readDouble();
+                long estimatorSamples = in.readLong();
+                Employee operator = null;
+                if (in.readBoolean()) {
+                    operator = new Employee(readString(in), readString(in), in.readInt(),
+                            readString(in), readString(in));
+                }
+                Ride ride = new Ride(rideId, name, operator, maxRider, historyStorage);
+                ride.setRideType(rideType);
+                List<Visitor> queue = readRefs(in, visitors);
+                int bookedAhead = version >= 8 ? in.readInt() : 0;
+                List<Visitor> history = readRefs(in, visitors);
+                int[] historySeconds = null;
+                int[] historyCycles = null;
+                if (version >= 4) {
+                    historySeconds = new int[history.size()];
+                    historyCycles = new int[history.size()];
+                    for (int h = 0; h < historySeconds.length; h++) {
+                        historySeconds[h] = in.readInt();
+                        historyCycles[h] = in.readInt();
+                    }
+                }
+                int[] historySequences = null;
+                if (version >= 5 && in.readBoolean()) {
+                    historySequences = new int[history.size()];
+                    for (int h = 0; h < historySequences.length; h++) {
+                        historySequences[h] = in.readInt();
+                    }
+                }
+                long historySequenceBase = version >= 9 ? in.readLong() : 0;
+                ride.restoreState(numOfCycles, queue, bookedAhead, history, historySeconds, historyCycles, historySequences,
+                        historySequenceBase);
+                ride.getWaitTimeEstimator().restore(avgCycleSeconds, avgRidersPerCycle, estimatorSamples);
+                historyEntries += history.size();
+                rides[i] = ride;
+            }
+
+            int bookingCount = in.readInt();
+            List<Booking> bookings = new ArrayList<>(bookingCount);
+            for (int i = 0; i < bookingCount; i++) {
+                String bookingId = readString(in);
+                Visitor visitor = visitors[in.readInt()];
+                Ride ride = rides[in.readInt()];
+                LocalDateTime time = LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC);
+                boolean cancelled = in.readBoolean();
+                LocalDateTime cancelledAt = null;
+                boolean noShow = false;
+                if (version >= 6 && cancelled) {
+                    long seconds = in.readLong();
+                    cancelledAt = seconds == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+                    noShow = version >= 7 && in.readBoolean();
+                }
+                LocalDateTime queuedAt = null;
+                if (version >= 8 && !cancelled) {
+                    long seconds = in.readLong();
+                    queuedAt = seconds == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+                }
+                bookings.add(new Booking(bookingId, visitor, ride, time, cancelled, cancelledAt, noShow, queuedAt));
+            }
+
+            // 全部读取成功后再替换现有状态，避免文件损坏时园区只还原一半
+            for (int i = 0; i < rides.length; i++) {
+                if (inPool[i]) {
+                    rideManager.registerRide(rides[i]);
+                }
+            }
+            bookingManager.restoreBookings(bookings);
+
+            Summary summary = new Summary(rides.length, visitors.length, historyEntries, bookings.size(),
+                    file.length(), (System.nanoTime() - start) / 1_000_000);
+            LoggerUtil.info("✅ 已从检查点还原园区状态（" + filePath + "）：" + summary);
+            return summary;
+        } catch (IOException | RuntimeException e) {
+            LoggerUtil.error("❌ 还原检查点失败！错误信息：" + e.getMessage());
+            return null;
+        }
+    }
+
+    // ========================= 编码工具方法 =========================
+
+    private static void intern(Visitor[] source, Map<Visitor, Integer> dictionary, List<Visitor> visitors) {
+        for (Visitor visitor : source) {
+            intern(visitor, dictionary, visitors);
+        }
+    }
+
+    private static void intern(Visitor visitor, Map<Visitor, Integer> dictionary, List<Visitor> visitors) {
+        if (!dictionary.containsKey(visitor)) {
+            dictionary.put(visitor, visitors.size());
+            visitors.add(visitor);
+        }
+    }
+
+    private static void writeRefs(DataOutputStream out, Visitor[] source, Map<Visitor, Integer> dictionary)
+            throws IOException {
+        out.writeInt(source.length);
+        for (Visitor visitor : source) {
+            out.writeInt(dictionary.get(visitor));
+        }
+    }
+
+    private static List<Visitor> readRefs(DataInputStream in, Visitor[] dictionary) throws IOException {
+        int count = in.readInt();
+        Visitor[] result = new Visitor[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = dictionary[in.readInt()];
+        }
+        return Arrays.asList(result);
+    }
+
+    // 可空字符串：先写是否存在标记
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * 原子重命名（文件系统不支持时退化为普通替换），园区导出也复用
+     */
+    static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
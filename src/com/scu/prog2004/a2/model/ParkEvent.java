@@ -0,0 +1,78 @@
+package com.scu.prog2004.a2.model;
+
+/**
+ * 园区状态变更事件（由Ride与BookingManager发布到ParkEventBus）
+ * 设计思路：不可变值对象 + 事件类型枚举，订阅方按类型增量更新看板，无需轮询打印全部数据
+ */
+public final class ParkEvent {
+    /**
+     * 事件类型
+     */
+    public enum Type {
+        ENQUEUED("游客入队"),
+        DEQUEUED("游客出队"),
+        BOARDED("游客登乘"),
+        CYCLE_COMPLETED("周期完成"),
+        BOOKING_CREATED("预约创建"),
+        BOOKING_CANCELLED("预约取消"),
+        BOOKING_REMINDER("预约提醒"),
+        BOOKING_DUE("预约到时"),
+        BOOKING_EXPIRED("预约过期（未到场）");
+
+        private final String displayName;
+
+        Type(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private final Type type;
+    private final long timestamp;    // 事件发生时间（毫秒时间戳）
+    private final String rideId;     // 相关设施ID
+    private final String visitorId;  // 相关游客ID（批量事件为null）
+    private final String bookingId;  // 相关预约ID（设施事件为null）
+    private final int count;         // 数量：入队/出队后的队列长度、登乘所在周期序号、周期载客数
+
+    private ParkEvent(Type type, String rideId, String visitorId, String bookingId, int count) {
+        this.type = type;
+        this.timestamp = System.currentTimeMillis();
+        this.rideId = rideId;
+        this.visitorId = visitorId;
+        this.bookingId = bookingId;
+        this.count = count;
+    }
+
+    /**
+     * 设施事件（入队/出队/登乘/周期完成）
+     */
+    public static ParkEvent rideEvent(Type type, String rideId, String visitorId, int count) {
+        return new ParkEvent(type, rideId, visitorId, null, count);
+    }
+
+    /**
+     * 预约事件（创建/取消/提醒/到时/过期）
+     */
+    public static ParkEvent bookingEvent(Type type, Booking booking) {
+        return new ParkEvent(type, booking.getRide().getRideId(), booking.getVisitor().getVisitorId(),
+                booking.getBookingId(), 1);
+    }
+
+    // 访问器（只读）
+    public Type getType() { return type; }
+    public long getTimestamp() { return timestamp; }
+    public String getRideId() { return rideId; }
+    public String getVisitorId() { return visitorId; }
+    public String getBookingId() { return bookingId; }
+    public int getCount() { return count; }
+
+    @Override
+    public String toString() {
+        return String.format("ParkEvent{type=%s, rideId='%s', visitorId='%s', bookingId='%s', count=%d}",
+                type, rideId, visitorId, bookingId, count);
+    }
+}
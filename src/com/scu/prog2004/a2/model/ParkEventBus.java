@@ -0,0 +1,151 @@
+package com.scu.prog2004.a2.model;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 单例模式的园区事件总线（基于java.util.concurrent.Flow的发布/订阅）
+ * 背压策略：每个订阅者拥有独立的有界缓冲区，发布方使用非阻塞offer；
+ * 慢订阅者缓冲区满时丢弃该订阅者的新事件并计数，绝不阻塞设施的入队/运行热路径
+ */
+public class ParkEventBus {
+    private static final int BUFFER_CAPACITY = 1024; // 每个订阅者的缓冲区大小（SubmissionPublisher会取2的幂）
+    private static volatile ParkEventBus instance;
+
+    private final SubmissionPublisher<ParkEvent> publisher;
+    private final LongAdder droppedEvents = new LongAdder(); // 因订阅者过慢被丢弃的事件数
+
+    private ParkEventBus() {
+        // 守护线程投递事件，避免事件总线阻止JVM退出
+        ExecutorService deliveryExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "park-event-delivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.publisher = new SubmissionPublisher<>(deliveryExecutor, BUFFER_CAPACITY);
+    }
+
+    // 双重检查锁实现线程安全的单例获取（与RideManager/BookingManager一致）
+    public static ParkEventBus getInstance() {
+        if (instance == null) {
+            synchronized (ParkEventBus.class) {
+                if (instance == null) {
+                    instance = new ParkEventBus();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 是否存在订阅者（发布方可据此跳过事件对象的创建，无订阅时零开销）
+     */
+    public boolean hasSubscribers() {
+        return publisher.hasSubscribers();
+    }
+
+    /**
+     * 发布事件（非阻塞：订阅者缓冲区已满时丢弃并计数）
+     */
+    public void publish(ParkEvent event) {
+        if (!publisher.hasSubscribers()) {
+            return;
+        }
+        publisher.offer(event, (subscriber, dropped) -> {
+            droppedEvents.increment();
+            return false; // 不重试，立即返回
+        });
+    }
+
+    /**
+     * 注册自定义Flow订阅者（由订阅者自行通过request(n)控制背压）
+     */
+    public void subscribe(Flow.Subscriber<? super ParkEvent> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * 便捷订阅：每次向发布方请求batchSize个事件，处理完一批再请求下一批
+     * @param handler 事件处理逻辑（在事件投递线程中执行）
+     * @param batchSize 每批请求数量（≥1）
+     * @return 订阅句柄（可调用cancel()取消订阅）
+     */
+    public Flow.Subscription subscribe(Consumer<ParkEvent> handler, int batchSize) {
+        BatchingSubscriber subscriber = new BatchingSubscriber(handler, Math.max(1, batchSize));
+        publisher.subscribe(subscriber);
+        return subscriber;
+    }
+
+    public long getDroppedEventCount() {
+        return droppedEvents.sum();
+    }
+
+    public int getSubscriberCount() {
+        return publisher.getNumberOfSubscribers();
+    }
+
+    /**
+     * 按批请求事件的订阅者：同时作为订阅句柄返回给调用方
+     */
+    private static final class BatchingSubscriber implements Flow.Subscriber<ParkEvent>, Flow.Subscription {
+        private final Consumer<ParkEvent> handler;
+        private final int batchSize;
+        private volatile Flow.Subscription subscription;
+        private int remaining; // 当前批次剩余未处理数（仅在投递线程中访问）
+
+        private BatchingSubscriber(Consumer<ParkEvent> handler, int batchSize) {
+            this.handler = handler;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            remaining = batchSize;
+            subscription.request(batchSize);
+        }
+
+        @Override
+        public void onNext(ParkEvent event) {
+            try {
+                handler.accept(event);
+            } catch (RuntimeException e) {
+                LoggerUtil.error("❌ 事件处理失败：" + event + "，错误信息：" + e.getMessage());
+            }
+            if (--remaining == 0) {
+                remaining = batchSize;
+                subscription.request(batchSize);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            LoggerUtil.error("❌ 事件订阅异常终止：" + throwable.getMessage());
+        }
+
+        @Override
+        public void onComplete() {
+            LoggerUtil.info("📌 事件订阅已结束");
+        }
+
+        @Override
+        public void request(long n) {
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.request(n);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 园区历史批量导出：把RideManager中每个设施的游乐历史各导出为一个文件，并生成带行数与CRC32校验和的清单
+ * 设计思路：
+ *   - 每个设施一个任务，提交到有界线程池并行写盘（各设施锁相互独立，互不阻塞），总耗时取决于最大的设施而非所有设施之和；
+ *   - 每个文件先写到同目录的.tmp临时文件，写完后原子重命名，中途失败不会留下半个文件或覆盖上一次的导出；
+ *   - 写盘时边写边计算CRC32，无需再读一遍文件；清单在所有设施完成后最后写出（同样原子重命名），清单存在即表示本次导出已结束
+ */
+public class ParkExporter {
+    public static final String MANIFEST_FILE_NAME = "export-manifest.csv";
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final DateTimeFormatter TIME_FORMATTER = DisplayRenderer.SECOND_FORMATTER;
+
+    private final RideManager rideManager;
+    private final int parallelism;
+
+    public ParkExporter(RideManager rideManager) {
+        this(rideManager, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param rideManager 设施管理器
+     * @param parallelism 同时写盘的最大设施数（线程池大小上限）
+     */
+    public ParkExporter(RideManager rideManager, int parallelism) {
+        this.rideManager = rideManager;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 并行导出所有设施的游乐历史
+     * @param directory 导出目录（不存在时自动创建）
+     * @param format 导出格式（文件扩展名由格式决定）
+     * @return 导出清单（目录无法创建时返回null）
+     */
+    public Manifest exportAll(String directory, HistoryFormat format) {
+        long start = System.nanoTime();
+        Path dir = Paths.get(directory).toAbsolutePath();
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            LoggerUtil.error("❌ 园区导出失败：无法创建目录" + dir + "，错误信息：" + e.getMessage());
+            return null;
+        }
+
+        List<Ride> rides = new ArrayList<>(rideManager.getAllRides());
+        rides.sort(Comparator.comparing(Ride::getRideId));
+        List<Entry> entries = new ArrayList<>();
+        if (!rides.isEmpty()) {
+            ExecutorService executor = createExecutor(Math.min(parallelism, rides.size()));
+            try {
+                List<CompletableFuture<Entry>> futures = new ArrayList<>();
+                for (Ride ride : rides) {
+                    futures.add(CompletableFuture.supplyAsync(() -> exportRide(ride, dir, format), executor));
+                }
+                for (CompletableFuture<Entry> future : futures) {
+                    entries.add(future.join());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        Manifest manifest = new Manifest(dir.toString(), format.getName(), LocalDateTime.now(), entries,
+                (System.nanoTime() - start) / 1_000_000);
+        try {
+            writeManifest(manifest, dir);
+        } catch (IOException e) {
+            LoggerUtil.error("❌ 园区导出清单写入失败！错误信息：" + e.getMessage());
+            return manifest;
+        }
+        if (manifest.isComplete()) {
+            LoggerUtil.info("✅ 园区历史已导出到：" + dir + "（" + manifest + "）");
+        } else {
+            LoggerUtil.error("❌ 园区历史导出部分失败：" + manifest + "，详见清单" + MANIFEST_FILE_NAME);
+        }
+        return manifest;
+    }
+
+    // ========================= 内部实现 =========================
+
+    /**
+     * 导出单个设施：写临时文件（同时计算CRC32）→ 原子重命名；失败时删除临时文件并在清单中记录错误
+     */
+    private static Entry exportRide(Ride ride, Path dir, HistoryFormat format) {
+        long start = System.nanoTime();
+        String fileName = "rideHistory_" + ride.getRideId() + "." + format.getExtension();
+        Path target = dir.resolve(fileName);
+        Path temp = dir.resolve(fileName + ".tmp");
+        CRC32 crc = new CRC32();
+        try {
+            int rows;
+            try (OutputStream out = new BufferedOutputStream(
+                    new CheckedOutputStream(Files.newOutputStream(temp), crc), BUFFER_SIZE)) {
+                rows = ride.writeHistory(format, out);
+            }
+            long bytes = Files.size(temp);
+            ParkCheckpoint.moveAtomically(temp, target);
+            return new Entry(ride.getRideId(), fileName, rows, bytes, crc.getValue(),
+                    (System.nanoTime() - start) / 1_000_000, null);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // 临时文件删除失败不影响结果，下次导出会覆盖
+            }
+            LoggerUtil.error("❌ 设施[" + ride.getName() + "]导出失败！错误信息：" + e.getMessage());
+            return new Entry(ride.getRideId(), fileName, 0, 0, 0,
+                    (System.nanoTime() - start) / 1_000_000, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static void writeManifest(Manifest manifest, Path dir) throws IOException {
+        Path target = dir.resolve(MANIFEST_FILE_NAME);
+        Path temp = dir.resolve(MANIFEST_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write("# 园区历史导出清单，导出时间：" + manifest.exportedAt.format(TIME_FORMATTER)
+                    + "，格式：" + manifest.formatName);
+            writer.newLine();
+            writer.write("rideId,file,rows,bytes,crc32,millis,status");
+            writer.newLine();
+            for (Entry entry : manifest.entries) {
+                writer.write(entry.rideId + "," + entry.fileName + "," + entry.rows + "," + entry.bytes + ","
+                        + entry.getCrc32Hex() + "," + entry.millis + ","
+                        + (entry.isSuccess() ? "OK" : "FAILED: " + entry.error.replace(",", " ")));
+                writer.newLine();
+            }
+        }
+        ParkCheckpoint.moveAtomically(temp, target);
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "park-export-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // ========================= 导出结果（不可变） =========================
+
+    /**
+     * 单个设施的导出结果
+     */
+    public static final class Entry {
+        private final String rideId;
+        private final String fileName;
+        private final int rows;
+        private final long bytes;
+        private final long crc32;
+        private final long millis;
+        private final String error; // 成功时为null
+
+        Entry(String rideId, String fileName, int rows, long bytes, long crc32, long millis, String error) {
+            this.rideId = rideId;
+            this.fileName = fileName;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.crc32 = crc32;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        public String getRideId() { return rideId; }
+        public String getFileName() { return fileName; }
+        public int getRows() { return rows; }
+        public long getBytes() { return bytes; }
+        public long getCrc32() { return crc32; }
+        public long getMillis() { return millis; }
+        public String getError() { return error; }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public String getCrc32Hex() {
+            return String.format("%08x", crc32);
+        }
+
+        @Override
+        public String toString() {
+            return isSuccess()
+                    ? String.format("%s → %s：%d行，%.1fKB，CRC32=%s，耗时%dms", rideId, fileName, rows, bytes / 1024.0, getCrc32Hex(), millis)
+                    : rideId + " → 失败：" + error;
+        }
+    }
+
+    /**
+     * 整个园区的导出清单
+     */
+    public static final class Manifest {
+        private final String directory;
+        private final String formatName;
+        private final LocalDateTime exportedAt;
+        private final List<Entry> entries;
+        private final long millis;
+
+        Manifest(String directory, String formatName, LocalDateTime exportedAt, List<Entry> entries, long millis) {
+            this.directory = directory;
+            this.formatName = formatName;
+            this.exportedAt = exportedAt;
+            this.entries = Collections.unmodifiableList(entries);
+            this.millis = millis;
+        }
+
+        public String getDirectory() { return directory; }
+        public String getFormatName() { return formatName; }
+        public LocalDateTime getExportedAt() { return exportedAt; }
+        public List<Entry> getEntries() { return entries; }
+        public long getMillis() { return millis; }
+
+        public long getTotalRows() {
+            long total = 0;
+            for (Entry entry : entries) {
+                total += entry.rows;
+            }
+            return total;
+        }
+
+        /**
+         * 所有设施均导出成功
+         */
+        public boolean isComplete() {
+            for (Entry entry : entries) {
+                if (!entry.isSuccess()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            long failed = entries.stream().filter(entry -> !entry.isSuccess()).count();
+            return String.format("格式%s，设施%d个（失败%d个），共%d行，总耗时%dms",
+                    formatName, entries.size(), failed, getTotalRows(), millis);
+        }
+    }
+}
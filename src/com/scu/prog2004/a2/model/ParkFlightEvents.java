@@ -0,0 +1,92 @@
+package com.scu.prog2004.a2.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 主题公园的JFR自定义事件（每个被探测的操作一种事件，便于在录制配置中单独设置开关与阈值）
+ * 公共字段（对象/条数/字节数/是否成功）定义在抽象基类中，耗时由JFR的begin/commit自动记录
+ * 高频事件（入队、周期运行、批量运行）默认不采集调用栈，降低录制开销
+ */
+final class ParkFlightEvents {
+    private static final String CATEGORY = "主题公园";
+
+    private ParkFlightEvents() {
+    }
+
+    /**
+     * 操作事件基类（抽象类不会注册为事件类型，字段由各子类事件继承）
+     */
+    abstract static class OperationEvent extends Event {
+        @Label("对象")
+        @Description("设施ID、预约ID或文件路径")
+        String target;
+
+        @Label("条数")
+        long items;
+
+        @Label("字节数")
+        @DataAmount
+        long bytes;
+
+        @Label("成功")
+        boolean success;
+    }
+
+    @Name("com.scu.prog2004.a2.RideEnqueue")
+    @Label("游客入队")
+    @Category({CATEGORY, "设施"})
+    @StackTrace(false)
+    static final class RideEnqueue extends OperationEvent {
+    }
+
+    @Name("com.scu.prog2004.a2.RideCycle")
+    @Label("运行周期")
+    @Category({CATEGORY, "设施"})
+    @StackTrace(false)
+    static final class RideCycle extends OperationEvent {
+    }
+
+    @Name("com.scu.prog2004.a2.RideCycles")
+    @Label("批量运行周期")
+    @Category({CATEGORY, "设施"})
+    @StackTrace(false)
+    static final class RideCycles extends OperationEvent {
+    }
+
+    @Name("com.scu.prog2004.a2.HistoryImport")
+    @Label("导入游乐历史")
+    @Category({CATEGORY, "设施"})
+    static final class HistoryImport extends OperationEvent {
+    }
+
+    @Name("com.scu.prog2004.a2.HistoryExport")
+    @Label("导出游乐历史")
+    @Category({CATEGORY, "设施"})
+    static final class HistoryExport extends OperationEvent {
+    }
+
+    @Name("com.scu.prog2004.a2.BookingAdd")
+    @Label("新增预约")
+    @Category({CATEGORY, "预约"})
+    @StackTrace(false)
+    static final class BookingAdd extends OperationEvent {
+    }
+
+    @Name("com.scu.prog2004.a2.BookingSave")
+    @Label("保存预约文件")
+    @Category({CATEGORY, "预约"})
+    static final class BookingSave extends OperationEvent {
+    }
+
+    @Name("com.scu.prog2004.a2.BookingLoad")
+    @Label("加载预约文件")
+    @Category({CATEGORY, "预约"})
+    static final class BookingLoad extends OperationEvent {
+    }
+}
@@ -0,0 +1,129 @@
+package com.scu.prog2004.a2.model;
+
+/**
+ * 热点操作性能探针：为设施与预约的关键操作提供JFR（JDK飞行记录器）事件与可选的进程内计时钩子
+ * 两种采集方式互不依赖、可同时开启：
+ *   - JFR：java -XX:StartFlightRecording=filename=park.jfr ... 启动（或运行中用jcmd JFR.start），
+ *     事件名见Operation.getEventName，结束后可用JfrSummary汇总为各操作的延迟表；
+ *   - 计时钩子：setHook安装回调（如OperationLatencyTable），每次操作结束时收到耗时/条数/字节数
+ * 未开启时的代价：JFR事件的begin/shouldCommit在未启用时为空操作（事件对象经逃逸分析消除），
+ * 钩子只多读一次volatile字段，不调用System.nanoTime
+ * 用法（调用方在各操作内部）：
+ *   ParkFlightEvents.RideCycle event = new ParkFlightEvents.RideCycle();
+ *   event.begin();
+ *   long startNanos = ParkProfiler.start();
+ *   ...执行操作...
+ *   ParkProfiler.end(event, Operation.RIDE_CYCLE, 设施ID, startNanos, 条数, 字节数, 是否成功);
+ */
+public final class ParkProfiler {
+    /**
+     * 被探测的操作（名称与JFR事件名一一对应）
+     */
+    public enum Operation {
+        ENQUEUE("Ride.addVisitorToQueue", "com.scu.prog2004.a2.RideEnqueue"),
+        RIDE_CYCLE("Ride.runCycle/runOneCycle", "com.scu.prog2004.a2.RideCycle"),
+        RIDE_CYCLES("Ride.runCycles", "com.scu.prog2004.a2.RideCycles"),
+        HISTORY_IMPORT("Ride.importRideHistory", "com.scu.prog2004.a2.HistoryImport"),
+        HISTORY_EXPORT("Ride.exportRideHistory", "com.scu.prog2004.a2.HistoryExport"),
+        BOOKING_ADD("BookingManager.addBooking", "com.scu.prog2004.a2.BookingAdd"),
+        BOOKING_SAVE("BookingManager.saveBookingsToFile", "com.scu.prog2004.a2.BookingSave"),
+        BOOKING_LOAD("BookingManager.loadBookingsFromFile", "com.scu.prog2004.a2.BookingLoad");
+
+        private final String displayName;
+        private final String eventName;
+
+        Operation(String displayName, String eventName) {
+            this.displayName = displayName;
+            this.eventName = eventName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * 对应的JFR事件名（jfr print --events 可直接使用）
+         */
+        public String getEventName() {
+            return eventName;
+        }
+
+        /**
+         * 按JFR事件名查找操作
+         * @return 对应的操作（不是本系统的事件返回null）
+         */
+        public static Operation forEventName(String eventName) {
+            for (Operation operation : values()) {
+                if (operation.eventName.equals(eventName)) {
+                    return operation;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 进程内计时钩子（在操作线程上同步调用，且可能在设施/预约锁内调用：实现必须快速、不得回调设施或预约操作）
+     */
+    @FunctionalInterface
+    public interface Hook {
+        /**
+         * @param operation 操作
+         * @param target 操作对象（设施ID、预约ID或文件路径，可能为null）
+         * @param durationNanos 耗时（纳秒）
+         * @param items 处理的条数（入队人数、载客数、导入/导出记录数、预约数）
+         * @param bytes 读写的字节数（不涉及文件的操作为0）
+         * @param success 操作是否成功（校验失败、文件错误等为false）
+         */
+        void onOperation(Operation operation, String target, long durationNanos, long items, long bytes, boolean success);
+    }
+
+    private static volatile Hook hook;
+
+    private ParkProfiler() {
+    }
+
+    /**
+     * 安装计时钩子（替换已有钩子；传入null关闭）
+     */
+    public static void setHook(Hook newHook) {
+        hook = newHook;
+    }
+
+    public static Hook getHook() {
+        return hook;
+    }
+
+    /**
+     * 操作开始：安装了钩子时返回当前时刻，否则返回0（不读时钟）
+     */
+    static long start() {
+        return hook == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * 本次操作是否有人采集（用于跳过只为探针计算的数据，如文件长度）
+     */
+    static boolean isRecording(ParkFlightEvents.OperationEvent event, long startNanos) {
+        return startNanos != 0 || event.shouldCommit();
+    }
+
+    /**
+     * 操作结束：JFR事件满足记录条件时提交，安装了钩子时回调
+     * @param startNanos start()的返回值（为0表示开始时未安装钩子，本次不回调）
+     */
+    static void end(ParkFlightEvents.OperationEvent event, Operation operation, String target,
+                    long startNanos, long items, long bytes, boolean success) {
+        if (event.shouldCommit()) {
+            event.target = target;
+            event.items = items;
+            event.bytes = bytes;
+            event.success = success;
+            event.commit();
+        }
+        Hook current = hook;
+        if (current != null && startNanos != 0) {
+            current.onOperation(operation, target, System.nanoTime() - startNanos, items, bytes, success);
+        }
+    }
+}
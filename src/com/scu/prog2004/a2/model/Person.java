@@ -14,6 +14,7 @@ public abstract class Person implements Serializable { // 新增实现Serializab
     private final String id;       // 唯一标识（不可修改，构造时初始化）
     private String name;           // 姓名
     private int age;               // 年龄
+    private transient String displayText; // toString缓存（属性修改时作废；不参与序列化，反序列化后首次打印时重建）
 
     /**
      * 默认构造器
@@ -53,6 +54,7 @@ public abstract class Person implements Serializable { // 新增实现Serializab
     public void setName(String name) {
         if (name != null && !name.isBlank()) {
             this.name = name;
+            invalidateDisplay();
         } else {
             LoggerUtil.error("警告：姓名不能为空！属性未更新");
         }
@@ -61,6 +63,7 @@ public abstract class Person implements Serializable { // 新增实现Serializab
     public void setAge(int age) {
         if (age >= 0) {
             this.age = age;
+            invalidateDisplay();
         } else {
             LoggerUtil.error("警告：年龄不能为负数！属性未更新");
         }
@@ -68,10 +71,36 @@ public abstract class Person implements Serializable { // 新增实现Serializab
 
     /**
      * 重写toString：便于打印对象详情（调试/展示用）
-     * 格式统一，包含所有核心属性
+     * 格式统一，包含所有核心属性；结果缓存到属性被修改为止（打印队列/历史时同一游客反复出现，不再每次重新拼接）
      */
     @Override
     public String toString() {
-        return String.format("Person{id='%s', name='%s', age=%d}", id, name, age);
+        String text = displayText;
+        if (text == null) {
+            text = describe();
+            displayText = text; // 字符串不可变，并发重复计算只会得到相同结果，无需加锁
+        }
+        return text;
+    }
+
+    /**
+     * 生成展示文本（子类覆盖以加入自身属性，并在相应修改器中调用invalidateDisplay）
+     */
+    protected String describe() {
+        return describePerson();
+    }
+
+    /**
+     * Person部分的展示文本：Person{id='...', name='...', age=...}
+     */
+    protected final String describePerson() {
+        return "Person{id='" + id + "', name='" + name + "', age=" + age + "}";
+    }
+
+    /**
+     * 作废toString缓存（展示文本中的属性被修改时调用）
+     */
+    protected final void invalidateDisplay() {
+        displayText = null;
     }
 }
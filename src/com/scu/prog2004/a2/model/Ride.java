@@ -1,26 +1,80 @@
 package com.scu.prog2004.a2.model;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * 游乐设施类：实现RideInterface，核心业务逻辑载体
  * 设计思路：高内聚封装所有游乐设施相关功能（队列、历史、运行、IO）
- * 选择最优集合实现：Queue用LinkedList（FIFO高效），History用LinkedList（迭代器遍历方便）
+ * 选择最优集合实现：Queue用LinkedList（FIFO高效），History用HistoryStore（按位置O(1)定位，支持游标分页；每条记录带乘坐时间与周期序号，支持时间区间查询）
+ * 线程安全：访问队列/历史的方法均以设施自身为锁（synchronized），不同设施之间互不阻塞；
+ * 打印、导出、统计等长时间读取先取只读快照（snapshot，历史写时复制共享），在快照上读取时不持有设施锁
+ * 历史存储可选堆外实现（HistoryStorage.OFF_HEAP，见OffHeapHistoryStore），超大历史规模下避免GC停顿随历史增长；
+ * 两种实现都继承HistoryStore，RideInterface的历史操作无需区分
  */
 public class Ride implements RideInterface, Serializable { // 新增实现Serializable
     private static final long serialVersionUID = 1L; // 新增序列化版本号
+    private static final ParkEventBus EVENT_BUS = ParkEventBus.getInstance(); // 状态变更事件总线
+    private static final StaffScheduler STAFF_SCHEDULER = StaffScheduler.getInstance(); // 排班引擎（运行周期前自动换班）
+    // 默认历史存储方式（启动参数-Dpark.history.offheap=true时改为堆外存储）
+    private static final HistoryStorage DEFAULT_HISTORY_STORAGE =
+            Boolean.getBoolean("park.history.offheap") ? HistoryStorage.OFF_HEAP : HistoryStorage.HEAP;
+    private static final int IO_BUFFER_BYTES = 1 << 16; // 历史导入/导出的流缓冲大小
+    private static final Object INCREMENTAL_EXPORT_LOCK = new Object(); // 增量导出串行化（与设施锁无关，不阻塞周期运行）
+
+    /**
+     * 游乐历史存储方式
+     */
+    public enum HistoryStorage {
+        HEAP("堆内存储"),      // 游客引用数组 + 时间/周期并行数组
+        OFF_HEAP("堆外存储");  // 直接内存定长记录 + 游客驻留字典
+
+        private final String displayName;
+
+        HistoryStorage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        HistoryStore createStore() {
+            return this == OFF_HEAP ? new OffHeapHistoryStore() : new HeapHistoryStore();
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
     // 核心属性（满足"至少3个实例变量"，包含Employee类型）
-    private final String rideId;          // 游乐设施唯一ID（只读）
-    private final String name;            // 设施名称（如"过山车"）
+    // rideId/name/waitingQueue/rideHistory只在构造与反序列化（readObject逐字段赋值）时写入，之后只读
+    private String rideId;                // 游乐设施唯一ID（只读）
+    private String name;                  // 设施名称（如"过山车"）
     private Employee operator;            // 操作员（Employee类型，作业要求）
     private int maxRider;                 // 单次最大载客量（Part5要求）
     private int numOfCycles;              // 已运行周期数（Part5要求，默认0）
     private RideType rideType;            // HD级扩展：设施类型（带动态行为）
+    private EligibilityRule eligibilityRule; // 预编译的资格规则（默认由设施类型生成）
+    private WaitTimeEstimator waitTimeEstimator; // 等待时间估算（周期时长/吞吐量EWMA）
+    private int queueCapacity;            // 等待队列容量上限（0表示不限，由设施目录配置）
+    private transient int staffVersion;           // 上次确认操作员时的排班版本号
+    private transient long operatorValidUntilMillis; // 上次确认的操作员有效期截止时刻（0表示需要重新确认）
 
     // 集合属性（Part3-4要求）
-    private final Queue<Visitor> waitingQueue; // 等待队列（FIFO）
-    private final LinkedList<Visitor> rideHistory; // 游乐历史（支持迭代器）
+    private LinkedList<Visitor> waitingQueue; // 等待队列（FIFO；队首bookedAhead人为预约优先区）
+    private int bookedAhead;              // 队首尚未登车的预约游客人数（预约游客插在所有现场排队游客之前）
+    private transient long dequeuedCount; // 累计从队首离队的人数（队列分页游标的基准，使游标不随登车移动）
+    private transient long stateVersion;  // 队列/历史/周期数的版本号（每次变化加一，快照据此标识时刻）
+    private HistoryStore rideHistory;     // 游乐历史（堆内或堆外存储：均支持迭代器、按位置分页与时间区间查询）
 
     /**
      * 默认构造器：初始化默认值，生成唯一ID
@@ -32,8 +86,10 @@ public class Ride implements RideInterface, Serializable { // 新增实现Serial
         this.maxRider = 2; // 默认单次2人（Part5要求至少1人）
         this.numOfCycles = 0;
         this.rideType = RideType.THRILL; // 默认刺激类设施
+        this.eligibilityRule = EligibilityRule.forRideType(rideType);
+        this.waitTimeEstimator = new WaitTimeEstimator();
         this.waitingQueue = new LinkedList<>(); // LinkedList实现Queue，高效FIFO
-        this.rideHistory = new LinkedList<>();
+        this.rideHistory = DEFAULT_HISTORY_STORAGE.createStore();
     }
 
     /**
@@ -44,14 +100,24 @@ public class Ride implements RideInterface, Serializable { // 新增实现Serial
      * @param maxRider 最大载客量（校验≥1）
      */
     public Ride(String rideId, String name, Employee operator, int maxRider) {
+        this(rideId, name, operator, maxRider, DEFAULT_HISTORY_STORAGE);
+    }
+
+    /**
+     * 带参构造器：指定游乐历史存储方式
+     * @param historyStorage 历史存储方式（null时使用默认方式）
+     */
+    public Ride(String rideId, String name, Employee operator, int maxRider, HistoryStorage historyStorage) {
         this.rideId = rideId;
         this.name = (name != null && !name.isBlank()) ? name : "未知设施";
         this.operator = operator;
         this.maxRider = Math.max(1, maxRider); // 防御性编程：确保≥1
         this.numOfCycles = 0;
         this.rideType = RideType.THRILL; // 默认刺激类设施
+        this.eligibilityRule = EligibilityRule.forRideType(rideType);
+        this.waitTimeEstimator = new WaitTimeEstimator();
         this.waitingQueue = new LinkedList<>();
-        this.rideHistory = new LinkedList<>();
+        this.rideHistory = (historyStorage != null ? historyStorage : DEFAULT_HISTORY_STORAGE).createStore();
     }
 
     // 访问器和修改器（封装属性）
@@ -67,8 +133,9 @@ public class Ride implements RideInterface, Serializable { // 新增实现Serial
         return operator;
     }
 
-    public void setOperator(Employee operator) {
+    public synchronized void setOperator(Employee operator) {
         this.operator = operator;
+        this.operatorValidUntilMillis = 0; // 手动指定后，下次运行周期时重新按排班确认
         LoggerUtil.info("设施[" + name + "]操作员已更新为：" + (operator != null ? operator.getName() : "无"));
     }
 
@@ -85,7 +152,7 @@ public class Ride implements RideInterface, Serializable { // 新增实现Serial
         }
     }
 
-    public int getNumOfCycles() {
+    public synchronized int getNumOfCycles() {
         return numOfCycles;
     }
 
@@ -95,13 +162,247 @@ public class Ride implements RideInterface, Serializable { // 新增实现Serial
 
     public void setRideType(RideType rideType) {
         this.rideType = rideType;
+        this.eligibilityRule = EligibilityRule.forRideType(rideType); // 类型变更后恢复该类型的默认规则
+    }
+
+    public EligibilityRule getEligibilityRule() {
+        return eligibilityRule;
+    }
+
+    /**
+     * 设置预编译的资格规则（通常由EligibilityRuleBook按配置文件生成）
+     */
+    public void setEligibilityRule(EligibilityRule eligibilityRule) {
+        if (eligibilityRule != null) {
+            this.eligibilityRule = eligibilityRule;
+        } else {
+            LoggerUtil.error("警告：设施[" + name + "]资格规则不能为空！属性未更新");
+        }
+    }
+
+    public synchronized int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * 设置等待队列容量上限（0表示不限；已在队列中的游客不受影响，只限制后续入队）
+     */
+    public synchronized void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity >= 0) {
+            this.queueCapacity = queueCapacity;
+        } else {
+            LoggerUtil.error("警告：设施[" + name + "]队列容量不能为负数！属性未更新");
+        }
+    }
+
+    private boolean isQueueFull() {
+        return queueCapacity > 0 && waitingQueue.size() >= queueCapacity;
+    }
+
+    // 从队首取出一人（队首属于预约优先区时同步扣减优先区人数）
+    private Visitor pollQueue() {
+        if (bookedAhead > 0) {
+            bookedAhead--;
+        }
+        Visitor visitor = waitingQueue.poll();
+        if (visitor != null) {
+            dequeuedCount++;
+        }
+        return visitor;
+    }
+
+    /**
+     * 获取等待队列队首预约优先区的人数（预约游客尚未登车的人数）
+     */
+    public synchronized int getBookedAheadCount() {
+        return bookedAhead;
+    }
+
+    /**
+     * 获取当前等待队列长度
+     */
+    public synchronized int getQueueLength() {
+        return waitingQueue.size();
+    }
+
+    /**
+     * 获取游乐历史的一段拷贝（供HTTP等外部接口分段读取，避免暴露内部集合）
+     * @param offset 起始位置（从0开始）
+     * @param limit 最多返回条数
+     * @return 历史片段（不可修改）
+     */
+    public synchronized List<Visitor> getRideHistory(int offset, int limit) {
+        if (offset < 0 || limit <= 0 || offset >= rideHistory.size()) {
+            return Collections.emptyList();
+        }
+        int end = Math.min(rideHistory.size(), offset + limit);
+        return Collections.unmodifiableList(new ArrayList<>(rideHistory.subList(offset, end)));
+    }
+
+    /**
+     * 游标分页读取游乐历史（只拷贝本页元素，不复制/格式化整个历史）
+     * 游标为历史中的扫描位置：按位置直接定位（O(1)），再按过滤条件向后扫描直到凑满一页
+     * @param cursor 上一页返回的游标（null表示从头开始）
+     * @param offset 在游标之后再跳过的匹配条数（≥0）
+     * @param pageSize 每页条数（≥1）
+     * @param filter 过滤条件（null表示不过滤）
+     * @return 本页游客与下一页游标
+     */
+    public synchronized Page<Visitor> pageHistory(String cursor, int offset, int pageSize, Predicate<Visitor> filter) {
+        int start = parsePositionCursor(cursor);
+        if (start < 0 || offset < 0 || pageSize < 1) {
+            LoggerUtil.error("❌ 设施[" + name + "]历史分页参数无效（cursor=" + cursor + "，offset=" + offset
+                    + "，pageSize=" + pageSize + "）");
+            return new Page<>(Collections.emptyList(), null);
+        }
+        List<Visitor> items = new ArrayList<>(Math.min(pageSize, Math.max(0, rideHistory.size() - start)));
+        int position = start;
+        int skipped = 0;
+        while (position < rideHistory.size() && items.size() < pageSize) {
+            Visitor visitor = rideHistory.get(position++);
+            if (filter != null && !filter.test(visitor)) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            items.add(visitor);
+        }
+        return new Page<>(items, position < rideHistory.size() ? String.valueOf(position) : null);
+    }
+
+    /**
+     * 游标分页读取等待队列（按FIFO顺序；第i项的预计等待可用estimateWaitSeconds(位置)计算）
+     * 游标是绝对序号（累计离队人数 + 队列位置），两页之间有游客登车/离队时下一页从同一名游客继续，不会跳过；
+     * 游标指向的游客已离队时从当前队首继续（预约游客插入优先区时，下一页可能重复显示被挤后的游客）
+     * @param cursor 上一页返回的游标（null表示从队首开始）
+     * @param pageSize 每页条数（≥1）
+     * @return 本页游客与下一页游标
+     */
+    public synchronized Page<Visitor> pageQueue(String cursor, int pageSize) {
+        long absolute = parseSequenceCursor(cursor);
+        if (absolute < 0 || pageSize < 1) {
+            LoggerUtil.error("❌ 设施[" + name + "]队列分页参数无效（cursor=" + cursor + "，pageSize=" + pageSize + "）");
+            return new Page<>(Collections.emptyList(), null);
+        }
+        int start = (int) Math.max(0, Math.min(absolute - dequeuedCount, waitingQueue.size()));
+        List<Visitor> items = new ArrayList<>(Math.min(pageSize, Math.max(0, waitingQueue.size() - start)));
+        Iterator<Visitor> iterator = waitingQueue.iterator();
+        int position = 0;
+        while (iterator.hasNext() && items.size() < pageSize) {
+            Visitor visitor = iterator.next();
+            if (position++ >= start) {
+                items.add(visitor);
+            }
+        }
+        return new Page<>(items, position < waitingQueue.size() ? String.valueOf(dequeuedCount + position) : null);
+    }
+
+    /**
+     * 解析绝对序号游标（null为0，非法返回-1）
+     */
+    private static long parseSequenceCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(-1, Long.parseLong(cursor));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析位置游标（null为0，非法返回-1）
+     */
+    private static int parsePositionCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(-1, Integer.parseInt(cursor));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 当前游乐历史的存储方式
+     */
+    public HistoryStorage getHistoryStorage() {
+        return rideHistory instanceof OffHeapHistoryStore ? HistoryStorage.OFF_HEAP : HistoryStorage.HEAP;
+    }
+
+    // ========================= 按乘坐时间查询历史 =========================
+
+    /**
+     * 查询乘坐时间在[from, to)内的游客（按乘坐时间顺序，O(log n + 结果数)）
+     * @param limit 最多返回条数（总人次可用countRidesBetween获取）
+     */
+    public synchronized List<Visitor> getRidersBetween(LocalDateTime from, LocalDateTime to, int limit) {
+        return Collections.unmodifiableList(rideHistory.visitorsBetween(toMillis(from), toMillis(to), limit));
+    }
+
+    /**
+     * 统计乘坐时间在[from, to)内的乘坐人次（O(log n)）
+     */
+    public synchronized int countRidesBetween(LocalDateTime from, LocalDateTime to) {
+        return rideHistory.countBetween(toMillis(from), toMillis(to));
+    }
+
+    /**
+     * 统计某一天每小时的乘坐人次（24次二分查找，O(log n)）
+     * @return 长度为24的数组，下标为小时
+     */
+    public synchronized int[] countRidesPerHour(LocalDate date) {
+        int[] counts = new int[24];
+        LocalDateTime start = date.atStartOfDay();
+        for (int hour = 0; hour < 24; hour++) {
+            counts[hour] = rideHistory.countBetween(toMillis(start.plusHours(hour)), toMillis(start.plusHours(hour + 1)));
+        }
+        return counts;
+    }
+
+    /**
+     * 游客最近一次乘坐本设施的时间（O(1)）
+     */
+    public synchronized Optional<LocalDateTime> getLastRideTime(String visitorId) {
+        long millis = rideHistory.getLastRideMillis(visitorId);
+        return millis < 0 ? Optional.empty()
+                : Optional.of(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public WaitTimeEstimator getWaitTimeEstimator() {
+        return waitTimeEstimator;
+    }
+
+    /**
+     * 估算队列第position位（从1开始）的游客预计等待秒数（O(1)）
+     */
+    public synchronized double estimateWaitSeconds(int position) {
+        return waitTimeEstimator.estimateWaitSeconds(position, maxRider);
     }
 
-    // 扩展：年龄校验方法（根据设施类型动态判断）
+    /**
+     * 生成等待时间看板条目（新到游客排在队尾时的预计等待，O(1)）
+     */
+    public synchronized WaitBoardEntry getWaitBoardEntry() {
+        return new WaitBoardEntry(rideId, name, waitingQueue.size(),
+                waitTimeEstimator.estimateWaitSeconds(waitingQueue.size() + 1, maxRider),
+                waitTimeEstimator.getThroughputPerMinute());
+    }
+
+    // 扩展：资格校验方法（按预编译规则判断：年龄/身高/保险/会员等级）
     public boolean checkVisitorEligibility(Visitor visitor) {
-        boolean eligible = rideType.checkAge(visitor);
+        boolean eligible = eligibilityRule.test(visitor);
         if (!eligible) {
-            LoggerUtil.error(visitor.getName() + "（" + visitor.getAge() + "岁）不符合" + rideType + "设施的年龄要求！");
+            LoggerUtil.error(visitor.getName() + "（" + visitor.getAge() + "岁）不符合" + rideType
+                    + "设施[" + name + "]的乘坐要求（" + eligibilityRule + "）！");
         }
         return eligible;
     }
@@ -109,48 +410,101 @@ public class Ride implements RideInterface, Serializable { // 新增实现Serial
     // ========================= Part3：等待队列实现 =========================
     @Override
     public void addVisitorToQueue(Visitor visitor) {
+        tryAddVisitorToQueue(visitor);
+    }
+
+    /**
+     * 添加游客到等待队列，并返回是否成功（失败原因已记录日志：空游客、不符合资格规则或队列已满）
+     * @param visitor 要添加的游客
+     * @return true=已加入队列
+     */
+    public synchronized boolean tryAddVisitorToQueue(Visitor visitor) {
+        ParkFlightEvents.RideEnqueue event = new ParkFlightEvents.RideEnqueue();
+        event.begin();
+        long startNanos = ParkProfiler.start();
+        boolean added = enqueue(visitor);
+        ParkProfiler.end(event, ParkProfiler.Operation.ENQUEUE, rideId, startNanos, added ? 1 : 0, 0, added);
+        return added;
+    }
+
+    /**
+     * 校验并加入等待队列（调用方持有设施锁）
+     * @return 是否加入成功
+     */
+    private boolean enqueue(Visitor visitor) {
         if (visitor == null) {
             LoggerUtil.error("❌ 设施[" + name + "]无法添加空游客到队列！");
-            return;
+            return false;
         }
         // 扩展：添加年龄校验
         if (!checkVisitorEligibility(visitor)) {
-            return;
+            return false;
+        }
+        if (isQueueFull()) {
+            LoggerUtil.error("❌ 设施[" + name + "]等待队列已满（上限" + queueCapacity + "人），游客["
+                    + visitor.getVisitorId() + "]无法加入！");
+            return false;
         }
         waitingQueue.offer(visitor); // Queue的offer()比add()更安全（队列满时返回false而非抛异常）
+        stateVersion++;
         LoggerUtil.info("✅ 游客[" + visitor.getVisitorId() + "]已加入设施[" + name + "]等待队列，当前队列长度：" + waitingQueue.size());
+        publishEvent(ParkEvent.Type.ENQUEUED, visitor.getVisitorId(), waitingQueue.size());
+        return true;
     }
 
     @Override
-    public void removeVisitorFromQueue() {
+    public synchronized void removeVisitorFromQueue() {
         if (waitingQueue.isEmpty()) {
             LoggerUtil.error("❌ 设施[" + name + "]等待队列为空，无法移除游客！");
             return;
         }
-        Visitor removed = waitingQueue.poll(); // 移除并返回队首元素（FIFO）
+        Visitor removed = pollQueue(); // 移除并返回队首元素（FIFO）
+        stateVersion++;
         LoggerUtil.info("✅ 游客[" + removed.getVisitorId() + "]已从设施[" + name + "]等待队列移除，当前队列长度：" + waitingQueue.size());
+        publishEvent(ParkEvent.Type.DEQUEUED, removed.getVisitorId(), waitingQueue.size());
     }
 
     @Override
     public void printQueue() {
-        System.out.printf("%n========== 设施[%s]等待队列（长度：%d）==========%n", name, waitingQueue.size());
-        if (waitingQueue.isEmpty()) {
+        // 在快照上打印，不持有设施锁（打印期间入队/周期运行照常进行）
+        // 快照与单周期等待时长在同一次加锁中取得，每行的预计等待由位置推算：向上取整(位置/载客量) × 单周期时长
+        List<Visitor> queue;
+        double cycleSeconds;
+        int riders;
+        synchronized (this) {
+            queue = snapshot().getQueue();
+            cycleSeconds = waitTimeEstimator.estimateWaitSeconds(1, maxRider);
+            riders = maxRider;
+        }
+        System.out.printf("%n========== 设施[%s]等待队列（长度：%d）==========%n", name, queue.size());
+        if (queue.isEmpty()) {
             System.out.println("📭 队列无等待游客");
             return;
         }
-        // 按队列顺序打印（FIFO），使用增强for循环遍历
+        // 按队列顺序打印（FIFO），使用增强for循环遍历，附带每个位置的预计等待时间
         int index = 1;
-        for (Visitor visitor : waitingQueue) {
-            System.out.printf("%d. %s%n", index++, visitor);
+        for (Visitor visitor : queue) {
+            double waitSeconds = (index + riders - 1) / riders * cycleSeconds;
+            System.out.printf("%d. %s | 预计等待：%.1f分钟%n", index, visitor, waitSeconds / 60);
+            index++;
         }
-        System.out.println("==============================================%n");
+        System.out.println("==============================================");
     }
 
     // ========================= Part4A：游乐历史实现 =========================
     @Override
-    public void addVisitorToHistory(Visitor visitor) {
+    public synchronized void addVisitorToHistory(Visitor visitor) {
+        addToHistory(visitor, 0); // 手动添加的记录不属于任何周期
+    }
+
+    /**
+     * 写入一条游乐历史（记录当前时间与周期序号）
+     * @param cycle 周期序号（0表示非周期运行写入）
+     */
+    private void addToHistory(Visitor visitor, int cycle) {
         if (visitor != null) {
-            rideHistory.add(visitor);
+            rideHistory.add(visitor, System.currentTimeMillis(), cycle);
+            stateVersion++;
             LoggerUtil.info("✅ 游客[" + visitor.getVisitorId() + "]已添加到设施[" + name + "]游乐历史，历史总人数：" + rideHistory.size());
         } else {
             LoggerUtil.error("❌ 设施[" + name + "]无法添加空游客到历史记录！");
@@ -158,27 +512,22 @@ public class Ride implements RideInterface, Serializable { // 新增实现Serial
     }
 
     @Override
-    public boolean checkVisitorFromHistory(Visitor visitor) {
+    public synchronized boolean checkVisitorFromHistory(Visitor visitor) {
         if (visitor == null) {
             LoggerUtil.error("❌ 设施[" + name + "]无法检查空游客是否在历史中！");
             return false;
         }
-        // 遍历历史记录（使用Iterator）
-        Iterator<Visitor> iterator = rideHistory.iterator();
-        while (iterator.hasNext()) {
-            Visitor historyVisitor = iterator.next();
-            // 按游客唯一ID判断（比equals更精准）
-            if (historyVisitor.getVisitorId().equals(visitor.getVisitorId())) {
-                LoggerUtil.info("✅ 游客[" + visitor.getVisitorId() + "]已在设施[" + name + "]游乐历史中");
-                return true;
-            }
+        // 按游客唯一ID判断（比equals更精准），使用历史的游客ID索引，O(1)
+        if (rideHistory.containsVisitorId(visitor.getVisitorId())) {
+            LoggerUtil.info("✅ 游客[" + visitor.getVisitorId() + "]已在设施[" + name + "]游乐历史中");
+            return true;
         }
         LoggerUtil.info("❌ 游客[" + visitor.getVisitorId() + "]不在设施[" + name + "]游乐历史中");
         return false;
     }
 
     @Override
-    public int numberOfVisitors() {
+    public synchronized int numberOfVisitors() {
         int count = rideHistory.size();
         LoggerUtil.info("📊 设施[" + name + "]游乐历史总人数：" + count + "人");
         return count;
@@ -186,167 +535,617 @@ public class Ride implements RideInterface, Serializable { // 新增实现Serial
 
     @Override
     public void printRideHistory() {
-        System.out.printf("%n========== 设施[%s]游乐历史（总人数：%d）==========%n", name, rideHistory.size());
-        if (rideHistory.isEmpty()) {
+        // 在快照上打印，不持有设施锁（长历史打印期间周期运行照常进行，不会出现并发修改异常）
+        HistoryStore history = snapshot().getHistory();
+        System.out.printf("%n========== 设施[%s]游乐历史（总人数：%d）==========%n", name, history.size());
+        if (history.isEmpty()) {
             System.out.println("📜 历史无游乐记录");
             return;
         }
-        // 必须使用Iterator遍历
-        Iterator<Visitor> iterator = rideHistory.iterator();
-        int index = 1;
-        while (iterator.hasNext()) {
-            Visitor visitor = iterator.next();
-            System.out.printf("%d. %s%n", index++, visitor);
-        }
-        System.out.println("==============================================%n");
+        // 必须使用Iterator遍历（行文本批量写入同一缓冲区后整块输出）
+        DisplayRenderer.printVisitors(history.iterator(), 1);
+        System.out.println("==============================================");
     }
 
     // ========================= Part4B：历史排序实现 =========================
     /**
      * 按自定义规则排序游乐历史（使用Collections.sort + Comparator）
      */
-    public void sortRideHistory() {
+    public synchronized void sortRideHistory() {
         if (rideHistory.isEmpty()) {
             LoggerUtil.error("❌ 设施[" + name + "]游乐历史为空，无法排序！");
             return;
         }
         // 使用自定义Comparator排序（会员等级降序+年龄升序）
         Collections.sort(rideHistory, new VisitorComparator());
+        stateVersion++;
         LoggerUtil.info("✅ 设施[" + name + "]游乐历史已完成排序（规则：会员等级降序→年龄升序）");
     }
 
     // ========================= Part5：运行游乐周期 =========================
+    /**
+     * 确认当前有可用操作员：已排班的设施由StaffScheduler按当前时间自动换班（当前操作员下班时换成在班员工）
+     * 调用方必须持有本对象锁；未排班的设施只检查是否指定了操作员
+     * 排班版本未变且仍在上次结果的有效期内时直接沿用（不加排班锁、不创建对象）
+     * @param nowMillis 当前时间（毫秒时间戳）
+     * @return 是否有可用操作员
+     */
+    private boolean ensureOperatorOnShift(long nowMillis) {
+        int version = STAFF_SCHEDULER.getVersion();
+        if (version != staffVersion || nowMillis >= operatorValidUntilMillis) {
+            LocalDateTime now = LocalDateTime.ofInstant(Instant.ofEpochMilli(nowMillis), ZoneId.systemDefault());
+            Employee onDuty = STAFF_SCHEDULER.resolveOperator(rideId, operator, now);
+            if (onDuty != operator) {
+                LoggerUtil.info("📌 设施[" + name + "]操作员换班：" + (operator != null ? operator.getName() : "无")
+                        + " → " + (onDuty != null ? onDuty.getName() : "无"));
+                operator = onDuty;
+            }
+            operatorValidUntilMillis = STAFF_SCHEDULER.validUntilMillis(rideId, now);
+            staffVersion = version;
+        }
+        return operator != null;
+    }
+
+    /**
+     * 生产环境周期运行（热路径）：按maxRider把队首游客整批移入历史，结果写入调用方复用的result
+     * 不打印横幅、不逐人记录日志；无事件订阅者时不创建事件对象；游客已在历史驻留字典中且历史容量充足
+     * （见reserveHistoryCapacity）时，整个周期不分配任何对象
+     * @param result 复用的结果对象（非空）
+     * @return 传入的result（已写入本次状态、载客数、剩余人数与周期序号）
+     */
+    @Override
+    public synchronized CycleResult runCycle(CycleResult result) {
+        ParkFlightEvents.RideCycle event = new ParkFlightEvents.RideCycle();
+        event.begin();
+        long startNanos = ParkProfiler.start();
+        cycle(result);
+        ParkProfiler.end(event, ParkProfiler.Operation.RIDE_CYCLE, rideId, startNanos, result.getBoarded(), 0,
+                result.isCompleted());
+        return result;
+    }
+
+    /**
+     * 运行一次周期，结果写入result（调用方持有设施锁）
+     */
+    private CycleResult cycle(CycleResult result) {
+        long now = System.currentTimeMillis();
+        if (!ensureOperatorOnShift(now)) {
+            return result.set(CycleResult.Status.NO_OPERATOR, 0, waitingQueue.size(), numOfCycles);
+        }
+        if (waitingQueue.isEmpty()) {
+            return result.set(CycleResult.Status.EMPTY_QUEUE, 0, 0, numOfCycles);
+        }
+        int cycle = numOfCycles + 1;
+        boolean publish = EVENT_BUS.hasSubscribers();
+        int boarded = 0;
+        while (boarded < maxRider) {
+            Visitor rider = pollQueue();
+            if (rider == null) {
+                break;
+            }
+            rideHistory.add(rider, now, cycle);
+            if (publish) {
+                publishEvent(ParkEvent.Type.BOARDED, rider.getVisitorId(), cycle);
+            }
+            boarded++;
+        }
+        numOfCycles = cycle;
+        stateVersion++;
+        waitTimeEstimator.recordCycles(1, boarded, System.nanoTime());
+        if (publish) {
+            publishEvent(ParkEvent.Type.CYCLE_COMPLETED, null, boarded);
+        }
+        return result.set(CycleResult.Status.COMPLETED, boarded, waitingQueue.size(), cycle);
+    }
+
+    /**
+     * 预留游乐历史容量（如按当日预计客流提前扩容），之后的周期运行不再触发数组扩容
+     * @param additionalRecords 预计还会追加的记录数
+     */
+    public synchronized void reserveHistoryCapacity(int additionalRecords) {
+        rideHistory.ensureCapacity(additionalRecords);
+    }
+
     @Override
-    public void runOneCycle() {
+    public synchronized void runOneCycle() {
+        ParkFlightEvents.RideCycle event = new ParkFlightEvents.RideCycle();
+        event.begin();
+        long startNanos = ParkProfiler.start();
+        int riders = runOneCycleLogged();
+        ParkProfiler.end(event, ParkProfiler.Operation.RIDE_CYCLE, rideId, startNanos, Math.max(riders, 0), 0, riders >= 0);
+    }
+
+    /**
+     * 运行一次周期并打印过程（调用方持有设施锁）
+     * @return 本次载客人数（校验失败返回-1）
+     */
+    private int runOneCycleLogged() {
         System.out.printf("%n========== 设施[%s]开始运行一次周期 ==========%n", name);
 
-        // 校验1：是否有操作员
-        if (operator == null) {
-            LoggerUtil.error("❌ 运行失败：无操作员分配！请先指定操作员");
-            System.out.println("==============================================%n");
-            return;
+        // 校验1：是否有操作员（已排班的设施先按当前时间自动换班）
+        if (!ensureOperatorOnShift(System.currentTimeMillis())) {
+            LoggerUtil.error("❌ 运行失败：无操作员分配（或当前时段无人在班）！请先指定操作员或排班");
+            System.out.println("==============================================");
+            return -1;
         }
 
         // 校验2：等待队列是否有游客
         if (waitingQueue.isEmpty()) {
             LoggerUtil.error("❌ 运行失败：等待队列为空，无游客可乘坐");
-            System.out.println("==============================================%n");
-            return;
+            System.out.println("==============================================");
+            return -1;
         }
 
         // 核心逻辑：按maxRider从队列取游客，添加到历史
         int ridersCount = 0;
         while (!waitingQueue.isEmpty() && ridersCount < maxRider) {
-            Visitor rider = waitingQueue.poll();
-            addVisitorToHistory(rider); // 自动添加到历史
+            Visitor rider = pollQueue();
+            addToHistory(rider, numOfCycles + 1); // 自动添加到历史（记录所在周期）
+            publishEvent(ParkEvent.Type.BOARDED, rider.getVisitorId(), numOfCycles + 1);
             ridersCount++;
         }
 
-        // 更新周期数
+        // 更新周期数与等待时间估算
         numOfCycles++;
+        stateVersion++;
+        waitTimeEstimator.recordCycles(1, ridersCount, System.nanoTime());
+        publishEvent(ParkEvent.Type.CYCLE_COMPLETED, null, ridersCount);
         LoggerUtil.info("✅ 设施[" + name + "]第" + numOfCycles + "次周期运行成功！本次载客：" + ridersCount + "人，剩余等待人数：" + waitingQueue.size());
-        System.out.println("==============================================%n");
+        System.out.println("==============================================");
+        return ridersCount;
+    }
+
+    // ========================= 批量操作（旅行团入队/闸机数据回放） =========================
+    @Override
+    public synchronized BatchResult addVisitorsToQueue(Collection<Visitor> visitors) {
+        if (visitors == null || visitors.isEmpty()) {
+            LoggerUtil.error("❌ 设施[" + name + "]批量入队失败：游客集合为空！");
+            return new BatchResult("批量入队", 0, 0, 0, 0, 0, waitingQueue.size(), rideHistory.size());
+        }
+        // 一次遍历完成资格与容量校验，被拒绝的游客只计数、不逐条打印日志
+        int accepted = 0;
+        for (Visitor visitor : visitors) {
+            if (visitor != null && eligibilityRule.test(visitor) && !isQueueFull()) {
+                waitingQueue.offer(visitor);
+                accepted++;
+            }
+        }
+        int rejected = visitors.size() - accepted;
+        stateVersion++;
+        LoggerUtil.info("✅ 设施[" + name + "]批量入队完成：成功" + accepted + "人，拒绝" + rejected
+                + "人，当前队列长度：" + waitingQueue.size());
+        if (accepted > 0) {
+            publishEvent(ParkEvent.Type.ENQUEUED, null, waitingQueue.size()); // 批量入队只发布一条事件
+        }
+        return new BatchResult("批量入队", visitors.size(), accepted, rejected, 0, 0,
+                waitingQueue.size(), rideHistory.size());
+    }
+
+    @Override
+    public BatchResult addBookedVisitorsToQueue(Collection<Visitor> visitors) {
+        return addBookedVisitorsToQueue(visitors, null);
+    }
+
+    /**
+     * 预约游客批量入队，并标出实际入队的游客（资格校验与入队在同一次持锁中完成；包内可见，供BookingDispatcher使用）
+     * @param visitors 预约游客
+     * @param admittedPositions 非null时，实际入队游客在visitors迭代顺序中的下标被置位
+     */
+    synchronized BatchResult addBookedVisitorsToQueue(Collection<Visitor> visitors, BitSet admittedPositions) {
+        if (visitors == null || visitors.isEmpty()) {
+            return new BatchResult("预约入队", 0, 0, 0, 0, 0, waitingQueue.size(), rideHistory.size());
+        }
+        // 预约游客已在预约时占用名额，不受队列容量限制；资格规则可能在预约后调整，仍需校验
+        List<Visitor> admitted = new ArrayList<>(visitors.size());
+        int position = 0;
+        for (Visitor visitor : visitors) {
+            if (visitor != null && eligibilityRule.test(visitor)) {
+                admitted.add(visitor);
+                if (admittedPositions != null) {
+                    admittedPositions.set(position);
+                }
+            }
+            position++;
+        }
+        int rejected = visitors.size() - admitted.size();
+        if (!admitted.isEmpty()) {
+            // 插到优先区末尾：排在更早到时的预约游客之后、所有现场排队游客之前（定位代价只与优先区/现场区中较短者有关）
+            waitingQueue.addAll(bookedAhead, admitted);
+            bookedAhead += admitted.size();
+            stateVersion++;
+            LoggerUtil.info("✅ 设施[" + name + "]预约游客入队：" + admitted.size() + "人优先排在现场游客之前"
+                    + (rejected > 0 ? "（" + rejected + "人不符合资格）" : "") + "，当前队列长度：" + waitingQueue.size());
+            publishEvent(ParkEvent.Type.ENQUEUED, null, waitingQueue.size()); // 一批只发布一条事件
+        }
+        return new BatchResult("预约入队", visitors.size(), admitted.size(), rejected, 0, 0,
+                waitingQueue.size(), rideHistory.size());
+    }
+
+    @Override
+    public synchronized BatchResult addVisitorsToHistory(Collection<Visitor> visitors) {
+        if (visitors == null || visitors.isEmpty()) {
+            LoggerUtil.error("❌ 设施[" + name + "]批量追加历史失败：游客集合为空！");
+            return new BatchResult("批量追加历史", 0, 0, 0, 0, 0, waitingQueue.size(), rideHistory.size());
+        }
+        int accepted = 0;
+        long now = System.currentTimeMillis(); // 同一批记录使用同一乘坐时间
+        for (Visitor visitor : visitors) {
+            if (visitor != null) {
+                rideHistory.add(visitor, now, 0);
+                accepted++;
+            }
+        }
+        int rejected = visitors.size() - accepted;
+        stateVersion++;
+        LoggerUtil.info("✅ 设施[" + name + "]批量追加历史完成：成功" + accepted + "人，拒绝" + rejected
+                + "人，历史总人数：" + rideHistory.size());
+        return new BatchResult("批量追加历史", visitors.size(), accepted, rejected, 0, 0,
+                waitingQueue.size(), rideHistory.size());
+    }
+
+    @Override
+    public synchronized BatchResult runCycles(int cycles) {
+        ParkFlightEvents.RideCycles event = new ParkFlightEvents.RideCycles();
+        event.begin();
+        long startNanos = ParkProfiler.start();
+        BatchResult result = runCyclesLogged(cycles);
+        ParkProfiler.end(event, ParkProfiler.Operation.RIDE_CYCLES, rideId, startNanos, result.getRidersMoved(), 0,
+                result.getCyclesRun() > 0);
+        return result;
+    }
+
+    /**
+     * 连续运行多个周期并输出汇总日志（调用方持有设施锁）
+     */
+    private BatchResult runCyclesLogged(int cycles) {
+        if (cycles < 1) {
+            LoggerUtil.error("❌ 设施[" + name + "]批量运行失败：周期数必须≥1！");
+            return new BatchResult("批量运行周期", cycles, 0, 0, 0, 0, waitingQueue.size(), rideHistory.size());
+        }
+        // 校验只做一次（与runOneCycle规则一致）
+        if (!ensureOperatorOnShift(System.currentTimeMillis())) {
+            LoggerUtil.error("❌ 设施[" + name + "]批量运行失败：无操作员分配（或当前时段无人在班）！请先指定操作员或排班");
+            return new BatchResult("批量运行周期", cycles, 0, cycles, 0, 0, waitingQueue.size(), rideHistory.size());
+        }
+
+        int cyclesRun = 0;
+        int ridersMoved = 0;
+        boolean publish = EVENT_BUS.hasSubscribers(); // 无订阅者时不创建任何事件对象
+        long now = System.currentTimeMillis();
+        while (cyclesRun < cycles && !waitingQueue.isEmpty()) {
+            int ridersCount = 0;
+            while (!waitingQueue.isEmpty() && ridersCount < maxRider) {
+                Visitor rider = pollQueue();
+                rideHistory.add(rider, now, numOfCycles + cyclesRun + 1); // 直接写入历史，跳过逐人日志
+                if (publish) {
+                    publishEvent(ParkEvent.Type.BOARDED, rider.getVisitorId(), numOfCycles + cyclesRun + 1);
+                }
+                ridersCount++;
+            }
+            ridersMoved += ridersCount;
+            cyclesRun++;
+            if (publish) {
+                publishEvent(ParkEvent.Type.CYCLE_COMPLETED, null, ridersCount);
+            }
+        }
+        numOfCycles += cyclesRun;
+        stateVersion++;
+        waitTimeEstimator.recordCycles(cyclesRun, ridersMoved, System.nanoTime());
+
+        LoggerUtil.info("✅ 设施[" + name + "]批量运行完成：运行" + cyclesRun + "/" + cycles + "次周期，共载客"
+                + ridersMoved + "人，剩余等待人数：" + waitingQueue.size());
+        return new BatchResult("批量运行周期", cycles, cyclesRun, cycles - cyclesRun, cyclesRun, ridersMoved,
+                waitingQueue.size(), rideHistory.size());
     }
 
     // ========================= Part6：导出历史到文件 =========================
     /**
-     * 导出游乐历史到CSV文件（逗号分隔，每个游客一行）
+     * 导出游乐历史到文件（按扩展名选择格式：.csv为CSV，.rhc为列式二进制，其他扩展名按CSV）
+     * 在快照上写出，不持有设施锁（导出期间周期运行照常进行；文件内容为调用时刻的历史）
      * @param filePath 文件路径（如"rideHistory_rollerCoaster.csv"）
      */
     public void exportRideHistory(String filePath) {
-        if (rideHistory.isEmpty()) {
+        ParkFlightEvents.HistoryExport event = new ParkFlightEvents.HistoryExport();
+        event.begin();
+        long startNanos = ParkProfiler.start();
+        int written = exportHistory(filePath);
+        long bytes = written > 0 && ParkProfiler.isRecording(event, startNanos) ? new File(filePath).length() : 0;
+        ParkProfiler.end(event, ParkProfiler.Operation.HISTORY_EXPORT, rideId, startNanos, Math.max(written, 0), bytes, written >= 0);
+    }
+
+    /**
+     * 在快照上写出导出文件
+     * @return 写出的记录数（历史为空返回0，失败返回-1）
+     */
+    private int exportHistory(String filePath) {
+        HistoryStore history = snapshot().getHistory();
+        if (history.isEmpty()) {
             LoggerUtil.error("❌ 设施[" + name + "]游乐历史为空，无需导出！");
-            return;
+            return 0;
         }
 
+        HistoryFormat format = HistoryFormats.forPath(filePath);
         // 使用try-with-resources自动关闭流（IO最佳实践，避免资源泄漏）
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            // 写入CSV表头（便于阅读）
-            writer.write("visitorId,personId,name,age,membershipType,hasInsurance");
-            writer.newLine();
-
-            // 遍历历史，写入每个游客数据（包含所有核心属性）
-            for (Visitor visitor : rideHistory) {
-                String line = String.format("%s,%s,%s,%d,%s,%b",
-                        visitor.getVisitorId(),
-                        visitor.getId(),
-                        visitor.getName().replace(",", " "), // 处理姓名中的逗号（避免CSV格式错误）
-                        visitor.getAge(),
-                        visitor.getMembershipType().name(), // 修改：存储枚举常量名
-                        visitor.isHasRideInsurance()
-                );
-                writer.write(line);
-                writer.newLine();
-            }
-
-            LoggerUtil.info("✅ 设施[" + name + "]游乐历史已成功导出到：" + new File(filePath).getAbsolutePath());
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filePath), IO_BUFFER_BYTES)) {
+            format.write(history, out);
+            LoggerUtil.info("✅ 设施[" + name + "]游乐历史已成功导出到：" + new File(filePath).getAbsolutePath()
+                    + "（格式：" + format.getName() + "，共" + history.size() + "条）");
+            return history.size();
         } catch (IOException e) {
             LoggerUtil.error("❌ 设施[" + name + "]导出历史失败！错误信息：" + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * 增量导出：只把上次导出之后新增的记录追加到导出文件末尾（耗时与新增记录数成正比，与历史总量无关）
+     * 按插入序号而非位置判断新增记录，sortRideHistory重排历史后仍能准确找出；
+     * 首次导出、导出文件缺失或被替换时全量写出；历史被清空重建时（标记早于序号基数）把当前全部记录视为新增追加
+     * 只在取快照时短暂持有设施锁，格式化与写文件都在快照上进行（首次全量导出期间周期运行照常进行）；
+     * 同一时刻只进行一次增量导出（读标记 → 写数据 → 提交标记必须串行）
+     * @param filePath 导出文件路径（按扩展名选择格式，同目录下的"<文件名>.hwm"保存高水位标记）
+     * @return 本次写出的记录数（失败返回-1）
+     */
+    public int exportRideHistoryIncremental(String filePath) {
+        HistoryFormat format = HistoryFormats.forPath(filePath);
+        Path target = Paths.get(filePath).toAbsolutePath();
+        synchronized (INCREMENTAL_EXPORT_LOCK) {
+            try {
+                HistoryStore history = snapshot().getHistory();
+                ExportWatermark mark = ExportWatermark.read(target);
+                boolean full = mark == null || !Files.exists(target) || Files.size(target) < mark.fileLength;
+                long fromSequence = history.getSequenceBase();
+                if (!full) {
+                    if (mark.sequence >= history.getSequenceBase() && mark.sequence <= history.nextSequence()) {
+                        fromSequence = mark.sequence;
+                    } else {
+                        // 标记早于序号基数：历史已被清空重建；标记超前：序号基数丢失（如从预约文件而非检查点还原）
+                        LoggerUtil.info("📌 设施[" + name + "]历史在上次导出后被清空重建，当前全部记录按新增追加");
+                    }
+                    if (Files.size(target) > mark.fileLength) {
+                        // 上次追加后未来得及更新标记（如进程崩溃），先截掉这部分再重新追加
+                        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                            channel.truncate(mark.fileLength);
+                        }
+                    }
+                }
+
+                HeapHistoryStore delta = history.copySince(fromSequence);
+                if (full) {
+                    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+                    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), IO_BUFFER_BYTES)) {
+                        format.write(delta, out);
+                    }
+                    ParkCheckpoint.moveAtomically(temp, target);
+                } else if (!delta.isEmpty()) {
+                    try (OutputStream out = new BufferedOutputStream(
+                            Files.newOutputStream(target, StandardOpenOption.APPEND), IO_BUFFER_BYTES)) {
+                        format.append(delta, out);
+                    }
+                }
+                new ExportWatermark(history.nextSequence(), Files.size(target)).write(target);
+
+                LoggerUtil.info("✅ 设施[" + name + "]" + (full ? "全量" : "增量") + "导出完成：写出" + delta.size()
+                        + "条（格式：" + format.getName() + "，当前历史共" + history.size() + "条）→ " + target);
+                return delta.size();
+            } catch (IOException e) {
+                LoggerUtil.error("❌ 设施[" + name + "]增量导出失败！错误信息：" + e.getMessage());
+                return -1;
+            }
         }
     }
 
     // ========================= Part7：从文件导入历史 =========================
     /**
-     * 从CSV文件导入游乐历史（读取文件并添加到LinkedList）
+     * 从文件导入游乐历史（按扩展名选择格式，与exportRideHistory对应）
+     * 去重规则：同一游客在同一秒已有乘坐记录的行跳过（包括同一文件中先导入的行）；没有乘坐时间的旧版CSV行按游客ID去重（与旧行为一致）
      * @param filePath 文件路径
      */
-    public void importRideHistory(String filePath) {
+    public synchronized void importRideHistory(String filePath) {
+        ParkFlightEvents.HistoryImport event = new ParkFlightEvents.HistoryImport();
+        event.begin();
+        long startNanos = ParkProfiler.start();
         File file = new File(filePath);
+        int added = importHistory(file, filePath);
+        long bytes = added >= 0 && ParkProfiler.isRecording(event, startNanos) ? file.length() : 0;
+        ParkProfiler.end(event, ParkProfiler.Operation.HISTORY_IMPORT, rideId, startNanos, Math.max(added, 0), bytes, added >= 0);
+    }
+
+    /**
+     * 读取文件并合并到历史（调用方持有设施锁）
+     * @return 新增的记录数（文件不存在或读取失败返回-1）
+     */
+    private int importHistory(File file, String filePath) {
         if (!file.exists()) {
             LoggerUtil.error("❌ 导入失败：文件不存在！路径：" + file.getAbsolutePath());
-            return;
+            return -1;
         }
 
-        // 临时存储导入的游客（避免导入过程中污染原历史）
-        List<Visitor> importedVisitors = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            boolean isFirstLine = true; // 跳过表头
+        // 先完整读入临时缓冲（避免文件损坏时导入一半污染原历史）
+        HistoryFormat format = HistoryFormats.forPath(filePath);
+        ImportBuffer imported = new ImportBuffer();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), IO_BUFFER_BYTES)) {
+            format.read(in, imported);
+        } catch (IOException e) {
+            LoggerUtil.error("❌ 导入历史失败！错误信息：" + e.getMessage());
+            return -1;
+        }
 
-            while ((line = reader.readLine()) != null) {
-                if (isFirstLine) {
-                    isFirstLine = false;
+        // 合并到原历史（避免重复添加）
+        long[] existingKeys = rideHistory.isEmpty() ? null : rideHistory.sortedRideKeys();
+        Set<Long> importedKeys = new HashSet<>(); // 本次已导入的键（文件内的重复行）
+        long now = System.currentTimeMillis();
+        int added = 0;
+        for (int i = 0; i < imported.size; i++) {
+            Visitor visitor = imported.visitors[i];
+            long timestampMillis = imported.timestamps[i];
+            if (timestampMillis == HistoryFormat.UNKNOWN_TIMESTAMP) {
+                if (rideHistory.containsVisitorId(visitor.getVisitorId())) {
                     continue;
                 }
-
-                // 分割CSV行（处理空行）
-                String[] parts = line.split(",");
-                if (parts.length != 6) {
-                    LoggerUtil.error("警告：跳过无效行（格式错误）：" + line);
+                rideHistory.add(visitor, now, 0);
+            } else {
+                if (existingKeys != null && rideHistory.containsRide(existingKeys, visitor.getVisitorId(), timestampMillis)) {
                     continue;
                 }
-
-                // 解析每个字段（带异常处理，避免单个字段错误导致整体失败）
-                try {
-                    String visitorId = parts[0].trim();
-                    String personId = parts[1].trim();
-                    String name = parts[2].trim();
-                    int age = Integer.parseInt(parts[3].trim());
-                    // 解析会员类型（修改：直接使用枚举常量名）
-                    Visitor.MembershipType membershipType = Visitor.MembershipType.valueOf(
-                            parts[4].trim()
-                    );
-                    boolean hasInsurance = Boolean.parseBoolean(parts[5].trim());
-
-                    // 创建游客对象并添加到临时列表
-                    Visitor visitor = new Visitor(personId, name, age, visitorId, membershipType, hasInsurance);
-                    importedVisitors.add(visitor);
-                } catch (IllegalArgumentException e) {
-                    LoggerUtil.error("警告：跳过无效行（数据转换失败）：" + line + "，错误：" + e.getMessage());
+                long key = rideHistory.rideKeyOf(visitor.getVisitorId(), timestampMillis);
+                if (key >= 0 && !importedKeys.add(key)) {
+                    continue;
+                }
+                rideHistory.add(visitor, timestampMillis, imported.cycles[i]);
+                if (key < 0) {
+                    importedKeys.add(rideHistory.rideKeyOf(visitor.getVisitorId(), timestampMillis));
                 }
             }
+            added++;
+        }
+        stateVersion++;
 
-            // 导入成功后，合并到原历史（避免重复添加）
-            for (Visitor visitor : importedVisitors) {
-                if (!checkVisitorFromHistory(visitor)) { // 检查是否已存在
-                    addVisitorToHistory(visitor);
-                }
+        LoggerUtil.info("✅ 从文件[" + filePath + "]导入成功（格式：" + format.getName() + "）！共读取：" + imported.size
+                + "条，新增：" + added + "条，跳过重复：" + (imported.size - added) + "条，当前历史总人数：" + rideHistory.size());
+        return added;
+    }
+
+    /**
+     * 导入临时缓冲：游客/乘坐时间/周期三个并行数组
+     */
+    private static final class ImportBuffer implements HistoryFormat.RecordSink {
+        private Visitor[] visitors = new Visitor[16];
+        private long[] timestamps = new long[16];
+        private int[] cycles = new int[16];
+        private int size;
+
+        @Override
+        public void accept(Visitor visitor, long timestampMillis, int cycle) {
+            if (size == visitors.length) {
+                int capacity = size + (size >> 1);
+                visitors = Arrays.copyOf(visitors, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                cycles = Arrays.copyOf(cycles, capacity);
             }
+            visitors[size] = visitor;
+            timestamps[size] = timestampMillis;
+            cycles[size] = cycle;
+            size++;
+        }
+    }
 
-            LoggerUtil.info("✅ 从文件[" + filePath + "]导入成功！共导入：" + importedVisitors.size() + "人，当前历史总人数：" + rideHistory.size());
-        } catch (IOException e) {
-            LoggerUtil.error("❌ 导入历史失败！错误信息：" + e.getMessage());
+    /**
+     * 在快照上按指定格式写出全部历史（园区批量导出使用，写出期间不持有设施锁；包内可见）
+     * @return 写出的记录数
+     */
+    int writeHistory(HistoryFormat format, OutputStream out) throws IOException {
+        HistoryStore history = snapshot().getHistory();
+        format.write(history, out);
+        return history.size();
+    }
+
+    // ========================= 只读快照 =========================
+
+    /**
+     * 获取设施状态的只读快照：持锁时间只与队列长度、历史中的不同游客数有关，与历史记录数无关
+     * 之后在快照上的导出/打印/统计不再持有设施锁，周期运行与入队可以同时进行
+     */
+    public synchronized RideSnapshot snapshot() {
+        return new RideSnapshot(rideId, stateVersion, numOfCycles, waitingQueue.toArray(new Visitor[0]), bookedAhead,
+                rideHistory.snapshot());
+    }
+
+    /**
+     * 当前状态版本号（队列/历史/周期数每变化一次加一；与快照的版本号相同说明快照仍是最新状态）
+     */
+    public synchronized long getStateVersion() {
+        return stateVersion;
+    }
+
+    // ========================= 检查点支持（包内可见） =========================
+    /**
+     * 从检查点还原周期数、等待队列与游乐历史（覆盖现有状态，不逐条输出日志）
+     * @param bookedAhead 队首预约优先区人数（旧检查点未记录时为0）
+     * @param historySeconds 每条历史的乘坐时间（存储格式秒值；null表示旧检查点未记录，按还原时刻计）
+     * @param historyCycles 每条历史的周期序号（null表示未记录）
+     * @param historySequences 每条历史的插入序号（null表示从未排序或未记录，序号即位置）
+     */
+    synchronized void restoreState(int numOfCycles, List<Visitor> queue, int bookedAhead, List<Visitor> history,
+                                   int[] historySeconds, int[] historyCycles, int[] historySequences,
+                                   long historySequenceBase) {
+        this.numOfCycles = Math.max(0, numOfCycles);
+        dequeuedCount += waitingQueue.size(); // 还原前的游客视为已离队，旧游标不会指向还原后的游客
+        waitingQueue.clear();
+        waitingQueue.addAll(queue);
+        this.bookedAhead = Math.max(0, Math.min(bookedAhead, queue.size()));
+        stateVersion++;
+        rideHistory.clear();
+        int now = HistoryStore.toSeconds(System.currentTimeMillis());
+        for (int i = 0; i < history.size(); i++) {
+            rideHistory.appendSeconds(history.get(i), historySeconds != null ? historySeconds[i] : now,
+                    historyCycles != null ? historyCycles[i] : 0);
+        }
+        rideHistory.restoreSequences(historySequences);
+        rideHistory.restoreSequenceBase(historySequenceBase);
+    }
+
+    /**
+     * 发布设施状态变更事件（无订阅者时直接返回，不创建事件对象）
+     */
+    private void publishEvent(ParkEvent.Type type, String visitorId, int count) {
+        if (EVENT_BUS.hasSubscribers()) {
+            EVENT_BUS.publish(ParkEvent.rideEvent(type, rideId, visitorId, count));
+        }
+    }
+
+    /**
+     * 序列化时持有设施锁，避免保存预约（Booking引用Ride）时队列/历史被并发修改
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+    }
+
+    /**
+     * 反序列化：逐字段读取以兼容旧版本数据（旧版游乐历史为LinkedList，转换为默认存储方式的HistoryStore），
+     * 并补齐后续新增的字段
+     */
+    @SuppressWarnings("unchecked") // 队列与旧版历史在各版本中都只保存Visitor
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        rideId = (String) fields.get("rideId", null);
+        name = (String) fields.get("name", null);
+        operator = (Employee) fields.get("operator", null);
+        maxRider = Math.max(1, fields.get("maxRider", 1));
+        numOfCycles = fields.get("numOfCycles", 0);
+        rideType = (RideType) fields.get("rideType", RideType.THRILL);
+        eligibilityRule = (EligibilityRule) fields.get("eligibilityRule", null);
+        waitTimeEstimator = (WaitTimeEstimator) fields.get("waitTimeEstimator", null);
+        queueCapacity = fields.get("queueCapacity", 0);
+        bookedAhead = fields.get("bookedAhead", 0);
+
+        Object queue = fields.get("waitingQueue", null);
+        waitingQueue = queue instanceof LinkedList ? (LinkedList<Visitor>) queue
+                : queue == null ? new LinkedList<>() : new LinkedList<>((Collection<Visitor>) queue);
+        Object history = fields.get("rideHistory", null);
+        rideHistory = history instanceof HistoryStore ? (HistoryStore) history
+                : legacyHistory(history == null ? Collections.emptyList() : (Collection<Visitor>) history);
+
+        if (eligibilityRule == null) {
+            eligibilityRule = EligibilityRule.forRideType(rideType);
+        }
+        if (waitTimeEstimator == null) {
+            waitTimeEstimator = new WaitTimeEstimator();
+        }
+    }
+
+    /**
+     * 旧版游乐历史（LinkedList，没有乘坐时间与周期序号）转换为默认存储方式，乘坐时间按读取时刻计（与导入旧版CSV一致）
+     */
+    private static HistoryStore legacyHistory(Collection<Visitor> visitors) {
+        HistoryStore store = DEFAULT_HISTORY_STORAGE.createStore();
+        store.ensureCapacity(visitors.size());
+        long now = System.currentTimeMillis();
+        for (Visitor visitor : visitors) {
+            if (visitor != null) {
+                store.add(visitor, now, 0);
+            }
         }
+        return store;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,212 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 设施定义（不可变）：RideManager启动时只登记定义，首次访问某设施时才据此创建Ride与操作员对象
+ * 配置文件格式（与资格规则文件一致）：设施ID: 属性=值;属性=值
+ *   name（必填）、type（THRILL/FAMILY/KIDDIE，默认FAMILY）、maxRider（默认4）、
+ *   operator（证件号|姓名|年龄|工号|岗位，可省略）、queueCapacity（等待队列容量上限，默认0=不限）
+ * 示例：R001: name=超级过山车;type=THRILL;maxRider=4;queueCapacity=200;operator=EMP001|张三|30|EMP-2025|过山车操作员
+ */
+public final class RideDefinition {
+    private final String rideId;
+    private final String name;
+    private final RideType rideType;
+    private final int maxRider;
+    private final int queueCapacity; // 等待队列容量上限（0表示不限）
+    private final String[] operator; // 证件号/姓名/年龄/工号/岗位，null表示使用默认员工
+
+    public RideDefinition(String rideId, String name, RideType rideType, int maxRider, String[] operator) {
+        this(rideId, name, rideType, maxRider, 0, operator);
+    }
+
+    public RideDefinition(String rideId, String name, RideType rideType, int maxRider, int queueCapacity,
+                          String[] operator) {
+        this.rideId = rideId;
+        this.name = name;
+        this.rideType = rideType != null ? rideType : RideType.FAMILY;
+        this.maxRider = maxRider;
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.operator = operator != null ? operator.clone() : null;
+    }
+
+    public String getRideId() {
+        return rideId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public RideType getRideType() {
+        return rideType;
+    }
+
+    public int getMaxRider() {
+        return maxRider;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * 操作员姓名（不创建员工对象，供设施目录展示；未配置时返回null）
+     */
+    public String getOperatorName() {
+        return operator != null ? operator[1] : null;
+    }
+
+    /**
+     * 按定义创建设施（含操作员）
+     */
+    Ride createRide() {
+        Employee employee = operator == null ? new Employee()
+                : new Employee(operator[0], operator[1], Integer.parseInt(operator[2]), operator[3], operator[4]);
+        Ride ride = new Ride(rideId, name, employee, maxRider);
+        ride.setRideType(rideType);
+        ride.setQueueCapacity(queueCapacity);
+        return ride;
+    }
+
+    /**
+     * 解析一条定义
+     * @throws IllegalArgumentException 定义无效时抛出
+     */
+    public static RideDefinition parse(String rideId, String definition) {
+        if (rideId == null || rideId.isBlank()) {
+            throw new IllegalArgumentException("设施ID不能为空");
+        }
+        String name = null;
+        RideType rideType = RideType.FAMILY;
+        int maxRider = 4;
+        int queueCapacity = 0;
+        String[] operator = null;
+        for (String part : definition.split(";")) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            int eq = part.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("缺少'='：" + part);
+            }
+            String key = part.substring(0, eq).trim();
+            String value = part.substring(eq + 1).trim();
+            switch (key) {
+                case "name":
+                    name = value;
+                    break;
+                case "type":
+                    rideType = RideType.valueOf(value);
+                    break;
+                case "maxRider":
+                    maxRider = Integer.parseInt(value);
+                    if (maxRider <= 0) {
+                        throw new IllegalArgumentException("maxRider必须大于0：" + value);
+                    }
+                    break;
+                case "queueCapacity":
+                    queueCapacity = Integer.parseInt(value);
+                    if (queueCapacity < 0) {
+                        throw new IllegalArgumentException("queueCapacity不能为负数：" + value);
+                    }
+                    break;
+                case "operator":
+                    operator = value.split("\\|");
+                    if (operator.length != 5) {
+                        throw new IllegalArgumentException("operator需为 证件号|姓名|年龄|工号|岗位：" + value);
+                    }
+                    Integer.parseInt(operator[2].trim());
+                    for (int i = 0; i < operator.length; i++) {
+                        operator[i] = operator[i].trim();
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知属性：" + key);
+            }
+        }
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("缺少设施名称name");
+        }
+        return new RideDefinition(rideId.trim(), name, rideType, maxRider, queueCapacity, operator);
+    }
+
+    /**
+     * 从配置文件读取全部设施定义（只解析文本，不创建设施对象）
+     * @param filePath 配置文件路径（UTF-8）
+     * @return 定义列表（文件不存在或读取失败时返回空列表）
+     */
+    public static List<RideDefinition> loadFromFile(String filePath) {
+        List<RideDefinition> definitions = new ArrayList<>();
+        forEachInFile(filePath, definitions::add);
+        return definitions;
+    }
+
+    /**
+     * 流式读取设施定义：逐行解析并立即交给consumer，不在内存中保留整份文件或中间列表
+     * @param filePath 配置文件路径（UTF-8）
+     * @param consumer 定义接收器
+     * @return 是否读取成功（文件不存在或读取失败时返回false，已交付的定义保持有效）
+     */
+    public static boolean forEachInFile(String filePath, Consumer<RideDefinition> consumer) {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            LoggerUtil.error("❌ 加载设施定义失败：文件不存在（" + filePath + "）");
+            return false;
+        }
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int colon = line.indexOf(':');
+                if (colon <= 0) {
+                    LoggerUtil.error("警告：跳过无效设施定义行（缺少':'）：" + line);
+                    continue;
+                }
+                RideDefinition definition;
+                try {
+                    definition = parse(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+                } catch (IllegalArgumentException e) {
+                    LoggerUtil.error("警告：跳过无效设施定义行：" + line + "，错误：" + e.getMessage());
+                    continue;
+                }
+                consumer.accept(definition);
+            }
+            return true;
+        } catch (IOException e) {
+            LoggerUtil.error("❌ 加载设施定义失败！错误信息：" + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 转回配置文件中的一行
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(rideId).append(": name=").append(name)
+                .append(";type=").append(rideType.name()).append(";maxRider=").append(maxRider);
+        if (queueCapacity > 0) {
+            sb.append(";queueCapacity=").append(queueCapacity);
+        }
+        if (operator != null) {
+            sb.append(";operator=").append(String.join("|", operator));
+        }
+        return sb.toString();
+    }
+}
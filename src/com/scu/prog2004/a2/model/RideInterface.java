@@ -1,5 +1,7 @@
 package com.scu.prog2004.a2.model;
 
+import java.util.Collection;
+
 /**
  * 游乐设施接口：定义游乐设施的核心行为契约
  * 设计思路：使用接口而非抽象类，因为行为是"必须实现"的契约，无继承限制
@@ -50,4 +52,39 @@ public interface RideInterface {
      * 运行一次游乐周期（核心业务逻辑）
      */
     void runOneCycle();
-}
\ No newline at end of file
+
+    /**
+     * 批量添加游客到等待队列（一次资格校验遍历，只输出一条汇总日志）
+     * @param visitors 要添加的游客集合（空游客与不符合资格的游客计入拒绝数）
+     * @return 批量操作结果
+     */
+    BatchResult addVisitorsToQueue(Collection<Visitor> visitors);
+
+    /**
+     * 批量添加预约游客到等待队列：按顺序插在更早入队的预约游客之后、所有现场排队游客之前（不受队列容量限制）
+     * @param visitors 到时的预约游客（空游客与不符合资格的游客计入拒绝数）
+     * @return 批量操作结果
+     */
+    BatchResult addBookedVisitorsToQueue(Collection<Visitor> visitors);
+
+    /**
+     * 批量追加游客到游乐历史记录
+     * @param visitors 已完成游乐的游客集合（空游客计入拒绝数）
+     * @return 批量操作结果
+     */
+    BatchResult addVisitorsToHistory(Collection<Visitor> visitors);
+
+    /**
+     * 连续运行多个游乐周期（队列为空时提前结束）
+     * @param cycles 请求运行的周期数（≥1）
+     * @return 批量操作结果（含实际运行周期数与载客总数）
+     */
+    BatchResult runCycles(int cycles);
+
+    /**
+     * 运行一次游乐周期（生产热路径：不打印输出，结果写入调用方复用的对象）
+     * @param result 复用的结果对象
+     * @return 传入的result
+     */
+    CycleResult runCycle(CycleResult result);
+}
@@ -1,34 +1,54 @@
 package com.scu.prog2004.a2.model;
 
-import java.util.HashMap;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 单例模式的设施管理器（全局唯一设施池）
  * 优化：添加volatile关键字+双重检查锁，实现线程安全的懒汉式单例
+ * 延迟创建：构造器与loadRideDefinitions只登记设施定义（RideDefinition），
+ * 某个设施第一次被访问时才创建Ride与操作员对象，大型园区的启动耗时与设施数量基本无关
+ * 设施目录：启动时流式读取目录文件（系统属性park.rides.catalog，默认rides.conf），按ID哈希查找为O(1)；
+ * 目录列表按ID排序的快照只在首次分页浏览时构建，之后只有登记新定义才会失效
+ * （快照带目录版本号：与登记并发的重建写回的旧快照版本号已过期，下次读取时重建，新定义不会被隐藏）
  */
 public class RideManager {
     // 新增volatile：避免多线程下指令重排序导致的实例空指针
     private static volatile RideManager instance;
-    private final Map<String, Ride> ridePool; // 设施池（ID->设施）
+    private static final String CATALOG_PROPERTY = "park.rides.catalog";
+    private static final String DEFAULT_CATALOG_PATH = "rides.conf";
+    // 目录文件不存在时使用的内置目录（与仓库中的rides.conf一致，保证从任意工作目录启动都有可用设施）
+    private static final String[] BUILTIN_CATALOG = {
+            "R001: name=超级过山车;type=THRILL;maxRider=4;queueCapacity=200;operator=EMP001|张三|30|EMP-2025|过山车操作员",
+            "R002: name=海盗船;type=FAMILY;maxRider=5;queueCapacity=300;operator=EMP002|李四|35|EMP-2025-02|海盗船操作员",
+            "R003: name=旋转木马;type=KIDDIE;maxRider=3;queueCapacity=100;operator=EMP003|王阿姨|40|EMP-2025-03|旋转木马操作员"
+    };
+    private final Map<String, Ride> ridePool; // 设施池（ID->设施，只含已创建的设施）
+    private final Map<String, RideDefinition> definitions = new ConcurrentHashMap<>(); // 设施目录（已登记的设施定义）
+    private final AtomicLong catalogVersion = new AtomicLong(); // 目录版本号（每登记一条定义加一）
+    private volatile CatalogSnapshot sortedCatalog; // 按ID排序的目录快照（null或版本号过期表示需重建）
+    private volatile EligibilityRuleBook ruleBook = new EligibilityRuleBook(); // 资格规则手册（默认规则）
 
     private RideManager() {
-        ridePool = new HashMap<>();
-        // 初始化默认设施（带RideType）
-        Employee operator1 = new Employee("EMP001", "张三", 30, "EMP-2025", "过山车操作员");
-        Ride rollerCoaster = new Ride("R001", "超级过山车", operator1, 4);
-        rollerCoaster.setRideType(RideType.THRILL);
-        ridePool.put("R001", rollerCoaster);
-
-        Employee operator2 = new Employee("EMP002", "李四", 35, "EMP-2025-02", "海盗船操作员");
-        Ride pirateShip = new Ride("R002", "海盗船", operator2, 5);
-        pirateShip.setRideType(RideType.FAMILY);
-        ridePool.put("R002", pirateShip);
-
-        Employee carouselOp = new Employee("EMP003", "王阿姨", 40, "EMP-2025-03", "旋转木马操作员");
-        Ride carousel = new Ride("R003", "旋转木马", carouselOp, 3);
-        carousel.setRideType(RideType.KIDDIE);
-        ridePool.put("R003", carousel);
+        ridePool = new ConcurrentHashMap<>(); // 支持多线程并发查找/创建设施
+        String catalogPath = System.getProperty(CATALOG_PROPERTY, DEFAULT_CATALOG_PATH);
+        if (new File(catalogPath).exists()) {
+            loadRideDefinitions(catalogPath);
+        } else {
+            for (String line : BUILTIN_CATALOG) {
+                int colon = line.indexOf(':');
+                define(RideDefinition.parse(line.substring(0, colon), line.substring(colon + 1)));
+            }
+            LoggerUtil.info("📌 未找到设施目录文件[" + catalogPath + "]，使用内置目录（" + BUILTIN_CATALOG.length + "个设施）");
+        }
     }
 
     // 优化：双重检查锁实现线程安全的单例获取
@@ -43,18 +63,198 @@ public class RideManager {
         return instance;
     }
 
-    // 获取设施（不存在则创建）
+    /**
+     * 从配置文件登记设施定义（流式逐行解析，不创建设施对象；已创建的同ID设施保持不变）
+     * @param filePath 设施定义文件路径
+     * @return 新登记的定义数量
+     */
+    public int loadRideDefinitions(String filePath) {
+        int[] registered = new int[1];
+        RideDefinition.forEachInFile(filePath, definition -> {
+            if (ridePool.containsKey(definition.getRideId())) {
+                LoggerUtil.error("警告：设施[" + definition.getRideId() + "]已创建，忽略配置中的定义");
+                return;
+            }
+            define(definition);
+            registered[0]++;
+        });
+        LoggerUtil.info("✅ 从文件[" + filePath + "]登记设施定义" + registered[0] + "条（首次访问时创建）");
+        return registered[0];
+    }
+
+    private void define(RideDefinition definition) {
+        definitions.put(definition.getRideId(), definition);
+        catalogVersion.incrementAndGet(); // 先登记再加版本号：重建读到的版本号不会新于它看到的定义
+    }
+
+    /**
+     * 按ID查找设施定义（O(1)，不创建设施对象）
+     * @return 设施定义（未登记时返回null）
+     */
+    public RideDefinition getRideDefinition(String rideId) {
+        return rideId == null ? null : definitions.get(rideId);
+    }
+
+    /**
+     * 按设施ID顺序分页浏览设施目录（不创建设施对象）
+     * @param cursor 上一页返回的游标（上一页最后一个设施ID，null表示第一页）
+     * @param pageSize 每页条数（≥1）
+     * @return 本页设施定义与下一页游标
+     */
+    public Page<RideDefinition> pageRideCatalog(String cursor, int pageSize) {
+        if (pageSize < 1) {
+            LoggerUtil.error("❌ 设施目录分页参数无效（pageSize=" + pageSize + "）");
+            return new Page<>(Collections.emptyList(), null);
+        }
+        RideDefinition[] catalog = sortedCatalog();
+        int start = 0;
+        if (cursor != null) {
+            int low = 0;
+            int high = catalog.length;
+            while (low < high) { // 第一个ID大于游标的位置（目录在翻页期间变化也不会重复或跳过）
+                int mid = (low + high) >>> 1;
+                if (catalog[mid].getRideId().compareTo(cursor) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            start = low;
+        }
+        int end = Math.min(catalog.length, start + pageSize);
+        List<RideDefinition> items = Arrays.asList(Arrays.copyOfRange(catalog, start, end));
+        return new Page<>(items, end < catalog.length ? catalog[end - 1].getRideId() : null);
+    }
+
+    private RideDefinition[] sortedCatalog() {
+        long version = catalogVersion.get(); // 在读取定义之前取版本号
+        CatalogSnapshot cached = sortedCatalog;
+        if (cached != null && cached.version == version) {
+            return cached.rides;
+        }
+        RideDefinition[] catalog = definitions.values().toArray(new RideDefinition[0]);
+        Arrays.sort(catalog, Comparator.comparing(RideDefinition::getRideId));
+        sortedCatalog = new CatalogSnapshot(version, catalog);
+        return catalog;
+    }
+
+    /**
+     * 按ID排序的目录快照及构建时的目录版本号
+     */
+    private static final class CatalogSnapshot {
+        private final long version;
+        private final RideDefinition[] rides;
+
+        CatalogSnapshot(long version, RideDefinition[] rides) {
+            this.version = version;
+            this.rides = rides;
+        }
+    }
+
+    /**
+     * 已登记的设施数量（含尚未创建的，不触发创建）
+     */
+    public int getRideCount() {
+        int pending = 0;
+        for (String rideId : definitions.keySet()) {
+            if (!ridePool.containsKey(rideId)) {
+                pending++;
+            }
+        }
+        return ridePool.size() + pending;
+    }
+
+    /**
+     * 已创建的设施数量
+     */
+    public int getCreatedRideCount() {
+        return ridePool.size();
+    }
+
+    // 获取设施（不存在则按已登记的定义或参数创建，computeIfAbsent保证并发下只创建一次）
     public Ride getRide(String rideId, String name, int maxRider, RideType type) {
-        if (!ridePool.containsKey(rideId)) {
-            Ride ride = new Ride(rideId, name, new Employee(), maxRider);
+        Ride defined = findRide(rideId);
+        if (defined != null) {
+            return defined;
+        }
+        return ridePool.computeIfAbsent(rideId, id -> {
+            Ride ride = new Ride(id, name, new Employee(), maxRider);
             ride.setRideType(type);
-            ridePool.put(rideId, ride);
+            ruleBook.applyTo(ride);
+            return ride;
+        });
+    }
+
+    // 按ID查找设施（已登记但未创建的设施在此时创建；不存在返回null，不回退到默认设施）
+    public Ride findRide(String rideId) {
+        if (rideId == null) {
+            return null;
         }
-        return ridePool.get(rideId);
+        Ride ride = ridePool.get(rideId);
+        if (ride != null) {
+            return ride;
+        }
+        RideDefinition definition = definitions.get(rideId);
+        return definition == null ? null : ridePool.computeIfAbsent(rideId, id -> {
+            Ride created = definition.createRide();
+            ruleBook.applyTo(created);
+            return created;
+        });
     }
 
-    // 获取默认设施
+    // 注册设施（同ID设施会被替换，并按当前规则手册编译资格规则、按目录设置队列容量；包内可见，供检查点还原使用）
+    void registerRide(Ride ride) {
+        ruleBook.applyTo(ride);
+        RideDefinition definition = definitions.get(ride.getRideId());
+        if (definition != null) {
+            ride.setQueueCapacity(definition.getQueueCapacity());
+        }
+        ridePool.put(ride.getRideId(), ride);
+    }
+
+    // 获取设施池中的所有设施（只读视图；会创建全部尚未创建的已登记设施）
+    public Collection<Ride> getAllRides() {
+        for (String rideId : definitions.keySet()) {
+            findRide(rideId);
+        }
+        return Collections.unmodifiableCollection(ridePool.values());
+    }
+
+    /**
+     * 园区等待时间看板：每个设施O(1)生成一行，按设施ID排序
+     * @return 看板条目列表（每次调用生成新列表，适合每秒刷新）
+     */
+    public List<WaitBoardEntry> getWaitBoard() {
+        Collection<Ride> rides = getAllRides();
+        List<WaitBoardEntry> board = new ArrayList<>(rides.size());
+        for (Ride ride : rides) {
+            board.add(ride.getWaitBoardEntry());
+        }
+        board.sort(Comparator.comparing(WaitBoardEntry::getRideId));
+        return board;
+    }
+
+    // 获取默认设施（ID不存在时回退到目录中ID最小的设施，目录为空时返回null）
     public Ride getDefaultRide(String rideId) {
-        return ridePool.getOrDefault(rideId, ridePool.get("R001"));
+        Ride ride = findRide(rideId);
+        if (ride != null) {
+            return ride;
+        }
+        RideDefinition[] catalog = sortedCatalog();
+        return catalog.length > 0 ? findRide(catalog[0].getRideId()) : null;
+    }
+
+    /**
+     * 从规则文件加载资格规则，并编译到设施池中所有设施（后续新建的设施同样生效）
+     * @param filePath 规则文件路径
+     */
+    public void applyEligibilityRules(String filePath) {
+        ruleBook = EligibilityRuleBook.loadFromFile(filePath, rideId -> {
+            RideDefinition definition = definitions.get(rideId);
+            return definition == null ? null : definition.getRideType();
+        });
+        for (Ride ride : ridePool.values()) {
+            ruleBook.applyTo(ride);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,58 @@
+package com.scu.prog2004.a2.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 设施状态的只读快照（不可变）：某一版本时刻的等待队列、游乐历史与周期数
+ * 由Ride.snapshot在设施锁内创建，之后的导出、打印、统计都在快照上进行，不再持有设施锁，周期运行与入队可以同时进行
+ * 获取代价：等待队列拷贝为数组（通常只有数百人）；游乐历史与设施共享记录存储（写时复制），
+ * 只拷贝游客驻留字典的数组部分，不随历史记录数增长
+ * 版本号：设施的队列/历史/周期数每变化一次加一，version相同的两个快照内容相同（可用于判断报表是否需要刷新）
+ */
+public final class RideSnapshot {
+    private final String rideId;
+    private final long version;
+    private final long takenAtMillis;
+    private final int numOfCycles;
+    private final List<Visitor> queue;
+    private final int bookedAhead;
+    private final HistoryStore history;
+
+    RideSnapshot(String rideId, long version, int numOfCycles, Visitor[] queue, int bookedAhead, HistoryStore history) {
+        this.rideId = rideId;
+        this.version = version;
+        this.takenAtMillis = System.currentTimeMillis();
+        this.numOfCycles = numOfCycles;
+        this.queue = Collections.unmodifiableList(Arrays.asList(queue));
+        this.bookedAhead = bookedAhead;
+        this.history = history;
+    }
+
+    public String getRideId() { return rideId; }
+    public long getVersion() { return version; }
+    public long getTakenAtMillis() { return takenAtMillis; }
+    public int getNumOfCycles() { return numOfCycles; }
+    public int getBookedAhead() { return bookedAhead; }
+
+    /**
+     * 快照时刻的等待队列（队首在前；不可修改）
+     */
+    public List<Visitor> getQueue() {
+        return queue;
+    }
+
+    /**
+     * 快照时刻的游乐历史（只读：支持按位置读取、迭代、时间区间与游客查询，修改操作抛出UnsupportedOperationException）
+     */
+    public HistoryStore getHistory() {
+        return history;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("设施[%s]快照（版本%d）：队列%d人，历史%d条，周期%d次",
+                rideId, version, queue.size(), history.size(), numOfCycles);
+    }
+}
@@ -4,33 +4,32 @@ package com.scu.prog2004.a2.model;
  * 设施类型枚举（带动态年龄校验规则）
  */
 public enum RideType {
-    THRILL("刺激类") {
-        @Override
-        public boolean checkAge(Visitor visitor) {
-            return visitor.getAge() >= 16; // 刺激类需16岁以上
-        }
-    },
-    FAMILY("家庭类") {
-        @Override
-        public boolean checkAge(Visitor visitor) {
-            return true; // 无年龄限制
-        }
-    },
-    KIDDIE("儿童类") {
-        @Override
-        public boolean checkAge(Visitor visitor) {
-            return visitor.getAge() >= 3 && visitor.getAge() <= 12;
-        }
-    };
+    THRILL("刺激类", 16, Integer.MAX_VALUE),  // 刺激类需16岁以上
+    FAMILY("家庭类", 0, Integer.MAX_VALUE),   // 无年龄限制
+    KIDDIE("儿童类", 3, 12);                  // 儿童类限3-12岁
 
     private final String displayName;
+    private final int minAge; // 最小年龄（含）
+    private final int maxAge; // 最大年龄（含）
 
-    RideType(String displayName) {
+    RideType(String displayName, int minAge, int maxAge) {
         this.displayName = displayName;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
     }
 
-    // 抽象方法：不同类型的年龄校验规则（策略模式）
-    public abstract boolean checkAge(Visitor visitor);
+    public int getMinAge() {
+        return minAge;
+    }
+
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    // 不同类型的默认年龄校验规则（可被EligibilityRule中的配置规则覆盖）
+    public boolean checkAge(Visitor visitor) {
+        return visitor.getAge() >= minAge && visitor.getAge() <= maxAge;
+    }
 
     @Override
     public String toString() {
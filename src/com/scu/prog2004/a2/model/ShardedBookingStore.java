@@ -0,0 +1,261 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 分片预约存储（多园区/水平扩展）：按设施ID或游客ID的哈希把预约划分到多个分片
+ * 设计思路：
+ *   - 每个分片是一个独立的BookingManager实例（包内构造器创建），各有自己的锁、索引与持久化文件，不同分片的操作互不阻塞；
+ *   - 分片号 = floorMod(分片键.hashCode(), 分片数)，String.hashCode的结果在所有JVM中一致，
+ *     因此多个进程使用相同的分片数与策略时，对同一条预约算出的分片号相同，可以各自负责不同分片文件；
+ *   - 能确定分片的操作（新增预约、按游客分片时的按游客查询）只访问一个分片；
+ *     不能确定分片的查询（按预约ID取消、按设施分片时的按游客查询、统计）并行扇出到所有分片后合并结果
+ * 分片文件：目录下的 bookings-shard-<序号>.dat（格式与bookings.dat相同，可被BookingManager直接加载）
+ */
+public class ShardedBookingStore implements AutoCloseable {
+    private static final String SHARD_FILE_PREFIX = "bookings-shard-";
+    private static final String SHARD_FILE_SUFFIX = ".dat";
+    private static final AtomicInteger POOL_SEQUENCE = new AtomicInteger();
+
+    /**
+     * 分片策略：决定每条预约的分片键
+     */
+    public enum Strategy {
+        BY_RIDE("按设施"),      // 同一设施（同一园区的设施通常ID前缀相同）的预约落在同一分片，按游客查询需扇出
+        BY_VISITOR("按游客");   // 同一游客的预约落在同一分片，按游客查询只访问一个分片
+
+        private final String displayName;
+
+        Strategy(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private final Strategy strategy;
+    private final BookingManager[] shards;
+    private final ExecutorService executor; // 扇出查询与并行持久化使用的线程池（守护线程）
+
+    /**
+     * @param shardCount 分片数（≥1）
+     * @param strategy 分片策略
+     */
+    public ShardedBookingStore(int shardCount, Strategy strategy) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("分片数必须大于0：" + shardCount);
+        }
+        this.strategy = strategy != null ? strategy : Strategy.BY_RIDE;
+        this.shards = new BookingManager[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new BookingManager();
+        }
+        int poolId = POOL_SEQUENCE.incrementAndGet();
+        AtomicInteger threadSequence = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.min(shardCount, Runtime.getRuntime().availableProcessors()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "booking-shard-" + poolId + "-" + threadSequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * 获取某个分片（供单分片维护操作，如分页浏览、单独加载/保存）
+     */
+    public BookingManager getShard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * 计算分片键对应的分片号（所有JVM中结果一致）
+     */
+    public int shardIndexFor(String shardKey) {
+        return Math.floorMod(shardKey.hashCode(), shards.length);
+    }
+
+    /**
+     * 计算预约所属的分片号
+     */
+    public int shardIndexFor(Booking booking) {
+        return shardIndexFor(strategy == Strategy.BY_RIDE
+                ? booking.getRide().getRideId() : booking.getVisitor().getVisitorId());
+    }
+
+    /**
+     * 分片文件路径：目录/bookings-shard-<序号>.dat
+     */
+    public static String shardFilePath(String directory, int index) {
+        return new File(directory, SHARD_FILE_PREFIX + index + SHARD_FILE_SUFFIX).getPath();
+    }
+
+    /**
+     * 新增预约（只锁定所属分片）
+     * @return true=添加成功，false=校验失败或重复
+     */
+    public boolean addBooking(Booking booking) {
+        if (booking == null || booking.getRide() == null || booking.getVisitor() == null) {
+            LoggerUtil.error("❌ 新增预约失败：预约、设施与游客均不能为空");
+            return false;
+        }
+        return shards[shardIndexFor(booking)].addBooking(booking);
+    }
+
+    /**
+     * 按游客ID查询有效预约：按游客分片时只查一个分片，否则并行扇出到所有分片
+     * @return 该游客的所有有效预约（按预约时间升序，不可修改）
+     */
+    public List<Booking> getBookingsByVisitorId(String visitorId) {
+        if (visitorId == null || visitorId.isBlank()) {
+            LoggerUtil.error("❌ 查询预约失败：游客ID不能为空");
+            return Collections.emptyList();
+        }
+        if (strategy == Strategy.BY_VISITOR) {
+            return shards[shardIndexFor(visitorId)].getBookingsByVisitorId(visitorId);
+        }
+        List<Booking> result = new ArrayList<>();
+        for (List<Booking> partial : fanOut(shard -> shard.getBookingsByVisitorId(visitorId))) {
+            result.addAll(partial);
+        }
+        result.sort(Comparator.comparing(Booking::getBookingTime));
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * 按预约ID取消预约：并行在所有分片中查找（不产生"未找到"日志），再在所属分片中取消
+     * @return 被取消的预约（Optional.empty()表示未找到或已取消）
+     */
+    public Optional<Booking> cancelBookingById(String bookingId) {
+        if (bookingId == null || bookingId.isBlank()) {
+            LoggerUtil.error("❌ 取消预约失败：预约ID不能为空");
+            return Optional.empty();
+        }
+        List<Boolean> found = fanOut(shard -> shard.containsBooking(bookingId));
+        for (int i = 0; i < shards.length; i++) {
+            if (found.get(i)) {
+                return shards[i].cancelBookingById(bookingId);
+            }
+        }
+        LoggerUtil.error("❌ 取消预约失败：未找到该预约（预约ID：" + bookingId + "）");
+        return Optional.empty();
+    }
+
+    /**
+     * 所有分片的有效预约总数
+     */
+    public long getValidBookingCount() {
+        long total = 0;
+        for (long count : fanOut(BookingManager::getValidBookingCount)) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * 各分片的有效预约数（下标为分片号，用于观察数据倾斜）
+     */
+    public long[] getShardBookingCounts() {
+        List<Long> counts = fanOut(BookingManager::getValidBookingCount);
+        long[] result = new long[counts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * 并行保存所有分片（每个分片一个文件）
+     * @param directory 分片文件目录（不存在时自动创建）
+     */
+    public void saveAll(String directory) {
+        if (!new File(directory).isDirectory() && !new File(directory).mkdirs()) {
+            LoggerUtil.error("❌ 保存分片预约失败：无法创建目录（" + directory + "）");
+            return;
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            int index = i;
+            futures.add(CompletableFuture.runAsync(() -> saveShard(index, directory), executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * 并行加载所有分片（缺失的分片文件只记录日志，该分片保持原状）
+     * @param directory 分片文件目录
+     */
+    public void loadAll(String directory) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            int index = i;
+            futures.add(CompletableFuture.runAsync(() -> loadShard(index, directory), executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * 保存单个分片（多进程部署时每个进程只保存自己负责的分片）
+     */
+    public void saveShard(int index, String directory) {
+        shards[index].saveBookingsToFile(shardFilePath(directory, index));
+    }
+
+    /**
+     * 加载单个分片
+     */
+    public void loadShard(int index, String directory) {
+        shards[index].loadBookingsFromFile(shardFilePath(directory, index));
+    }
+
+    /**
+     * 关闭扇出线程池（已保存的数据不受影响）
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * 在每个分片上并行执行同一查询，按分片号顺序返回结果（各分片只持有自己的锁）
+     */
+    private <T> List<T> fanOut(Function<BookingManager, T> query) {
+        if (shards.length == 1) {
+            return Collections.singletonList(query.apply(shards[0]));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.length);
+        for (BookingManager shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(shard), executor));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedBookingStore{分片数=" + shards.length + ", 策略=" + strategy + "}";
+    }
+}
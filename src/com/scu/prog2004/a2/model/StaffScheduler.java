@@ -0,0 +1,315 @@
+package com.scu.prog2004.a2.model;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 单例模式的员工排班引擎：记录"哪位员工在什么时段可以操作哪个设施"，并为设施周期运行提供在班操作员
+ * 数据结构：
+ *   - 每个设施一条时间线 TreeMap<分段起点, 该分段内的在班班次[]>：相邻分段起点之间在班人员不变，
+ *     查询"时刻T谁能操作设施X"只需一次floorEntry，O(log 分段数)；新增/删除班次只改动被覆盖的分段；
+ *   - 每个员工一棵 TreeMap<班次开始, 班次>：同一员工的班次互不重叠，冲突检查只看前后两个相邻班次，O(log n)
+ * 自动换班：Ride运行周期前调用resolveOperator，当前操作员下班时自动换成仍在班且下班最晚的员工（减少后续换班次数）；
+ * 没有任何班次的设施不受排班约束，保持原有的"指定操作员"行为
+ * 换班结果缓存：validUntilMillis给出当前分段的结束时刻，version在排班变化时递增，
+ * Ride在两者都未变化前直接沿用上次的结果，周期热路径无需加锁查询也不创建时间对象
+ */
+public class StaffScheduler {
+    // 新增volatile：避免多线程下指令重排序导致的实例空指针
+    private static volatile StaffScheduler instance;
+    private static final Shift[] NO_SHIFTS = new Shift[0];
+
+    private final Map<String, TreeMap<LocalDateTime, Shift[]>> rideTimelines = new HashMap<>(); // 设施ID → 分段时间线
+    private final Map<String, TreeMap<LocalDateTime, Shift>> employeeShifts = new HashMap<>();  // 工号 → 班次（按开始时间）
+    private volatile int version; // 排班版本号（每次新增/删除/清空班次后递增）
+
+    private StaffScheduler() {
+    }
+
+    // 双重检查锁实现线程安全的单例获取
+    public static StaffScheduler getInstance() {
+        if (instance == null) { // 第一次检查：避免频繁加锁
+            synchronized (StaffScheduler.class) { // 加锁：保证线程安全
+                if (instance == null) { // 第二次检查：避免重复创建
+                    instance = new StaffScheduler();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 新增班次：员工在[start, end)时段操作指定设施
+     * @return 新建的班次（参数无效或与该员工已有班次重叠时返回null）
+     */
+    public synchronized Shift addShift(Employee employee, String rideId, LocalDateTime start, LocalDateTime end) {
+        if (employee == null || employee.getEmployeeId() == null || rideId == null || start == null || end == null) {
+            LoggerUtil.error("❌ 新增班次失败：员工、设施ID与起止时间均不能为空");
+            return null;
+        }
+        if (!start.isBefore(end)) {
+            LoggerUtil.error("❌ 新增班次失败：开始时间必须早于结束时间（" + start + " ~ " + end + "）");
+            return null;
+        }
+        TreeMap<LocalDateTime, Shift> shifts = employeeShifts.computeIfAbsent(employee.getEmployeeId(), id -> new TreeMap<>());
+        Map.Entry<LocalDateTime, Shift> before = shifts.lowerEntry(end);
+        if (before != null && before.getValue().getEnd().isAfter(start)) {
+            LoggerUtil.error("❌ 新增班次失败：员工[" + employee.getName() + "]在该时段已有班次（" + before.getValue() + "）");
+            return null;
+        }
+
+        Shift shift = new Shift(employee, rideId, start, end);
+        shifts.put(start, shift);
+        TreeMap<LocalDateTime, Shift[]> timeline = rideTimelines.computeIfAbsent(rideId, id -> new TreeMap<>());
+        splitAt(timeline, start);
+        splitAt(timeline, end);
+        for (Map.Entry<LocalDateTime, Shift[]> segment : timeline.subMap(start, true, end, false).entrySet()) {
+            Shift[] current = segment.getValue();
+            Shift[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = shift;
+            segment.setValue(updated);
+        }
+        version++;
+        return shift;
+    }
+
+    /**
+     * 删除班次（如员工请假），相邻且在班人员相同的分段会被合并
+     * @return true=删除成功，false=班次不存在
+     */
+    public synchronized boolean removeShift(Shift shift) {
+        TreeMap<LocalDateTime, Shift> shifts = shift != null ? employeeShifts.get(shift.getEmployee().getEmployeeId()) : null;
+        if (shifts == null || shifts.get(shift.getStart()) != shift) {
+            LoggerUtil.error("❌ 删除班次失败：班次不存在（" + shift + "）");
+            return false;
+        }
+        shifts.remove(shift.getStart());
+        if (shifts.isEmpty()) {
+            employeeShifts.remove(shift.getEmployee().getEmployeeId());
+        }
+
+        TreeMap<LocalDateTime, Shift[]> timeline = rideTimelines.get(shift.getRideId());
+        for (Map.Entry<LocalDateTime, Shift[]> segment
+                : timeline.subMap(shift.getStart(), true, shift.getEnd(), false).entrySet()) {
+            segment.setValue(without(segment.getValue(), shift));
+        }
+        mergeAt(timeline, shift.getEnd());
+        mergeAt(timeline, shift.getStart());
+        if (timeline.isEmpty()) {
+            rideTimelines.remove(shift.getRideId());
+        }
+        version++;
+        return true;
+    }
+
+    /**
+     * 时刻time可以操作设施的员工（O(log n)，按班次开始时间先后）
+     */
+    public synchronized List<Employee> getAvailableOperators(String rideId, LocalDateTime time) {
+        Shift[] onDuty = onDuty(rideId, time);
+        List<Employee> employees = new ArrayList<>(onDuty.length);
+        for (Shift shift : onDuty) {
+            employees.add(shift.getEmployee());
+        }
+        return employees;
+    }
+
+    /**
+     * 时刻time设施的首选操作员：在班员工中下班最晚的一位（O(log n)）
+     * @return 首选操作员（无人在班时返回null）
+     */
+    public synchronized Employee findOperator(String rideId, LocalDateTime time) {
+        Shift best = latestEnding(onDuty(rideId, time));
+        return best != null ? best.getEmployee() : null;
+    }
+
+    /**
+     * 设施是否受排班约束（有过至少一个班次）
+     */
+    public synchronized boolean isScheduled(String rideId) {
+        return rideTimelines.containsKey(rideId);
+    }
+
+    /**
+     * 为即将运行周期的设施确定操作员（Ride内部调用，调用方持有设施锁；本方法不回调设施，锁顺序固定为设施→排班）
+     * @param current 设施当前的操作员
+     * @return 未排班的设施返回current；当前操作员仍在班时返回current；否则返回下班最晚的在班员工（无人在班时返回null）
+     */
+    synchronized Employee resolveOperator(String rideId, Employee current, LocalDateTime time) {
+        if (!rideTimelines.containsKey(rideId)) {
+            return current;
+        }
+        Shift[] onDuty = onDuty(rideId, time);
+        for (Shift shift : onDuty) {
+            if (current != null && shift.getEmployee().getEmployeeId().equals(current.getEmployeeId())) {
+                return current;
+            }
+        }
+        Shift best = latestEnding(onDuty);
+        return best != null ? best.getEmployee() : null;
+    }
+
+    /**
+     * 排班版本号（不加锁读取；版本未变时之前的resolveOperator结果在其有效期内仍然成立）
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * resolveOperator在time处的结果有效到何时：设施时间线上time之后的第一个分段起点（毫秒时间戳）
+     * @return 有效期截止时刻（未排班或之后不再有变化时返回Long.MAX_VALUE）
+     */
+    synchronized long validUntilMillis(String rideId, LocalDateTime time) {
+        TreeMap<LocalDateTime, Shift[]> timeline = rideTimelines.get(rideId);
+        LocalDateTime next = timeline != null ? timeline.higherKey(time) : null;
+        return next != null ? next.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : Long.MAX_VALUE;
+    }
+
+    /**
+     * 设施在[from, to)内无人在班的时段（用于排班前发现缺口）
+     * @return 缺口列表，每项为[开始, 结束]
+     */
+    public synchronized List<LocalDateTime[]> findCoverageGaps(String rideId, LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || !from.isBefore(to)) {
+            return Collections.emptyList();
+        }
+        TreeMap<LocalDateTime, Shift[]> timeline = rideTimelines.get(rideId);
+        if (timeline == null) {
+            return Collections.singletonList(new LocalDateTime[]{from, to});
+        }
+        List<LocalDateTime[]> gaps = new ArrayList<>();
+        LocalDateTime gapStart = onDuty(rideId, from).length == 0 ? from : null;
+        for (Map.Entry<LocalDateTime, Shift[]> segment : timeline.subMap(from, false, to, false).entrySet()) {
+            boolean empty = segment.getValue().length == 0;
+            if (empty && gapStart == null) {
+                gapStart = segment.getKey();
+            } else if (!empty && gapStart != null) {
+                gaps.add(new LocalDateTime[]{gapStart, segment.getKey()});
+                gapStart = null;
+            }
+        }
+        if (gapStart != null) {
+            gaps.add(new LocalDateTime[]{gapStart, to});
+        }
+        return gaps;
+    }
+
+    /**
+     * 员工的全部班次（按开始时间升序）
+     */
+    public synchronized List<Shift> getShifts(String employeeId) {
+        TreeMap<LocalDateTime, Shift> shifts = employeeShifts.get(employeeId);
+        return shifts == null ? Collections.emptyList() : new ArrayList<>(shifts.values());
+    }
+
+    /**
+     * 清空全部排班（所有设施恢复为不受排班约束）
+     */
+    public synchronized void clear() {
+        rideTimelines.clear();
+        employeeShifts.clear();
+        version++;
+    }
+
+    // ========================= 内部实现 =========================
+
+    private Shift[] onDuty(String rideId, LocalDateTime time) {
+        TreeMap<LocalDateTime, Shift[]> timeline = rideTimelines.get(rideId);
+        Map.Entry<LocalDateTime, Shift[]> segment = timeline != null && time != null ? timeline.floorEntry(time) : null;
+        return segment != null ? segment.getValue() : NO_SHIFTS;
+    }
+
+    private static Shift latestEnding(Shift[] shifts) {
+        Shift best = null;
+        for (Shift shift : shifts) {
+            if (best == null || shift.getEnd().isAfter(best.getEnd())) {
+                best = shift;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 确保time是一个分段起点（拆分包含time的分段，新分段沿用原分段的在班人员）
+     */
+    private static void splitAt(TreeMap<LocalDateTime, Shift[]> timeline, LocalDateTime time) {
+        if (!timeline.containsKey(time)) {
+            Map.Entry<LocalDateTime, Shift[]> floor = timeline.floorEntry(time);
+            timeline.put(time, floor != null ? floor.getValue() : NO_SHIFTS);
+        }
+    }
+
+    /**
+     * 若time处的分段与前一分段在班人员相同（或是时间线开头的空分段），删除该分段起点
+     */
+    private static void mergeAt(NavigableMap<LocalDateTime, Shift[]> timeline, LocalDateTime time) {
+        Shift[] current = timeline.get(time);
+        if (current == null) {
+            return;
+        }
+        Map.Entry<LocalDateTime, Shift[]> previous = timeline.lowerEntry(time);
+        if (previous != null ? sameShifts(previous.getValue(), current) : current.length == 0) {
+            timeline.remove(time);
+        }
+    }
+
+    private static boolean sameShifts(Shift[] a, Shift[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (Shift shift : a) {
+            if (!Arrays.asList(b).contains(shift)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Shift[] without(Shift[] shifts, Shift removed) {
+        Shift[] result = new Shift[shifts.length - 1];
+        int size = 0;
+        for (Shift shift : shifts) {
+            if (shift != removed && size < result.length) {
+                result[size++] = shift;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 班次（不可变）：员工在[start, end)时段操作某个设施
+     */
+    public static final class Shift {
+        private final Employee employee;
+        private final String rideId;
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+
+        Shift(Employee employee, String rideId, LocalDateTime start, LocalDateTime end) {
+            this.employee = employee;
+            this.rideId = rideId;
+            this.start = start;
+            this.end = end;
+        }
+
+        public Employee getEmployee() { return employee; }
+        public String getRideId() { return rideId; }
+        public LocalDateTime getStart() { return start; }
+        public LocalDateTime getEnd() { return end; }
+
+        @Override
+        public String toString() {
+            return String.format("Shift{员工=%s（%s）, 设施=%s, %s ~ %s}",
+                    employee.getName(), employee.getEmployeeId(), rideId, start, end);
+        }
+    }
+}
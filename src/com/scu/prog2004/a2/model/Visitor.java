@@ -27,6 +27,7 @@ public class Visitor extends Person implements Serializable { // 新增实现Ser
     private final String visitorId;       // 游客唯一ID（只读）
     private MembershipType membershipType; // 会员类型
     private boolean hasRideInsurance;     // 可选扩展：是否购买游乐保险（体现HD的扩展性）
+    private int heightCm;                 // 身高（厘米，0表示未登记），供身高类资格规则使用
 
     /**
      * 默认构造器：生成默认游客ID，默认标准会员
@@ -69,10 +70,15 @@ public class Visitor extends Person implements Serializable { // 新增实现Ser
         return hasRideInsurance;
     }
 
+    public int getHeightCm() {
+        return heightCm;
+    }
+
     // 修改器
     public void setMembershipType(MembershipType membershipType) {
         if (membershipType != null) {
             this.membershipType = membershipType;
+            invalidateDisplay();
         } else {
             LoggerUtil.error("警告：会员类型不能为空！属性未更新");
         }
@@ -80,14 +86,23 @@ public class Visitor extends Person implements Serializable { // 新增实现Ser
 
     public void setHasRideInsurance(boolean hasRideInsurance) {
         this.hasRideInsurance = hasRideInsurance;
+        invalidateDisplay();
+    }
+
+    public void setHeightCm(int heightCm) {
+        if (heightCm >= 0) {
+            this.heightCm = heightCm;
+        } else {
+            LoggerUtil.error("警告：身高不能为负数！属性未更新");
+        }
     }
 
     /**
-     * 重写toString：详细展示游客信息（便于打印队列/历史）
+     * 详细展示游客信息（便于打印队列/历史；toString缓存此结果，会员类型与保险修改时作废）
      */
     @Override
-    public String toString() {
-        return String.format("Visitor{visitorId='%s', membershipType=%s, hasInsurance=%b, %s}",
-                visitorId, membershipType, hasRideInsurance, super.toString());
+    protected String describe() {
+        return "Visitor{visitorId='" + visitorId + "', membershipType=" + membershipType
+                + ", hasInsurance=" + hasRideInsurance + ", " + describePerson() + "}";
     }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.scu.prog2004.a2.model;
+
+/**
+ * 园区等待时间看板的一行（某个设施在查询时刻的队列长度与预计等待）
+ */
+public final class WaitBoardEntry {
+    private final String rideId;
+    private final String rideName;
+    private final int queueLength;
+    private final double estimatedWaitSeconds; // 新到游客排在队尾时的预计等待
+    private final double throughputPerMinute;  // 当前吞吐量（人/分钟）
+
+    public WaitBoardEntry(String rideId, String rideName, int queueLength,
+                          double estimatedWaitSeconds, double throughputPerMinute) {
+        this.rideId = rideId;
+        this.rideName = rideName;
+        this.queueLength = queueLength;
+        this.estimatedWaitSeconds = estimatedWaitSeconds;
+        this.throughputPerMinute = throughputPerMinute;
+    }
+
+    public String getRideId() { return rideId; }
+    public String getRideName() { return rideName; }
+    public int getQueueLength() { return queueLength; }
+    public double getEstimatedWaitSeconds() { return estimatedWaitSeconds; }
+    public double getThroughputPerMinute() { return throughputPerMinute; }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s | 排队%d人 | 预计等待%.1f分钟 | 吞吐%.1f人/分钟",
+                rideId, rideName, queueLength, estimatedWaitSeconds / 60, throughputPerMinute);
+    }
+}
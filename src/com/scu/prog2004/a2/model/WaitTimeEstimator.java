@@ -0,0 +1,104 @@
+package com.scu.prog2004.a2.model;
+
+import java.io.Serializable;
+
+/**
+ * 等待时间估算器：按指数加权移动平均（EWMA）跟踪设施的周期间隔与单周期载客数
+ * 设计思路：每次运行周期时O(1)更新，查询"队列第k位预计等待"时O(1)计算，
+ * 园区看板每秒刷新数百个设施也只需常数级开销
+ * 周期间隔取相邻两次运行的时间差；间隔超过空闲阈值（如午休停运）时不计入平均值
+ */
+public class WaitTimeEstimator implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final double DEFAULT_ALPHA = 0.2;             // 平滑系数（越大越偏重最近周期）
+    private static final double DEFAULT_CYCLE_SECONDS = 180.0;   // 尚无样本时的默认周期时长（3分钟）
+    private static final double IDLE_GAP_SECONDS = 30 * 60.0;    // 超过30分钟的间隔视为停运，不计入
+
+    private final double alpha;
+    private double avgCycleSeconds;     // 周期时长EWMA（秒）
+    private double avgRidersPerCycle;   // 单周期载客数EWMA
+    private long samples;               // 已计入的周期间隔样本数
+    private transient long lastCycleNanos; // 上一次运行的时刻（System.nanoTime，不参与序列化）
+
+    public WaitTimeEstimator() {
+        this(DEFAULT_ALPHA, DEFAULT_CYCLE_SECONDS);
+    }
+
+    /**
+     * @param alpha 平滑系数（0-1之间）
+     * @param initialCycleSeconds 尚无样本时使用的周期时长（秒）
+     */
+    public WaitTimeEstimator(double alpha, double initialCycleSeconds) {
+        this.alpha = (alpha > 0 && alpha <= 1) ? alpha : DEFAULT_ALPHA;
+        this.avgCycleSeconds = initialCycleSeconds > 0 ? initialCycleSeconds : DEFAULT_CYCLE_SECONDS;
+    }
+
+    /**
+     * 记录一次（或一批）周期运行
+     * @param cycles 本次调用运行的周期数（批量运行时按平均间隔计入）
+     * @param riders 本次调用的总载客数
+     * @param nowNanos 当前时刻（System.nanoTime）
+     */
+    public void recordCycles(int cycles, int riders, long nowNanos) {
+        if (cycles <= 0) {
+            return;
+        }
+        double ridersPerCycle = (double) riders / cycles;
+        avgRidersPerCycle = samples == 0 && avgRidersPerCycle == 0
+                ? ridersPerCycle
+                : alpha * ridersPerCycle + (1 - alpha) * avgRidersPerCycle;
+
+        if (lastCycleNanos != 0) {
+            double interval = (nowNanos - lastCycleNanos) / 1e9 / cycles;
+            if (interval > 0 && interval <= IDLE_GAP_SECONDS) {
+                avgCycleSeconds = samples == 0 ? interval : alpha * interval + (1 - alpha) * avgCycleSeconds;
+                samples++;
+            }
+        }
+        lastCycleNanos = nowNanos;
+    }
+
+    /**
+     * 估算队列第position位（从1开始）的游客需要等待的秒数
+     * @param position 队列位置
+     * @param maxRider 设施单次最大载客量
+     * @return 预计等待秒数（前面的游客需要的周期数 × 平均周期时长）
+     */
+    public double estimateWaitSeconds(int position, int maxRider) {
+        if (position <= 0) {
+            return 0;
+        }
+        int cyclesAhead = (position + maxRider - 1) / maxRider; // 向上取整
+        return cyclesAhead * avgCycleSeconds;
+    }
+
+    public double getAvgCycleSeconds() {
+        return avgCycleSeconds;
+    }
+
+    public double getAvgRidersPerCycle() {
+        return avgRidersPerCycle;
+    }
+
+    /**
+     * 当前吞吐量（人/分钟）
+     */
+    public double getThroughputPerMinute() {
+        return avgRidersPerCycle / avgCycleSeconds * 60;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * 从检查点还原估算状态（包内可见）
+     */
+    void restore(double avgCycleSeconds, double avgRidersPerCycle, long samples) {
+        if (avgCycleSeconds > 0) {
+            this.avgCycleSeconds = avgCycleSeconds;
+        }
+        this.avgRidersPerCycle = Math.max(0, avgRidersPerCycle);
+        this.samples = Math.max(0, samples);
+    }
+}